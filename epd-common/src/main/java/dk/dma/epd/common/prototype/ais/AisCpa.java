@@ -0,0 +1,120 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.ais;
+
+import net.jcip.annotations.Immutable;
+import dk.dma.enav.model.geometry.Position;
+
+/**
+ * The closest point of approach of two AIS targets, as found by the {@linkplain AisCpaEngine} from their current speed
+ * and course.
+ */
+@Immutable
+public final class AisCpa {
+
+    private final long mmsi1;
+    private final long mmsi2;
+    private final long time;
+    private final double distance;
+    private final double relativeSpeed;
+    private final double lat1;
+    private final double lon1;
+    private final double lat2;
+    private final double lon2;
+
+    AisCpa(long mmsi1, long mmsi2, long time, double distance, double relativeSpeed, double lat1, double lon1,
+            double lat2, double lon2) {
+        this.mmsi1 = mmsi1;
+        this.mmsi2 = mmsi2;
+        this.time = time;
+        this.distance = distance;
+        this.relativeSpeed = relativeSpeed;
+        this.lat1 = lat1;
+        this.lon1 = lon1;
+        this.lat2 = lat2;
+        this.lon2 = lon2;
+    }
+
+    /**
+     * Returns the MMSI of the first target, which is the own ship for own ship CPA's
+     *
+     * @return the MMSI of the first target
+     */
+    public long getMmsi1() {
+        return mmsi1;
+    }
+
+    /**
+     * Returns the MMSI of the second target
+     *
+     * @return the MMSI of the second target
+     */
+    public long getMmsi2() {
+        return mmsi2;
+    }
+
+    /**
+     * Returns the time of the CPA in milliseconds
+     *
+     * @return the time of the CPA
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * Returns the CPA distance in meters
+     *
+     * @return the CPA distance in meters
+     */
+    public double getDistance() {
+        return distance;
+    }
+
+    /**
+     * Returns the speed of the targets relative to each other in knots
+     *
+     * @return the relative speed in knots
+     */
+    public double getRelativeSpeed() {
+        return relativeSpeed;
+    }
+
+    /**
+     * Returns the position of the first target at the CPA
+     *
+     * @return the position of the first target at the CPA
+     */
+    public Position getPosition1() {
+        return Position.create(lat1, lon1);
+    }
+
+    /**
+     * Returns the position of the second target at the CPA
+     *
+     * @return the position of the second target at the CPA
+     */
+    public Position getPosition2() {
+        return Position.create(lat2, lon2);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "AisCpa [mmsi1=" + mmsi1 + ", mmsi2=" + mmsi2 + ", time=" + time + ", distance=" + distance + "]";
+    }
+}
@@ -0,0 +1,697 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.ais;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.dma.enav.model.geometry.Position;
+import dk.dma.epd.common.prototype.EPD;
+import dk.dma.epd.common.prototype.notification.GeneralNotification;
+import dk.dma.epd.common.prototype.notification.Notification.NotificationSeverity;
+import dk.dma.epd.common.prototype.notification.NotificationAlert;
+import dk.dma.epd.common.prototype.notification.NotificationAlert.AlertType;
+import dk.dma.epd.common.prototype.sensor.pnt.PntTime;
+import dk.dma.epd.common.text.Formatter;
+import dk.dma.epd.common.util.Converter;
+import dk.dma.epd.common.util.CpaCalculator;
+
+/**
+ * Closest point of approach (CPA) analysis of the AIS targets, based on their reported speed and course.
+ * <p>
+ * In {@linkplain Mode#OWN_SHIP} mode, the own ship is checked against all targets, and in {@linkplain Mode#ALL_PAIRS}
+ * mode, all pairs of targets within the area are checked. The targets updated since the last tick are collected, and on
+ * each tick only the pairs involving these targets are recomputed. The CPA's of the other pairs remain valid, as the
+ * targets are assumed to keep their speed and course.
+ * <p>
+ * The broad phase is a grid of cells of {@linkplain #CELL_SIZE} degrees. Each target is registered in the cells
+ * covered by its swept box, i.e. the bounding box of its track over the CPA horizon, grown by half the maximum CPA
+ * distance. Only targets sharing a cell and with overlapping boxes are passed to the closed form
+ * {@linkplain CpaCalculator}. Pairs across the date line are not considered.
+ * <p>
+ * A notification is raised when a CPA first comes within the alert distance and time, and again only after the pair has
+ * left the alert zone. Only pairs that are closing are alerted, so pairs with a CPA now, pairs with a low relative speed
+ * and pairs involving a moored, anchored or slow target are tracked but never alerted.
+ */
+@ThreadSafe
+public class AisCpaEngine implements IAisTargetBatchListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AisCpaEngine.class);
+
+    /**
+     * The targets checked by the engine
+     */
+    public enum Mode {
+        OWN_SHIP, ALL_PAIRS
+    }
+
+    /** How far ahead CPA's are searched for in milliseconds */
+    public static final long DEFAULT_HORIZON = 30 * 60 * 1000L;
+
+    /** Pairs with a CPA within this distance in nautical miles are tracked */
+    public static final double DEFAULT_MAX_DISTANCE = 1.0;
+
+    /** Pairs with a CPA within this distance in nautical miles are alerted */
+    public static final double DEFAULT_ALERT_DISTANCE = 0.5;
+
+    /** Pairs with a CPA within this time in milliseconds are alerted */
+    public static final long DEFAULT_ALERT_TCPA = 12 * 60 * 1000L;
+
+    /** Targets slower than this in knots are considered stationary and never alerted */
+    static final double MIN_SOG = 0.5;
+
+    /** Pairs with a relative speed below this in knots are never alerted */
+    static final double MIN_RELATIVE_SPEED = 1.0;
+
+    /** Size of the grid cells in degrees */
+    static final double CELL_SIZE = 0.1;
+
+    /** Time in milliseconds a CPA is kept after it has passed, e.g. for vessels at anchor reporting rarely */
+    static final long STALE_TIME = 3 * 60 * 1000L;
+
+    /** Key of the own ship */
+    static final long OWN_SHIP = -1L;
+
+    private final AisHandlerCommon aisHandler;
+    private final Mode mode;
+    private final long horizon;
+    private final double maxDistance;
+    private final double alertDistance;
+    private final long alertTcpa;
+
+    /** The targets updated since the last tick, filled by the AIS handler */
+    private final Map<Long, MobileTarget> updated = new ConcurrentHashMap<>();
+
+    private volatile double[] area;
+    private volatile List<AisCpa> cpaList = Collections.emptyList();
+
+    @GuardedBy("this")
+    private final Map<Long, Track> tracks = new HashMap<>();
+    @GuardedBy("this")
+    private final Map<Long, TrackList> cells = new HashMap<>();
+    @GuardedBy("this")
+    private final Map<Long, AisCpa> cpas = new HashMap<>();
+    @GuardedBy("this")
+    private final Map<Long, Set<Long>> partners = new HashMap<>();
+    @GuardedBy("this")
+    private final Set<Long> alerted = new HashSet<>();
+    @GuardedBy("this")
+    private final Set<Track> candidates = new HashSet<>();
+    @GuardedBy("this")
+    private final double[] result = new double[2];
+    @GuardedBy("this")
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Constructor
+     *
+     * @param aisHandler
+     *            the AIS handler providing the targets, or null if the targets are passed directly
+     * @param mode
+     *            the targets to check
+     * @param horizon
+     *            how far ahead CPA's are searched for in milliseconds
+     * @param maxDistance
+     *            the maximum CPA distance of tracked pairs in nautical miles
+     * @param alertDistance
+     *            the maximum CPA distance of alerted pairs in nautical miles
+     * @param alertTcpa
+     *            the maximum time to CPA of alerted pairs in milliseconds
+     */
+    public AisCpaEngine(AisHandlerCommon aisHandler, Mode mode, long horizon, double maxDistance,
+            double alertDistance, long alertTcpa) {
+        this.aisHandler = aisHandler;
+        this.mode = mode;
+        this.horizon = horizon;
+        this.maxDistance = Converter.nmToMeters(maxDistance);
+        this.alertDistance = Converter.nmToMeters(alertDistance);
+        this.alertTcpa = alertTcpa;
+    }
+
+    /**
+     * Constructor using the default horizon and distances
+     *
+     * @param aisHandler
+     *            the AIS handler providing the targets
+     * @param mode
+     *            the targets to check
+     */
+    public AisCpaEngine(AisHandlerCommon aisHandler, Mode mode) {
+        this(aisHandler, mode, DEFAULT_HORIZON, DEFAULT_MAX_DISTANCE, DEFAULT_ALERT_DISTANCE, DEFAULT_ALERT_TCPA);
+    }
+
+    /**
+     * Registers with the AIS handler and starts the analysis at the given tick interval
+     *
+     * @param tickMillis
+     *            the time between ticks in milliseconds
+     */
+    public synchronized void start(long tickMillis) {
+        if (scheduler != null) {
+            return;
+        }
+        if (aisHandler != null) {
+            aisHandler.addListener(this);
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "AisCpaEngine");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    tick(PntTime.getDate().getTime());
+                } catch (Exception e) {
+                    LOG.error("Failed updating AIS CPA's", e);
+                }
+            }
+        }, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the analysis
+     */
+    public synchronized void stop() {
+        if (scheduler != null) {
+            if (aisHandler != null) {
+                aisHandler.removeListener(this);
+            }
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Restricts the analysis to the targets within the given area. Only applies to targets updated afterwards.
+     *
+     * @param minLat
+     *            the minimum latitude
+     * @param minLon
+     *            the minimum longitude
+     * @param maxLat
+     *            the maximum latitude
+     * @param maxLon
+     *            the maximum longitude
+     */
+    public void setArea(double minLat, double minLon, double maxLat, double maxLon) {
+        area = new double[] { minLat, minLon, maxLat, maxLon };
+    }
+
+    /**
+     * Restricts the analysis to the targets within the given area, as with
+     * {@linkplain #setArea(double, double, double, double)}
+     *
+     * @param area
+     *            the area given as {@code minLat,minLon,maxLat,maxLon}
+     * @return if the area could be parsed
+     */
+    public boolean setArea(String area) {
+        String[] parts = (area != null) ? area.split(",") : new String[0];
+        if (parts.length != 4) {
+            return false;
+        }
+        try {
+            setArea(Double.parseDouble(parts[0].trim()), Double.parseDouble(parts[1].trim()),
+                    Double.parseDouble(parts[2].trim()), Double.parseDouble(parts[3].trim()));
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the CPA's within the maximum distance as of the last tick, ordered by time
+     *
+     * @return the current CPA's
+     */
+    public List<AisCpa> getCpas() {
+        return cpaList;
+    }
+
+    /**
+     * Updates the own ship. Only used in {@linkplain Mode#OWN_SHIP} mode.
+     *
+     * @param ownShip
+     *            the own ship target
+     */
+    public void updateOwnShip(MobileTarget ownShip) {
+        if (mode == Mode.OWN_SHIP && ownShip != null) {
+            updated.put(OWN_SHIP, ownShip);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void targetUpdated(AisTarget aisTarget) {
+        if (aisTarget instanceof MobileTarget) {
+            updated.put(aisTarget.getMmsi(), (MobileTarget) aisTarget);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void targetsUpdated(Collection<AisTarget> aisTargets) {
+        for (AisTarget aisTarget : aisTargets) {
+            targetUpdated(aisTarget);
+        }
+    }
+
+    /**
+     * Recomputes the CPA's of the targets updated since the last tick, raises alerts and publishes the CPA's
+     *
+     * @param now
+     *            the current time in milliseconds
+     */
+    synchronized void tick(long now) {
+        // Update the tracks of the updated targets
+        List<Track> changed = new ArrayList<>();
+        for (Iterator<Map.Entry<Long, MobileTarget>> it = updated.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<Long, MobileTarget> entry = it.next();
+            it.remove();
+            Track track = updateTrack(entry.getKey(), entry.getValue(), now);
+            if (track != null) {
+                changed.add(track);
+            } else {
+                removePairs(entry.getKey());
+            }
+        }
+
+        // Recompute the pairs of the updated targets
+        for (Track track : changed) {
+            removePairs(track.key);
+            for (Track other : findCandidates(track)) {
+                computeCpa(track, other, now);
+            }
+        }
+
+        // Drop passed CPA's
+        for (Iterator<AisCpa> it = cpas.values().iterator(); it.hasNext();) {
+            AisCpa cpa = it.next();
+            if (cpa.getTime() < now - STALE_TIME) {
+                it.remove();
+                removePartner(key(cpa), cpa.getMmsi1(), cpa.getMmsi2());
+            }
+        }
+
+        // Alert the CPA's entering the alert zone, and re-arm the ones that have left it
+        for (Iterator<Long> it = alerted.iterator(); it.hasNext();) {
+            AisCpa cpa = cpas.get(it.next());
+            if (cpa == null || !isAlert(cpa, now)) {
+                it.remove();
+            }
+        }
+        List<AisCpa> list = new ArrayList<>(cpas.values());
+        for (AisCpa cpa : list) {
+            if (isAlert(cpa, now) && alerted.add(key(cpa))) {
+                alert(cpa, now);
+            }
+        }
+
+        Collections.sort(list, new Comparator<AisCpa>() {
+            @Override
+            public int compare(AisCpa cpa1, AisCpa cpa2) {
+                return Long.compare(cpa1.getTime(), cpa2.getTime());
+            }
+        });
+        cpaList = Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Updates the track of the target with the given key and registers it in the grid. Returns null if the target
+     * should not be checked, in which case any previous track is removed.
+     */
+    @GuardedBy("this")
+    private Track updateTrack(long key, MobileTarget target, long now) {
+        Track track = tracks.get(key);
+        if (track != null && key != OWN_SHIP) {
+            unregister(track);
+        }
+
+        VesselPositionData positionData = target.getPositionData();
+        Position pos = null;
+        float sog = 0, cog = 0;
+        int navStatus = -1;
+        if (!target.isGone() && positionData != null) {
+            synchronized (positionData) {
+                pos = positionData.getPos();
+                sog = positionData.getSog();
+                cog = positionData.getCog();
+                navStatus = positionData.getNavStatus();
+            }
+        }
+        double[] area = this.area;
+        if (pos == null
+                || (key != OWN_SHIP && area != null && (pos.getLatitude() < area[0] || pos.getLongitude() < area[1]
+                        || pos.getLatitude() > area[2] || pos.getLongitude() > area[3]))) {
+            tracks.remove(key);
+            return null;
+        }
+
+        if (track == null) {
+            track = new Track(key == OWN_SHIP ? OWN_SHIP : target.getMmsi(), key);
+            tracks.put(key, track);
+        }
+        long time = (target.getLastReceived() != null) ? Math.min(now, target.getLastReceived().getTime()) : now;
+        track.update(pos.getLatitude(), pos.getLongitude(), sog, cog, time, horizon + STALE_TIME, maxDistance / 2.0);
+        // Moored (5) and at anchor (1) as in VesselTarget.hasGone()
+        track.stationary = sog < MIN_SOG || navStatus == 1 || navStatus == 5;
+        if (key != OWN_SHIP) {
+            register(track);
+        }
+        return track;
+    }
+
+    /**
+     * Returns the tracks that may come within the maximum distance of the given track
+     */
+    @GuardedBy("this")
+    private Set<Track> findCandidates(Track track) {
+        candidates.clear();
+        if (mode == Mode.OWN_SHIP && track.key != OWN_SHIP) {
+            // Only the own ship is checked against a target
+            Track ownShip = tracks.get(OWN_SHIP);
+            if (ownShip != null && ownShip.overlaps(track)) {
+                candidates.add(ownShip);
+            }
+            return candidates;
+        }
+        for (int row = track.minRow; row <= track.maxRow; row++) {
+            for (int col = track.minCol; col <= track.maxCol; col++) {
+                TrackList cell = cells.get(cellKey(row, col));
+                if (cell == null) {
+                    continue;
+                }
+                for (int i = 0; i < cell.size; i++) {
+                    Track other = cell.tracks[i];
+                    if (other != track && other.overlaps(track)) {
+                        candidates.add(other);
+                    }
+                }
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Computes the CPA of the two tracks from their current positions, and stores it if within the maximum distance
+     */
+    @GuardedBy("this")
+    private void computeCpa(Track track1, Track track2, long now) {
+        // The own ship is always the first track
+        if (track2.key == OWN_SHIP || (track1.key != OWN_SHIP && track2.mmsi < track1.mmsi)) {
+            Track tmp = track1;
+            track1 = track2;
+            track2 = tmp;
+        }
+        if (track1.mmsi == track2.mmsi) {
+            return;
+        }
+        double lat1 = track1.latAt(now), lon1 = track1.lonAt(now);
+        double lat2 = track2.latAt(now), lon2 = track2.lonAt(now);
+        CpaCalculator.findCpa(lat1, lon1, track1.sog, track1.cog, lat2, lon2, track2.sog, track2.cog, horizon,
+                result);
+        if (result[1] > maxDistance) {
+            return;
+        }
+        long time = now + Math.round(result[0]);
+        double c1 = Math.toRadians(track1.cog), c2 = Math.toRadians(track2.cog);
+        double relativeSpeed = Math.hypot(track2.sog * Math.sin(c2) - track1.sog * Math.sin(c1), track2.sog
+                * Math.cos(c2) - track1.sog * Math.cos(c1));
+        AisCpa cpa = new AisCpa(track1.mmsi, track2.mmsi, time, result[1], relativeSpeed, track1.latAt(time),
+                track1.lonAt(time), track2.latAt(time), track2.lonAt(time));
+        long key = key(cpa);
+        cpas.put(key, cpa);
+        addPartner(track1.key, key);
+        addPartner(track2.key, key);
+    }
+
+    /**
+     * Returns if the pair is closing in on a CPA within the alert distance and time. The track key of the own ship equals
+     * its MMSI in the CPA.
+     */
+    @GuardedBy("this")
+    private boolean isAlert(AisCpa cpa, long now) {
+        if (cpa.getDistance() > alertDistance || cpa.getTime() <= now || cpa.getTime() - now > alertTcpa
+                || cpa.getRelativeSpeed() < MIN_RELATIVE_SPEED) {
+            return false;
+        }
+        Track track1 = tracks.get(cpa.getMmsi1());
+        Track track2 = tracks.get(cpa.getMmsi2());
+        return track1 != null && track2 != null && !track1.stationary && !track2.stationary;
+    }
+
+    /**
+     * Raises a CPA warning notification. Called from the engine thread.
+     *
+     * @param cpa
+     *            the CPA entering the alert zone
+     * @param now
+     *            the current time in milliseconds
+     */
+    protected void alert(AisCpa cpa, long now) {
+        GeneralNotification notification = new GeneralNotification(cpa, String.format("AisCpaNotification_%d_%d_%d",
+                cpa.getMmsi1(), cpa.getMmsi2(), cpa.getTime()), new DateTime(cpa.getTime()));
+        notification.setTitle("CPA Warning");
+        long minutes = TimeUnit.MILLISECONDS.toMinutes(cpa.getTime() - now);
+        String dist = Formatter.formatDistNM(Converter.metersToNm(cpa.getDistance()), 2);
+        if (mode == Mode.OWN_SHIP) {
+            notification.setDescription(String.format("%s will pass own ship at %s in %d minutes",
+                    getName(cpa.getMmsi2()), dist, minutes));
+            notification.setSeverity(NotificationSeverity.ALERT);
+            notification.addAlerts(new NotificationAlert(AlertType.POPUP, AlertType.BEEP));
+        } else {
+            notification.setDescription(String.format("%s and %s will pass at %s in %d minutes",
+                    getName(cpa.getMmsi1()), getName(cpa.getMmsi2()), dist, minutes));
+            notification.setSeverity(NotificationSeverity.WARNING);
+        }
+        notification.setLocation(cpa.getPosition2());
+        EPD.getInstance().getNotificationCenter().addNotification(notification);
+    }
+
+    /**
+     * Returns the name of the vessel with the given MMSI, or the MMSI if the name is unknown
+     */
+    private String getName(long mmsi) {
+        VesselTarget target = (aisHandler != null) ? aisHandler.getVesselTargets().get(mmsi) : null;
+        VesselStaticData staticData = (target != null) ? target.getStaticData() : null;
+        if (staticData != null && staticData.getTrimmedName() != null && !staticData.getTrimmedName().isEmpty()) {
+            return staticData.getTrimmedName();
+        }
+        return "MMSI " + mmsi;
+    }
+
+    /****************************************/
+    /** Pair and grid book-keeping **/
+    /****************************************/
+
+    private static long key(AisCpa cpa) {
+        return cpa.getMmsi1() << 32 ^ cpa.getMmsi2();
+    }
+
+    private static long cellKey(int row, int col) {
+        return (long) row << 32 | (col & 0xffffffffL);
+    }
+
+    @GuardedBy("this")
+    private void addPartner(long trackKey, long pairKey) {
+        Set<Long> pairs = partners.get(trackKey);
+        if (pairs == null) {
+            pairs = new HashSet<>();
+            partners.put(trackKey, pairs);
+        }
+        pairs.add(pairKey);
+    }
+
+    @GuardedBy("this")
+    private void removePartner(long pairKey, long mmsi1, long mmsi2) {
+        // The track key of the own ship equals its MMSI in the CPA
+        for (long trackKey : new long[] { mmsi1, mmsi2 }) {
+            Set<Long> pairs = partners.get(trackKey);
+            if (pairs != null) {
+                pairs.remove(pairKey);
+                if (pairs.isEmpty()) {
+                    partners.remove(trackKey);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes all the CPA's of the track with the given key
+     */
+    @GuardedBy("this")
+    private void removePairs(long trackKey) {
+        Set<Long> pairs = partners.remove(trackKey);
+        if (pairs == null) {
+            return;
+        }
+        for (Long pairKey : pairs) {
+            AisCpa cpa = cpas.remove(pairKey);
+            if (cpa != null) {
+                removePartner(pairKey, cpa.getMmsi1(), cpa.getMmsi2());
+            }
+        }
+    }
+
+    @GuardedBy("this")
+    private void register(Track track) {
+        for (int row = track.minRow; row <= track.maxRow; row++) {
+            for (int col = track.minCol; col <= track.maxCol; col++) {
+                long key = cellKey(row, col);
+                TrackList cell = cells.get(key);
+                if (cell == null) {
+                    cell = new TrackList();
+                    cells.put(key, cell);
+                }
+                cell.add(track);
+            }
+        }
+    }
+
+    @GuardedBy("this")
+    private void unregister(Track track) {
+        for (int row = track.minRow; row <= track.maxRow; row++) {
+            for (int col = track.minCol; col <= track.maxCol; col++) {
+                long key = cellKey(row, col);
+                TrackList cell = cells.get(key);
+                if (cell != null && cell.remove(track) && cell.size == 0) {
+                    cells.remove(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * The last reported position, speed and course of a target, with its swept box over the horizon
+     */
+    private static final class Track {
+        final long mmsi;
+        final long key;
+        double lat;
+        double lon;
+        float sog;
+        float cog;
+        long time;
+        boolean stationary;
+
+        // Swept box, in degrees and grid cells
+        double minLat, minLon, maxLat, maxLon;
+        int minRow, minCol, maxRow, maxCol;
+
+        // Velocity in degrees per millisecond
+        double vLat, vLon;
+
+        Track(long mmsi, long key) {
+            this.mmsi = mmsi;
+            this.key = key;
+        }
+
+        void update(double lat, double lon, float sog, float cog, long time, long sweep, double margin) {
+            this.lat = lat;
+            this.lon = lon;
+            this.sog = sog;
+            this.cog = cog;
+            this.time = time;
+
+            double cosLat = Math.max(Math.cos(Math.toRadians(lat)), 0.01);
+            double speed = sog / 60.0 / 3600000.0; // Degrees of latitude per millisecond
+            vLat = speed * Math.cos(Math.toRadians(cog));
+            vLon = speed * Math.sin(Math.toRadians(cog)) / cosLat;
+
+            double endLat = lat + vLat * sweep;
+            double endLon = lon + vLon * sweep;
+            double marginLat = margin / 1852.0 / 60.0;
+            double marginLon = marginLat / cosLat;
+            minLat = Math.min(lat, endLat) - marginLat;
+            maxLat = Math.max(lat, endLat) + marginLat;
+            minLon = Math.min(lon, endLon) - marginLon;
+            maxLon = Math.max(lon, endLon) + marginLon;
+            minRow = (int) Math.floor((minLat + 90.0) / CELL_SIZE);
+            maxRow = (int) Math.floor((maxLat + 90.0) / CELL_SIZE);
+            minCol = (int) Math.floor((minLon + 180.0) / CELL_SIZE);
+            maxCol = (int) Math.floor((maxLon + 180.0) / CELL_SIZE);
+        }
+
+        boolean overlaps(Track other) {
+            return minLat <= other.maxLat && other.minLat <= maxLat && minLon <= other.maxLon
+                    && other.minLon <= maxLon;
+        }
+
+        double latAt(long t) {
+            return lat + vLat * (t - time);
+        }
+
+        double lonAt(long t) {
+            return lon + vLon * (t - time);
+        }
+    }
+
+    /**
+     * The tracks registered in a grid cell
+     */
+    private static final class TrackList {
+        Track[] tracks = new Track[4];
+        int size;
+
+        void add(Track track) {
+            if (size == tracks.length) {
+                Track[] grown = new Track[size * 2];
+                System.arraycopy(tracks, 0, grown, 0, size);
+                tracks = grown;
+            }
+            tracks[size++] = track;
+        }
+
+        boolean remove(Track track) {
+            for (int i = 0; i < size; i++) {
+                if (tracks[i] == track) {
+                    tracks[i] = tracks[--size];
+                    tracks[size] = null;
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -14,21 +14,21 @@
  */
 package dk.dma.epd.common.prototype.ais;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 
@@ -61,7 +61,7 @@ public abstract class AisHandlerCommon extends MapHandlerChild implements Runnab
 
     private static final Logger LOG = LoggerFactory.getLogger(AisHandlerCommon.class);
 
-    protected static final String AIS_VIEW_FILE = EPD.getInstance().getHomePath().resolve(".aisview").toString();
+    protected static final Path AIS_VIEW_FILE = EPD.getInstance().getHomePath().resolve(".aisview");
 
     // How long targets are saved without reports
     protected static final long TARGET_TTL = 60 * 60 * 1000; // One hour
@@ -70,8 +70,19 @@ public abstract class AisHandlerCommon extends MapHandlerChild implements Runnab
     protected ConcurrentHashMap<Long, VesselTarget> vesselTargets = new ConcurrentHashMap<>();
     protected ConcurrentHashMap<Long, SarTarget> sarTargets = new ConcurrentHashMap<>();
 
+    // Spatial index of the vessel, sar and aton targets
+    protected final AisTargetGrid targetGrid = new AisTargetGrid();
+
     protected CopyOnWriteArrayList<IAisTargetListener> listeners = new CopyOnWriteArrayList<>();
 
+    // Targets updated since the last dispatch tick, keyed by MMSI. Only used in batch dispatch mode
+    private final ConcurrentHashMap<Long, AisTarget> dirtyTargets = new ConcurrentHashMap<>();
+    private final int batchDispatchInterval; // NB: In milliseconds
+    private final int viewCheckpointInterval; // NB: In seconds
+    // Serializes the writers of the AIS view file, which share the temporary file
+    private final Object viewFileLock = new Object();
+    private Timer dispatchTimer;
+
     protected AisStatus aisStatus = new AisStatus();
     protected final boolean strictAisMode;
     protected final String sartMmsiPrefix;
@@ -94,6 +105,18 @@ public abstract class AisHandlerCommon extends MapHandlerChild implements Runnab
         this.pastTrackMaxTime = aisSettings.getPastTrackMaxTime();
         this.pastTrackDisplayTime = aisSettings.getPastTrackDisplayTime();
         this.pastTrackMinDist = aisSettings.getPastTrackMinDist();
+        this.batchDispatchInterval = aisSettings.getBatchDispatchInterval();
+        this.viewCheckpointInterval = aisSettings.getViewCheckpointInterval();
+
+        if (batchDispatchInterval > 0) {
+            dispatchTimer = new Timer("AisHandlerDispatch", true);
+            dispatchTimer.scheduleAtFixedRate(new TimerTask() {
+                @Override
+                public void run() {
+                    flushUpdates();
+                }
+            }, batchDispatchInterval, batchDispatchInterval);
+        }
     }
 
     /**
@@ -139,6 +162,7 @@ public abstract class AisHandlerCommon extends MapHandlerChild implements Runnab
         atonTargets.clear();
         vesselTargets.clear();
         sarTargets.clear();
+        targetGrid.clear();
         publishAll();
     }
 
@@ -171,6 +195,8 @@ public abstract class AisHandlerCommon extends MapHandlerChild implements Runnab
         atonTarget.setLastReceived(PntTime.getDate());
         // Update status
         atonTarget.setStatus(AisTarget.Status.OK);
+        // Update spatial index
+        targetGrid.update(atonTarget.getMmsi(), atonTarget.getPos());
         publishUpdate(atonTarget);
     }
 
@@ -261,6 +287,9 @@ public abstract class AisHandlerCommon extends MapHandlerChild implements Runnab
         // Update status
         mobileTarget.setStatus(AisTarget.Status.OK);
 
+        // Update spatial index
+        targetGrid.update(mobileTarget.getMmsi(), positionData.getPos());
+
         // Publish update
         publishUpdate(mobileTarget);
     }
@@ -413,6 +442,71 @@ public abstract class AisHandlerCommon extends MapHandlerChild implements Runnab
         return mobileTargets;
     }
 
+    /**
+     * Returns the targets (vessel, sar and aton) within the given bounding box.
+     * <p>
+     * If {@code minLon > maxLon}, the bounding box is assumed to cross the date line.
+     * 
+     * @param minLat
+     *            the southern boundary
+     * @param minLon
+     *            the western boundary
+     * @param maxLat
+     *            the northern boundary
+     * @param maxLon
+     *            the eastern boundary
+     * @return the list of targets within the bounding box
+     */
+    public final List<AisTarget> getTargetsWithin(double minLat, double minLon, double maxLat, double maxLon) {
+        return lookupTargets(targetGrid.query(minLat, minLon, maxLat, maxLon));
+    }
+
+    /**
+     * Returns the targets (vessel, sar and aton) within the given radius of the center position
+     * 
+     * @param center
+     *            the center position
+     * @param radius
+     *            the radius in meters
+     * @return the list of targets within the radius
+     */
+    public final List<AisTarget> getTargetsWithinRadius(Position center, double radius) {
+        return lookupTargets(targetGrid.queryRadius(center, radius));
+    }
+
+    /**
+     * Returns the spatial index of the targets
+     * 
+     * @return the spatial index of the targets
+     */
+    public final AisTargetGrid getTargetGrid() {
+        return targetGrid;
+    }
+
+    /**
+     * Resolves the list of MMSI returned by the spatial index to the actual targets
+     * 
+     * @param mmsiList
+     *            the list of MMSI
+     * @return the list of targets
+     */
+    private List<AisTarget> lookupTargets(List<Long> mmsiList) {
+        List<AisTarget> result = new ArrayList<>(mmsiList.size());
+        for (Long mmsi : mmsiList) {
+            AisTarget target = vesselTargets.get(mmsi);
+            if (target == null) {
+                target = sarTargets.get(mmsi);
+            }
+            if (target == null) {
+                target = atonTargets.get((int) mmsi.longValue());
+            }
+            if (target != null) {
+                result.add(target);
+            }
+        }
+        return result;
+    }
+
     public final ComponentStatus getStatus() {
         return aisStatus;
     }
@@ -514,6 +608,7 @@ public abstract class AisHandlerCommon extends MapHandlerChild implements Runnab
             LOG.debug("Dead target " + mmsi);
             // cater with atonTargets, which use Integer as a key
             aisTargets.remove(intKey ? Integer.valueOf((int) mmsi.longValue()) : mmsi);
+            targetGrid.remove(mmsi);
         }
 
         deadTargets.clear();
@@ -576,16 +671,68 @@ public abstract class AisHandlerCommon extends MapHandlerChild implements Runnab
     }
 
     /**
-     * Publish the update of a target to all listeners
+     * Publish the update of a target to all listeners.
+     * <p>
+     * In batch dispatch mode, the target is only marked as dirty and is delivered to the listeners on the next
+     * dispatch tick.
      * 
      * @param aisTarget
      */
     public final void publishUpdate(AisTarget aisTarget) {
+        if (isBatchDispatch()) {
+            dirtyTargets.put(aisTarget.getMmsi(), aisTarget);
+            return;
+        }
         for (IAisTargetListener listener : listeners) {
             listener.targetUpdated(aisTarget);
         }
     }
 
+    /**
+     * Returns if updates are coalesced and dispatched in batches
+     * 
+     * @return if updates are coalesced and dispatched in batches
+     */
+    public final boolean isBatchDispatch() {
+        return batchDispatchInterval > 0;
+    }
+
+    /**
+     * Delivers the targets updated since the last dispatch tick to the listeners. Called periodically by the
+     * dispatch timer in batch dispatch mode.
+     * <p>
+     * Batch listeners receive all the updated targets in one call, whereas plain listeners receive the coalesced
+     * updates one at a time.
+     */
+    protected final void flushUpdates() {
+        if (dirtyTargets.isEmpty()) {
+            return;
+        }
+
+        List<AisTarget> batch = new ArrayList<>(dirtyTargets.size());
+        for (Long mmsi : dirtyTargets.keySet()) {
+            AisTarget aisTarget = dirtyTargets.remove(mmsi);
+            if (aisTarget != null) {
+                batch.add(aisTarget);
+            }
+        }
+        Collection<AisTarget> unmodifiableBatch = Collections.unmodifiableList(batch);
+
+        for (IAisTargetListener listener : listeners) {
+            try {
+                if (listener instanceof IAisTargetBatchListener) {
+                    ((IAisTargetBatchListener) listener).targetsUpdated(unmodifiableBatch);
+                } else {
+                    for (AisTarget aisTarget : batch) {
+                        listener.targetUpdated(aisTarget);
+                    }
+                }
+            } catch (Exception e) {
+                LOG.error("Failed dispatching AIS target updates to " + listener, e);
+            }
+        }
+    }
+
     protected final void publishAll() {
         LOG.debug("Published all targets");
         publishAll(vesselTargets.values());
@@ -642,20 +789,34 @@ public abstract class AisHandlerCommon extends MapHandlerChild implements Runnab
     }
 
     /**
-     * Try to load AIS view from disk
+     * Try to load AIS view from disk.
+     * <p>
+     * The view is stored as an {@linkplain AisViewSnapshot}. A view file written by older versions, using Java
+     * serialization of the {@linkplain AisStore}, is still read.
      */
     public void loadView() {
         AisStore aisStore = null;
-
-        try (FileInputStream fileIn = new FileInputStream(AIS_VIEW_FILE);
-                ObjectInputStream objectIn = new ObjectInputStream(fileIn)) {
-            aisStore = (AisStore) objectIn.readObject();
-        } catch (FileNotFoundException e) {
-            // Not an error
+        long t0 = System.currentTimeMillis();
+
+        try {
+            if (!Files.exists(AIS_VIEW_FILE)) {
+                // Not an error
+                return;
+            } else if (AisViewSnapshot.isSnapshot(AIS_VIEW_FILE)) {
+                aisStore = AisViewSnapshot.read(AIS_VIEW_FILE);
+            } else {
+                try (ObjectInputStream objectIn = new ObjectInputStream(Files.newInputStream(AIS_VIEW_FILE))) {
+                    aisStore = (AisStore) objectIn.readObject();
+                }
+            }
         } catch (Exception e) {
             LOG.error("Failed to load AIS view file: " + e.getMessage());
             // Delete possible corrupted or old file
-            new File(AIS_VIEW_FILE).delete();
+            try {
+                Files.deleteIfExists(AIS_VIEW_FILE);
+            } catch (IOException ex) {
+                LOG.error("Failed to delete AIS view file: " + ex.getMessage());
+            }
         }
 
         if (aisStore == null) {
@@ -673,7 +834,11 @@ public abstract class AisHandlerCommon extends MapHandlerChild implements Runnab
             sarTargets = new ConcurrentHashMap<>(aisStore.getSarTargets());
         }
 
-        LOG.info("AIS handler loaded total targets: " + (vesselTargets.size() + atonTargets.size() + sarTargets.size()));
+        LOG.info("AIS handler loaded total targets: " + (vesselTargets.size() + atonTargets.size() + sarTargets.size())
+                + " in " + (System.currentTimeMillis() - t0) + " ms");
+
+        // Rebuild the spatial index
+        rebuildTargetGrid();
 
         // Update status to update old and gone (twice for old and gone)
         updateStatus();
@@ -682,20 +847,42 @@ public abstract class AisHandlerCommon extends MapHandlerChild implements Runnab
     }
 
     /**
-     * Save AIS view to file
+     * Re-populates the spatial index from the current vessel, sar and aton targets
+     */
+    protected final void rebuildTargetGrid() {
+        targetGrid.clear();
+        for (MobileTarget mobileTarget : getMobileTargets(null)) {
+            if (mobileTarget.getPositionData() != null) {
+                targetGrid.update(mobileTarget.getMmsi(), mobileTarget.getPositionData().getPos());
+            }
+        }
+        for (AtoNTarget atonTarget : atonTargets.values()) {
+            targetGrid.update(atonTarget.getMmsi(), atonTarget.getPos());
+        }
+    }
+
+    /**
+     * Save AIS view to file.
+     * <p>
+     * The whole view is rewritten on each save. Only copying the target maps holds the lock of the handler, so
+     * incoming AIS messages are not blocked by the disk write.
      */
     public void saveView() {
         AisStore aisStore = new AisStore();
-        aisStore.setVesselTargets(vesselTargets);
-        aisStore.setAtonTargets(atonTargets);
-        aisStore.setSarTargets(sarTargets);
-
-        try (FileOutputStream fileOut = new FileOutputStream(AIS_VIEW_FILE);
-                ObjectOutputStream objectOut = new ObjectOutputStream(fileOut)) {
-            objectOut.writeObject(aisStore);
-        } catch (IOException e) {
-            e.printStackTrace();
-            LOG.error("Failed to save Ais view file: " + e.getMessage());
+        synchronized (this) {
+            aisStore.setVesselTargets(new HashMap<>(vesselTargets));
+            aisStore.setAtonTargets(new HashMap<>(atonTargets));
+            aisStore.setSarTargets(new HashMap<>(sarTargets));
+        }
+
+        synchronized (viewFileLock) {
+            long t0 = System.currentTimeMillis();
+            try {
+                AisViewSnapshot.write(AIS_VIEW_FILE, aisStore);
+                LOG.debug("Saved AIS view in " + (System.currentTimeMillis() - t0) + " ms");
+            } catch (IOException e) {
+                LOG.error("Failed to save Ais view file: " + e.getMessage());
+            }
         }
     }
 
@@ -705,10 +892,17 @@ public abstract class AisHandlerCommon extends MapHandlerChild implements Runnab
         Util.sleep(2000);
         publishAll();
 
+        long lastCheckpoint = System.currentTimeMillis();
         while (true) {
             Util.sleep(10000);
             // Update status on targets
             updateStatus();
+
+            // Periodically checkpoint the AIS view, so that it survives a crash. NB: Each checkpoint is a full rewrite
+            if (viewCheckpointInterval > 0 && System.currentTimeMillis() - lastCheckpoint >= viewCheckpointInterval * 1000L) {
+                saveView();
+                lastCheckpoint = System.currentTimeMillis();
+            }
         }
     }
 
@@ -19,7 +19,10 @@ import java.util.Map;
 
 
 /**
- * Container class for storing AIS view as serialized object
+ * Container class for storing AIS view.
+ * <p>
+ * The view is written as an {@linkplain AisViewSnapshot}. Java serialization is only used for reading view files
+ * written by older versions.
  */
 public class AisStore implements Serializable {
 
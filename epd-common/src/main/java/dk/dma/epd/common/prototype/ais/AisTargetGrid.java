@@ -0,0 +1,322 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.ais;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.jcip.annotations.ThreadSafe;
+import dk.dma.enav.model.geometry.CoordinateSystem;
+import dk.dma.enav.model.geometry.Position;
+
+/**
+ * A concurrent lat/lon cell grid used for indexing AIS targets by position.
+ * <p>
+ * The world is divided into cells of {@code cellSize} degrees. Each target, identified by its MMSI, is kept in exactly one
+ * cell, and the grid supports bounding box and radius queries that only visit the cells overlapping the query area.
+ * <p>
+ * The grid is updated from the sensor thread and queried from the GUI and handler threads, and all methods may be called
+ * concurrently. Updates are serialized, so the entry and cell membership of a target always change together, whereas
+ * queries do not lock. A query running concurrently with an update may or may not see the updated position of a target,
+ * but never reports a target from a cell it has left.
+ */
+@ThreadSafe
+public class AisTargetGrid {
+
+    /** Default cell size in degrees */
+    public static final double DEFAULT_CELL_SIZE = 0.25;
+
+    private static final double METERS_PER_DEGREE = 60.0 * 1852.0;
+
+    private final double cellSize;
+    private final int columns;
+    private final int rows;
+
+    private final ConcurrentHashMap<Integer, Set<Long>> cells = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor
+     */
+    public AisTargetGrid() {
+        this(DEFAULT_CELL_SIZE);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param cellSize
+     *            the cell size in degrees
+     */
+    public AisTargetGrid(double cellSize) {
+        if (cellSize <= 0.0 || cellSize > 90.0) {
+            throw new IllegalArgumentException("Invalid cell size " + cellSize);
+        }
+        this.cellSize = cellSize;
+        this.columns = (int) Math.ceil(360.0 / cellSize);
+        this.rows = (int) Math.ceil(180.0 / cellSize);
+    }
+
+    /**
+     * Inserts or moves the target with the given MMSI to the given position
+     *
+     * @param mmsi
+     *            the MMSI of the target
+     * @param pos
+     *            the new position of the target. If {@code null}, the target is removed from the grid
+     */
+    public synchronized void update(long mmsi, Position pos) {
+        if (pos == null) {
+            remove(mmsi);
+            return;
+        }
+
+        int cell = cellIndex(pos.getLatitude(), pos.getLongitude());
+        Entry entry = new Entry(pos, cell);
+        Entry old = entries.put(mmsi, entry);
+
+        if (old == null || old.cell != cell) {
+            cellSet(cell).add(mmsi);
+            if (old != null) {
+                removeFromCell(old.cell, mmsi);
+            }
+        }
+    }
+
+    /**
+     * Removes the target with the given MMSI from the grid
+     *
+     * @param mmsi
+     *            the MMSI of the target
+     */
+    public synchronized void remove(long mmsi) {
+        Entry old = entries.remove(mmsi);
+        if (old != null) {
+            removeFromCell(old.cell, mmsi);
+        }
+    }
+
+    /**
+     * Removes all targets from the grid
+     */
+    public synchronized void clear() {
+        entries.clear();
+        cells.clear();
+    }
+
+    /**
+     * Returns the number of indexed targets
+     *
+     * @return the number of indexed targets
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the last indexed position of the given target
+     *
+     * @param mmsi
+     *            the MMSI of the target
+     * @return the last indexed position, or {@code null} if the target is not indexed
+     */
+    public Position getPosition(long mmsi) {
+        Entry entry = entries.get(mmsi);
+        return entry == null ? null : entry.pos;
+    }
+
+    /**
+     * Returns the MMSI of all targets within the given bounding box.
+     * <p>
+     * If {@code minLon > maxLon}, the bounding box is assumed to cross the date line. Longitudes outside [-180, 180] are
+     * wrapped, and a box spanning 360 degrees or more covers all longitudes.
+     *
+     * @param minLat
+     *            the southern boundary
+     * @param minLon
+     *            the western boundary
+     * @param maxLat
+     *            the northern boundary
+     * @param maxLon
+     *            the eastern boundary
+     * @return the list of MMSI of the targets within the bounding box
+     */
+    public List<Long> query(double minLat, double minLon, double maxLat, double maxLon) {
+        if (maxLon - minLon >= 360.0) {
+            minLon = -180.0;
+            maxLon = 180.0;
+        } else {
+            minLon = normalizeLon(minLon);
+            maxLon = normalizeLon(maxLon);
+        }
+        List<Long> result = new ArrayList<>();
+        int minRow = row(minLat);
+        int maxRow = row(maxLat);
+        int minCol = column(minLon);
+        int maxCol = column(maxLon);
+        boolean crossesDateLine = minLon > maxLon;
+        int colCount = crossesDateLine ? columns - minCol + maxCol + 1 : maxCol - minCol + 1;
+        colCount = Math.min(colCount, columns);
+
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int i = 0; i < colCount; i++) {
+                int col = (minCol + i) % columns;
+                Set<Long> cell = cells.get(row * columns + col);
+                if (cell == null) {
+                    continue;
+                }
+                // Only test the targets of the edge cells against the bounding box
+                boolean edge = row == minRow || row == maxRow || i == 0 || i == colCount - 1;
+                int cellIndex = row * columns + col;
+                for (Long mmsi : cell) {
+                    // Skip targets that have moved to another cell since the cell was read
+                    Entry entry = entries.get(mmsi);
+                    if (entry == null || entry.cell != cellIndex) {
+                        continue;
+                    }
+                    if (!edge || contains(entry.pos, minLat, minLon, maxLat, maxLon, crossesDateLine)) {
+                        result.add(mmsi);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the MMSI of all targets within the given radius of the center position
+     *
+     * @param center
+     *            the center position
+     * @param radius
+     *            the radius in meters
+     * @return the list of MMSI of the targets within the radius
+     */
+    public List<Long> queryRadius(Position center, double radius) {
+        double dLat = radius / METERS_PER_DEGREE;
+        // Use the latitude furthest from equator, where a degree of longitude is shortest
+        double cosLat = Math.cos(Math.toRadians(Math.min(90.0, Math.abs(center.getLatitude()) + dLat)));
+        double dLon = (cosLat < 1e-6) ? 180.0 : Math.min(180.0, dLat / cosLat);
+
+        double minLat = Math.max(-90.0, center.getLatitude() - dLat);
+        double maxLat = Math.min(90.0, center.getLatitude() + dLat);
+        double minLon = normalizeLon(center.getLongitude() - dLon);
+        double maxLon = normalizeLon(center.getLongitude() + dLon);
+        if (dLon >= 180.0 || maxLat >= 90.0 || minLat <= -90.0) {
+            // Polar or huge radius, scan full longitude range
+            minLon = -180.0;
+            maxLon = 180.0;
+        }
+
+        List<Long> candidates = query(minLat, minLon, maxLat, maxLon);
+        List<Long> result = new ArrayList<>(candidates.size());
+        for (Long mmsi : candidates) {
+            Entry entry = entries.get(mmsi);
+            if (entry != null && center.distanceTo(entry.pos, CoordinateSystem.CARTESIAN) <= radius) {
+                result.add(mmsi);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of non-empty cells. Used for diagnostics.
+     *
+     * @return the number of non-empty cells
+     */
+    public int getCellCount() {
+        int count = 0;
+        for (Set<Long> cell : cells.values()) {
+            if (!cell.isEmpty()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the set of MMSI for the given cell, creating it if needed
+     */
+    private Set<Long> cellSet(int cell) {
+        Set<Long> set = cells.get(cell);
+        if (set == null) {
+            Set<Long> newSet = ConcurrentHashMap.newKeySet();
+            set = cells.putIfAbsent(cell, newSet);
+            if (set == null) {
+                set = newSet;
+            }
+        }
+        return set;
+    }
+
+    /**
+     * Removes the MMSI from the given cell. Empty cells are left in place, since they are likely to be re-populated.
+     */
+    private void removeFromCell(int cell, long mmsi) {
+        Set<Long> set = cells.get(cell);
+        if (set != null) {
+            set.remove(mmsi);
+        }
+    }
+
+    private int cellIndex(double lat, double lon) {
+        return row(lat) * columns + column(lon);
+    }
+
+    private int row(double lat) {
+        int row = (int) Math.floor((lat + 90.0) / cellSize);
+        return Math.max(0, Math.min(rows - 1, row));
+    }
+
+    private int column(double lon) {
+        int col = (int) Math.floor((normalizeLon(lon) + 180.0) / cellSize);
+        return Math.max(0, Math.min(columns - 1, col));
+    }
+
+    private static double normalizeLon(double lon) {
+        if (lon < -180.0 || lon > 180.0) {
+            lon = ((lon + 180.0) % 360.0 + 360.0) % 360.0 - 180.0;
+        }
+        return lon;
+    }
+
+    private static boolean contains(Position pos, double minLat, double minLon, double maxLat, double maxLon,
+            boolean crossesDateLine) {
+        double lat = pos.getLatitude();
+        double lon = pos.getLongitude();
+        if (lat < minLat || lat > maxLat) {
+            return false;
+        }
+        if (crossesDateLine) {
+            return lon >= minLon || lon <= maxLon;
+        }
+        return lon >= minLon && lon <= maxLon;
+    }
+
+    /**
+     * An indexed target position along with the cell it belongs to
+     */
+    private static final class Entry {
+        final Position pos;
+        final int cell;
+
+        Entry(Position pos, int cell) {
+            this.pos = pos;
+            this.cell = cell;
+        }
+    }
+}
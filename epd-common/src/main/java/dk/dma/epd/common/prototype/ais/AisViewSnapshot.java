@@ -0,0 +1,686 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.ais;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import dk.dma.ais.message.ShipTypeCargo;
+import dk.dma.enav.model.geometry.Position;
+import dk.dma.enav.model.voyage.NavigationalStatus;
+
+/**
+ * Compact, versioned binary snapshot of the AIS view, used instead of Java serialization of the {@linkplain AisStore}.
+ * <p>
+ * The vessel and SAR targets are stored column by column, i.e. all MMSI's, then all report times etc., with positions
+ * as fixed point integers. The past-track points of all targets are stored in shared columns following the target
+ * columns. AtoN targets are few and are stored row by row.
+ * <p>
+ * On load, the columns are decoded sequentially into primitive arrays, after which the targets are constructed in
+ * parallel chunks.
+ * <p>
+ * The format is versioned, so that class changes no longer invalidate the file. A new version must be added if the
+ * layout changes, and older versions should remain readable.
+ */
+public final class AisViewSnapshot {
+
+    /** "EPDV" */
+    static final int MAGIC = 0x45504456;
+    static final int VERSION = 1;
+
+    private static final double FIXED_POINT = 1e7;
+    private static final int CHUNK_SIZE = 2000;
+
+    private static final int FLAG_POSITION = 1;
+    private static final int FLAG_STATIC = 1 << 1;
+    private static final int FLAG_SETTINGS = 1 << 2;
+    private static final int FLAG_HIDE = 1 << 3;
+    private static final int FLAG_SHOW_PAST_TRACK = 1 << 4;
+    private static final int FLAG_SHOW_INTENDED_ROUTE = 1 << 5;
+    private static final int FLAG_OLD = 1 << 6;
+
+    private AisViewSnapshot() {
+    }
+
+    /**
+     * Returns if the given file starts with the snapshot header
+     *
+     * @param file
+     *            the file
+     * @return if the file is a snapshot file
+     */
+    public static boolean isSnapshot(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+            return in.readInt() == MAGIC;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Writes the targets of the store to the given file. The file is written to a temporary file first, which then
+     * replaces the given file.
+     *
+     * @param file
+     *            the file to write
+     * @param store
+     *            the AIS view to write
+     */
+    public static void write(Path file, AisStore store) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(System.currentTimeMillis());
+            writeMobileTargets(out, store.getVesselTargets() != null ? store.getVesselTargets().values()
+                    : new ArrayList<VesselTarget>());
+            writeMobileTargets(out, store.getSarTargets() != null ? store.getSarTargets().values()
+                    : new ArrayList<SarTarget>());
+            writeAtonTargets(out, store.getAtonTargets() != null ? store.getAtonTargets().values()
+                    : new ArrayList<AtoNTarget>());
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Reads the AIS view from the given snapshot file
+     *
+     * @param file
+     *            the file to read
+     * @return the AIS view
+     */
+    public static AisStore read(Path file) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(file));
+        if (buf.getInt() != MAGIC) {
+            throw new IOException("Not an AIS view snapshot");
+        }
+        int version = buf.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported AIS view snapshot version " + version);
+        }
+        buf.getLong(); // Snapshot time
+
+        MobileColumns vessels = MobileColumns.read(buf);
+        MobileColumns sars = MobileColumns.read(buf);
+
+        AisStore store = new AisStore();
+        ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            Map<Long, VesselTarget> vesselTargets = new HashMap<>();
+            for (MobileTarget target : vessels.build(pool, false)) {
+                vesselTargets.put(target.getMmsi(), (VesselTarget) target);
+            }
+            Map<Long, SarTarget> sarTargets = new HashMap<>();
+            for (MobileTarget target : sars.build(pool, true)) {
+                sarTargets.put(target.getMmsi(), (SarTarget) target);
+            }
+            store.setVesselTargets(vesselTargets);
+            store.setSarTargets(sarTargets);
+        } finally {
+            pool.shutdown();
+        }
+
+        store.setAtonTargets(readAtonTargets(buf));
+        return store;
+    }
+
+    /****************************************/
+    /** Writing **/
+    /****************************************/
+
+    private static void writeMobileTargets(DataOutputStream out, Collection<? extends MobileTarget> targets)
+            throws IOException {
+        // Copy the target data first, since the targets may be updated while writing the columns
+        List<MobileRow> rows = new ArrayList<>(targets.size());
+        for (MobileTarget target : targets) {
+            rows.add(new MobileRow(target));
+        }
+
+        int n = rows.size();
+        out.writeInt(n);
+        for (MobileRow row : rows) {
+            out.writeLong(row.mmsi);
+        }
+        for (MobileRow row : rows) {
+            out.writeLong(row.lastReceived);
+        }
+        for (MobileRow row : rows) {
+            out.writeByte(row.status);
+        }
+        for (MobileRow row : rows) {
+            out.writeByte(row.aisClass);
+        }
+        for (MobileRow row : rows) {
+            out.writeByte(row.flags);
+        }
+        for (MobileRow row : rows) {
+            out.writeLong(row.firstReceived);
+        }
+
+        // Position columns, for the targets with position data
+        List<MobileRow> pos = new ArrayList<>();
+        for (MobileRow row : rows) {
+            if (row.positionData != null) {
+                pos.add(row);
+            }
+        }
+        for (MobileRow row : pos) {
+            out.writeInt(toFixed(row.positionData.getPos() != null ? row.positionData.getPos().getLatitude() : Double.NaN));
+        }
+        for (MobileRow row : pos) {
+            out.writeInt(toFixed(row.positionData.getPos() != null ? row.positionData.getPos().getLongitude() : Double.NaN));
+        }
+        for (MobileRow row : pos) {
+            out.writeByte(row.positionData.getNavStatus());
+        }
+        for (MobileRow row : pos) {
+            out.writeByte(row.positionData.getPosAcc());
+        }
+        for (MobileRow row : pos) {
+            out.writeFloat(row.positionData.getRot());
+        }
+        for (MobileRow row : pos) {
+            out.writeFloat(row.positionData.getSog());
+        }
+        for (MobileRow row : pos) {
+            out.writeFloat(row.positionData.getCog());
+        }
+        for (MobileRow row : pos) {
+            out.writeFloat(row.positionData.getTrueHeading());
+        }
+
+        // Static columns, for the targets with static data
+        List<MobileRow> stat = new ArrayList<>();
+        for (MobileRow row : rows) {
+            if (row.staticData != null) {
+                stat.add(row);
+            }
+        }
+        for (MobileRow row : stat) {
+            out.writeLong(row.staticData.getImo());
+        }
+        for (MobileRow row : stat) {
+            out.writeLong(row.staticData.getEta());
+        }
+        for (MobileRow row : stat) {
+            out.writeInt(row.staticData.getShipType() != null ? row.staticData.getShipType().getIntShipType() : -1);
+        }
+        for (MobileRow row : stat) {
+            out.writeShort(row.staticData.getDimBow());
+            out.writeShort(row.staticData.getDimStern());
+            out.writeShort(row.staticData.getDimPort());
+            out.writeShort(row.staticData.getDimStarboard());
+        }
+        for (MobileRow row : stat) {
+            out.writeByte(row.staticData.getPosType());
+        }
+        for (MobileRow row : stat) {
+            out.writeFloat(row.staticData.getDraught());
+        }
+        for (MobileRow row : stat) {
+            writeString(out, row.staticData.getName());
+        }
+        for (MobileRow row : stat) {
+            writeString(out, row.staticData.getCallsign());
+        }
+        for (MobileRow row : stat) {
+            writeString(out, row.staticData.getDestination());
+        }
+
+        // Settings columns, for the targets with settings
+        for (MobileRow row : rows) {
+            if (row.settings != null) {
+                out.writeInt(row.settings.getPastTrackDisplayTime());
+                out.writeInt(row.settings.getPastTrackMinDist());
+            }
+        }
+
+        // Past-track columns
+        int points = 0;
+        for (MobileRow row : rows) {
+            out.writeInt(row.pastTrack.size());
+            points += row.pastTrack.size();
+        }
+        out.writeInt(points);
+        for (MobileRow row : rows) {
+            for (int i = 0; i < row.pastTrack.size(); i++) {
+                out.writeLong(row.pastTrack.getTime(i));
+            }
+        }
+        for (MobileRow row : rows) {
+            for (int i = 0; i < row.pastTrack.size(); i++) {
+                out.writeInt(toFixed(row.pastTrack.getLatitude(i)));
+            }
+        }
+        for (MobileRow row : rows) {
+            for (int i = 0; i < row.pastTrack.size(); i++) {
+                out.writeInt(toFixed(row.pastTrack.getLongitude(i)));
+            }
+        }
+        for (MobileRow row : rows) {
+            for (int i = 0; i < row.pastTrack.size(); i++) {
+                out.writeBoolean(row.pastTrack.isGone(i));
+            }
+        }
+    }
+
+    private static void writeAtonTargets(DataOutputStream out, Collection<AtoNTarget> targets) throws IOException {
+        List<AtoNTarget> copies = new ArrayList<>(targets.size());
+        for (AtoNTarget target : targets) {
+            synchronized (target) {
+                copies.add(new AtoNTarget(target));
+            }
+        }
+        out.writeInt(copies.size());
+        for (AtoNTarget target : copies) {
+            out.writeLong(target.getMmsi());
+            out.writeLong(target.getLastReceived() != null ? target.getLastReceived().getTime() : -1L);
+            out.writeByte(target.getStatus() != null ? target.getStatus().ordinal() : 0);
+            out.writeInt(toFixed(target.getPos() != null ? target.getPos().getLatitude() : Double.NaN));
+            out.writeInt(toFixed(target.getPos() != null ? target.getPos().getLongitude() : Double.NaN));
+            out.writeInt(target.getAtonType() != null ? target.getAtonType().getAtoNTypeCode() : -1);
+            writeString(out, target.getName());
+            writeString(out, target.getNameExt());
+            out.writeByte(target.getPosAcc());
+            out.writeShort(target.getDimBow());
+            out.writeShort(target.getDimStern());
+            out.writeShort(target.getDimPort());
+            out.writeShort(target.getDimStarboard());
+            out.writeByte(target.getPosType());
+            out.writeByte(target.getOffPosition());
+            out.writeByte(target.getRegional());
+            out.writeByte(target.getRaim());
+            out.writeByte(target.getVirtual());
+            out.writeByte(target.getAssigned());
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String str) throws IOException {
+        if (str == null) {
+            out.writeShort(-1);
+        } else {
+            byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+            out.writeShort(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static int toFixed(double deg) {
+        return Double.isNaN(deg) ? Integer.MIN_VALUE : (int) Math.round(deg * FIXED_POINT);
+    }
+
+    /**
+     * Copy of the data of a mobile target taken while holding the target lock
+     */
+    private static final class MobileRow {
+        final long mmsi;
+        final long lastReceived;
+        final int status;
+        final int aisClass;
+        final int flags;
+        final long firstReceived;
+        final VesselPositionData positionData;
+        final VesselStaticData staticData;
+        final VesselTargetSettings settings;
+        final PastTrackRingBuffer pastTrack;
+
+        MobileRow(MobileTarget target) {
+            synchronized (target) {
+                mmsi = target.getMmsi();
+                lastReceived = target.getLastReceived() != null ? target.getLastReceived().getTime() : -1L;
+                status = target.getStatus() != null ? target.getStatus().ordinal() : 0;
+                positionData = target.getPositionData() != null ? new VesselPositionData(target.getPositionData()) : null;
+                staticData = target.getStaticData() != null ? new VesselStaticData(target.getStaticData()) : null;
+                settings = target.getSettings() != null ? new VesselTargetSettings(target.getSettings()) : null;
+                pastTrack = new PastTrackRingBuffer(target.getPastTrackData());
+
+                int f = 0;
+                f |= positionData != null ? FLAG_POSITION : 0;
+                f |= staticData != null ? FLAG_STATIC : 0;
+                f |= settings != null ? FLAG_SETTINGS : 0;
+                f |= settings != null && settings.isHide() ? FLAG_HIDE : 0;
+                f |= settings != null && settings.isShowPastTrack() ? FLAG_SHOW_PAST_TRACK : 0;
+
+                int cls = -1;
+                long first = -1L;
+                if (target instanceof VesselTarget) {
+                    VesselTarget vessel = (VesselTarget) target;
+                    f |= vessel.isShowIntendedRoute() ? FLAG_SHOW_INTENDED_ROUTE : 0;
+                    cls = vessel.getAisClass() != null ? vessel.getAisClass().ordinal() : -1;
+                } else if (target instanceof SarTarget) {
+                    SarTarget sar = (SarTarget) target;
+                    f |= sar.isOld() ? FLAG_OLD : 0;
+                    first = sar.getFirstReceived() != null ? sar.getFirstReceived().getTime() : -1L;
+                }
+                flags = f;
+                aisClass = cls;
+                firstReceived = first;
+            }
+        }
+    }
+
+    /****************************************/
+    /** Reading **/
+    /****************************************/
+
+    private static Map<Integer, AtoNTarget> readAtonTargets(ByteBuffer buf) {
+        int n = buf.getInt();
+        Map<Integer, AtoNTarget> targets = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            AtoNTarget target = new AtoNTarget();
+            target.setMmsi(buf.getLong());
+            long lastReceived = buf.getLong();
+            target.setLastReceived(lastReceived >= 0 ? new Date(lastReceived) : null);
+            target.setStatus(AisTarget.Status.values()[buf.get()]);
+            target.setPos(toPosition(buf.getInt(), buf.getInt()));
+            int atonType = buf.getInt();
+            target.setAtonType(atonType >= 0 ? AtoNTargetType.getAtoNTargetTypeFromTypeCode(atonType) : null);
+            target.setName(readString(buf));
+            target.setNameExt(readString(buf));
+            target.setPosAcc(buf.get());
+            target.setDimBow(buf.getShort());
+            target.setDimStern(buf.getShort());
+            target.setDimPort(buf.getShort());
+            target.setDimStarboard(buf.getShort());
+            target.setPosType(buf.get());
+            target.setOffPosition(buf.get());
+            target.setRegional(buf.get());
+            target.setRaim(buf.get());
+            target.setVirtual(buf.get());
+            target.setAssigned(buf.get());
+            targets.put((int) target.getMmsi(), target);
+        }
+        return targets;
+    }
+
+    private static String readString(ByteBuffer buf) {
+        int len = buf.getShort();
+        if (len < 0) {
+            return null;
+        }
+        String str = new String(buf.array(), buf.arrayOffset() + buf.position(), len, StandardCharsets.UTF_8);
+        buf.position(buf.position() + len);
+        return str;
+    }
+
+    private static Position toPosition(int lat, int lon) {
+        if (lat == Integer.MIN_VALUE || lon == Integer.MIN_VALUE) {
+            return null;
+        }
+        return Position.create(lat / FIXED_POINT, lon / FIXED_POINT);
+    }
+
+    /**
+     * The decoded columns of the vessel or SAR targets
+     */
+    private static final class MobileColumns {
+        int n;
+        long[] mmsi;
+        long[] lastReceived;
+        byte[] status;
+        byte[] aisClass;
+        byte[] flags;
+        long[] firstReceived;
+
+        // Indexed by target, -1 if the target has no position or static data
+        int[] posIndex;
+        int[] staticIndex;
+
+        int[] lat;
+        int[] lon;
+        byte[] navStatus;
+        byte[] posAcc;
+        float[] rot;
+        float[] sog;
+        float[] cog;
+        float[] heading;
+
+        long[] imo;
+        long[] eta;
+        int[] shipType;
+        short[] dims;
+        byte[] posType;
+        float[] draught;
+        String[] name;
+        String[] callsign;
+        String[] destination;
+
+        int[] pastTrackDisplayTime;
+        int[] pastTrackMinDist;
+
+        int[] trackStart;
+        long[] trackTime;
+        int[] trackLat;
+        int[] trackLon;
+        byte[] trackGone;
+
+        static MobileColumns read(ByteBuffer buf) {
+            MobileColumns c = new MobileColumns();
+            int n = buf.getInt();
+            c.n = n;
+            c.mmsi = readLongs(buf, n);
+            c.lastReceived = readLongs(buf, n);
+            c.status = readBytes(buf, n);
+            c.aisClass = readBytes(buf, n);
+            c.flags = readBytes(buf, n);
+            c.firstReceived = readLongs(buf, n);
+
+            c.posIndex = new int[n];
+            c.staticIndex = new int[n];
+            int positions = 0, statics = 0, settings = 0;
+            for (int i = 0; i < n; i++) {
+                c.posIndex[i] = (c.flags[i] & FLAG_POSITION) != 0 ? positions++ : -1;
+                c.staticIndex[i] = (c.flags[i] & FLAG_STATIC) != 0 ? statics++ : -1;
+                settings += (c.flags[i] & FLAG_SETTINGS) != 0 ? 1 : 0;
+            }
+
+            c.lat = readInts(buf, positions);
+            c.lon = readInts(buf, positions);
+            c.navStatus = readBytes(buf, positions);
+            c.posAcc = readBytes(buf, positions);
+            c.rot = readFloats(buf, positions);
+            c.sog = readFloats(buf, positions);
+            c.cog = readFloats(buf, positions);
+            c.heading = readFloats(buf, positions);
+
+            c.imo = readLongs(buf, statics);
+            c.eta = readLongs(buf, statics);
+            c.shipType = readInts(buf, statics);
+            c.dims = new short[4 * statics];
+            buf.asShortBuffer().get(c.dims);
+            buf.position(buf.position() + 2 * c.dims.length);
+            c.posType = readBytes(buf, statics);
+            c.draught = readFloats(buf, statics);
+            c.name = readStrings(buf, statics);
+            c.callsign = readStrings(buf, statics);
+            c.destination = readStrings(buf, statics);
+
+            c.pastTrackDisplayTime = new int[n];
+            c.pastTrackMinDist = new int[n];
+            for (int i = 0; i < n; i++) {
+                if ((c.flags[i] & FLAG_SETTINGS) != 0) {
+                    c.pastTrackDisplayTime[i] = buf.getInt();
+                    c.pastTrackMinDist[i] = buf.getInt();
+                }
+            }
+
+            c.trackStart = new int[n + 1];
+            for (int i = 0; i < n; i++) {
+                c.trackStart[i + 1] = c.trackStart[i] + buf.getInt();
+            }
+            int points = buf.getInt();
+            c.trackTime = readLongs(buf, points);
+            c.trackLat = readInts(buf, points);
+            c.trackLon = readInts(buf, points);
+            c.trackGone = readBytes(buf, points);
+            return c;
+        }
+
+        /**
+         * Constructs the targets in parallel chunks
+         */
+        List<MobileTarget> build(ExecutorService pool, final boolean sar) throws IOException {
+            List<Future<List<MobileTarget>>> chunks = new ArrayList<>();
+            for (int from = 0; from < n; from += CHUNK_SIZE) {
+                final int start = from;
+                final int end = Math.min(n, from + CHUNK_SIZE);
+                chunks.add(pool.submit(new Callable<List<MobileTarget>>() {
+                    @Override
+                    public List<MobileTarget> call() {
+                        List<MobileTarget> result = new ArrayList<>(end - start);
+                        for (int i = start; i < end; i++) {
+                            result.add(build(i, sar));
+                        }
+                        return result;
+                    }
+                }));
+            }
+
+            List<MobileTarget> targets = new ArrayList<>(n);
+            try {
+                for (Future<List<MobileTarget>> chunk : chunks) {
+                    targets.addAll(chunk.get());
+                }
+            } catch (InterruptedException | ExecutionException e) {
+                throw new IOException("Failed decoding AIS view snapshot", e);
+            }
+            return targets;
+        }
+
+        private MobileTarget build(int i, boolean sar) {
+            MobileTarget target;
+            if (sar) {
+                SarTarget sarTarget = new SarTarget();
+                sarTarget.setOld((flags[i] & FLAG_OLD) != 0);
+                sarTarget.setFirstReceived(firstReceived[i] >= 0 ? new Date(firstReceived[i]) : null);
+                target = sarTarget;
+            } else {
+                VesselTarget vesselTarget = new VesselTarget();
+                vesselTarget.setAisClass(aisClass[i] >= 0 ? VesselTarget.AisClass.values()[aisClass[i]] : null);
+                vesselTarget.setShowIntendedRoute((flags[i] & FLAG_SHOW_INTENDED_ROUTE) != 0);
+                target = vesselTarget;
+            }
+
+            target.setMmsi(mmsi[i]);
+            target.setLastReceived(lastReceived[i] >= 0 ? new Date(lastReceived[i]) : null);
+            target.status = AisTarget.Status.values()[status[i]];
+
+            int p = posIndex[i];
+            if (p >= 0) {
+                VesselPositionData positionData = new VesselPositionData();
+                positionData.setPos(toPosition(lat[p], lon[p]));
+                positionData.setNavStatus(navStatus[p]);
+                if (navStatus[p] >= 0) {
+                    positionData.setEnumNavStatus(NavigationalStatus.fromAIS(navStatus[p]));
+                }
+                positionData.setPosAcc(posAcc[p]);
+                positionData.setRot(rot[p]);
+                positionData.setSog(sog[p]);
+                positionData.setCog(cog[p]);
+                positionData.setTrueHeading(heading[p]);
+                target.setPositionData(positionData);
+            }
+
+            int s = staticIndex[i];
+            if (s >= 0) {
+                VesselStaticData staticData = new VesselStaticData();
+                staticData.setImo(imo[s]);
+                staticData.setEta(eta[s]);
+                staticData.setShipType(new ShipTypeCargo(shipType[s]));
+                staticData.setDimBow(dims[4 * s]);
+                staticData.setDimStern(dims[4 * s + 1]);
+                staticData.setDimPort(dims[4 * s + 2]);
+                staticData.setDimStarboard(dims[4 * s + 3]);
+                staticData.setPosType(posType[s]);
+                staticData.setDraught(draught[s]);
+                staticData.setName(name[s]);
+                staticData.setCallsign(callsign[s]);
+                staticData.setDestination(destination[s]);
+                target.setStaticData(staticData);
+            }
+
+            if ((flags[i] & FLAG_SETTINGS) != 0) {
+                VesselTargetSettings settings = new VesselTargetSettings();
+                settings.setHide((flags[i] & FLAG_HIDE) != 0);
+                settings.setShowPastTrack((flags[i] & FLAG_SHOW_PAST_TRACK) != 0);
+                settings.setPastTrackDisplayTime(pastTrackDisplayTime[i]);
+                settings.setPastTrackMinDist(pastTrackMinDist[i]);
+                target.setSettings(settings);
+            }
+
+            PastTrackRingBuffer pastTrack = new PastTrackRingBuffer(trackStart[i + 1] - trackStart[i]);
+            for (int j = trackStart[i]; j < trackStart[i + 1]; j++) {
+                pastTrack.add(trackTime[j], trackLat[j] / FIXED_POINT, trackLon[j] / FIXED_POINT, trackGone[j] != 0);
+            }
+            target.setPastTrackData(pastTrack);
+
+            return target;
+        }
+
+        private static int[] readInts(ByteBuffer buf, int n) {
+            int[] result = new int[n];
+            buf.asIntBuffer().get(result);
+            buf.position(buf.position() + 4 * n);
+            return result;
+        }
+
+        private static long[] readLongs(ByteBuffer buf, int n) {
+            long[] result = new long[n];
+            buf.asLongBuffer().get(result);
+            buf.position(buf.position() + 8 * n);
+            return result;
+        }
+
+        private static float[] readFloats(ByteBuffer buf, int n) {
+            float[] result = new float[n];
+            buf.asFloatBuffer().get(result);
+            buf.position(buf.position() + 4 * n);
+            return result;
+        }
+
+        private static byte[] readBytes(ByteBuffer buf, int n) {
+            byte[] result = new byte[n];
+            buf.get(result);
+            return result;
+        }
+
+        private static String[] readStrings(ByteBuffer buf, int n) {
+            String[] result = new String[n];
+            for (int i = 0; i < n; i++) {
+                result[i] = readString(buf);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.ais;
+
+import java.util.Collection;
+
+/**
+ * Interface to implement for classes wanting to receive AIS target updates in batches.
+ * <p>
+ * When batch dispatch is enabled in the {@link AisHandlerCommon}, updates are coalesced per MMSI and
+ * delivered in one call to {@link #targetsUpdated(Collection)} on every dispatch tick. Otherwise, each
+ * update is delivered through {@link #targetUpdated(AisTarget)} as for plain {@link IAisTargetListener}s.
+ */
+public interface IAisTargetBatchListener extends IAisTargetListener {
+
+    /**
+     * Called with the AIS targets that have been updated since the last dispatch tick.
+     * Each target is contained at most once.
+     * 
+     * @param aisTargets the updated targets
+     */
+    void targetsUpdated(Collection<AisTarget> aisTargets);
+
+}
@@ -0,0 +1,401 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.ais;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+import dk.dma.enav.model.geometry.CoordinateSystem;
+import dk.dma.enav.model.geometry.Position;
+
+/**
+ * Past-track implementation that stores the points in primitive time, latitude and longitude arrays, used as a ring
+ * buffer that grows as needed.
+ * <p>
+ * Points are kept in time order. New points are appended at the tail and timed out points are dropped from the head,
+ * so neither operation allocates unless the buffer has to grow. Time windows are located by binary search and can be
+ * traversed without allocations using {@linkplain #visitNewerThan(long, PointVisitor)}, or by index while holding the
+ * lock of the buffer:
+ *
+ * <pre>
+ * synchronized (pastTrack) {
+ *     for (int i = pastTrack.indexOfFirstNewerThan(time); i &lt; pastTrack.size(); i++) {
+ *         ... pastTrack.getLatitude(i), pastTrack.getLongitude(i) ...
+ *     }
+ * }
+ * </pre>
+ *
+ * Replaces the {@linkplain PastTrackSortedSet}, which holds three objects per point in a skip list.
+ */
+@ThreadSafe
+public class PastTrackRingBuffer implements IPastTrack {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    @GuardedBy("this") private long[] times;
+    @GuardedBy("this") private double[] lats;
+    @GuardedBy("this") private double[] lons;
+    @GuardedBy("this") private boolean[] gone;
+    @GuardedBy("this") private int head;
+    @GuardedBy("this") private int size;
+    @GuardedBy("this") private Position lastPos;
+    @GuardedBy("this") private long lastChangeTime;
+
+    /**
+     * Callback used for traversing the points of a past track
+     */
+    public interface PointVisitor {
+
+        /**
+         * Called for each visited point
+         *
+         * @param time
+         *            the time of the point in milliseconds
+         * @param lat
+         *            the latitude of the point
+         * @param lon
+         *            the longitude of the point
+         * @param gone
+         *            if the target was gone while this was the last point
+         */
+        void visit(long time, double lat, double lon, boolean gone);
+    }
+
+    /**
+     * No-arg constructor
+     */
+    public PastTrackRingBuffer() {
+        this(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param capacity
+     *            the initial capacity, rounded up to a power of two
+     */
+    public PastTrackRingBuffer(int capacity) {
+        allocate(Integer.highestOneBit(Math.max(2, capacity) * 2 - 1));
+        updateLastChangeTime();
+    }
+
+    /**
+     * Copy-constructor
+     *
+     * @param pastTrack
+     *            the past track to copy
+     */
+    public PastTrackRingBuffer(PastTrackRingBuffer pastTrack) {
+        synchronized (pastTrack) {
+            allocate(pastTrack.times.length);
+            for (int i = 0; i < pastTrack.size; i++) {
+                int j = pastTrack.slot(i);
+                times[i] = pastTrack.times[j];
+                lats[i] = pastTrack.lats[j];
+                lons[i] = pastTrack.lons[j];
+                gone[i] = pastTrack.gone[j];
+            }
+            size = pastTrack.size;
+            lastPos = pastTrack.lastPos;
+            lastChangeTime = pastTrack.lastChangeTime;
+        }
+    }
+
+    /**
+     * Updates the lastChangeTime to the current time
+     */
+    private synchronized void updateLastChangeTime() {
+        lastChangeTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Returns the last change time
+     *
+     * @return the last change time
+     */
+    public synchronized long getLastChangeTime() {
+        return lastChangeTime;
+    }
+
+    /**
+     * Adds a past-track position to the list, if it is further away from the last point than minDist
+     *
+     * @param vesselPosition
+     *            the new position to add
+     * @param minDist
+     *            the minimum distance required to add the position
+     */
+    @Override
+    public synchronized void addPosition(Position vesselPosition, int minDist) {
+        if (lastPos == null && size > 0) {
+            int last = slot(size - 1);
+            lastPos = Position.create(lats[last], lons[last]);
+        }
+        if (lastPos == null || lastPos.distanceTo(vesselPosition, CoordinateSystem.CARTESIAN) > minDist) {
+            add(System.currentTimeMillis(), vesselPosition.getLatitude(), vesselPosition.getLongitude(), false);
+            lastPos = vesselPosition;
+            updateLastChangeTime();
+        }
+    }
+
+    /**
+     * Adds a point to the past track. Points are normally added in time order, but an older point is inserted at its
+     * place in the track.
+     *
+     * @param time
+     *            the time of the point in milliseconds
+     * @param lat
+     *            the latitude of the point
+     * @param lon
+     *            the longitude of the point
+     * @param hasGone
+     *            if the target was gone while this was the last point
+     */
+    public synchronized void add(long time, double lat, double lon, boolean hasGone) {
+        if (size == times.length) {
+            allocate(times.length * 2);
+        }
+        // Shift newer points one slot towards the tail
+        int i = size;
+        while (i > 0 && times[slot(i - 1)] > time) {
+            int from = slot(i - 1);
+            int to = slot(i);
+            times[to] = times[from];
+            lats[to] = lats[from];
+            lons[to] = lons[from];
+            gone[to] = gone[from];
+            i--;
+        }
+        int j = slot(i);
+        times[j] = time;
+        lats[j] = lat;
+        lons[j] = lon;
+        gone[j] = hasGone;
+        size++;
+        if (i == size - 1) {
+            // The last position is re-created from the arrays when needed
+            lastPos = null;
+        }
+    }
+
+    /**
+     * Cleans up old past-track points that have timed out according to the TTL parameter
+     *
+     * @param ttl
+     *            the time to live in seconds
+     */
+    @Override
+    public synchronized void cleanup(int ttl) {
+        if (removeUpTo(System.currentTimeMillis() - ttl * 1000L - 1L) > 0) {
+            updateLastChangeTime();
+        }
+    }
+
+    /**
+     * Removes the points with a time up to and including the given time
+     *
+     * @param time
+     *            the time in milliseconds
+     * @return the number of removed points
+     */
+    public synchronized int removeUpTo(long time) {
+        int removed = 0;
+        while (size > 0 && times[head] <= time) {
+            head = (head + 1) & (times.length - 1);
+            size--;
+            removed++;
+        }
+        if (size == 0) {
+            lastPos = null;
+        }
+        return removed;
+    }
+
+    /**
+     * Removes all points
+     */
+    public synchronized void clear() {
+        head = 0;
+        size = 0;
+        lastPos = null;
+        updateLastChangeTime();
+    }
+
+    /**
+     * Flags that the mobile target was gone. Updates the last past-track point with this state.
+     */
+    public synchronized void flagGone() {
+        if (size > 0) {
+            gone[slot(size - 1)] = true;
+        }
+    }
+
+    /**
+     * Returns the number of points
+     *
+     * @return the number of points
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Returns the time of the point with the given index in milliseconds
+     *
+     * @param index
+     *            the index of the point, where 0 is the oldest point
+     * @return the time of the point
+     */
+    public synchronized long getTime(int index) {
+        return times[slot(checkIndex(index))];
+    }
+
+    /**
+     * Returns the latitude of the point with the given index
+     *
+     * @param index
+     *            the index of the point, where 0 is the oldest point
+     * @return the latitude of the point
+     */
+    public synchronized double getLatitude(int index) {
+        return lats[slot(checkIndex(index))];
+    }
+
+    /**
+     * Returns the longitude of the point with the given index
+     *
+     * @param index
+     *            the index of the point, where 0 is the oldest point
+     * @return the longitude of the point
+     */
+    public synchronized double getLongitude(int index) {
+        return lons[slot(checkIndex(index))];
+    }
+
+    /**
+     * Returns if the target was gone while the point with the given index was the last point
+     *
+     * @param index
+     *            the index of the point, where 0 is the oldest point
+     * @return if the target was gone
+     */
+    public synchronized boolean isGone(int index) {
+        return gone[slot(checkIndex(index))];
+    }
+
+    /**
+     * Returns the index of the first point newer than the given time, or {@linkplain #size()} if there is none
+     *
+     * @param time
+     *            the time in milliseconds
+     * @return the index of the first point newer than the time
+     */
+    public synchronized int indexOfFirstNewerThan(long time) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (times[slot(mid)] > time) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Visits the points newer than the given time in time order, while holding the lock of the buffer
+     *
+     * @param time
+     *            the time in milliseconds
+     * @param visitor
+     *            the visitor
+     */
+    public synchronized void visitNewerThan(long time, PointVisitor visitor) {
+        for (int i = indexOfFirstNewerThan(time); i < size; i++) {
+            int j = slot(i);
+            visitor.visit(times[j], lats[j], lons[j], gone[j]);
+        }
+    }
+
+    /**
+     * Returns a copy of the points as past-track point objects, for use with outside iterators
+     */
+    @Override
+    public synchronized Collection<PastTrackPoint> getPoints() {
+        return copyPoints(0);
+    }
+
+    /**
+     * Returns a copy of the points newer than the given {@code time}
+     *
+     * @param time
+     *            the time
+     */
+    public synchronized Collection<PastTrackPoint> getPointsNewerThan(Date time) {
+        return copyPoints(indexOfFirstNewerThan(time.getTime()));
+    }
+
+    private List<PastTrackPoint> copyPoints(int from) {
+        List<PastTrackPoint> result = new ArrayList<>(size - from);
+        for (int i = from; i < size; i++) {
+            int j = slot(i);
+            PastTrackPoint point = new PastTrackPoint(new Date(times[j]), Position.create(lats[j], lons[j]));
+            if (gone[j]) {
+                point.flagGone();
+            }
+            result.add(point);
+        }
+        return result;
+    }
+
+    /**
+     * Re-allocates the arrays with the given capacity, moving the points to the start of the arrays
+     */
+    private void allocate(int capacity) {
+        long[] newTimes = new long[capacity];
+        double[] newLats = new double[capacity];
+        double[] newLons = new double[capacity];
+        boolean[] newGone = new boolean[capacity];
+        for (int i = 0; i < size; i++) {
+            int j = slot(i);
+            newTimes[i] = times[j];
+            newLats[i] = lats[j];
+            newLons[i] = lons[j];
+            newGone[i] = gone[j];
+        }
+        times = newTimes;
+        lats = newLats;
+        lons = newLons;
+        gone = newGone;
+        head = 0;
+    }
+
+    private int slot(int index) {
+        return (head + index) & (times.length - 1);
+    }
+
+    private int checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+        return index;
+    }
+}
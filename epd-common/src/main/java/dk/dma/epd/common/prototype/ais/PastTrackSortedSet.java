@@ -29,6 +29,8 @@ import dk.dma.enav.model.geometry.Position;
  * Ripping off PastTrackSortedSet from dk.dma.ais.data.PastTrackSortedSet, refactor into one common codebase later
  * <p>
  * 131213: Class moved from epd-shore to epd-common, so that it may be used in epd-ship
+ * <p>
+ * Mobile targets now use the {@linkplain PastTrackRingBuffer}.
  * 
  * @author jtj-sfs
  *
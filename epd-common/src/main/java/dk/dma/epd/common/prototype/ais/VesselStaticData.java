@@ -43,6 +43,12 @@ public class VesselStaticData implements Serializable {
     private float draught;
     private String destination;
 
+    /**
+     * No-data constructor
+     */
+    public VesselStaticData() {
+    }
+
     /**
      * Copy constructor
      * @param vesselStaticData
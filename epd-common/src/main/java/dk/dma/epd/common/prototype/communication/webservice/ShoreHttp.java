@@ -18,6 +18,7 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
@@ -27,6 +28,7 @@ import javax.xml.bind.Unmarshaller;
 import org.apache.commons.httpclient.Header;
 import org.apache.commons.httpclient.HttpClient;
 import org.apache.commons.httpclient.HttpException;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
 import org.apache.commons.httpclient.methods.ByteArrayRequestEntity;
 import org.apache.commons.httpclient.methods.PostMethod;
 import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
@@ -37,7 +39,10 @@ import dk.dma.epd.common.prototype.settings.EnavSettings;
 import dk.dma.epd.common.util.Compressor;
 
 /**
- * Encapsulation of HTTP connection to shore. 
+ * Encapsulation of HTTP connection to shore.
+ * <p>
+ * A pooled instance uses a connection manager shared by all pooled instances, which keeps the connections to the
+ * shore server alive between requests and allows up to {@linkplain #MAX_POOLED_CONNECTIONS} concurrent requests.
  */
 public class ShoreHttp {
 
@@ -46,6 +51,14 @@ public class ShoreHttp {
     private static final String USER_AGENT = "EPD";
     private static final String ENCODING = "UTF-8";
 
+    /** Maximum number of pooled connections to the shore server */
+    public static final int MAX_POOLED_CONNECTIONS = 8;
+
+    /** JAXB contexts are thread safe and expensive to create, so they are cached by context path */
+    private static final ConcurrentHashMap<String, JAXBContext> JAXB_CONTEXTS = new ConcurrentHashMap<>();
+
+    private static MultiThreadedHttpConnectionManager connectionManager;
+
     private String uri;
     private String url;
     private String host;
@@ -56,6 +69,7 @@ public class ShoreHttp {
     private HttpClient httpClient;
     private PostMethod method;
     private byte[] responseBody;
+    private boolean pooled;
 
     public ShoreHttp() {
 
@@ -70,15 +84,59 @@ public class ShoreHttp {
         setUri(uri);
     }
 
+    /**
+     * Constructor
+     * 
+     * @param uri
+     *            the URI of the request
+     * @param enavSettings
+     *            the e-Navigation settings
+     * @param pooled
+     *            whether to use the shared connection pool
+     */
+    public ShoreHttp(String uri, EnavSettings enavSettings, boolean pooled) {
+        this(uri, enavSettings);
+        this.pooled = pooled;
+    }
+
+    /**
+     * Returns the shared connection manager, creating it on first use
+     */
+    private static synchronized MultiThreadedHttpConnectionManager getConnectionManager(int connectionTimeout) {
+        if (connectionManager == null) {
+            connectionManager = new MultiThreadedHttpConnectionManager();
+            HttpConnectionManagerParams params = connectionManager.getParams();
+            params.setDefaultMaxConnectionsPerHost(MAX_POOLED_CONNECTIONS);
+            params.setMaxTotalConnections(MAX_POOLED_CONNECTIONS);
+            params.setConnectionTimeout(connectionTimeout);
+            params.setStaleCheckingEnabled(true);
+        }
+        return connectionManager;
+    }
+
+    /**
+     * Returns the cached JAXB context for the given context path
+     */
+    private static JAXBContext getJaxbContext(String contextPath) throws JAXBException {
+        JAXBContext jc = JAXB_CONTEXTS.get(contextPath);
+        if (jc == null) {
+            jc = JAXBContext.newInstance(contextPath);
+            JAXB_CONTEXTS.putIfAbsent(contextPath, jc);
+        }
+        return jc;
+    }
+
     public void makeRequest() throws ShoreServiceException {
         // Make the request
         int resCode = -1;
         try {
             resCode = httpClient.executeMethod(method);
         } catch (HttpException e) {
+            method.releaseConnection();
             LOG.error("HTTP request failed with: " + e.getMessage());
             throw new ShoreServiceException(ShoreServiceErrorCode.INTERNAL_ERROR);
         } catch (IOException e) {
+            method.releaseConnection();
             LOG.error("Failed to make HTTP connection: " + e.getMessage());
             throw new ShoreServiceException(ShoreServiceErrorCode.NO_CONNECTION_TO_SERVER);
         }
@@ -103,19 +161,24 @@ public class ShoreHttp {
         } catch (IOException e) {
             LOG.error("Failed to read response body: " + e.getMessage());
             throw new ShoreServiceException(ShoreServiceErrorCode.INVALID_RESPONSE);
+        } finally {
+            method.releaseConnection();
         }
-
-        method.releaseConnection();
     }
 
     public void init() {
-        httpClient = new HttpClient();
         method = new PostMethod(url);
-        HttpConnectionManagerParams params = httpClient.getHttpConnectionManager().getParams();
-        params.setSoTimeout(readTimeout);
-        params.setConnectionTimeout(connectionTimeout);
+        if (pooled) {
+            httpClient = new HttpClient(getConnectionManager(connectionTimeout));
+            method.getParams().setSoTimeout(readTimeout);
+        } else {
+            httpClient = new HttpClient();
+            HttpConnectionManagerParams params = httpClient.getHttpConnectionManager().getParams();
+            params.setSoTimeout(readTimeout);
+            params.setConnectionTimeout(connectionTimeout);
+            method.setRequestHeader("Connection", "close");
+        }
         method.setRequestHeader("User-Agent", USER_AGENT);
-        method.setRequestHeader("Connection", "close");
         method.addRequestHeader("Accept", "text/*");    
         
         // TODO if compress response
@@ -123,13 +186,13 @@ public class ShoreHttp {
     }
 
     public Object getXmlUnmarshalledContent(String contextPath) throws JAXBException {
-        JAXBContext jc = JAXBContext.newInstance(contextPath);
+        JAXBContext jc = getJaxbContext(contextPath);
         Unmarshaller u = jc.createUnmarshaller();
         return u.unmarshal(new ByteArrayInputStream(responseBody));
     }
 
     public void setXmlMarshalContent(String contextPath, Object obj) throws JAXBException, UnsupportedEncodingException {
-        JAXBContext jc = JAXBContext.newInstance(contextPath);
+        JAXBContext jc = getJaxbContext(contextPath);
         Marshaller m = jc.createMarshaller();
         m.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
         m.setProperty(Marshaller.JAXB_ENCODING, ENCODING);
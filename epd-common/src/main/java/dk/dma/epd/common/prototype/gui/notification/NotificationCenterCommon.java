@@ -24,6 +24,8 @@ import dk.dma.epd.common.prototype.notification.MsiNmNotification;
 import dk.dma.epd.common.prototype.notification.Notification;
 import dk.dma.epd.common.prototype.notification.NotificationAlert;
 import dk.dma.epd.common.prototype.notification.NotificationAlert.AlertType;
+import dk.dma.epd.common.prototype.notification.NotificationStore;
+import dk.dma.epd.common.prototype.notification.NotificationStore.PendingAlert;
 import dk.dma.epd.common.prototype.notification.NotificationType;
 import dk.dma.epd.common.prototype.service.ChatServiceHandlerCommon;
 import dk.dma.epd.common.prototype.service.ChatServiceHandlerCommon.IChatServiceListener;
@@ -157,16 +159,29 @@ public abstract class NotificationCenterCommon extends ComponentDialog implement
      */
     @Override
     public void actionPerformed(ActionEvent ae) {
-        // Run through all alerts of all notifications of all panels
-        // and check if they should be triggered
+        // Only the alerts that are due are polled from the
+        // notification stores of the panels
+        long now = System.currentTimeMillis();
         for (NotificationPanel<?> panel : panels) {
-            for (Notification<?, ?> notification : panel.getNotifications()) {
-                for (NotificationAlert alert : notification.getAlerts()) {
-                    if (alert.shouldTrigger(notification)) {
-                        triggerAlert(panel, notification, alert);
-                    }
-                }
-            }
+            triggerDueAlerts(panel, panel.getStore(), now);
+        }
+    }
+
+    /**
+     * Triggers the alerts of the given notification store that are due, and re-schedules them
+     * 
+     * @param panel
+     *            the notification panel
+     * @param store
+     *            the notification store of the panel
+     * @param now
+     *            the current time
+     */
+    private <N extends Notification<?, ?>> void triggerDueAlerts(NotificationPanel<?> panel, NotificationStore<N> store,
+            long now) {
+        for (PendingAlert<N> pendingAlert : store.pollDueAlerts(now)) {
+            triggerAlert(panel, pendingAlert.getNotification(), pendingAlert.getAlert());
+            store.scheduleAlert(pendingAlert.getNotification(), pendingAlert.getAlert());
         }
     }
 
@@ -53,6 +53,7 @@ import dk.dma.epd.common.graphics.GraphicsUtil;
 import dk.dma.epd.common.prototype.EPD;
 import dk.dma.epd.common.prototype.notification.Notification;
 import dk.dma.epd.common.prototype.notification.Notification.NotificationSeverity;
+import dk.dma.epd.common.prototype.notification.NotificationStore;
 import dk.dma.epd.common.prototype.notification.NotificationType;
 
 /**
@@ -174,6 +175,14 @@ public abstract class NotificationPanel<N extends Notification<?,?>> extends JPa
     public List<N> getNotifications() {
         return tableModel.getNotifications();
     }
+
+    /**
+     * Returns the notification store of the panel
+     * @return the notification store of the panel
+     */
+    public NotificationStore<N> getStore() {
+        return tableModel.getStore();
+    }
     
     /**
      * Returns the notification with the given identifier.
@@ -182,15 +191,7 @@ public abstract class NotificationPanel<N extends Notification<?,?>> extends JPa
      * @return the notification with the given identifier
      */
     public N getNotificationById(Object id) {
-        // TODO: Consider using an ID look-up map instead
-        if (id != null) {
-            for (N notification : getNotifications()) {
-                if (id.equals(notification.getId())) {
-                    return notification;
-                }
-            }
-        }
-        return null;
+        return tableModel.getStore().getById(id);
     }
     
 
@@ -365,11 +366,9 @@ public abstract class NotificationPanel<N extends Notification<?,?>> extends JPa
      * @param id the id of the notification to select
      */
     public void setSelectedId(Object id) {
-        for (int row = 0; row < tableModel.getNotifications().size(); row++) {
-            if (id.equals(tableModel.getNotification(row).getId())) {
-                setSelectedRow(row);
-                return;
-            }
+        int row = tableModel.getStore().indexOfId(id);
+        if (row != -1) {
+            setSelectedRow(row);
         }
     }
 
@@ -390,6 +389,10 @@ public abstract class NotificationPanel<N extends Notification<?,?>> extends JPa
      * If none are found, the selection does not change.
      */
     protected void selectFirstUnacknowledgedRow() {
+        if (tableModel.getStore().getUnacknowledgedCount() == 0) {
+            return;
+        }
+        
         // Change the selection to the next unacknowledged
         for (int row = 0; row < tableModel.getNotifications().size(); row++) {
             if (!tableModel.getNotification(row).isAcknowledged()) {
@@ -444,7 +447,7 @@ public abstract class NotificationPanel<N extends Notification<?,?>> extends JPa
      */
     public void deleteNotification(N notification) {
         if (notification != null) {
-            tableModel.notifications.remove(notification);
+            tableModel.getStore().remove(notification);
             tableModel.fireTableDataChanged();
             updateButtonEnabledState();
             notifyListeners();
@@ -512,7 +515,7 @@ public abstract class NotificationPanel<N extends Notification<?,?>> extends JPa
      * Guaranteed to be run in the Swing event tread.
      */
     protected void doAddNotification(N notification) {
-        tableModel.getNotifications().add(notification);
+        tableModel.getStore().add(notification);
         tableModel.fireTableDataChanged();
         notifyListeners();
     }
@@ -617,16 +620,17 @@ public abstract class NotificationPanel<N extends Notification<?,?>> extends JPa
      * Notifies all listeners with the current statistics of the notifications
      */
     protected void notifyListeners() {
-        // Compute the statistics
+        // Read the statistics from the notification store
+        NotificationStore<N> store = tableModel.getStore();
         NotificationStatistics stats = new NotificationStatistics();
-        for (N n : tableModel.getNotifications()) {
-            stats.count++;
-            if (!n.isRead()) { stats.unreadCount++; }
-            if (!n.isAcknowledged()) { stats.unacknowledgedCount++; }
-            if (n.getSeverity() == NotificationSeverity.WARNING) { stats.warningCount++; }
-            if (n.getSeverity() == NotificationSeverity.WARNING && !n.isAcknowledged()) { stats.unacknowledgedWarningCount++; }
-            if (n.getSeverity() == NotificationSeverity.ALERT) { stats.alertCount++; }
-            if (n.getSeverity() == NotificationSeverity.ALERT && !n.isAcknowledged()) { stats.unacknowledgedAlertCount++; }
+        synchronized (store) {
+            stats.count = store.size();
+            stats.unreadCount = store.getUnreadCount();
+            stats.unacknowledgedCount = store.getUnacknowledgedCount();
+            stats.warningCount = store.getCount(NotificationSeverity.WARNING);
+            stats.unacknowledgedWarningCount = store.getUnacknowledgedCount(NotificationSeverity.WARNING);
+            stats.alertCount = store.getCount(NotificationSeverity.ALERT);
+            stats.unacknowledgedAlertCount = store.getUnacknowledgedCount(NotificationSeverity.ALERT);
         }
         
         // Notify listeners
@@ -14,7 +14,6 @@
  */
 package dk.dma.epd.common.prototype.gui.notification;
 
-import java.util.ArrayList;
 import java.util.List;
 
 import javax.swing.ImageIcon;
@@ -22,9 +21,13 @@ import javax.swing.table.AbstractTableModel;
 
 import dk.dma.epd.common.prototype.EPD;
 import dk.dma.epd.common.prototype.notification.Notification;
+import dk.dma.epd.common.prototype.notification.NotificationStore;
 
 /**
- * Base class for notification table models
+ * Base class for notification table models.
+ * <p>
+ * The notifications are kept in a {@linkplain NotificationStore}, which the 
+ * table rows are read directly from.
  */
 public abstract class NotificationTableModel<N extends Notification<?,?>> extends AbstractTableModel {
 
@@ -35,7 +38,7 @@ public abstract class NotificationTableModel<N extends Notification<?,?>> extend
     protected static final ImageIcon ICON_ALERT         = EPD.res().getCachedImageIcon("images/notifications/error.png");
     protected static final ImageIcon ICON_WARNING       = EPD.res().getCachedImageIcon("images/notifications/warning.png");
     
-    List<N> notifications = new ArrayList<>();
+    final NotificationStore<N> store = new NotificationStore<>();
 
     /**
      * Returns the list of column names
@@ -48,7 +51,7 @@ public abstract class NotificationTableModel<N extends Notification<?,?>> extend
      */
     @Override
     public int getRowCount() {
-        return notifications.size();
+        return store.size();
     }
 
     /**
@@ -81,18 +84,25 @@ public abstract class NotificationTableModel<N extends Notification<?,?>> extend
      * @return the notification at the given row
      */
     public N getNotification(int row) {
-        if (row < 0 || row >= notifications.size()) {
-            return null;
-        }
-        return notifications.get(row);
+        return store.get(row);
     }
 
     /**
-     * Returns the notifications of this table model
+     * Returns an unmodifiable view of the notifications of this table model
      * @return the notifications of this table model
      */
     public List<N> getNotifications() {
-        return notifications;
+        return store.getNotifications();
+    }
+
+    /**
+     * Returns a copy of a page of the notifications of this table model
+     * @param from the row of the first notification of the page
+     * @param count the maximum number of notifications of the page
+     * @return the page of notifications
+     */
+    public List<N> getNotifications(int from, int count) {
+        return store.getPage(from, count);
     }
 
     /**
@@ -101,6 +111,14 @@ public abstract class NotificationTableModel<N extends Notification<?,?>> extend
      * @param notifications the notifications of this table model
      */
     public void setNotifications(List<N> notifications) {
-        this.notifications = notifications;
+        store.setAll(notifications);
+    }
+
+    /**
+     * Returns the notification store of this table model
+     * @return the notification store of this table model
+     */
+    public NotificationStore<N> getStore() {
+        return store;
     }
 }
@@ -17,6 +17,7 @@ package dk.dma.epd.common.prototype.layers.ais;
 import java.awt.event.MouseEvent;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
+import java.util.Collection;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -31,7 +32,7 @@ import dk.dma.epd.common.prototype.EPD;
 import dk.dma.epd.common.prototype.ais.AisHandlerCommon;
 import dk.dma.epd.common.prototype.ais.AisTarget;
 import dk.dma.epd.common.prototype.ais.AtoNTarget;
-import dk.dma.epd.common.prototype.ais.IAisTargetListener;
+import dk.dma.epd.common.prototype.ais.IAisTargetBatchListener;
 import dk.dma.epd.common.prototype.ais.SarTarget;
 import dk.dma.epd.common.prototype.ais.VesselTarget;
 import dk.dma.epd.common.prototype.layers.LazyLayerCommon;
@@ -43,7 +44,7 @@ import dk.dma.epd.common.prototype.settings.NavSettings;
  */
 @SuppressWarnings("serial")
 public abstract class AisLayerCommon<AISHANDLER extends AisHandlerCommon>
-        extends LazyLayerCommon implements IAisTargetListener, PropertyChangeListener {
+        extends LazyLayerCommon implements IAisTargetBatchListener, PropertyChangeListener {
 
     private static final Logger LOG = LoggerFactory
             .getLogger(AisLayerCommon.class);
@@ -96,10 +97,21 @@ public abstract class AisLayerCommon<AISHANDLER extends AisHandlerCommon>
         super.findAndInit(obj);
         if (obj instanceof AisHandlerCommon) {
             this.aisHandler = (AISHANDLER) obj;
-            this.aisHandler.addListener(this);
+            this.subscribe(this.aisHandler);
         }
     }
 
+    /**
+     * Subscribes this layer to the target updates of the AIS handler. Sub classes may override this method to
+     * consume the target updates in another way, e.g. through the shared {@linkplain AisTargetRenderModel}.
+     * 
+     * @param aisHandler
+     *            the AIS handler of this layer
+     */
+    protected void subscribe(AISHANDLER aisHandler) {
+        aisHandler.addListener(this);
+    }
+
     @Override
     public void findAndUndo(Object obj) {
         if (obj == this.aisHandler) {
@@ -252,8 +264,6 @@ public abstract class AisLayerCommon<AISHANDLER extends AisHandlerCommon>
         }
         long mmsi = aisTarget.getMmsi();
         TargetGraphic targetGraphic = this.getTargetGraphic(mmsi);
-        float mapScale = (this.getProjection() == null) ? 0 : this
-                .getProjection().getScale();
 
         if (aisTarget.isGone()) {
             if (targetGraphic != null) {
@@ -265,25 +275,64 @@ public abstract class AisLayerCommon<AISHANDLER extends AisHandlerCommon>
 
         // Create and insert
         if (targetGraphic == null) {
-            if (aisTarget instanceof VesselTarget) {
-                targetGraphic = new VesselGraphicComponentSelector(this.aisSettings.isShowNameLabels());
-            } else if (aisTarget instanceof SarTarget) {
-                targetGraphic = new SarTargetGraphic();
-            } else if (aisTarget instanceof AtoNTarget) {
-                targetGraphic = new AtonTargetGraphic();
-            } else {
-                LOG.error("Unknown target type");
+            targetGraphic = this.createTargetGraphic(aisTarget);
+            if (targetGraphic == null) {
                 return;
             }
             // add to map of graphics + graphics list
             this.addTargetGraphic(mmsi, targetGraphic);
         }
 
+        this.updateTargetGraphic(targetGraphic, aisTarget);
+    }
+
+    /**
+     * Creates the graphical representation of the given AIS target.
+     * 
+     * @param aisTarget
+     *            The AIS target to create a graphical representation for.
+     * @return The graphical representation or null if the target type is
+     *         unknown.
+     */
+    protected TargetGraphic createTargetGraphic(AisTarget aisTarget) {
+        if (aisTarget instanceof VesselTarget) {
+            return new VesselGraphicComponentSelector(this.aisSettings.isShowNameLabels());
+        } else if (aisTarget instanceof SarTarget) {
+            return new SarTargetGraphic();
+        } else if (aisTarget instanceof AtoNTarget) {
+            return new AtonTargetGraphic();
+        }
+        LOG.error("Unknown target type");
+        return null;
+    }
+
+    /**
+     * Sends the new data of an AIS target to its graphical representation
+     * and projects the graphic.
+     * 
+     * @param targetGraphic
+     *            The graphical representation of the AIS target.
+     * @param aisTarget
+     *            The updated AIS target.
+     */
+    protected void updateTargetGraphic(TargetGraphic targetGraphic, AisTarget aisTarget) {
+        float mapScale = (this.getProjection() == null) ? 0 : this
+                .getProjection().getScale();
         // Send the new location data to the graphic representing the AisTarget
         targetGraphic.update(aisTarget, this.aisSettings, this.navSettings, mapScale);
         targetGraphic.project(getProjection());
     }
     
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void targetsUpdated(Collection<AisTarget> aisTargets) {
+        for (AisTarget aisTarget : aisTargets) {
+            targetUpdated(aisTarget);
+        }
+    }
+
     /**
      * Invoked when a change occurs in the {@code AisSettings} object that this {@code AisLayerCommon} is registered with.
      */
@@ -0,0 +1,158 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.layers.ais;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.Immutable;
+import net.jcip.annotations.ThreadSafe;
+import dk.dma.epd.common.prototype.ais.AisHandlerCommon;
+import dk.dma.epd.common.prototype.ais.AisTarget;
+import dk.dma.epd.common.prototype.ais.IAisTargetBatchListener;
+
+/**
+ * Projection independent render state of the AIS targets, shared by the AIS layers of all map windows.
+ * <p>
+ * The model is the only listener of the AIS handler on behalf of the layers, so each target update is processed once
+ * regardless of the number of map windows. For each target, the model keeps the latest {@linkplain AisTarget} with a
+ * version stamp, and the model itself has a version stamp that changes whenever a target changes. A layer keeps
+ * graphics only for the targets within its viewport, and brings them up to date by comparing version stamps when it
+ * is prepared.
+ */
+@ThreadSafe
+public final class AisTargetRenderModel implements IAisTargetBatchListener {
+
+    @GuardedBy("AisTargetRenderModel.class")
+    private static final Map<AisHandlerCommon, AisTargetRenderModel> MODELS = new WeakHashMap<>();
+
+    private final Map<Long, RenderState> states = new ConcurrentHashMap<>();
+    private final AtomicLong version = new AtomicLong();
+
+    /**
+     * Returns the model of the given AIS handler, and creates it if this is the first request for the handler
+     *
+     * @param aisHandler
+     *            the AIS handler
+     * @return the model of the AIS handler
+     */
+    public static synchronized AisTargetRenderModel getInstance(AisHandlerCommon aisHandler) {
+        AisTargetRenderModel model = MODELS.get(aisHandler);
+        if (model == null) {
+            model = new AisTargetRenderModel();
+            MODELS.put(aisHandler, model);
+            aisHandler.addListener(model);
+        }
+        return model;
+    }
+
+    /**
+     * Constructor is package private as the model of the AIS handler should be used
+     */
+    AisTargetRenderModel() {
+    }
+
+    /**
+     * Returns the version of the model, which changes whenever a target is updated or removed
+     *
+     * @return the version of the model
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Returns the render state of the target with the given MMSI, or null if the target is unknown or gone
+     *
+     * @param mmsi
+     *            the MMSI of the target
+     * @return the render state of the target
+     */
+    public RenderState getState(long mmsi) {
+        return states.get(mmsi);
+    }
+
+    /**
+     * Returns the number of targets of the model
+     *
+     * @return the number of targets
+     */
+    public int size() {
+        return states.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void targetUpdated(AisTarget aisTarget) {
+        if (aisTarget == null) {
+            return;
+        }
+        long newVersion = version.incrementAndGet();
+        if (aisTarget.isGone()) {
+            states.remove(aisTarget.getMmsi());
+        } else {
+            states.put(aisTarget.getMmsi(), new RenderState(aisTarget, newVersion));
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void targetsUpdated(Collection<AisTarget> aisTargets) {
+        for (AisTarget aisTarget : aisTargets) {
+            targetUpdated(aisTarget);
+        }
+    }
+
+    /**
+     * The render state of a single target
+     */
+    @Immutable
+    public static final class RenderState {
+
+        private final AisTarget target;
+        private final long version;
+
+        RenderState(AisTarget target, long version) {
+            this.target = target;
+            this.version = version;
+        }
+
+        /**
+         * Returns the target as of the latest update
+         *
+         * @return the target
+         */
+        public AisTarget getTarget() {
+            return target;
+        }
+
+        /**
+         * Returns the version of the model at the latest update of the target
+         *
+         * @return the version of the target
+         */
+        public long getVersion() {
+            return version;
+        }
+    }
+}
@@ -19,19 +19,27 @@ import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
-import java.util.ArrayList;
-import java.util.Calendar;
-import java.util.List;
+import java.util.ArrayDeque;
+import java.util.Date;
 
+import com.bbn.openmap.omGraphics.OMGraphic;
 import com.bbn.openmap.omGraphics.OMGraphicList;
+import com.bbn.openmap.omGraphics.OMPoly;
+import com.bbn.openmap.proj.Projection;
 
 import dk.dma.enav.model.geometry.Position;
 import dk.dma.epd.common.prototype.ais.MobileTarget;
-import dk.dma.epd.common.prototype.ais.PastTrackPoint;
+import dk.dma.epd.common.prototype.ais.PastTrackRingBuffer;
+import dk.dma.epd.common.prototype.zoom.ZoomLevel;
 
 /**
  * Graphic for past-track route
  * <p>
+ * The graphics are updated incrementally. New past-track points are appended as legs and circles, and the legs and
+ * circles of points that have expired or are older than the display time are removed from the head. At the
+ * {@linkplain ZoomLevel#VESSEL_DOT} zoom level, the past track is instead displayed as a single polyline with the
+ * points decimated to the map scale.
+ * <p>
  * 16-12-2013: Class moved to epd-common from epd-shore
  */
 public class PastTrackGraphic extends OMGraphicList {
@@ -39,18 +47,41 @@ public class PastTrackGraphic extends OMGraphicList {
     
     private static Color LEG_COLOR = Color.darkGray;
     private static Color GONE_LEG_COLOR = Color.lightGray;
+    
+    /** Minimum distance in pixels between the points of the decimated polyline */
+    private static final double DECIMATION_PIXELS = 2.0;
+    /** Approximate number of pixels per meter at map scale 1 */
+    private static final double PIXELS_PER_METER = 3272.0;
 
     private MobileTarget mobileTarget;
+    private PastTrackRingBuffer pastTrack;
     private long lastPastTrackChangeTime = -1L;
     private boolean lastPastTrackVisibility;
+    private int lastPastTrackDisplayTime = -1;
     private Position lastPastTrackTargetPosition;
     private PastTrackLegGraphic activePastTrackLine;
+    private boolean activePastTrackLineAdded;
     private String name;
     private boolean arrowsVisible;
     private long mmsi = -1;
 
-    private List<PastTrackLegGraphic> routeLegs = new ArrayList<>();
-    private List<PastTrackWpCircle> routeWps = new ArrayList<>();
+    private ArrayDeque<PastTrackLegGraphic> routeLegs = new ArrayDeque<>();
+    private ArrayDeque<PastTrackWpCircle> routeWps = new ArrayDeque<>();
+    private int count;
+    
+    // The newest point represented by the graphics, and the time up to which points have been removed
+    private long lastPointTime = Long.MIN_VALUE;
+    private double lastPointLat;
+    private double lastPointLon;
+    private long trimTime = Long.MIN_VALUE;
+    
+    // Decimated polyline used when zoomed out
+    private boolean decimated;
+    private float decimationScale = -1f;
+    private double decimationDist;
+    private PastTrackRingBuffer decimatedPoints = new PastTrackRingBuffer();
+    private OMPoly decimatedLine;
+    private boolean decimatedLineAdded;
 
     /**
      * No-arg constructor
@@ -60,6 +91,9 @@ public class PastTrackGraphic extends OMGraphicList {
         Position nullGeoLocation = Position.create(0, 0);
         activePastTrackLine = new PastTrackLegGraphic(0, this, true,
                 nullGeoLocation, nullGeoLocation, LEG_COLOR);
+        decimatedLine = new OMPoly(new double[0], OMGraphic.DECIMAL_DEGREES, OMGraphic.LINETYPE_STRAIGHT);
+        decimatedLine.setStroke(new BasicStroke());
+        decimatedLine.setLinePaint(LEG_COLOR);
     }
     
     /**
@@ -88,33 +122,37 @@ public class PastTrackGraphic extends OMGraphicList {
     
     /**
      * Adds a new past track leg line
-     * @param index index of leg in list of past track records
-     * @param start start point of leg
-     * @param end end point of leg
+     * @param gone if the target was gone at the start point of the leg
+     * @param startLat start latitude of leg
+     * @param startLon start longitude of leg
+     * @param endLat end latitude of leg
+     * @param endLon end longitude of leg
      */
-    private void makeLegLine(int index, PastTrackPoint start, PastTrackPoint end) {
+    private void makeLegLine(boolean gone, double startLat, double startLon, double endLat, double endLon) {
     
-        Color legColor = start.hasGone() ? GONE_LEG_COLOR : LEG_COLOR;
+        Color legColor = gone ? GONE_LEG_COLOR : LEG_COLOR;
         
         PastTrackLegGraphic leg = new PastTrackLegGraphic(
-                index, 
+                count, 
                 this,
                 false, 
-                start.getPosition(), 
-                end.getPosition(), 
+                Position.create(startLat, startLon), 
+                Position.create(endLat, endLon), 
                 legColor);
+        leg.setArrows(arrowsVisible);
         routeLegs.add(leg);
         add(leg);
     }
 
     /**
      * Adds a new past track circle
-     * @param index the index of the circle in list of past track records
-     * @param p the past track point
+     * @param time the time of the past track point
+     * @param lat the latitude of the past track point
+     * @param lon the longitude of the past track point
      */
-    private void makeWpCircle(int index, PastTrackPoint p) {
-        PastTrackWpCircle wpCircle = new PastTrackWpCircle(this, index,
-                p.getPosition().getLatitude(), p.getPosition().getLongitude(), 0, 0, 2, 2, p.getDate());
+    private void makeWpCircle(long time, double lat, double lon) {
+        PastTrackWpCircle wpCircle = new PastTrackWpCircle(this, count,
+                lat, lon, 0, 0, 2, 2, new Date(time));
         wpCircle.setStroke(new BasicStroke(3));
         wpCircle.setLinePaint(LEG_COLOR);
         
@@ -134,7 +172,7 @@ public class PastTrackGraphic extends OMGraphicList {
      * Sets whether to show arrow heads or not
      * @param show whether to show arrow heads or not
      */
-    public void showArrowHeads(boolean show) {
+    public synchronized void showArrowHeads(boolean show) {
         if (this.arrowsVisible != show) {
             for (PastTrackLegGraphic routeLeg : routeLegs) {
                 routeLeg.setArrows(show);
@@ -170,6 +208,33 @@ public class PastTrackGraphic extends OMGraphicList {
         return !lastPastTrackTargetPosition.equals(targetPostion);
     }
     
+    /**
+     * Returns the time of the oldest point displayed, or {@code Long.MAX_VALUE} if there is none
+     * @return the time of the oldest point displayed
+     */
+    private long firstPointTime() {
+        if (decimated) {
+            return decimatedPoints.size() > 0 ? decimatedPoints.getTime(0) : Long.MAX_VALUE;
+        }
+        return routeWps.isEmpty() ? Long.MAX_VALUE : routeWps.peekFirst().getDate().getTime();
+    }
+    
+    /**
+     * Returns if the graphics represent any past-track points
+     * @return if the graphics represent any past-track points
+     */
+    private boolean hasPoints() {
+        return lastPointTime > trimTime;
+    }
+    
+    /**
+     * Returns the time after which past-track points are displayed
+     * @return the time after which past-track points are displayed
+     */
+    private long displayCutoff() {
+        return System.currentTimeMillis() - lastPastTrackDisplayTime * 60L * 1000L;
+    }
+    
     /**
      * Updates gui PastTrack from the given mobile target
      * 
@@ -188,63 +253,224 @@ public class PastTrackGraphic extends OMGraphicList {
      */
     public synchronized void update(MobileTarget mobileTarget, Position targetPostion) {
 
+        if (mobileTarget == null) {
+            this.mobileTarget = null;
+            this.pastTrack = null;
+            clearGraphics();
+            return;
+        }
+        
         boolean pastTrackVisible = pastTrackVisible(mobileTarget);
+        PastTrackRingBuffer pastTrackData = mobileTarget.getPastTrackData();
+        int pastTrackDisplayTime = mobileTarget.getSettings().getPastTrackDisplayTime();
         
         // Check if we need to update anything
-        if (this.mobileTarget == mobileTarget && 
-                mobileTarget != null &&
-                mobileTarget.getPastTrackData().getLastChangeTime() == lastPastTrackChangeTime &&
-                pastTrackVisible == lastPastTrackVisibility &&
-                !targetPositionChanged(targetPostion)) {
+        boolean changed = this.mobileTarget != mobileTarget || 
+                this.pastTrack != pastTrackData ||
+                pastTrackVisible != lastPastTrackVisibility ||
+                pastTrackDisplayTime != lastPastTrackDisplayTime;
+        if (!changed &&
+                pastTrackData.getLastChangeTime() == lastPastTrackChangeTime &&
+                !targetPositionChanged(targetPostion) &&
+                firstPointTime() > displayCutoff()) {
             return;
         }
         
         // Update the graphics
         this.mobileTarget = mobileTarget;
-        lastPastTrackChangeTime = this.mobileTarget.getPastTrackData().getLastChangeTime();
+        this.pastTrack = pastTrackData;
+        lastPastTrackChangeTime = pastTrackData.getLastChangeTime();
         lastPastTrackVisibility = pastTrackVisible;
+        lastPastTrackDisplayTime = pastTrackDisplayTime;
         lastPastTrackTargetPosition = targetPostion;
         setMmsi(mobileTarget.getMmsi());
         
-        // Clear old data
-        clear();
-        routeLegs.clear();
-        routeWps.clear();
+        // Start over if the target or settings have changed
+        if (changed) {
+            clearGraphics();
+        }
         
         // If the past track is not visible, return
         if (!pastTrackVisible) {
             return;
         }
         
-        // Compute how long back we want to display the past-track route
-        Calendar pastTrackDisplayTime = Calendar.getInstance();
-        pastTrackDisplayTime.add(Calendar.MINUTE, -mobileTarget.getSettings().getPastTrackDisplayTime());
-                
-        // Build the graphics
-        PastTrackPoint lastPoint = null;
-        int count = 0;            
-        for (PastTrackPoint point : mobileTarget.getPastTrackData().getPointsNewerThan(pastTrackDisplayTime.getTime())) {
-                
-            // Add the graphics
-            count++;
-            makeWpCircle(count, point);
-            if (lastPoint != null) {
-                makeLegLine(count, lastPoint, point);
+        updateGraphics();
+    }
+
+    /**
+     * Removes the expired points from the head of the graphics and appends the new points
+     */
+    private void updateGraphics() {
+        long cutoff = displayCutoff();
+        
+        synchronized (pastTrack) {
+            int size = pastTrack.size();
+            
+            // Start over if the past track has been cleared
+            if (hasPoints() && (size == 0 || pastTrack.getTime(size - 1) < lastPointTime)) {
+                clearGraphics();
+            }
+            
+            // Remove points that are no longer displayed or have been cleaned up
+            long headTime = cutoff;
+            if (size > 0) {
+                headTime = Math.max(headTime, pastTrack.getTime(0) - 1L);
             }
-            lastPoint = point;
+            trimHead(headTime);
+            
+            // Append the new points
+            for (int i = pastTrack.indexOfFirstNewerThan(Math.max(headTime, lastPointTime)); i < size; i++) {
+                appendPoint(pastTrack.getTime(i), pastTrack.getLatitude(i), pastTrack.getLongitude(i),
+                        i > 0 && pastTrack.isGone(i - 1));
+            }
+        }
+        
+        if (decimated) {
+            updateDecimatedLine();
         }
 
-        // Create the line from the latest past-track point to the targets current position
-        if (lastPoint != null) {
+        // Update the line from the latest past-track point to the targets current position
+        if (hasPoints() && lastPastTrackTargetPosition != null) {
             double[] activePastTrackLineLL = new double[] {
                     lastPastTrackTargetPosition.getLatitude(),
                     lastPastTrackTargetPosition.getLongitude(),
-                    lastPoint.getPosition().getLatitude(),
-                    lastPoint.getPosition().getLongitude(),
+                    lastPointLat,
+                    lastPointLon,
             };
             activePastTrackLine.setLL(activePastTrackLineLL);
-            add(activePastTrackLine);
+            if (!activePastTrackLineAdded) {
+                add(activePastTrackLine);
+                activePastTrackLineAdded = true;
+            }
+        } else if (activePastTrackLineAdded) {
+            remove(activePastTrackLine);
+            activePastTrackLineAdded = false;
+        }
+    }
+    
+    /**
+     * Removes the graphics of the points up to and including the given time
+     * @param time the time
+     */
+    private void trimHead(long time) {
+        trimTime = Math.max(trimTime, time);
+        if (decimated) {
+            decimatedPoints.removeUpTo(time);
+            return;
+        }
+        while (!routeWps.isEmpty() && routeWps.peekFirst().getDate().getTime() <= time) {
+            remove(routeWps.pollFirst());
+            // Remove the leg starting at the removed point
+            PastTrackLegGraphic leg = routeLegs.pollFirst();
+            if (leg != null) {
+                remove(leg);
+            }
+        }
+    }
+    
+    /**
+     * Appends a past-track point to the graphics
+     * @param time the time of the point
+     * @param lat the latitude of the point
+     * @param lon the longitude of the point
+     * @param gone if the target was gone at the previous point
+     */
+    private void appendPoint(long time, double lat, double lon, boolean gone) {
+        count++;
+        if (decimated) {
+            // Only keep points that are further apart than the decimation distance
+            if (!hasPoints() || decimatedPoints.size() == 0
+                    || distance(decimatedPoints.getLatitude(decimatedPoints.size() - 1),
+                            decimatedPoints.getLongitude(decimatedPoints.size() - 1), lat, lon) > decimationDist) {
+                decimatedPoints.add(time, lat, lon, false);
+            }
+        } else {
+            makeWpCircle(time, lat, lon);
+            if (hasPoints()) {
+                makeLegLine(gone, lastPointLat, lastPointLon, lat, lon);
+            }
+        }
+        lastPointTime = time;
+        lastPointLat = lat;
+        lastPointLon = lon;
+    }
+    
+    /**
+     * Updates the decimated polyline from the decimated points, ending at the latest point
+     */
+    private void updateDecimatedLine() {
+        int n = decimatedPoints.size();
+        boolean appendLast = hasPoints() && (n == 0 || decimatedPoints.getTime(n - 1) != lastPointTime);
+        double[] ll = new double[2 * (n + (appendLast ? 1 : 0))];
+        for (int i = 0; i < n; i++) {
+            ll[2 * i] = decimatedPoints.getLatitude(i);
+            ll[2 * i + 1] = decimatedPoints.getLongitude(i);
+        }
+        if (appendLast) {
+            ll[2 * n] = lastPointLat;
+            ll[2 * n + 1] = lastPointLon;
+        }
+        decimatedLine.setLocation(ll, OMGraphic.DECIMAL_DEGREES);
+        if (!decimatedLineAdded && ll.length >= 4) {
+            add(decimatedLine);
+            decimatedLineAdded = true;
+        }
+    }
+    
+    /**
+     * Removes all graphics
+     */
+    private void clearGraphics() {
+        clear();
+        routeLegs.clear();
+        routeWps.clear();
+        decimatedPoints.clear();
+        activePastTrackLineAdded = false;
+        decimatedLineAdded = false;
+        lastPointTime = Long.MIN_VALUE;
+        trimTime = Long.MIN_VALUE;
+    }
+    
+    /**
+     * Switches between the detailed and the decimated graphics according to the map scale, and
+     * rebuilds the decimated polyline when the scale has changed considerably
+     * @param mapScale the map scale
+     */
+    private void updateScale(float mapScale) {
+        boolean decimate = ZoomLevel.getFromScale(mapScale) == ZoomLevel.VESSEL_DOT;
+        if (decimate == decimated 
+                && (!decimate || (mapScale < 2f * decimationScale && mapScale > decimationScale / 2f))) {
+            return;
+        }
+        decimated = decimate;
+        decimationScale = mapScale;
+        decimationDist = DECIMATION_PIXELS * mapScale / PIXELS_PER_METER;
+        
+        clearGraphics();
+        if (pastTrack != null && lastPastTrackVisibility) {
+            updateGraphics();
+        }
+    }
+    
+    /**
+     * Returns the approximate distance in meters between the two positions
+     */
+    private static double distance(double lat1, double lon1, double lat2, double lon2) {
+        double dy = (lat2 - lat1) * 60.0 * 1852.0;
+        double dx = (lon2 - lon1) * Math.cos(Math.toRadians(lat1)) * 60.0 * 1852.0;
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+    
+    /**
+     * Switches between the detailed and decimated graphics before generating
+     */
+    @Override
+    public synchronized boolean generate(Projection p, boolean forceProjectAll) {
+        if (p != null) {
+            updateScale(p.getScale());
         }
+        return super.generate(p, forceProjectAll);
     }
 
     /**
@@ -0,0 +1,159 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.layers.background;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.dma.epd.common.prototype.zoom.ScaleDependentValues;
+
+/**
+ * The multi-resolution coastline geometry of a single shape file, as served by the {@linkplain CoastlineStore}.
+ * <p>
+ * The shape file is read once, and turned into a {@linkplain CoastlineLevel} for each entry of
+ * {@linkplain #LEVEL_MIN_SCALES}. Each level is simplified with the size of a screen pixel at the smallest scale of the
+ * level, and tiled with tiles matching the size of the map view at that scale. The levels are published together when
+ * they are all built, until then {@linkplain #getLevel(float)} returns null.
+ */
+@ThreadSafe
+public final class Coastline {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Coastline.class);
+
+    /** The smallest map scale of each level of detail */
+    static final float[] LEVEL_MIN_SCALES = { 0f, 500000f, 2000000f, 10000000f };
+
+    /** The depth of the tile grid of each level of detail, giving tiles of 180 / 2^depth degrees */
+    static final int[] LEVEL_TILE_DEPTHS = { 7, 5, 3, 1 };
+
+    private final Path shapeFile;
+
+    private volatile CoastlineLevel[] levels;
+
+    @GuardedBy("this")
+    private List<Runnable> loadListeners = new ArrayList<>();
+
+    /**
+     * Constructor
+     *
+     * @param shapeFile
+     *            the shape file
+     */
+    Coastline(Path shapeFile) {
+        this.shapeFile = shapeFile;
+    }
+
+    /**
+     * Reads the shape file and builds the levels of detail. Called once by the {@linkplain CoastlineStore}.
+     */
+    void load() {
+        CoastlineLevel[] result = new CoastlineLevel[LEVEL_MIN_SCALES.length];
+        try {
+            long start = System.currentTimeMillis();
+            List<double[]> rings = ShapeFileReader.readRings(shapeFile);
+            for (int i = 0; i < result.length; i++) {
+                result[i] = CoastlineLevel.build(rings, LEVEL_MIN_SCALES[i],
+                        ScaleDependentValues.getPolygonSimplificationTolerance(LEVEL_MIN_SCALES[i]),
+                        LEVEL_TILE_DEPTHS[i]);
+            }
+            LOG.info("Loaded coastline " + shapeFile + " with " + rings.size() + " polygons in "
+                    + (System.currentTimeMillis() - start) + " ms. Points per level: " + pointCounts(result));
+        } catch (IOException | RuntimeException e) {
+            LOG.error("Failed loading coastline " + shapeFile, e);
+            result = new CoastlineLevel[0];
+        }
+
+        List<Runnable> listeners;
+        synchronized (this) {
+            levels = result;
+            listeners = loadListeners;
+            loadListeners = null;
+        }
+        for (Runnable listener : listeners) {
+            listener.run();
+        }
+    }
+
+    private static String pointCounts(CoastlineLevel[] levels) {
+        StringBuilder builder = new StringBuilder();
+        for (CoastlineLevel level : levels) {
+            builder.append(builder.length() == 0 ? "" : ", ").append(level.getPointCount());
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Returns the shape file of the coastline
+     *
+     * @return the shape file of the coastline
+     */
+    public Path getShapeFile() {
+        return shapeFile;
+    }
+
+    /**
+     * Returns if the coastline has been loaded
+     *
+     * @return if the coastline has been loaded
+     */
+    public boolean isLoaded() {
+        return levels != null;
+    }
+
+    /**
+     * Returns the level of detail to use for the given map scale, or null if the coastline is not loaded
+     *
+     * @param mapScale
+     *            the map scale
+     * @return the level of detail for the map scale
+     */
+    public CoastlineLevel getLevel(float mapScale) {
+        CoastlineLevel[] levels = this.levels;
+        if (levels == null || levels.length == 0) {
+            return null;
+        }
+        CoastlineLevel result = levels[0];
+        for (CoastlineLevel level : levels) {
+            if (mapScale >= level.getMinScale()) {
+                result = level;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds a listener to call once the coastline has been loaded. Returns false without adding the listener if the
+     * coastline is already loaded.
+     *
+     * @param listener
+     *            the listener
+     * @return if the listener was added
+     */
+    public synchronized boolean addLoadListener(Runnable listener) {
+        if (loadListeners == null) {
+            return false;
+        }
+        loadListeners.add(listener);
+        return true;
+    }
+}
@@ -0,0 +1,201 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.layers.background;
+
+import java.awt.Color;
+import java.awt.geom.Point2D;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import net.jcip.annotations.Immutable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.bbn.openmap.layer.OMGraphicHandlerLayer;
+import com.bbn.openmap.omGraphics.OMGraphicConstants;
+import com.bbn.openmap.omGraphics.OMGraphicList;
+import com.bbn.openmap.omGraphics.OMPoly;
+import com.bbn.openmap.proj.Projection;
+
+/**
+ * Background layer drawing the coastline shape files from the shared {@linkplain CoastlineStore}.
+ * <p>
+ * The layer is configured with the same properties as the OpenMap {@code MultiShapeLayer}, i.e. a
+ * {@code shapeFileList} of names, each with a {@code shapeFile}, {@code lineColor} and {@code fillColor}. The first
+ * shape file of the list is drawn on top. On each projection change, only the tiles of the level of detail matching
+ * the map scale that intersect the viewport are drawn. The graphics of the visible tiles are kept between projection
+ * changes, so panning only creates graphics for the tiles coming into view.
+ */
+public class CoastlineLayer extends OMGraphicHandlerLayer {
+
+    private static final long serialVersionUID = 1L;
+    private static final Logger LOG = LoggerFactory.getLogger(CoastlineLayer.class);
+
+    public static final String SHAPE_FILE_LIST_PROPERTY = "shapeFileList";
+    public static final String SHAPE_FILE_PROPERTY = "shapeFile";
+    public static final String LINE_COLOR_PROPERTY = "lineColor";
+    public static final String FILL_COLOR_PROPERTY = "fillColor";
+
+    private final List<ShapeFileStyle> shapeFiles = new CopyOnWriteArrayList<>();
+
+    private Map<CoastlineTile, OMGraphicList[]> tileGraphics = new HashMap<>();
+
+    /**
+     * Constructor
+     */
+    public CoastlineLayer() {
+        super();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setProperties(String prefix, Properties props) {
+        super.setProperties(prefix, props);
+
+        String scope = (prefix == null || prefix.isEmpty()) ? "" : prefix + ".";
+        String shapeFileList = props.getProperty(scope + SHAPE_FILE_LIST_PROPERTY, "").trim();
+        shapeFiles.clear();
+        for (String name : shapeFileList.split("\\s+")) {
+            String shapeFile = props.getProperty(scope + name + "." + SHAPE_FILE_PROPERTY);
+            if (name.isEmpty() || shapeFile == null) {
+                continue;
+            }
+            Coastline coastline = CoastlineStore.getInstance().getCoastline(Paths.get(shapeFile));
+            Color lineColor = parseColor(props.getProperty(scope + name + "." + LINE_COLOR_PROPERTY), Color.black);
+            Color fillColor = parseColor(props.getProperty(scope + name + "." + FILL_COLOR_PROPERTY), null);
+            shapeFiles.add(new ShapeFileStyle(coastline, lineColor, fillColor));
+
+            coastline.addLoadListener(new Runnable() {
+                @Override
+                public void run() {
+                    doPrepare();
+                }
+            });
+        }
+    }
+
+    /**
+     * Parses a hexadecimal RGB or ARGB color, or returns the default color if not defined
+     */
+    private static Color parseColor(String value, Color defaultColor) {
+        if (value == null || value.trim().isEmpty()) {
+            return defaultColor;
+        }
+        try {
+            String hex = value.trim();
+            long argb = Long.parseLong(hex, 16);
+            return (hex.length() > 6) ? new Color((int) argb, true) : new Color((int) argb);
+        } catch (NumberFormatException e) {
+            LOG.warn("Invalid color " + value);
+            return defaultColor;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized OMGraphicList prepare() {
+        OMGraphicList list = new OMGraphicList();
+        list.setTraverseMode(OMGraphicList.LAST_ADDED_ON_TOP);
+        Projection projection = getProjection();
+        if (projection == null || !isVisible()) {
+            return list;
+        }
+
+        Point2D ul = projection.getUpperLeft();
+        Point2D lr = projection.getLowerRight();
+        double minLat = Math.min(ul.getY(), lr.getY());
+        double maxLat = Math.max(ul.getY(), lr.getY());
+
+        // Keep the graphics of the visible tiles only
+        Map<CoastlineTile, OMGraphicList[]> visibleGraphics = new HashMap<>();
+        for (int i = shapeFiles.size() - 1; i >= 0; i--) {
+            ShapeFileStyle style = shapeFiles.get(i);
+            CoastlineLevel level = style.coastline.getLevel(projection.getScale());
+            if (level == null) {
+                continue;
+            }
+            OMGraphicList fills = new OMGraphicList();
+            OMGraphicList outlines = new OMGraphicList();
+            for (CoastlineTile tile : level.getTiles(minLat, ul.getX(), maxLat, lr.getX())) {
+                OMGraphicList[] graphics = tileGraphics.get(tile);
+                if (graphics == null) {
+                    graphics = createTileGraphics(tile, style);
+                }
+                visibleGraphics.put(tile, graphics);
+                fills.add(graphics[0]);
+                outlines.add(graphics[1]);
+            }
+            // The outlines are drawn above all fills, to hide the tile borders
+            list.add(fills);
+            list.add(outlines);
+        }
+        tileGraphics = visibleGraphics;
+
+        list.project(projection, true);
+        return list;
+    }
+
+    /**
+     * Creates the fill and outline graphics of a tile
+     */
+    private static OMGraphicList[] createTileGraphics(CoastlineTile tile, ShapeFileStyle style) {
+        OMGraphicList fills = new OMGraphicList();
+        if (style.fillColor != null) {
+            for (int i = 0; i < tile.getFillCount(); i++) {
+                OMPoly poly = new OMPoly(tile.getFillPoints(i), OMGraphicConstants.DECIMAL_DEGREES,
+                        OMGraphicConstants.LINETYPE_STRAIGHT);
+                poly.setIsPolygon(true);
+                poly.setFillPaint(style.fillColor);
+                // Stroke the fill with the fill color to avoid seams between the tiles
+                poly.setLinePaint(style.fillColor);
+                fills.add(poly);
+            }
+        }
+        OMGraphicList outlines = new OMGraphicList();
+        for (int i = 0; i < tile.getOutlineCount(); i++) {
+            OMPoly poly = new OMPoly(tile.getOutlinePoints(i), OMGraphicConstants.DECIMAL_DEGREES,
+                    OMGraphicConstants.LINETYPE_STRAIGHT);
+            poly.setIsPolygon(false);
+            poly.setLinePaint(style.lineColor);
+            outlines.add(poly);
+        }
+        return new OMGraphicList[] { fills, outlines };
+    }
+
+    /**
+     * A coastline of the layer with its colors
+     */
+    @Immutable
+    private static final class ShapeFileStyle {
+        final Coastline coastline;
+        final Color lineColor;
+        final Color fillColor;
+
+        ShapeFileStyle(Coastline coastline, Color lineColor, Color fillColor) {
+            this.coastline = coastline;
+            this.lineColor = lineColor;
+            this.fillColor = fillColor;
+        }
+    }
+}
@@ -0,0 +1,412 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.layers.background;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.jcip.annotations.Immutable;
+import dk.dma.epd.common.util.PolygonSimplifier;
+
+/**
+ * One level of detail of a {@linkplain Coastline}.
+ * <p>
+ * The polygons of the level are simplified with the tolerance of the level, and cut into a grid of square tiles of
+ * {@code 180 / 2^depth} degrees. The polygons are cut by recursively halving the world box and clipping the polygons
+ * to each half, so each level of the recursion only visits the points once. Only tiles with geometry are kept.
+ */
+@Immutable
+public final class CoastlineLevel {
+
+    private static final double METERS_PER_DEGREE = 60.0 * 1852.0;
+
+    private final float minScale;
+    private final double tileSize;
+    private final int columns;
+    private final int rows;
+    private final Map<Integer, CoastlineTile> tiles;
+
+    private CoastlineLevel(float minScale, int depth, Map<Integer, CoastlineTile> tiles) {
+        this.minScale = minScale;
+        this.tileSize = 180.0 / (1 << depth);
+        this.columns = 2 << depth;
+        this.rows = 1 << depth;
+        this.tiles = tiles;
+    }
+
+    /**
+     * Returns the smallest map scale this level is used for
+     *
+     * @return the smallest map scale of the level
+     */
+    public float getMinScale() {
+        return minScale;
+    }
+
+    /**
+     * Returns the size of the tiles in degrees
+     *
+     * @return the size of the tiles in degrees
+     */
+    public double getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * Returns the number of non-empty tiles
+     *
+     * @return the number of non-empty tiles
+     */
+    public int getTileCount() {
+        return tiles.size();
+    }
+
+    /**
+     * Returns the total number of points of the level
+     *
+     * @return the total number of points of the level
+     */
+    public int getPointCount() {
+        int count = 0;
+        for (CoastlineTile tile : tiles.values()) {
+            count += tile.getPointCount();
+        }
+        return count;
+    }
+
+    /**
+     * Returns the non-empty tiles intersecting the given box. If {@code minLon} is greater than {@code maxLon}, the box
+     * is taken to cross the date line.
+     *
+     * @param minLat
+     *            the minimum latitude of the box
+     * @param minLon
+     *            the minimum longitude of the box
+     * @param maxLat
+     *            the maximum latitude of the box
+     * @param maxLon
+     *            the maximum longitude of the box
+     * @return the tiles intersecting the box
+     */
+    public List<CoastlineTile> getTiles(double minLat, double minLon, double maxLat, double maxLon) {
+        List<CoastlineTile> result = new ArrayList<>();
+        int y0 = row(minLat);
+        int y1 = row(maxLat);
+        if (minLon <= maxLon) {
+            addTiles(result, y0, y1, column(minLon), column(maxLon));
+        } else {
+            addTiles(result, y0, y1, column(minLon), columns - 1);
+            addTiles(result, y0, y1, 0, column(maxLon));
+        }
+        return result;
+    }
+
+    private void addTiles(List<CoastlineTile> result, int y0, int y1, int x0, int x1) {
+        for (int y = y0; y <= y1; y++) {
+            for (int x = x0; x <= x1; x++) {
+                CoastlineTile tile = tiles.get(y * columns + x);
+                if (tile != null) {
+                    result.add(tile);
+                }
+            }
+        }
+    }
+
+    private int column(double lon) {
+        return Math.max(0, Math.min(columns - 1, (int) Math.floor((lon + 180.0) / tileSize)));
+    }
+
+    private int row(double lat) {
+        return Math.max(0, Math.min(rows - 1, (int) Math.floor((lat + 90.0) / tileSize)));
+    }
+
+    /**
+     * Builds a level of detail from the given rings
+     *
+     * @param rings
+     *            the rings of interleaved longitude/latitude values
+     * @param minScale
+     *            the smallest map scale the level is used for
+     * @param toleranceMeters
+     *            the simplification tolerance. Rings smaller than the tolerance are dropped
+     * @param depth
+     *            the depth of the tile grid
+     * @return the level of detail
+     */
+    static CoastlineLevel build(List<double[]> rings, float minScale, double toleranceMeters, int depth) {
+        Builder builder = new Builder(depth);
+        for (double[] ring : rings) {
+            double[] simplified = simplify(ring, toleranceMeters);
+            if (simplified != null) {
+                builder.clip(simplified, -180.0, -90.0, 180.0, 90.0);
+                builder.addOutlines(simplified);
+            }
+        }
+        return new CoastlineLevel(minScale, depth, builder.build());
+    }
+
+    /**
+     * Returns the simplified ring, or null if the ring is smaller than the tolerance
+     */
+    private static double[] simplify(double[] ring, double toleranceMeters) {
+        int n = ring.length / 2;
+        double[] lats = new double[n];
+        double[] lons = new double[n];
+        double minLat = 90, minLon = 180, maxLat = -90, maxLon = -180;
+        for (int i = 0; i < n; i++) {
+            lons[i] = ring[i * 2];
+            lats[i] = ring[i * 2 + 1];
+            minLat = Math.min(minLat, lats[i]);
+            minLon = Math.min(minLon, lons[i]);
+            maxLat = Math.max(maxLat, lats[i]);
+            maxLon = Math.max(maxLon, lons[i]);
+        }
+        if (toleranceMeters <= 0.0) {
+            return ring;
+        }
+        double latExtent = (maxLat - minLat) * METERS_PER_DEGREE;
+        double lonExtent = (maxLon - minLon) * METERS_PER_DEGREE * Math.cos(Math.toRadians((minLat + maxLat) / 2.0));
+        if (latExtent < toleranceMeters && lonExtent < toleranceMeters) {
+            return null;
+        }
+
+        boolean[] keep = PolygonSimplifier.simplify(lats, lons, toleranceMeters, true);
+        double[] result = new double[ring.length];
+        int j = 0;
+        for (int i = 0; i < n; i++) {
+            if (keep[i]) {
+                result[j++] = lons[i];
+                result[j++] = lats[i];
+            }
+        }
+        return Arrays.copyOf(result, j);
+    }
+
+    /**
+     * Accumulates the fills and outlines of the tiles of a level
+     */
+    private static final class Builder {
+        private final double tileSize;
+        private final int columns;
+        private final int rows;
+        private final Map<Integer, TileBuilder> tiles = new HashMap<>();
+
+        Builder(int depth) {
+            tileSize = 180.0 / (1 << depth);
+            columns = 2 << depth;
+            rows = 1 << depth;
+        }
+
+        private TileBuilder tile(int x, int y) {
+            TileBuilder tile = tiles.get(y * columns + x);
+            if (tile == null) {
+                tile = new TileBuilder(x, y);
+                tiles.put(y * columns + x, tile);
+            }
+            return tile;
+        }
+
+        /**
+         * Clips the ring to the halves of the box until the box is a single tile
+         */
+        void clip(double[] ring, double x0, double y0, double x1, double y1) {
+            if (x1 - x0 <= tileSize * 1.0001 && y1 - y0 <= tileSize * 1.0001) {
+                int x = (int) Math.round((x0 + 180.0) / tileSize);
+                int y = (int) Math.round((y0 + 90.0) / tileSize);
+                tile(Math.min(columns - 1, x), Math.min(rows - 1, y)).addFill(ring);
+                return;
+            }
+            if (x1 - x0 >= y1 - y0) {
+                double mid = (x0 + x1) / 2.0;
+                double[] low = clipToSlab(ring, 0, x0, mid);
+                if (low != null) {
+                    clip(low, x0, y0, mid, y1);
+                }
+                double[] high = clipToSlab(ring, 0, mid, x1);
+                if (high != null) {
+                    clip(high, mid, y0, x1, y1);
+                }
+            } else {
+                double mid = (y0 + y1) / 2.0;
+                double[] low = clipToSlab(ring, 1, y0, mid);
+                if (low != null) {
+                    clip(low, x0, y0, x1, mid);
+                }
+                double[] high = clipToSlab(ring, 1, mid, y1);
+                if (high != null) {
+                    clip(high, x0, mid, x1, y1);
+                }
+            }
+        }
+
+        /**
+         * Adds the edges of the ring as runs of consecutive edges to the tiles they touch
+         */
+        void addOutlines(double[] ring) {
+            int n = ring.length / 2;
+            List<TileBuilder> touched = new ArrayList<>();
+            for (int s = 0; s < n; s++) {
+                int e = (s + 1) % n;
+                double ax = ring[s * 2], ay = ring[s * 2 + 1];
+                double bx = ring[e * 2], by = ring[e * 2 + 1];
+                int cx0 = column(Math.min(ax, bx)), cx1 = column(Math.max(ax, bx));
+                int cy0 = row(Math.min(ay, by)), cy1 = row(Math.max(ay, by));
+                for (int y = cy0; y <= cy1; y++) {
+                    for (int x = cx0; x <= cx1; x++) {
+                        TileBuilder tile = tile(x, y);
+                        if (tile.lastSegment != s - 1) {
+                            tile.finishRun();
+                            tile.appendRun(ay, ax);
+                            if (!tile.touched) {
+                                tile.touched = true;
+                                touched.add(tile);
+                            }
+                        }
+                        tile.appendRun(by, bx);
+                        tile.lastSegment = s;
+                    }
+                }
+            }
+            for (TileBuilder tile : touched) {
+                tile.finishRun();
+                tile.touched = false;
+            }
+        }
+
+        private int column(double lon) {
+            return Math.max(0, Math.min(columns - 1, (int) Math.floor((lon + 180.0) / tileSize)));
+        }
+
+        private int row(double lat) {
+            return Math.max(0, Math.min(rows - 1, (int) Math.floor((lat + 90.0) / tileSize)));
+        }
+
+        Map<Integer, CoastlineTile> build() {
+            Map<Integer, CoastlineTile> result = new HashMap<>();
+            for (Map.Entry<Integer, TileBuilder> e : tiles.entrySet()) {
+                TileBuilder tile = e.getValue();
+                result.put(e.getKey(), new CoastlineTile(tile.x, tile.y, tile.fills.toArray(new float[tile.fills
+                        .size()][]), tile.outlines.toArray(new float[tile.outlines.size()][])));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Accumulates the fills and outlines of a single tile
+     */
+    private static final class TileBuilder {
+        final int x;
+        final int y;
+        final List<float[]> fills = new ArrayList<>();
+        final List<float[]> outlines = new ArrayList<>();
+
+        float[] run = new float[64];
+        int runSize;
+        int lastSegment = -2;
+        boolean touched;
+
+        TileBuilder(int x, int y) {
+            this.x = x;
+            this.y = y;
+        }
+
+        void addFill(double[] ring) {
+            int n = ring.length / 2;
+            float[] fill = new float[n * 2 + 2];
+            for (int i = 0; i < n; i++) {
+                fill[i * 2] = (float) ring[i * 2 + 1];
+                fill[i * 2 + 1] = (float) ring[i * 2];
+            }
+            fill[n * 2] = fill[0];
+            fill[n * 2 + 1] = fill[1];
+            fills.add(fill);
+        }
+
+        void appendRun(double lat, double lon) {
+            if (runSize + 2 > run.length) {
+                run = Arrays.copyOf(run, run.length * 2);
+            }
+            run[runSize++] = (float) lat;
+            run[runSize++] = (float) lon;
+        }
+
+        void finishRun() {
+            if (runSize >= 4) {
+                outlines.add(Arrays.copyOf(run, runSize));
+            }
+            runSize = 0;
+            lastSegment = -2;
+        }
+    }
+
+    /**
+     * Clips the ring to the slab between the given values along the given axis. Returns the ring itself if it is
+     * within the slab, or null if nothing remains.
+     */
+    static double[] clipToSlab(double[] ring, int axis, double lo, double hi) {
+        double min = Double.MAX_VALUE, max = -Double.MAX_VALUE;
+        for (int i = axis; i < ring.length; i += 2) {
+            min = Math.min(min, ring[i]);
+            max = Math.max(max, ring[i]);
+        }
+        if (max <= lo || min >= hi) {
+            return null;
+        }
+        if (min >= lo && max <= hi) {
+            return ring;
+        }
+        double[] result = ring;
+        if (min < lo) {
+            result = clipHalfPlane(result, axis, lo, true);
+        }
+        if (result != null && max > hi) {
+            result = clipHalfPlane(result, axis, hi, false);
+        }
+        return result;
+    }
+
+    /**
+     * Sutherland-Hodgman clipping of the ring to one side of the line where the given axis has the given value
+     */
+    private static double[] clipHalfPlane(double[] ring, int axis, double value, boolean keepGreater) {
+        int n = ring.length / 2;
+        int other = 1 - axis;
+        double[] out = new double[n * 4];
+        int m = 0;
+        for (int i = 0; i < n; i++) {
+            int prev = (i + n - 1) % n;
+            double c = ring[i * 2 + axis];
+            double p = ring[prev * 2 + axis];
+            boolean curIn = keepGreater ? c >= value : c <= value;
+            boolean prevIn = keepGreater ? p >= value : p <= value;
+            if (curIn != prevIn) {
+                double t = (value - p) / (c - p);
+                out[m * 2 + axis] = value;
+                out[m * 2 + other] = ring[prev * 2 + other] + t * (ring[i * 2 + other] - ring[prev * 2 + other]);
+                m++;
+            }
+            if (curIn) {
+                out[m * 2] = ring[i * 2];
+                out[m * 2 + 1] = ring[i * 2 + 1];
+                m++;
+            }
+        }
+        return (m < 3) ? null : Arrays.copyOf(out, m * 2);
+    }
+}
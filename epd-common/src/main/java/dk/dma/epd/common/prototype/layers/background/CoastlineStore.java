@@ -0,0 +1,78 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.layers.background;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+import dk.dma.epd.common.prototype.EPD;
+
+/**
+ * Process wide store of the coastline geometry shared by the background layers of all map windows.
+ * <p>
+ * Each shape file is loaded once, in a background thread, the first time it is requested. Subsequent requests return
+ * the same {@linkplain Coastline}, so opening another map window neither reads the shape files again nor keeps another
+ * copy of the geometry.
+ */
+@ThreadSafe
+public final class CoastlineStore {
+
+    private static final CoastlineStore INSTANCE = new CoastlineStore();
+
+    @GuardedBy("this")
+    private final Map<Path, Coastline> coastlines = new HashMap<>();
+
+    /**
+     * Returns the store shared by all background layers
+     *
+     * @return the shared store
+     */
+    public static CoastlineStore getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the coastline of the given shape file, and starts loading it if it has not been requested before
+     *
+     * @param shapeFile
+     *            the shape file
+     * @return the coastline of the shape file
+     */
+    public synchronized Coastline getCoastline(Path shapeFile) {
+        Path key = shapeFile.toAbsolutePath().normalize();
+        Coastline coastline = coastlines.get(key);
+        if (coastline == null) {
+            coastline = new Coastline(key);
+            coastlines.put(key, coastline);
+            final Coastline loading = coastline;
+            EPD.startThread(new Runnable() {
+                @Override
+                public void run() {
+                    loading.load();
+                }
+            }, "CoastlineStore-" + key.getFileName());
+        }
+        return coastline;
+    }
+
+    /**
+     * Constructor is private as the shared instance should be used
+     */
+    private CoastlineStore() {
+    }
+}
@@ -0,0 +1,113 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.layers.background;
+
+import net.jcip.annotations.Immutable;
+
+/**
+ * The coastline geometry of one tile of a {@linkplain CoastlineLevel}.
+ * <p>
+ * The fills are the polygons clipped to the tile, so adjacent tiles together fill the original polygons. As the clipped
+ * polygons have edges along the tile borders, the coastline itself is kept separately as outlines, i.e. runs of
+ * consecutive polygon edges touching the tile. Points are stored as interleaved latitude/longitude floats to keep the
+ * shared store small, and the fills are closed by repeating the first point.
+ */
+@Immutable
+public final class CoastlineTile {
+
+    private final int x;
+    private final int y;
+    private final float[][] fills;
+    private final float[][] outlines;
+
+    CoastlineTile(int x, int y, float[][] fills, float[][] outlines) {
+        this.x = x;
+        this.y = y;
+        this.fills = fills;
+        this.outlines = outlines;
+    }
+
+    /**
+     * Returns the column of the tile in the tile grid of the level
+     *
+     * @return the column of the tile
+     */
+    public int getX() {
+        return x;
+    }
+
+    /**
+     * Returns the row of the tile in the tile grid of the level
+     *
+     * @return the row of the tile
+     */
+    public int getY() {
+        return y;
+    }
+
+    public int getFillCount() {
+        return fills.length;
+    }
+
+    public int getOutlineCount() {
+        return outlines.length;
+    }
+
+    /**
+     * Returns the interleaved latitude/longitude points of the given fill polygon
+     *
+     * @param index
+     *            the fill index
+     * @return the points of the fill polygon
+     */
+    public double[] getFillPoints(int index) {
+        return toDoubles(fills[index]);
+    }
+
+    /**
+     * Returns the interleaved latitude/longitude points of the given outline
+     *
+     * @param index
+     *            the outline index
+     * @return the points of the outline
+     */
+    public double[] getOutlinePoints(int index) {
+        return toDoubles(outlines[index]);
+    }
+
+    /**
+     * Returns the total number of points of the tile
+     *
+     * @return the total number of points of the tile
+     */
+    public int getPointCount() {
+        int count = 0;
+        for (float[] fill : fills) {
+            count += fill.length / 2;
+        }
+        for (float[] outline : outlines) {
+            count += outline.length / 2;
+        }
+        return count;
+    }
+
+    private static double[] toDoubles(float[] points) {
+        double[] result = new double[points.length];
+        for (int i = 0; i < points.length; i++) {
+            result[i] = points[i];
+        }
+        return result;
+    }
+}
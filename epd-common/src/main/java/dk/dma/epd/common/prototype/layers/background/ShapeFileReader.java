@@ -0,0 +1,135 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.layers.background;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Minimal reader of the polygon records of an ESRI shape file, such as the GSHHS coastline files.
+ * <p>
+ * Each part of a polygon record is returned as a separate ring of interleaved longitude/latitude values, without
+ * repeating the first point. Records of other shape types are skipped.
+ */
+final class ShapeFileReader {
+
+    private static final int FILE_CODE = 9994;
+    private static final int HEADER_LENGTH = 100;
+
+    private static final int POLYGON = 5;
+    private static final int POLYGON_Z = 15;
+    private static final int POLYGON_M = 25;
+
+    /**
+     * Reads the polygon rings of the given shape file
+     *
+     * @param shapeFile
+     *            the .shp file
+     * @return the rings of interleaved longitude/latitude values
+     * @throws IOException
+     *             if the file cannot be read or is not a shape file
+     */
+    static List<double[]> readRings(Path shapeFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(shapeFile, StandardOpenOption.READ)) {
+            ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return readRings(buf);
+        }
+    }
+
+    /**
+     * Reads the polygon rings of the shape file contents
+     *
+     * @param buf
+     *            the shape file contents
+     * @return the rings of interleaved longitude/latitude values
+     * @throws IOException
+     *             if the contents are not a shape file
+     */
+    static List<double[]> readRings(ByteBuffer buf) throws IOException {
+        buf.order(ByteOrder.BIG_ENDIAN);
+        if (buf.limit() < HEADER_LENGTH || buf.getInt(0) != FILE_CODE) {
+            throw new IOException("Not a shape file");
+        }
+        int fileLength = (int) Math.min(buf.limit(), buf.getInt(24) * 2L);
+
+        List<double[]> rings = new ArrayList<>();
+        int pos = HEADER_LENGTH;
+        while (pos + 8 <= fileLength) {
+            buf.order(ByteOrder.BIG_ENDIAN);
+            int contentLength = buf.getInt(pos + 4) * 2;
+            int content = pos + 8;
+            pos = content + contentLength;
+            if (contentLength < 4 || pos > fileLength) {
+                break;
+            }
+
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+            int shapeType = buf.getInt(content);
+            if (shapeType != POLYGON && shapeType != POLYGON_Z && shapeType != POLYGON_M) {
+                continue;
+            }
+
+            // Skip the shape type and the bounding box
+            int numParts = buf.getInt(content + 36);
+            int numPoints = buf.getInt(content + 40);
+            int partsOffset = content + 44;
+            int pointsOffset = partsOffset + numParts * 4;
+            if (numParts <= 0 || numPoints <= 0 || pointsOffset + numPoints * 16 > pos) {
+                continue;
+            }
+            for (int part = 0; part < numParts; part++) {
+                int start = buf.getInt(partsOffset + part * 4);
+                int end = (part + 1 < numParts) ? buf.getInt(partsOffset + (part + 1) * 4) : numPoints;
+                double[] ring = readRing(buf, pointsOffset, start, end);
+                if (ring != null) {
+                    rings.add(ring);
+                }
+            }
+        }
+        return rings;
+    }
+
+    /**
+     * Reads the points of a part, dropping the closing point. Returns null for parts of less than three points
+     */
+    private static double[] readRing(ByteBuffer buf, int pointsOffset, int start, int end) {
+        int n = end - start;
+        if (n > 1 && buf.getDouble(pointsOffset + start * 16) == buf.getDouble(pointsOffset + (end - 1) * 16)
+                && buf.getDouble(pointsOffset + start * 16 + 8) == buf.getDouble(pointsOffset + (end - 1) * 16 + 8)) {
+            n--;
+        }
+        if (n < 3) {
+            return null;
+        }
+        double[] ring = new double[n * 2];
+        for (int i = 0; i < n; i++) {
+            ring[i * 2] = buf.getDouble(pointsOffset + (start + i) * 16);
+            ring[i * 2 + 1] = buf.getDouble(pointsOffset + (start + i) * 16 + 8);
+        }
+        return ring;
+    }
+
+    /**
+     * Constructor is private as this class should not be instantiated.
+     */
+    private ShapeFileReader() {
+    }
+}
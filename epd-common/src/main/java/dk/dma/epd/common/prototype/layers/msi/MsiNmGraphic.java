@@ -15,11 +15,13 @@
 package dk.dma.epd.common.prototype.layers.msi;
 
 import com.bbn.openmap.omGraphics.OMGraphicList;
+import dk.dma.epd.common.prototype.layers.util.IScaleDependentGraphic;
 import dk.dma.epd.common.prototype.notification.MsiNmNotification;
 
-public class MsiNmGraphic extends OMGraphicList {
+public class MsiNmGraphic extends OMGraphicList implements IScaleDependentGraphic {
     private static final long serialVersionUID = 1L;
     MsiNmNotification message;
+    MsiNmLocationGraphic msiNmLocationGraphic;
 
     public MsiNmGraphic(MsiNmNotification message) {
         super();
@@ -30,11 +32,40 @@ public class MsiNmGraphic extends OMGraphicList {
         add(msiSymbolGrahic);
         
         // Create location grahic
-        MsiNmLocationGraphic msiNmLocationGraphic = new MsiNmLocationGraphic(message);
+        msiNmLocationGraphic = new MsiNmLocationGraphic(message);
         add(msiNmLocationGraphic);
     }
 
     public MsiNmNotification getMessage() {
         return message;
     }
+
+    /**
+     * Returns the bounding box of the location graphic extended with the symbol location
+     */
+    @Override
+    public double[] getBoundingBox() {
+        double[] bbox = msiNmLocationGraphic.getBoundingBox();
+        if (message.getLocation() == null) {
+            return bbox;
+        }
+        double lat = message.getLocation().getLatitude();
+        double lon = message.getLocation().getLongitude();
+        if (bbox == null) {
+            return new double[] { lat, lon, lat, lon };
+        }
+        bbox[0] = Math.min(bbox[0], lat);
+        bbox[1] = Math.min(bbox[1], lon);
+        bbox[2] = Math.max(bbox[2], lat);
+        bbox[3] = Math.max(bbox[3], lon);
+        return bbox;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setSimplificationLevel(int level) {
+        msiNmLocationGraphic.setSimplificationLevel(level);
+    }
 }
@@ -16,9 +16,11 @@ package dk.dma.epd.common.prototype.layers.msi;
 
 
 import com.bbn.openmap.omGraphics.OMGraphic;
+import com.bbn.openmap.omGraphics.OMGraphicList;
 import dk.dma.epd.common.prototype.EPD;
 import dk.dma.epd.common.prototype.gui.util.InfoPanel;
 import dk.dma.epd.common.prototype.layers.EPDLayerCommon;
+import dk.dma.epd.common.prototype.layers.util.ViewportGraphicList;
 import dk.dma.epd.common.prototype.notification.MsiNmNotification;
 import dk.dma.epd.common.prototype.sensor.pnt.PntTime;
 import dk.dma.epd.common.prototype.service.MsiNmServiceHandlerCommon;
@@ -26,6 +28,7 @@ import dma.msinm.MCMsiNmService;
 
 import java.awt.Point;
 import java.awt.event.MouseEvent;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
@@ -33,6 +36,9 @@ import static dk.dma.epd.common.prototype.service.MsiNmServiceHandlerCommon.IMsi
 
 /**
  * Base layer class for handling all MSI-NM messages
+ * <p>
+ * The message graphics are kept in a {@linkplain ViewportGraphicList}, so only the messages within the viewport are
+ * projected, with their areas simplified to the current map scale.
  */
 public abstract class MsiNmLayerCommon extends EPDLayerCommon  implements IMsiNmServiceListener {
 
@@ -40,6 +46,7 @@ public abstract class MsiNmLayerCommon extends EPDLayerCommon  implements IMsiNm
 
     protected MsiNmServiceHandlerCommon msiNmHandler;
     private MsiNmInfoPanel msiNmInfoPanel = new MsiNmInfoPanel();
+    private ViewportGraphicList<MsiNmGraphic> msiNmGraphics;
     
     /**
      * Constructor
@@ -55,7 +62,8 @@ public abstract class MsiNmLayerCommon extends EPDLayerCommon  implements IMsiNm
      * Generate the graphics based on the current list of MSI messages
      */
     public void doUpdate() {
-        graphics.clear();
+        List<MsiNmGraphic> msiNmGraphicList = new ArrayList<>();
+        List<MsiNmDirectionalIcon> directionalIcons = new ArrayList<>();
         Date now = PntTime.getDate();
         boolean showFiltered = EPD.getInstance().getSettings().getEnavSettings().isMsiFilter();
 
@@ -74,16 +82,43 @@ public abstract class MsiNmLayerCommon extends EPDLayerCommon  implements IMsiNm
             
             // Create MSI graphic
             MsiNmGraphic msiNmGraphic = new MsiNmGraphic(message);
-            graphics.add(msiNmGraphic);
+            msiNmGraphicList.add(msiNmGraphic);
             
             if(mapBean != null && message.isFiltered()){
                 MsiNmDirectionalIcon direction = new MsiNmDirectionalIcon(mapBean);
                 direction.setMarker(message);
+                directionalIcons.add(direction);
+            }
+        }
+
+        // The directional icons point to messages outside the viewport, so they are never culled
+        synchronized (graphics) {
+            graphics.clear();
+            msiNmGraphics = new ViewportGraphicList<>(msiNmGraphicList);
+            graphics.add(msiNmGraphics);
+            for (MsiNmDirectionalIcon direction : directionalIcons) {
                 graphics.add(direction);
             }
         }
         doPrepare();
     }
+
+    /**
+     * Culls the message graphics to the viewport before projecting the graphics
+     */
+    @Override
+    public synchronized OMGraphicList prepare() {
+        if (getProjection() == null) {
+            return graphics;
+        }
+        synchronized (graphics) {
+            if (msiNmGraphics != null) {
+                msiNmGraphics.updateViewport(getProjection());
+            }
+            graphics.project(getProjection(), true);
+        }
+        return graphics;
+    }
     
     /**
      * {@inheritDoc}
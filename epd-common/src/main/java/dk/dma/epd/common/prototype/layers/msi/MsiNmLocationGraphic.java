@@ -19,6 +19,8 @@ import com.bbn.openmap.omGraphics.OMGraphicConstants;
 import com.bbn.openmap.omGraphics.OMGraphicList;
 import com.bbn.openmap.omGraphics.OMPoly;
 import com.bbn.openmap.proj.Length;
+import dk.dma.epd.common.prototype.layers.util.IScaleDependentGraphic;
+import dk.dma.epd.common.prototype.layers.util.ScaleDependentPolygon;
 import dk.dma.epd.common.prototype.notification.MsiNmNotification;
 import dk.dma.epd.common.util.Converter;
 import dma.msinm.MCLocation;
@@ -31,11 +33,15 @@ import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.TexturePaint;
 import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
- * Graphic for MSI-NM location/area
+ * Graphic for MSI-NM location/area.
+ * <p>
+ * Polygons and polylines are drawn simplified to the current map scale
  */
-public class MsiNmLocationGraphic extends OMGraphicList {
+public class MsiNmLocationGraphic extends OMGraphicList implements IScaleDependentGraphic {
     private static final long serialVersionUID = 1L;
     
     private static final int POINT_RADIUS = 100; // meters
@@ -44,6 +50,11 @@ public class MsiNmLocationGraphic extends OMGraphicList {
 
     private Rectangle hatchFillRectangle;
     private BufferedImage hatchFill;
+
+    private double[] boundingBox;
+    private List<ScaleDependentPolygon> polygons = new ArrayList<>();
+    private List<OMPoly> polys = new ArrayList<>();
+    private int simplificationLevel;
     
     public MsiNmLocationGraphic(MsiNmNotification message) {
         super();
@@ -87,6 +98,11 @@ public class MsiNmLocationGraphic extends OMGraphicList {
     }
     
     private void drawCircle(MCPoint point, int radius) {
+        double latRadius = radius / 1852.0 / 60.0;
+        double lonRadius = latRadius / Math.max(0.01, Math.cos(Math.toRadians(point.getLat())));
+        extendBoundingBox(point.getLat() - latRadius, point.getLon() - lonRadius, point.getLat() + latRadius,
+                point.getLon() + lonRadius);
+
         OMCircle radiusCircle = new OMCircle(point.getLat(), point.getLon(), radius, Length.METER);
         radiusCircle.setLinePaint(msiColor);
         radiusCircle.setFillPaint(new Color(0, 0, 0, 1));
@@ -95,17 +111,7 @@ public class MsiNmLocationGraphic extends OMGraphicList {
     }
     
     private void drawPolygon(MCLocation loc) {
-        // space for lat-lon points plus first lat-lon pair to close the polygon
-        double[] polyPoints = new double[loc.getPoints().size() * 2 + 2];
-        int i = 0;
-        for (MCPoint point : loc.getPoints()) {
-            polyPoints[i] = point.getLat();
-            polyPoints[i+1] = point.getLon();
-            i+=2;
-        }
-        polyPoints[i] = polyPoints[0];
-        polyPoints[i+1] = polyPoints[1];
-        OMPoly poly = new OMPoly(polyPoints, OMGraphicConstants.DECIMAL_DEGREES, OMGraphicConstants.LINETYPE_RHUMB, 1);
+        OMPoly poly = createPoly(loc, true);
         poly.setLinePaint(msiColor);
         poly.setFillPaint(new Color(0, 0, 0, 1));
         poly.setTextureMask(new TexturePaint(hatchFill, hatchFillRectangle));
@@ -113,18 +119,75 @@ public class MsiNmLocationGraphic extends OMGraphicList {
     }
     
     private void drawPolyline(MCLocation loc) {
-        double[] polyPoints = new double[loc.getPoints().size() * 2];
-        int i = 0;
         for (MCPoint point : loc.getPoints()) {
             drawCircle(point, POINT_RADIUS);
-            polyPoints[i] = point.getLat();
-            polyPoints[i+1] = point.getLon();
-            i+=2;
         }
-        OMPoly poly = new OMPoly(polyPoints, OMGraphicConstants.DECIMAL_DEGREES, OMGraphicConstants.LINETYPE_RHUMB, 1);
+        OMPoly poly = createPoly(loc, false);
         poly.setLinePaint(msiColor);
         add(poly);
     }
+
+    /**
+     * Creates a poly of the location points at the current simplification level, and registers it for updates of the
+     * level
+     */
+    private OMPoly createPoly(MCLocation loc, boolean ring) {
+        double[] lats = new double[loc.getPoints().size()];
+        double[] lons = new double[loc.getPoints().size()];
+        int i = 0;
+        for (MCPoint point : loc.getPoints()) {
+            lats[i] = point.getLat();
+            lons[i] = point.getLon();
+            i++;
+        }
+        ScaleDependentPolygon polygon = new ScaleDependentPolygon(lats, lons, ring);
+        double[] bbox = polygon.getBoundingBox();
+        extendBoundingBox(bbox[0], bbox[1], bbox[2], bbox[3]);
+
+        OMPoly poly = new OMPoly(polygon.getPolyPoints(simplificationLevel), OMGraphicConstants.DECIMAL_DEGREES,
+                OMGraphicConstants.LINETYPE_RHUMB, 1);
+        polygons.add(polygon);
+        polys.add(poly);
+        return poly;
+    }
+
+    private void extendBoundingBox(double minLat, double minLon, double maxLat, double maxLon) {
+        if (boundingBox == null) {
+            boundingBox = new double[] { minLat, minLon, maxLat, maxLon };
+        } else {
+            boundingBox[0] = Math.min(boundingBox[0], minLat);
+            boundingBox[1] = Math.min(boundingBox[1], minLon);
+            boundingBox[2] = Math.max(boundingBox[2], maxLat);
+            boundingBox[3] = Math.max(boundingBox[3], maxLon);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double[] getBoundingBox() {
+        return (boundingBox == null) ? null : boundingBox.clone();
+    }
+
+    /**
+     * Swaps the points of the polygons and polylines with the ones simplified for the level, and hides the ones that
+     * are too small to be seen
+     */
+    @Override
+    public void setSimplificationLevel(int level) {
+        if (level == simplificationLevel) {
+            return;
+        }
+        simplificationLevel = level;
+        for (int i = 0; i < polygons.size(); i++) {
+            double[] polyPoints = polygons.get(i).getPolyPoints(level);
+            polys.get(i).setVisible(polyPoints != null);
+            if (polyPoints != null) {
+                polys.get(i).setLocation(polyPoints, OMGraphicConstants.DECIMAL_DEGREES);
+            }
+        }
+    }
     
     @Override
     public void render(Graphics gr) {
@@ -27,12 +27,17 @@ import com.bbn.openmap.omGraphics.OMGraphicList;
 import com.bbn.openmap.omGraphics.OMPoly;
 
 import dk.dma.enav.model.geometry.Position;
+import dk.dma.epd.common.prototype.layers.util.IScaleDependentGraphic;
+import dk.dma.epd.common.prototype.layers.util.ScaleDependentPolygon;
 import dk.frv.enav.common.xml.nogo.types.NogoPolygon;
 
-public class NogoGraphic extends OMGraphicList {
+public class NogoGraphic extends OMGraphicList implements IScaleDependentGraphic {
     private static final long serialVersionUID = 1L;
 
     private NogoPolygon polygon;
+    private ScaleDependentPolygon scaleDependentPolygon;
+    private OMPoly poly;
+    private int simplificationLevel;
 
     private Color nogoColor = Color.red;
 
@@ -73,17 +78,21 @@ public class NogoGraphic extends OMGraphicList {
     }
 
     private void drawPolygon() {
-        // space for lat-lon points plus first lat-lon pair to close the polygon
-        double[] polyPoints = new double[polygon.getPolygon().size() * 2 + 2];
-        int j = 0;
+        double[] lats = new double[polygon.getPolygon().size()];
+        double[] lons = new double[polygon.getPolygon().size()];
         for (int i = 0; i < polygon.getPolygon().size(); i++) {
-            polyPoints[j] = polygon.getPolygon().get(i).getLat();
-            polyPoints[j + 1] = polygon.getPolygon().get(i).getLon();
-            j += 2;
+            lats[i] = polygon.getPolygon().get(i).getLat();
+            lons[i] = polygon.getPolygon().get(i).getLon();
         }
-        polyPoints[j] = polyPoints[0];
-        polyPoints[j + 1] = polyPoints[1];
-        OMPoly poly = new OMPoly(polyPoints, OMGraphicConstants.DECIMAL_DEGREES, OMGraphicConstants.LINETYPE_RHUMB, 1);
+        scaleDependentPolygon = new ScaleDependentPolygon(lats, lons, true);
+
+        // Start out with the full resolution polygon until a simplification level is set
+        simplificationLevel = 0;
+        double[] polyPoints = scaleDependentPolygon.getPolyPoints(simplificationLevel);
+        if (polyPoints == null) {
+            return;
+        }
+        poly = new OMPoly(polyPoints, OMGraphicConstants.DECIMAL_DEGREES, OMGraphicConstants.LINETYPE_RHUMB, 1);
         poly.setLinePaint(clear);
         poly.setFillPaint(new Color(0, 0, 0, 1));
         poly.setTextureMask(new TexturePaint(hatchFill, hatchFillRectangle));
@@ -91,4 +100,29 @@ public class NogoGraphic extends OMGraphicList {
         add(poly);
 
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double[] getBoundingBox() {
+        return (scaleDependentPolygon == null) ? null : scaleDependentPolygon.getBoundingBox();
+    }
+
+    /**
+     * Swaps the polygon points with the ones simplified for the level, and hides the polygon if it is too small to be
+     * seen
+     */
+    @Override
+    public void setSimplificationLevel(int level) {
+        if (poly == null || level == simplificationLevel) {
+            return;
+        }
+        simplificationLevel = level;
+        double[] polyPoints = scaleDependentPolygon.getPolyPoints(level);
+        poly.setVisible(polyPoints != null);
+        if (polyPoints != null) {
+            poly.setLocation(polyPoints, OMGraphicConstants.DECIMAL_DEGREES);
+        }
+    }
 }
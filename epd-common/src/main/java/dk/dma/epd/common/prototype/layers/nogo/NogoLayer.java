@@ -21,11 +21,15 @@ import com.bbn.openmap.omGraphics.OMGraphicList;
 
 import dk.dma.enav.model.geometry.Position;
 import dk.dma.epd.common.prototype.layers.EPDLayerCommon;
+import dk.dma.epd.common.prototype.layers.util.ViewportGraphicList;
 import dk.dma.epd.common.prototype.nogo.NoGoDataEntry;
 import dk.frv.enav.common.xml.nogo.types.NogoPolygon;
 
 /**
  * No-go layer
+ * <p>
+ * The polygons of each slice are kept in a {@linkplain ViewportGraphicList}, so only the polygons within the viewport
+ * are projected, simplified to the current map scale.
  */
 public class NogoLayer extends EPDLayerCommon {
 
@@ -33,7 +37,7 @@ public class NogoLayer extends EPDLayerCommon {
 
     // private NogoHandler nogoHandler;
 
-    List<OMGraphicList> multipleNoGo = new ArrayList<OMGraphicList>();
+    List<ViewportGraphicList<NogoGraphic>> multipleNoGo = new ArrayList<>();
 
     int currentSelected;
 
@@ -44,41 +48,43 @@ public class NogoLayer extends EPDLayerCommon {
         super();
     }
 
-    public void initializeNoGoStorage(int count) {
+    public synchronized void initializeNoGoStorage(int count) {
         // System.out.println("Initialize storage");
         cleanUp();
+        currentSelected = 0;
         for (int i = 0; i < count; i++) {
             multipleNoGo.add(null);
         }
     }
 
     /**
-     * Called by the {@linkplain NogoHandler} with status updates. Updates the graphics with the no-go elements
+     * Called by the {@linkplain NogoHandler} with status updates. Updates the graphics with the no-go elements.
+     * <p>
+     * Slices may arrive in any order. The slice is drawn if it is the currently selected one.
      * 
      * @param dataEntry
      * @param id
      */
-    public void addResultFromMultipleRequest(NoGoDataEntry dataEntry, int id) {
+    public synchronized void addResultFromMultipleRequest(NoGoDataEntry dataEntry, int id) {
 
         // System.out.println("Adding result from multiple at id " + id);
 
-        multipleNoGo.add(id, createNoGoGraphics(dataEntry));
+        multipleNoGo.set(id, createNoGoGraphics(dataEntry));
 
-        if (id == 0) {
-            drawSpecificResult(0);
+        if (id == currentSelected) {
+            drawSpecificResult(id);
         }
     }
 
-    public void drawSpecificResult(int id) {
+    public synchronized void drawSpecificResult(int id) {
         // System.out.println("Drawing " + id);
         if (multipleNoGo.size() >= id + 1) {
             graphics.remove(multipleNoGo.get(currentSelected));
 
+            // Select the slice even if not fetched yet, so that it is drawn when it arrives
+            currentSelected = id;
             if (multipleNoGo.get(id) != null) {
                 graphics.add(multipleNoGo.get(id));
-                currentSelected = id;
-            } else {
-//                System.out.println("Value is null");
             }
         }
 
@@ -86,15 +92,32 @@ public class NogoLayer extends EPDLayerCommon {
 
     }
 
-    private OMGraphicList createNoGoGraphics(NoGoDataEntry dataEntry) {
-        OMGraphicList nogoPolygon = new OMGraphicList();
+    private ViewportGraphicList<NogoGraphic> createNoGoGraphics(NoGoDataEntry dataEntry) {
+        List<NogoGraphic> nogoGraphics = new ArrayList<>();
         List<NogoPolygon> polygons = dataEntry.getNogoPolygons();
         for (NogoPolygon polygon : polygons) {
             NogoGraphic nogoGraphic = new NogoGraphic(polygon);
-            nogoPolygon.add(nogoGraphic);
+            nogoGraphics.add(nogoGraphic);
         }
 
-        return nogoPolygon;
+        return new ViewportGraphicList<>(nogoGraphics);
+    }
+
+    /**
+     * Culls the polygons of the selected slice to the viewport before projecting the graphics
+     */
+    @Override
+    public synchronized OMGraphicList prepare() {
+        if (getProjection() == null) {
+            return graphics;
+        }
+        synchronized (graphics) {
+            if (currentSelected < multipleNoGo.size() && multipleNoGo.get(currentSelected) != null) {
+                multipleNoGo.get(currentSelected).updateViewport(getProjection());
+            }
+            graphics.project(getProjection(), true);
+        }
+        return graphics;
     }
 
     private void cleanUp() {
@@ -111,7 +134,7 @@ public class NogoLayer extends EPDLayerCommon {
      * 
      * @param dataEntry
      */
-    public void singleResultCompleted(NoGoDataEntry dataEntry) {
+    public synchronized void singleResultCompleted(NoGoDataEntry dataEntry) {
         cleanUp();
         currentSelected = 0;
         multipleNoGo.add(0, createNoGoGraphics(dataEntry));
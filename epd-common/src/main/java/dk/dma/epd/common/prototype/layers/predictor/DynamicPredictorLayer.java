@@ -15,6 +15,7 @@
 package dk.dma.epd.common.prototype.layers.predictor;
 
 import java.awt.Color;
+import java.awt.geom.Point2D;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
@@ -24,12 +25,16 @@ import org.slf4j.LoggerFactory;
 
 import com.bbn.openmap.event.ProjectionListener;
 import com.bbn.openmap.omGraphics.OMGraphicList;
+import com.bbn.openmap.proj.Projection;
 
 import dk.dma.enav.model.geometry.Position;
 import dk.dma.epd.common.prototype.layers.EPDLayerCommon;
 import dk.dma.epd.common.prototype.predictor.DynamicPrediction;
 import dk.dma.epd.common.prototype.predictor.DynamicPredictorHandlerCommon;
+import dk.dma.epd.common.prototype.predictor.FleetPrediction;
+import dk.dma.epd.common.prototype.predictor.FleetPredictor;
 import dk.dma.epd.common.prototype.predictor.IDynamicPredictionsListener;
+import dk.dma.epd.common.prototype.predictor.IFleetPredictionListener;
 import dk.dma.epd.common.prototype.sensor.predictor.DynamicPredictorPredictionData;
 import dk.dma.epd.common.prototype.sensor.predictor.DynamicPredictorStateData;
 
@@ -40,7 +45,7 @@ import dk.dma.epd.common.prototype.sensor.predictor.DynamicPredictorStateData;
  * 
  */
 public class DynamicPredictorLayer extends EPDLayerCommon implements
-        ProjectionListener, IDynamicPredictionsListener {
+        ProjectionListener, IDynamicPredictionsListener, IFleetPredictionListener {
 
     private static final long serialVersionUID = 1L;
 
@@ -53,6 +58,23 @@ public class DynamicPredictorLayer extends EPDLayerCommon implements
      */
     private final ConcurrentHashMap<Long, List<DynamicPredictionGraphic>> graphicMap = new ConcurrentHashMap<>();
 
+    /**
+     * Vessels of the fleet prediction are not drawn if more than this number
+     * of vessels are within the viewport.
+     */
+    private static final int MAX_FLEET_VESSELS = 200;
+
+    /**
+     * Number of prediction steps drawn per vessel of the fleet prediction.
+     */
+    private static final int FLEET_DISPLAY_STEPS = 6;
+
+    /**
+     * The most recent prediction of all vessels, if a {@link FleetPredictor}
+     * is present.
+     */
+    private volatile FleetPrediction fleetPrediction;
+
     @Override
     public void receivePredictions(DynamicPrediction dynamicPrediction) {
         // Clear old prediction graphics for the mmsi of the new prediction.
@@ -72,26 +94,11 @@ public class DynamicPredictorLayer extends EPDLayerCommon implements
             // Position is the middle of the ship
             Position pos = prediction.getPosition();
             float heading = prediction.getHeading();
-            /*
-             * Base distances on the assumption that position marks the middle
-             * of ship
-             */
-            float distBow = vesselLength / 2.0f;
-            float distStern = distBow;
-            float distPort = vesselWidth / 2.0f;
-            float distStarboard = distPort;
-
-            VesselPortrayalData portrayalData = new VesselPortrayalData(pos,
-                    heading, distBow, distStern, distPort, distStarboard);
-            DynamicPredictionGraphic dpg = new DynamicPredictionGraphic();
-
-            dpg.update(portrayalData);
             // TODO move color selection such that own ship prediction can be
             // portrayed in different color
             float alpha = count / (dynamicPrediction.getPredictionDataPoints().size());
-            Color c = new Color(0.0f, 0.5f, 0.0f, 1.0f - alpha);
-            dpg.setLinePaint(c);
-            dpg.setFillPaint(c);
+            DynamicPredictionGraphic dpg = createGraphic(pos, heading,
+                    vesselLength, vesselWidth, alpha);
             
             graphicMap.get(dynamicPrediction.getMmsi()).add(dpg);
             count++;
@@ -100,6 +107,53 @@ public class DynamicPredictorLayer extends EPDLayerCommon implements
         doPrepare();
     }
 
+    /**
+     * Creates the graphic of a single prediction point.
+     * 
+     * @param pos
+     *            The predicted position of the middle of the vessel.
+     * @param heading
+     *            The predicted heading.
+     * @param vesselLength
+     *            The length of the vessel.
+     * @param vesselWidth
+     *            The width of the vessel.
+     * @param alpha
+     *            The transparency of the graphic, from 0 (opaque) to 1.
+     * @return The graphic of the prediction point.
+     */
+    private static DynamicPredictionGraphic createGraphic(Position pos,
+            float heading, float vesselLength, float vesselWidth, float alpha) {
+        /*
+         * Base distances on the assumption that position marks the middle
+         * of ship
+         */
+        float distBow = vesselLength / 2.0f;
+        float distStern = distBow;
+        float distPort = vesselWidth / 2.0f;
+        float distStarboard = distPort;
+
+        VesselPortrayalData portrayalData = new VesselPortrayalData(pos,
+                heading, distBow, distStern, distPort, distStarboard);
+        DynamicPredictionGraphic dpg = new DynamicPredictionGraphic();
+
+        dpg.update(portrayalData);
+        Color c = new Color(0.0f, 0.5f, 0.0f, 1.0f - alpha);
+        dpg.setLinePaint(c);
+        dpg.setFillPaint(c);
+        return dpg;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void fleetPredictionUpdated(FleetPrediction prediction) {
+        this.fleetPrediction = prediction;
+        // Repaint
+        doPrepare();
+    }
+
     @Override
     public void receivePredictionTimeout(DynamicPrediction prediction) {
         // Remove graphics for timed out prediction.
@@ -116,10 +170,61 @@ public class DynamicPredictorLayer extends EPDLayerCommon implements
         for (Long key : this.graphicMap.keySet()) {
             graphics.addAll(graphicMap.get(key));
         }
+        addFleetGraphics();
         // Super is in charge of calling project() on graphics field.
         return super.prepare();
     }
 
+    /**
+     * Adds graphics for the vessels of the fleet prediction that are within
+     * the viewport, unless they have a dynamic prediction of their own. Only
+     * {@link #FLEET_DISPLAY_STEPS} evenly spaced steps are drawn per vessel,
+     * and nothing is drawn if the viewport contains too many vessels.
+     */
+    private void addFleetGraphics() {
+        FleetPrediction prediction = this.fleetPrediction;
+        Projection projection = getProjection();
+        if (prediction == null || projection == null) {
+            return;
+        }
+        Point2D ul = projection.getUpperLeft();
+        Point2D lr = projection.getLowerRight();
+        double minLat = Math.min(ul.getY(), lr.getY());
+        double maxLat = Math.max(ul.getY(), lr.getY());
+        double minLon = ul.getX();
+        double maxLon = lr.getX();
+
+        int[] visible = new int[MAX_FLEET_VESSELS];
+        int count = 0;
+        for (int i = 0; i < prediction.size(); i++) {
+            double lat = prediction.getLatitude(i);
+            double lon = prediction.getLongitude(i);
+            boolean inLon = (minLon <= maxLon) ? (lon >= minLon && lon <= maxLon) : (lon >= minLon || lon <= maxLon);
+            if (lat < minLat || lat > maxLat || !inLon || graphicMap.containsKey(prediction.getMmsi(i))) {
+                continue;
+            }
+            if (count == MAX_FLEET_VESSELS) {
+                // Too many vessels to draw in a meaningful way
+                return;
+            }
+            visible[count++] = i;
+        }
+
+        int stride = Math.max(1, prediction.getSteps() / FLEET_DISPLAY_STEPS);
+        for (int v = 0; v < count; v++) {
+            int i = visible[v];
+            // Use the default dimensions of the own ship predictor for vessels without static data
+            float length = prediction.getLength(i) > 0 ? prediction.getLength(i) : 180;
+            float width = prediction.getWidth(i) > 0 ? prediction.getWidth(i) : 40;
+            for (int step = stride - 1; step < prediction.getSteps(); step += stride) {
+                Position pos = Position.create(prediction.getPredictedLatitude(i, step),
+                        prediction.getPredictedLongitude(i, step));
+                float alpha = (float) step / prediction.getSteps();
+                graphics.add(createGraphic(pos, prediction.getPredictedHeading(i, step), length, width, alpha));
+            }
+        }
+    }
+
     @Override
     public void findAndInit(Object obj) {
         super.findAndInit(obj);
@@ -127,10 +232,28 @@ public class DynamicPredictorLayer extends EPDLayerCommon implements
             LOG.debug("Found dynamic predictor handler");
             ((DynamicPredictorHandlerCommon) obj).addListener(this);
         }
+        if (obj instanceof FleetPredictor) {
+            LOG.debug("Found fleet predictor");
+            ((FleetPredictor) obj).addListener(this);
+        }
     }
 
-    /*
-     * TODO remove dynamic predictor listener in findAndUndo (but remember to
-     * verify that this works with multiple mapframes on EPD shore)
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The {@link FleetPredictor} is shared by the map windows of EPD shore, but
+     * is not a bean context child, so it is only undone when it is removed from
+     * the map handler of this layer, e.g. when the map window is closed.
      */
+    @Override
+    public void findAndUndo(Object obj) {
+        if (obj instanceof DynamicPredictorHandlerCommon) {
+            ((DynamicPredictorHandlerCommon) obj).removeListener(this);
+        }
+        if (obj instanceof FleetPredictor) {
+            ((FleetPredictor) obj).removeListener(this);
+            fleetPrediction = null;
+        }
+        super.findAndUndo(obj);
+    }
 }
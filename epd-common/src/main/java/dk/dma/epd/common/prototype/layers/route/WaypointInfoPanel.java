@@ -21,6 +21,7 @@ import dk.dma.enav.model.geometry.Position;
 import dk.dma.epd.common.prototype.gui.util.InfoPanel;
 import dk.dma.epd.common.prototype.model.route.ActiveRoute;
 import dk.dma.epd.common.prototype.model.route.Route;
+import dk.dma.epd.common.prototype.model.route.RouteGeometry;
 import dk.dma.epd.common.prototype.model.route.RouteLeg;
 import dk.dma.epd.common.prototype.model.route.RouteWaypoint;
 import dk.dma.epd.common.prototype.sensor.pnt.PntTime;
@@ -70,9 +71,9 @@ public class WaypointInfoPanel extends InfoPanel {
             if (activeRoute.getActiveWaypointIndex() <= wpIndex) {
                 dtg = activeRoute.getActiveWpRng();
                 if (dtg != null) {
-                    for (int i = activeRoute.getActiveWaypointIndex(); i < wpIndex; i++) {
-                        dtg += activeRoute.getWpRng(i);
-                    }
+                    RouteGeometry geometry = activeRoute.getGeometry();
+                    dtg += geometry.getCumulativeRange(wpIndex)
+                            - geometry.getCumulativeRange(activeRoute.getActiveWaypointIndex());
                 }
             }
         }
@@ -0,0 +1,42 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.layers.util;
+
+import dk.dma.epd.common.prototype.zoom.ScaleDependentValues;
+
+/**
+ * Interface to implement for graphics that can be culled to the map viewport by a {@linkplain ViewportGraphicList} and
+ * drawn at a resolution that fits the map scale
+ */
+public interface IScaleDependentGraphic {
+
+    /**
+     * Returns the bounding box of the graphic as {@code minLat, minLon, maxLat, maxLon}, or null if the graphic should
+     * always be drawn
+     * 
+     * @return the bounding box of the graphic
+     */
+    double[] getBoundingBox();
+
+    /**
+     * Called before the graphic is projected with the polygon simplification level of the projection scale, see
+     * {@linkplain ScaleDependentValues#getPolygonSimplificationLevel(float)}
+     * 
+     * @param level
+     *            the polygon simplification level of the projection
+     */
+    void setSimplificationLevel(int level);
+
+}
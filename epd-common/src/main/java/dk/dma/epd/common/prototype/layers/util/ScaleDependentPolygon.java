@@ -0,0 +1,141 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.layers.util;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+import dk.dma.epd.common.prototype.zoom.ScaleDependentValues;
+import dk.dma.epd.common.util.PolygonSimplifier;
+
+/**
+ * Polygon or polyline geometry with a cache of simplified versions per polygon simplification level, see
+ * {@linkplain ScaleDependentValues#getPolygonSimplificationLevel(float)}.
+ * <p>
+ * The simplified points are computed the first time they are requested for a level, using the tolerance given by
+ * {@linkplain ScaleDependentValues#getPolygonSimplificationLevelTolerance(int)}, and returned as the interleaved
+ * latitude/longitude arrays used by {@code OMPoly}.
+ */
+@ThreadSafe
+public class ScaleDependentPolygon {
+
+    private static final double[] EMPTY = new double[0];
+
+    private final double[] lats;
+    private final double[] lons;
+    private final boolean ring;
+    private final double[] boundingBox;
+
+    @GuardedBy("this")
+    private final double[][] polyPoints = new double[ScaleDependentValues.getPolygonSimplificationLevelCount()][];
+
+    /**
+     * Constructor
+     *
+     * @param lats
+     *            the latitudes of the points
+     * @param lons
+     *            the longitudes of the points
+     * @param ring
+     *            whether the points form a closed polygon. The first point should not be repeated
+     */
+    public ScaleDependentPolygon(double[] lats, double[] lons, boolean ring) {
+        this.lats = lats;
+        this.lons = lons;
+        this.ring = ring;
+
+        double minLat = 90, minLon = 180, maxLat = -90, maxLon = -180;
+        for (int i = 0; i < lats.length; i++) {
+            minLat = Math.min(minLat, lats[i]);
+            minLon = Math.min(minLon, lons[i]);
+            maxLat = Math.max(maxLat, lats[i]);
+            maxLon = Math.max(maxLon, lons[i]);
+        }
+        boundingBox = new double[] { minLat, minLon, maxLat, maxLon };
+    }
+
+    /**
+     * Returns the bounding box of the polygon as {@code minLat, minLon, maxLat, maxLon}
+     *
+     * @return the bounding box of the polygon
+     */
+    public double[] getBoundingBox() {
+        return boundingBox.clone();
+    }
+
+    /**
+     * Returns the number of points of the polygon
+     *
+     * @return the number of points of the polygon
+     */
+    public int getPointCount() {
+        return lats.length;
+    }
+
+    /**
+     * Returns the interleaved latitude/longitude points of the polygon simplified for the given simplification level.
+     * Polygons are closed by repeating the first point.
+     * <p>
+     * Returns null if the polygon is smaller than the simplification tolerance, i.e. would not be visible at the
+     * level.
+     *
+     * @param level
+     *            the polygon simplification level
+     * @return the simplified points, or null if the polygon is not visible
+     */
+    public synchronized double[] getPolyPoints(int level) {
+        double[] points = polyPoints[level];
+        if (points == null) {
+            points = simplify(ScaleDependentValues.getPolygonSimplificationLevelTolerance(level));
+            polyPoints[level] = points;
+        }
+        return (points.length == 0) ? null : points;
+    }
+
+    /**
+     * Returns the points simplified with the given tolerance, or an empty array if the polygon is smaller than the
+     * tolerance
+     */
+    double[] simplify(double toleranceMeters) {
+        double latExtent = (boundingBox[2] - boundingBox[0]) * 60.0 * 1852.0;
+        double lonExtent = (boundingBox[3] - boundingBox[1]) * 60.0 * 1852.0
+                * Math.cos(Math.toRadians((boundingBox[0] + boundingBox[2]) / 2.0));
+        if (lats.length == 0 || (toleranceMeters > 0.0 && latExtent < toleranceMeters && lonExtent < toleranceMeters)) {
+            return EMPTY;
+        }
+
+        boolean[] keep = PolygonSimplifier.simplify(lats, lons, toleranceMeters, ring);
+        int count = 0;
+        for (boolean k : keep) {
+            if (k) {
+                count++;
+            }
+        }
+        // Space for the kept lat-lon points plus the first lat-lon pair to close the polygon
+        double[] points = new double[count * 2 + (ring ? 2 : 0)];
+        int j = 0;
+        for (int i = 0; i < keep.length; i++) {
+            if (keep[i]) {
+                points[j] = lats[i];
+                points[j + 1] = lons[i];
+                j += 2;
+            }
+        }
+        if (ring) {
+            points[j] = points[0];
+            points[j + 1] = points[1];
+        }
+        return points;
+    }
+}
@@ -0,0 +1,111 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.layers.util;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+import com.bbn.openmap.omGraphics.OMGraphic;
+import com.bbn.openmap.omGraphics.OMGraphicList;
+import com.bbn.openmap.proj.Projection;
+
+import dk.dma.epd.common.prototype.zoom.ScaleDependentValues;
+import dk.dma.epd.common.util.BBoxRTree;
+
+/**
+ * Graphic list that only holds the graphics within the map viewport.
+ * <p>
+ * All graphics are indexed by their bounding boxes in a {@linkplain BBoxRTree} when the list is created. Calling
+ * {@linkplain #updateViewport(Projection)} before projecting the list replaces the contents with the graphics
+ * intersecting the projection, in their original order, and sets their zoom level. Thus only the visible graphics
+ * are projected, at a resolution that fits the map scale.
+ *
+ * @param <T>
+ *            the type of the graphics
+ */
+public class ViewportGraphicList<T extends OMGraphic & IScaleDependentGraphic> extends OMGraphicList {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<T> allGraphics;
+    private final BBoxRTree index;
+
+    /**
+     * Constructor. Initially the list holds all the graphics.
+     *
+     * @param graphics
+     *            the graphics of the list
+     */
+    public ViewportGraphicList(List<T> graphics) {
+        super();
+        allGraphics = new ArrayList<>(graphics);
+
+        double[] bboxes = new double[allGraphics.size() * 4];
+        for (int i = 0; i < allGraphics.size(); i++) {
+            double[] bbox = allGraphics.get(i).getBoundingBox();
+            if (bbox == null) {
+                bbox = new double[] { -90.0, -180.0, 90.0, 180.0 };
+            }
+            System.arraycopy(bbox, 0, bboxes, i * 4, 4);
+        }
+        index = new BBoxRTree(bboxes);
+
+        for (T graphic : allGraphics) {
+            add(graphic);
+        }
+    }
+
+    /**
+     * Returns all the graphics of the list, including the ones outside the viewport
+     *
+     * @return all the graphics of the list
+     */
+    public List<T> getAllGraphics() {
+        return Collections.unmodifiableList(allGraphics);
+    }
+
+    /**
+     * Replaces the contents of the list with the graphics within the given projection
+     *
+     * @param projection
+     *            the current projection
+     */
+    public synchronized void updateViewport(Projection projection) {
+        int level = ScaleDependentValues.getPolygonSimplificationLevel(projection.getScale());
+        Point2D ul = projection.getUpperLeft();
+        Point2D lr = projection.getLowerRight();
+        double minLat = Math.min(lr.getY(), ul.getY());
+        double maxLat = Math.max(lr.getY(), ul.getY());
+
+        BitSet visible = new BitSet(allGraphics.size());
+        if (ul.getX() <= lr.getX()) {
+            index.query(minLat, ul.getX(), maxLat, lr.getX(), visible);
+        } else {
+            // The viewport crosses the date line
+            index.query(minLat, ul.getX(), maxLat, 180.0, visible);
+            index.query(minLat, -180.0, maxLat, lr.getX(), visible);
+        }
+
+        clear();
+        for (int i = visible.nextSetBit(0); i >= 0; i = visible.nextSetBit(i + 1)) {
+            T graphic = allGraphics.get(i);
+            graphic.setSimplificationLevel(level);
+            add(graphic);
+        }
+    }
+}
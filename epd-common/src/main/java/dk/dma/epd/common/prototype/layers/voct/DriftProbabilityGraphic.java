@@ -0,0 +1,73 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.layers.voct;
+
+import java.awt.Color;
+
+import com.bbn.openmap.omGraphics.OMGraphicConstants;
+import com.bbn.openmap.omGraphics.OMGraphicList;
+import com.bbn.openmap.omGraphics.OMRect;
+
+import dk.dma.epd.common.prototype.model.voct.sardata.DriftProbabilityGrid;
+
+/**
+ * Graphic for the probability grid of a Monte Carlo drift simulation.
+ * <p>
+ * Each cell with a non-zero probability is drawn as a filled rectangle, with an opacity relative to the highest
+ * probability of the grid.
+ */
+public class DriftProbabilityGraphic extends OMGraphicList {
+    private static final long serialVersionUID = 1L;
+
+    private static final int MAX_ALPHA = 160;
+
+    private Color probabilityColor = Color.red;
+
+    private DriftProbabilityGrid grid;
+
+    public DriftProbabilityGraphic(DriftProbabilityGrid grid) {
+        super();
+        this.grid = grid;
+
+        float max = grid.getMaxProbability();
+        if (max <= 0f) {
+            return;
+        }
+        for (int row = 0; row < grid.getRows(); row++) {
+            double north = grid.getNorth() - row * grid.getCellHeight();
+            for (int col = 0; col < grid.getCols(); col++) {
+                float p = grid.getProbability(row, col);
+                if (p <= 0f) {
+                    continue;
+                }
+                double west = grid.getWest() + col * grid.getCellWidth();
+                OMRect cell = new OMRect(north, west, north - grid.getCellHeight(), west + grid.getCellWidth(),
+                        OMGraphicConstants.LINETYPE_RHUMB);
+                int alpha = Math.max(1, Math.round(MAX_ALPHA * p / max));
+                cell.setFillPaint(new Color(probabilityColor.getRed(), probabilityColor.getGreen(), probabilityColor
+                        .getBlue(), alpha));
+                cell.setLinePaint(OMGraphicConstants.clear);
+                add(cell);
+            }
+        }
+    }
+
+    /**
+     * @return the probability grid
+     */
+    public DriftProbabilityGrid getGrid() {
+        return grid;
+    }
+}
@@ -52,6 +52,7 @@ public class EffortAllocationAreaGraphics extends OMGraphicList {
 
     SARData sarData;
     long id;
+    String labelName;
 
     public enum LineType {
         TOP, BOTTOM, LEFT, RIGHT
@@ -107,6 +108,7 @@ public class EffortAllocationAreaGraphics extends OMGraphicList {
         this.id = id;
 
         this.sarData = data;
+        this.labelName = labelName;
 
         totalSize = width * height;
 
@@ -304,7 +306,7 @@ public class EffortAllocationAreaGraphics extends OMGraphicList {
         sarData.getEffortAllocationData().get(id).setEffectiveAreaD(D);
 
         effectiveArea = new EffortAllocationInternalGraphics(A, B, C, D, width,
-                height, this, verticalBearing, horizontalBearing, labelName);
+                height, this, verticalBearing, horizontalBearing, getLabelText());
 
         topLine = new EffortAllocationLines(A, B, LineType.TOP, this);
         bottomLine = new EffortAllocationLines(C, D, LineType.BOTTOM, this);
@@ -318,6 +320,36 @@ public class EffortAllocationAreaGraphics extends OMGraphicList {
         add(topLine);
         add(leftLine);
         add(rightLine);
+
+        // Show the probability grid of the drift simulation, if any
+        if (sarData.getDriftProbabilityGrid() != null) {
+            add(new DriftProbabilityGraphic(sarData.getDriftProbabilityGrid()));
+        }
+    }
+
+    /**
+     * Returns the probability that the search object is contained in the effective area, according to the Monte
+     * Carlo drift simulation of the SAR data
+     * 
+     * @return the probability of containment, or null if the drift has not been simulated
+     */
+    public Double getProbabilityOfContainment() {
+        if (sarData == null || sarData.getDriftProbabilityGrid() == null) {
+            return null;
+        }
+        return sarData.getDriftProbabilityGrid().getContainment(A, B, C, D);
+    }
+
+    /**
+     * Returns the label of the effective area, with the probability of containment if the drift has been simulated
+     */
+    private String getLabelText() {
+        Double poc = getProbabilityOfContainment();
+        if (poc == null) {
+            return labelName;
+        }
+        String pocText = String.format("POC %.0f%%", poc * 100.0);
+        return labelName.equals("") ? pocText : labelName + " - " + pocText;
     }
 
     public void updateLines(Position A, Position B, Position C, Position D) {
@@ -332,6 +364,11 @@ public class EffortAllocationAreaGraphics extends OMGraphicList {
         leftLine.updateLine(A, C);
         rightLine.updateLine(B, D);
 
+        // The probability of containment changes with the area
+        if (sarData != null && sarData.getDriftProbabilityGrid() != null) {
+            effectiveArea.setLabelText(getLabelText());
+        }
+
     }
 
     public void updateLength(LineType type, Position newPos) {
@@ -180,6 +180,16 @@ public class EffortAllocationInternalGraphics extends OMGraphicList {
 
     }
 
+    /**
+     * Sets the text of the label of the area
+     * 
+     * @param labelText
+     *            the new label text
+     */
+    public void setLabelText(String labelText) {
+        label.setData(labelText);
+    }
+
     private void checkLabel() {
         if (!label.getData().equals("")) {
 
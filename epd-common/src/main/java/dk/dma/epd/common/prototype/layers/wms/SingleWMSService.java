@@ -97,7 +97,48 @@ public final class SingleWMSService extends AbstractWMSService implements ImageS
         return wmsList;
     }
 
-    private Image transformWhiteToTransparent(BufferedImage image) {
+    /**
+     * Downloads the WMS image of the current position and size, with white pixels made transparent
+     * 
+     * @return the image, or null if the image could not be retrieved
+     */
+    public BufferedImage getImage() {
+        try {
+            BufferedImage image = ImageIO.read(new java.net.URL(getQueryString()));
+            if (image == null) {
+                LOG.warn("Unable to retrieve image from URL, check the WMS URL");
+                return null;
+            }
+            status.markContactSuccess();
+            return transformWhiteToTransparent(image);
+        } catch (IOException ex) {
+            status.markContactError(ex);
+            LOG.error("Bad URL!");
+            return null;
+        }
+    }
+
+    /**
+     * Sets the area and size of the image to retrieve
+     * 
+     * @param north
+     *            the northern latitude
+     * @param west
+     *            the western longitude
+     * @param south
+     *            the southern latitude
+     * @param east
+     *            the eastern longitude
+     * @param w
+     *            the width in pixels
+     * @param h
+     *            the height in pixels
+     */
+    public void setArea(double north, double west, double south, double east, int w, int h) {
+        setWMSPosition(west, north, west, north, east, south, w, h);
+    }
+
+    private BufferedImage transformWhiteToTransparent(BufferedImage image) {
 
         BufferedImage dest = new BufferedImage(image.getWidth(null), image.getHeight(null), BufferedImage.TYPE_INT_ARGB);
         Graphics2D g2 = dest.createGraphics();
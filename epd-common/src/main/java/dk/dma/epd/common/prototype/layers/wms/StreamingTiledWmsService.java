@@ -14,59 +14,82 @@
  */
 package dk.dma.epd.common.prototype.layers.wms;
 
-import java.util.Collection;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorCompletionService;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.TimeUnit;
 
+import javax.swing.ImageIcon;
+
 import com.bbn.openmap.omGraphics.OMGraphicList;
 import com.bbn.openmap.proj.Projection;
+import com.bbn.openmap.proj.coords.LatLonPoint;
+
+import dk.dma.epd.common.graphics.CenterRaster;
+import dk.dma.epd.common.prototype.layers.wms.WmsTileCache.TileKey;
 
+/**
+ * WMS service that divides the map into a fixed grid of tiles per map scale, which are downloaded asynchronously.
+ * <p>
+ * The tile grid is anchored at the map origin, so that the same tiles are requested when panning back over an area.
+ * Tiles are kept in the shared {@linkplain WmsTileCache}, and are downloaded using the bounded download executor shared
+ * by all WMS services. Besides the visible tiles, a margin of tiles around the viewport is prefetched.
+ */
 public class StreamingTiledWmsService extends TiledWMSService implements
         Runnable, AsyncWMSService {
 
-    private boolean shouldRun = true;
-    ConcurrentHashMap<String, OMGraphicList> cache = new ConcurrentHashMap<String, OMGraphicList>();
-    ConcurrentHashMap<String, OMGraphicList> tmpCache = new ConcurrentHashMap<String, OMGraphicList>();
+    /** Width and height of the tiles in pixels */
+    public static final int TILE_SIZE = 256;
+
+    /** Number of tiles around the viewport to prefetch */
+    public static final int PREFETCH_MARGIN = 1;
+
+    private static final double MAX_LATITUDE = 85.0;
+
+    /** Tiles currently being loaded by any service */
+    private static final Set<TileKey> LOADING = Collections
+            .newSetFromMap(new ConcurrentHashMap<TileKey, Boolean>());
+
+    private volatile boolean shouldRun = true;
+    private final WmsTileCache cache;
+    private volatile Set<TileKey> wantedTiles = Collections.emptySet();
     LinkedBlockingDeque<Projection> projectionJobs = new LinkedBlockingDeque<>(
             1);
 
     private Thread t;
-    private ExecutorService handOffPool = Executors.newFixedThreadPool(1);
 
     public StreamingTiledWmsService(String wmsQuery, int tileNumber) {
-        super(wmsQuery, tileNumber);
-
-        this.t = new Thread(this);
-        this.t.start();
+        this(wmsQuery, tileNumber, WmsTileCache.getInstance());
     }
-    
-    public StreamingTiledWmsService(String wmsQuery, int tileNumber, ConcurrentHashMap<String, OMGraphicList> sharedCache) {
+
+    public StreamingTiledWmsService(String wmsQuery, int tileNumber, WmsTileCache cache) {
         super(wmsQuery, tileNumber);
-        this.cache = sharedCache;
-        
-        this.t = new Thread(this);
+        this.cache = cache;
+
+        this.t = new Thread(this, "StreamingTiledWmsService");
+        this.t.setDaemon(true);
         this.t.start();
     }
 
+    /**
+     * Returns the visible tiles present in the in-memory cache
+     */
     @Override
     public OMGraphicList getWmsList(Projection p) {
         final OMGraphicList result = new OMGraphicList();
-        final String key = getID(p);
-        if (cache.containsKey(key)) {
-            // LOG.debug("CACHE HIT");
-            tmpCache.remove(key);
-            result.addAll(cache.get(key));
-        } else if (tmpCache.containsKey(key)) {
-            // LOG.debug("TMPCACHE HIT");
-            result.addAll(tmpCache.get(key));
+        for (Tile tile : getTiles(p, 0)) {
+            BufferedImage image = cache.getFromMemory(tile.key);
+            if (image != null) {
+                result.add(new CenterRaster(tile.centerLat, tile.centerLon,
+                        image.getWidth(), image.getHeight(), new ImageIcon(image)));
+            }
         }
-
         return result;
     }
 
@@ -75,119 +98,181 @@ public class StreamingTiledWmsService extends TiledWMSService implements
      */
     public void stop() {
         shouldRun = false;
+        t.interrupt();
     }
 
     @Override
     public void run() {
+        Projection lastJob = null;
         while (shouldRun) {
-            Projection job = null;
             try {
-                // blocks until projection bbox job ready
-                job = projectionJobs.takeLast();
-
-                Thread.sleep(1000); // only take jobs every second
-                // LOG.debug("JOB TAKEN");
+                // Blocks until a projection job is ready. Periodically retry the
+                // last job to fetch tiles that failed to download
+                Projection job = projectionJobs.pollLast(10, TimeUnit.SECONDS);
+                if (job != null) {
+                    lastJob = job;
+                    Thread.sleep(200); // let the projection settle
+                    job = projectionJobs.pollLast();
+                    if (job != null) {
+                        lastJob = job;
+                    }
+                }
             } catch (InterruptedException e) {
-                // TODO Auto-generated catch block
-                e.printStackTrace();
+                continue;
             }
 
-            if (cache.containsKey(getID(job))) {
-                clearCache();
-            } else {
-                asyncDownload(job);
-                
+            if (lastJob != null) {
+                asyncDownload(lastJob);
             }
         }
     }
-    
-    
-
-    private void clearCache() {
-        if (cache.keySet().size() > 128) {
-            LOG.debug("pruning cache (memory concern)");
-            cache.clear();
-            tmpCache.clear();
-        }
-    }
 
     /**
-     * Complete asynchronous download and update of caches
-     * 
+     * Loads the missing visible and prefetch tiles of the projection, from the
+     * disk cache or the WMS server, and fires a WMS event whenever a tile has
+     * been loaded
+     *
      * @param job
      */
     public void asyncDownload(final Projection job) {
-        handOffPool.execute(new Runnable() {
-
-            @Override
-            public void run() {
-                Collection<SingleWMSService> workers = getTiles(job);
-                OMGraphicList result = new OMGraphicList();
-
-                ExecutorService pool = Executors.newFixedThreadPool(Math.max(workers.size(),4));
-                ExecutorCompletionService<OMGraphicList> completionService = new ExecutorCompletionService<>(
-                        pool);
+        List<Tile> visible = getTiles(job, 0);
+        List<Tile> tiles = new ArrayList<>(visible);
+        for (Tile tile : getTiles(job, PREFETCH_MARGIN)) {
+            if (!visible.contains(tile)) {
+                tiles.add(tile);
+            }
+        }
 
-                for (SingleWMSService w : workers) {
-                    completionService.submit(w);
-                }
+        Set<TileKey> wanted = new HashSet<>();
+        for (Tile tile : tiles) {
+            wanted.add(tile.key);
+        }
+        wantedTiles = wanted;
 
-                boolean allSuccess = true;
-                for (int i = 0; i < workers.size(); i++) {
-                    Future<OMGraphicList> future;
-                    try {
-                        future = completionService.poll(Math.max(100,5000/(i+1)),
-                                TimeUnit.MILLISECONDS);
-                        OMGraphicList tile = future.get();
-                        result.addAll(tile);
-                        tmpCache.putIfAbsent(getID(job), new OMGraphicList());
-                        tmpCache.get(getID(job)).addAll(tile);
-                        fireWMSEvent();
-                    } catch (InterruptedException | ExecutionException
-                            | NullPointerException e) {
-                        allSuccess = false;
-                        //LOG.debug("A Tile failed to download within the alotted time. (~5000ms)");
+        // Visible tiles are submitted before the prefetch tiles
+        boolean cached = false;
+        for (final Tile tile : tiles) {
+            if (cache.getFromMemory(tile.key) != null) {
+                cached = true;
+            } else if (LOADING.add(tile.key)) {
+                DOWNLOAD_POOL.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            loadTile(tile);
+                        } finally {
+                            LOADING.remove(tile.key);
+                        }
                     }
-                }
-
-                if (allSuccess) {
-                    tmpCache.remove(getID(job));
-                    cache.put(getID(job), result);
-                    fireWMSEvent();
-                } else {
-                    LOG.debug("A Tile failed to download, resubmitting job");
-                    queue(job);
-                }
+                });
             }
-        });
-
+        }
 
+        if (cached) {
+            fireWMSEvent();
+        }
     }
 
-    public void queue(Projection p) {
-        //p = normalizeProjection(p);
-        if (this.projectionJobs.offer(p)) {
+    private void loadTile(Tile tile) {
+        // Skip tiles that have been panned away from while queued
+        if (!wantedTiles.contains(tile.key)) {
+            return;
+        }
 
-        } else {
-            LOG.debug("Queue is full, kicking old job in favor of new");
-            try {
-                this.projectionJobs.takeFirst();
-            } catch (InterruptedException e) {
-                // TODO Auto-generated catch block
-                e.printStackTrace();
+        BufferedImage image = cache.get(tile.key);
+        if (image == null) {
+            SingleWMSService service = new SingleWMSService(wmsQuery);
+            service.setArea(tile.north, tile.west, tile.south, tile.east, TILE_SIZE, TILE_SIZE);
+            image = service.getImage();
+            if (image == null) {
+                LOG.debug("Failed downloading WMS tile " + tile.key);
+                return;
             }
-            this.projectionJobs.offer(p);
+            cache.put(tile.key, image);
         }
+        fireWMSEvent();
+    }
 
+    public void queue(Projection p) {
+        if (!this.projectionJobs.offer(p)) {
+            // Kick the old job in favor of the new
+            this.projectionJobs.pollFirst();
+            this.projectionJobs.offer(p);
+        }
     }
 
-    // meh!
-    public String getBbox(Projection p) {
-        String meh = (new SingleWMSService(wmsQuery, p)).getBbox();
-        return meh;
+    /**
+     * Returns the tiles covering the projection, expanded by the given number of
+     * tiles in each direction.
+     * <p>
+     * The tile grid is anchored at the pixel position of lat/lon (0, 0), which
+     * is independent of the map center for the cylindrical projections used.
+     *
+     * @param p
+     *            the projection
+     * @param margin
+     *            the number of additional tiles in each direction
+     * @return the tiles
+     */
+    List<Tile> getTiles(Projection p, int margin) {
+        List<Tile> tiles = new ArrayList<>();
+        int scale = Math.round(p.getScale());
+        Point2D origin = p.forward(0.0, 0.0);
+        double x0 = origin.getX();
+        double y0 = origin.getY();
+
+        int minCol = (int) Math.floor(-x0 / TILE_SIZE) - margin;
+        int maxCol = (int) Math.floor((p.getWidth() - x0) / TILE_SIZE) + margin;
+        int minRow = (int) Math.floor(-y0 / TILE_SIZE) - margin;
+        int maxRow = (int) Math.floor((p.getHeight() - y0) / TILE_SIZE) + margin;
+
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int col = minCol; col <= maxCol; col++) {
+                double x = x0 + col * TILE_SIZE;
+                double y = y0 + row * TILE_SIZE;
+                LatLonPoint nw = p.inverse(new Point2D.Double(x, y));
+                LatLonPoint se = p.inverse(new Point2D.Double(x + TILE_SIZE, y + TILE_SIZE));
+                LatLonPoint center = p.inverse(new Point2D.Double(x + TILE_SIZE / 2.0, y + TILE_SIZE / 2.0));
+                if (nw.getY() > MAX_LATITUDE || se.getY() < -MAX_LATITUDE) {
+                    continue;
+                }
+                tiles.add(new Tile(new TileKey(wmsQuery, scale, col, row), nw.getY(), nw.getX(), se.getY(), se
+                        .getX(), center.getY(), center.getX()));
+            }
+        }
+        return tiles;
     }
 
-    public String getID(Projection p) {
-        return getBbox(p)+Math.round(p.getScale());
+    /**
+     * A tile of the grid and its area
+     */
+    static final class Tile {
+        final TileKey key;
+        final double north;
+        final double west;
+        final double south;
+        final double east;
+        final double centerLat;
+        final double centerLon;
+
+        Tile(TileKey key, double north, double west, double south, double east, double centerLat, double centerLon) {
+            this.key = key;
+            this.north = north;
+            this.west = west;
+            this.south = south;
+            this.east = east;
+            this.centerLat = centerLat;
+            this.centerLon = centerLon;
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Tile && key.equals(((Tile) obj).key);
+        }
     }
 }
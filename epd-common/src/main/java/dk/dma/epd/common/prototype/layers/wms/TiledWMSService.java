@@ -24,7 +24,9 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.bbn.openmap.omGraphics.OMGraphicList;
 import com.bbn.openmap.proj.Proj;
@@ -32,6 +34,22 @@ import com.bbn.openmap.proj.Projection;
 
 public class TiledWMSService extends AbstractWMSService {
 
+    /** Maximum number of concurrent WMS downloads, shared by all WMS services */
+    public static final int DOWNLOAD_THREADS = 4;
+
+    /** Download executor shared by all WMS services */
+    protected static final ExecutorService DOWNLOAD_POOL = Executors.newFixedThreadPool(DOWNLOAD_THREADS,
+            new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "WMSDownload-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
     protected int root;
     protected int sqrRoot;
 
@@ -161,14 +179,10 @@ public class TiledWMSService extends AbstractWMSService {
 
         OMGraphicList result = new OMGraphicList();
 
-        // why not make this a field? because we want total separation between
-        // results
-        ExecutorService es = Executors.newCachedThreadPool();
-
         Collection<SingleWMSService> wmsInstances = this.getTiles(p);
 
         try {
-            List<Future<OMGraphicList>> futures = es.invokeAll(wmsInstances,
+            List<Future<OMGraphicList>> futures = DOWNLOAD_POOL.invokeAll(wmsInstances,
                     10, TimeUnit.SECONDS);
 
             for (Future<OMGraphicList> f : futures) {
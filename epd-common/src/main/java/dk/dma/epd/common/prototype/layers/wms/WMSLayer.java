@@ -14,8 +14,6 @@
  */
 package dk.dma.epd.common.prototype.layers.wms;
 
-import java.awt.image.BufferedImage;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.slf4j.Logger;
@@ -26,7 +24,6 @@ import com.bbn.openmap.omGraphics.OMGraphic;
 import com.bbn.openmap.omGraphics.OMGraphicList;
 import com.bbn.openmap.proj.Projection;
 
-import dk.dma.epd.common.graphics.CenterRaster;
 import dk.dma.epd.common.prototype.event.WMSEvent;
 import dk.dma.epd.common.prototype.event.WMSEventListener;
 import dk.dma.epd.common.prototype.layers.EPDLayerCommon;
@@ -74,20 +71,6 @@ public class WMSLayer extends EPDLayerCommon implements Runnable, WMSEventListen
 
     }
 
-    /**
-     * Constructor that starts the WMS layer in a separate thread
-     * 
-     * @param query
-     *            the WMS query
-     * @param sharedCache
-     *            the shared cache to use
-     */
-    public WMSLayer(String query, ConcurrentHashMap<String, OMGraphicList> sharedCache) {
-        wmsService = new StreamingTiledWmsService(query, 4, sharedCache);
-        wmsService.addWMSEventListener(this);
-        new Thread(this).start();
-    }
-
     /**
      * Returns a reference to the WMS service
      * 
@@ -106,10 +89,11 @@ public class WMSLayer extends EPDLayerCommon implements Runnable, WMSEventListen
     public void drawWMS(OMGraphicList tiles) {
         this.setVisible(mapSettings.isWmsVisible());
         if (mapSettings.isWmsVisible()) {
-            this.internalCache.addAllAbsent(tiles);
+            // The tiles cover the entire viewport, so the previous tiles are replaced
+            this.internalCache.clear();
+            this.internalCache.addAll(tiles);
             graphics.clear();
             graphics.addAll(internalCache);
-            graphics.addAll(tiles);
             doPrepare();
         } else {
 
@@ -147,15 +131,7 @@ public class WMSLayer extends EPDLayerCommon implements Runnable, WMSEventListen
      * Clears the WMS layer
      */
     public void clearWMS() {
-        // Aggressively flush the buffered images
-        for (OMGraphic g : internalCache) {
-            if (g instanceof CenterRaster) {
-                CenterRaster cr = (CenterRaster) g;
-                if (cr.getImage() instanceof BufferedImage) {
-                    ((BufferedImage) cr.getImage()).flush();
-                }
-            }
-        }
+        // The tile images are owned by the WmsTileCache, so they are not flushed here
         this.internalCache.clear();
         this.drawWMS(new OMGraphicList());
     }
@@ -194,6 +170,7 @@ public class WMSLayer extends EPDLayerCommon implements Runnable, WMSEventListen
      */
     public void stop() {
         shouldRun = false;
+        wmsService.stop();
     }
 
     /**
@@ -0,0 +1,415 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.layers.wms;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.Immutable;
+import net.jcip.annotations.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.dma.epd.common.prototype.EPD;
+import dk.dma.epd.common.prototype.settings.MapSettings;
+
+/**
+ * Two-level cache of WMS tiles shared by all WMS layers.
+ * <p>
+ * Tiles are kept in an in-memory LRU cache bounded by the total size of the decoded images, and are stored as PNG
+ * files below the {@code wmscache} folder of the EPD home folder, so that they survive restarts. The tiles of a WMS
+ * query are stored in a folder named by the SHA-256 hash of the query. Tiles older than the configured maximum age are
+ * not read from disk, causing them to be downloaded again.
+ * <p>
+ * The disk cache is bounded too. Its size is tracked approximately from the first write on, and when it exceeds the
+ * maximum disk size, a background thread deletes the expired tiles and then the oldest tiles until the disk cache is
+ * below {@linkplain #PURGE_FRACTION} of the maximum size.
+ */
+@ThreadSafe
+public final class WmsTileCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WmsTileCache.class);
+
+    /** The fraction of the maximum disk size the disk cache is purged down to, so it is not purged on every write */
+    static final double PURGE_FRACTION = 0.9;
+
+    private static WmsTileCache instance;
+
+    private final long maxBytes;
+    private final long maxAge;
+    private final long maxDiskBytes;
+    private final Path cacheDir;
+
+    @GuardedBy("this")
+    private final LinkedHashMap<TileKey, BufferedImage> memoryCache = new LinkedHashMap<>(256, 0.75f, true);
+
+    @GuardedBy("this")
+    private long bytes;
+
+    /** The approximate size of the disk cache, or -1 until the disk cache has been purged the first time */
+    @GuardedBy("this")
+    private long diskBytes = -1L;
+
+    @GuardedBy("this")
+    private boolean purging;
+
+    /**
+     * Constructor
+     *
+     * @param maxBytes
+     *            the maximum size of the in-memory cache in bytes
+     * @param maxAge
+     *            the maximum age of disk cached tiles in milliseconds
+     * @param maxDiskBytes
+     *            the maximum size of the disk cache in bytes
+     * @param cacheDir
+     *            the disk cache folder, or null for an in-memory cache only
+     */
+    public WmsTileCache(long maxBytes, long maxAge, long maxDiskBytes, Path cacheDir) {
+        this.maxBytes = maxBytes;
+        this.maxAge = maxAge;
+        this.maxDiskBytes = maxDiskBytes;
+        this.cacheDir = cacheDir;
+    }
+
+    /**
+     * Returns the cache shared by all WMS layers, configured from the map settings of the current EPD system
+     *
+     * @return the shared cache
+     */
+    public static synchronized WmsTileCache getInstance() {
+        if (instance == null) {
+            EPD epd = EPD.getInstance();
+            MapSettings mapSettings = epd != null ? epd.getSettings().getMapSettings() : new MapSettings();
+            Path cacheDir = epd != null ? epd.getHomePath().resolve("wmscache") : null;
+            instance = new WmsTileCache(mapSettings.getWmsCacheSize() * 1024L * 1024L,
+                    TimeUnit.DAYS.toMillis(mapSettings.getWmsCacheMaxAge()),
+                    mapSettings.getWmsCacheDiskSize() * 1024L * 1024L, cacheDir);
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the tile from the in-memory cache, or null if not present
+     *
+     * @param key
+     *            the tile key
+     * @return the tile image or null
+     */
+    public synchronized BufferedImage getFromMemory(TileKey key) {
+        return memoryCache.get(key);
+    }
+
+    /**
+     * Returns the tile from the in-memory cache, or loads it from the disk cache. Returns null if the tile is not
+     * cached or has expired.
+     *
+     * @param key
+     *            the tile key
+     * @return the tile image or null
+     */
+    public BufferedImage get(TileKey key) {
+        BufferedImage image = getFromMemory(key);
+        if (image != null || cacheDir == null) {
+            return image;
+        }
+
+        Path file = getFile(key);
+        try {
+            if (!Files.exists(file) || System.currentTimeMillis() - Files.getLastModifiedTime(file).toMillis() > maxAge) {
+                return null;
+            }
+            image = ImageIO.read(file.toFile());
+        } catch (IOException e) {
+            LOG.warn("Failed reading cached WMS tile " + file + ": " + e.getMessage());
+            return null;
+        }
+        if (image != null) {
+            putInMemory(key, image);
+        }
+        return image;
+    }
+
+    /**
+     * Adds the tile to the in-memory cache and stores it in the disk cache
+     *
+     * @param key
+     *            the tile key
+     * @param image
+     *            the tile image
+     */
+    public void put(TileKey key, BufferedImage image) {
+        putInMemory(key, image);
+        if (cacheDir == null) {
+            return;
+        }
+
+        Path file = getFile(key);
+        try {
+            Files.createDirectories(file.getParent());
+            // Write to a temporary file first, so that other instances never read a partial tile
+            Path tmp = Files.createTempFile(file.getParent(), "tile", ".tmp");
+            ImageIO.write(image, "png", tmp.toFile());
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            diskWritten(Files.size(file));
+        } catch (IOException e) {
+            LOG.warn("Failed writing WMS tile to cache " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Adds the written tile to the size of the disk cache, and starts purging the disk cache in the background if it
+     * has grown too large or has not been purged yet
+     */
+    private void diskWritten(long fileBytes) {
+        synchronized (this) {
+            if (diskBytes >= 0) {
+                diskBytes += fileBytes;
+            }
+            if (purging || (diskBytes >= 0 && diskBytes <= maxDiskBytes)) {
+                return;
+            }
+            purging = true;
+        }
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                purgeDisk();
+            }
+        }, "WmsTileCachePurge");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Deletes the expired tiles from the disk cache, and then the oldest tiles until the disk cache is below
+     * {@linkplain #PURGE_FRACTION} of the maximum disk size
+     */
+    void purgeDisk() {
+        final List<CachedFile> files = new ArrayList<>();
+        try {
+            Files.walkFileTree(cacheDir, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (attrs.isRegularFile()) {
+                        files.add(new CachedFile(file, attrs.size(), attrs.lastModifiedTime().toMillis()));
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            LOG.warn("Failed reading WMS tile cache " + cacheDir + ": " + e.getMessage());
+        }
+
+        Collections.sort(files, new Comparator<CachedFile>() {
+            @Override
+            public int compare(CachedFile f1, CachedFile f2) {
+                return Long.compare(f1.lastModified, f2.lastModified);
+            }
+        });
+        long total = 0;
+        for (CachedFile file : files) {
+            total += file.size;
+        }
+
+        long now = System.currentTimeMillis();
+        long targetBytes = (long) (maxDiskBytes * PURGE_FRACTION);
+        int deleted = 0;
+        for (CachedFile file : files) {
+            if (now - file.lastModified <= maxAge && total <= targetBytes) {
+                break;
+            }
+            try {
+                Files.deleteIfExists(file.path);
+                total -= file.size;
+                deleted++;
+            } catch (IOException e) {
+                LOG.warn("Failed deleting cached WMS tile " + file.path + ": " + e.getMessage());
+            }
+        }
+
+        synchronized (this) {
+            diskBytes = total;
+            purging = false;
+        }
+        if (deleted > 0) {
+            LOG.info("Purged " + deleted + " tiles from the WMS tile cache, " + total / 1024 / 1024 + " MB left");
+        }
+    }
+
+    /**
+     * Returns the approximate size of the disk cache in bytes, or -1 if it has not been purged yet
+     *
+     * @return the approximate size of the disk cache in bytes
+     */
+    public synchronized long getDiskSize() {
+        return diskBytes;
+    }
+
+    /**
+     * Clears the in-memory cache
+     */
+    public synchronized void clearMemory() {
+        memoryCache.clear();
+        bytes = 0;
+    }
+
+    /**
+     * Returns the size of the in-memory cache in bytes
+     *
+     * @return the size of the in-memory cache in bytes
+     */
+    public synchronized long getMemorySize() {
+        return bytes;
+    }
+
+    private synchronized void putInMemory(TileKey key, BufferedImage image) {
+        BufferedImage old = memoryCache.put(key, image);
+        if (old != null) {
+            bytes -= size(old);
+        }
+        bytes += size(image);
+
+        // Evict the least recently used tiles
+        Iterator<Map.Entry<TileKey, BufferedImage>> it = memoryCache.entrySet().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            Map.Entry<TileKey, BufferedImage> eldest = it.next();
+            if (eldest.getKey().equals(key)) {
+                break;
+            }
+            bytes -= size(eldest.getValue());
+            it.remove();
+        }
+    }
+
+    Path getFile(TileKey key) {
+        return cacheDir.resolve(sha256(key.wmsQuery)).resolve(Integer.toString(key.scale))
+                .resolve(key.col + "_" + key.row + ".png");
+    }
+
+    /**
+     * Returns the SHA-256 hash of the given string as a hex string
+     */
+    private static String sha256(String value) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static long size(BufferedImage image) {
+        return 4L * image.getWidth() * image.getHeight();
+    }
+
+    /**
+     * A file of the disk cache, as found when purging the disk cache
+     */
+    private static final class CachedFile {
+        final Path path;
+        final long size;
+        final long lastModified;
+
+        CachedFile(Path path, long size, long lastModified) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+    }
+
+    /**
+     * Identifies a tile by the WMS query, the map scale and the tile column and row
+     */
+    @Immutable
+    public static final class TileKey {
+        final String wmsQuery;
+        final int scale;
+        final int col;
+        final int row;
+
+        /**
+         * Constructor
+         *
+         * @param wmsQuery
+         *            the WMS query, identifying the layer
+         * @param scale
+         *            the map scale
+         * @param col
+         *            the tile column
+         * @param row
+         *            the tile row
+         */
+        public TileKey(String wmsQuery, int scale, int col, int row) {
+            this.wmsQuery = wmsQuery;
+            this.scale = scale;
+            this.col = col;
+            this.row = row;
+        }
+
+        @Override
+        public int hashCode() {
+            return ((wmsQuery.hashCode() * 31 + scale) * 31 + col) * 31 + row;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof TileKey)) {
+                return false;
+            }
+            TileKey other = (TileKey) obj;
+            return scale == other.scale && col == other.col && row == other.row && wmsQuery.equals(other.wmsQuery);
+        }
+
+        @Override
+        public String toString() {
+            return scale + "/" + col + "_" + row + " of " + wmsQuery;
+        }
+    }
+}
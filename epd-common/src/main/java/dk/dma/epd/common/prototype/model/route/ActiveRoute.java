@@ -164,8 +164,9 @@ public class ActiveRoute extends Route {
 
         double smallestDist = 99999999.0;
         int index = 0;
-        for (int i = 0; i <= route.getWaypoints().size() - 1; i++) {
-            Position wpPos = route.getWaypoints().get(i).getPos();
+        RouteGeometry geometry = route.getGeometry();
+        for (int i = 0; i < geometry.getWaypointCount(); i++) {
+            Position wpPos = geometry.getPosition(i);
             double distance = pntData.getPosition().rhumbLineDistanceTo(wpPos);
             double angle = Math.abs(pntData.getCog()
                     - pntData.getPosition().rhumbLineBearingTo(wpPos));
@@ -358,15 +359,16 @@ public class ActiveRoute extends Route {
         totalTtg = ttg;
         totalDtg = activeWpRng;
 
-        for (int i = this.activeWaypointIndex; i < this.waypoints.size() - 1; i++) {
+        RouteGeometry geometry = getGeometry();
+        for (int i = this.activeWaypointIndex; i < geometry.getLegCount(); i++) {
+            RouteLeg leg = geometry.getWaypoint(i).getOutLeg();
             // Dynamic speed
             if (this.etaCalculationType == EtaCalculationType.DYNAMIC_SPEED
                     || ((this.etaCalculationType == EtaCalculationType.HYBRID) && i == this.activeWaypointIndex)) {
-                this.ttgs[i] = this.waypoints.get(i).getOutLeg()
-                        .calcTtg(this.speed);
+                this.ttgs[i] = leg.calcTtgForRange(geometry.getLegRange(i), this.speed);
             } else {
                 // Planned speed
-                this.ttgs[i] = this.waypoints.get(i).getOutLeg().calcTtg();
+                this.ttgs[i] = leg.calcTtgForRange(geometry.getLegRange(i));
             }
             totalDtg += dtgs[i];
             totalTtg += ttgs[i];
@@ -629,27 +631,28 @@ public class ActiveRoute extends Route {
 
         // Pre-compute the ranges to the active way point measured along the
         // route
+        RouteGeometry geometry = getGeometry();
         double[] distanceToActiveWaypoints = null;
         if (filter.getType() == FilterType.METERS) {
-            distanceToActiveWaypoints = new double[waypoints.size()];
+            distanceToActiveWaypoints = new double[geometry.getWaypointCount()];
             distanceToActiveWaypoints[activeWaypointIndex] = 0.0;
             for (int i = activeWaypointIndex - 1; i >= 0; i--) {
-                double dist = waypoints.get(i).getPos()
-                        .rhumbLineDistanceTo(waypoints.get(i + 1).getPos());
+                double dist = geometry.getPosition(i)
+                        .rhumbLineDistanceTo(geometry.getPosition(i + 1));
                 distanceToActiveWaypoints[i] = distanceToActiveWaypoints[i + 1]
                         + dist;
             }
-            for (int i = activeWaypointIndex + 1; i < waypoints.size(); i++) {
-                double dist = waypoints.get(i).getPos()
-                        .rhumbLineDistanceTo(waypoints.get(i - 1).getPos());
+            for (int i = activeWaypointIndex + 1; i < geometry.getWaypointCount(); i++) {
+                double dist = geometry.getPosition(i)
+                        .rhumbLineDistanceTo(geometry.getPosition(i - 1));
                 distanceToActiveWaypoints[i] = distanceToActiveWaypoints[i - 1]
                         + dist;
             }
         }
 
-        for (int i = 0; i < getWaypoints().size(); i++) {
+        for (int i = 0; i < geometry.getWaypointCount(); i++) {
 
-            RouteWaypoint currentWaypoint = getWaypoints().get(i);
+            RouteWaypoint currentWaypoint = geometry.getWaypoint(i);
 
             // Check if the way point should be included
             if (filter.getType() == FilterType.MINUTES) {
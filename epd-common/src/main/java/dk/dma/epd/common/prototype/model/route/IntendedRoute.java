@@ -167,9 +167,10 @@ public class IntendedRoute extends Route {
         // Find ranges on each leg
         routeRange = 0.0;
         ranges.add(routeRange);
-        for (int i = 0; i < waypoints.size() - 1; i++) {
-            double dist = waypoints.get(i).getPos()
-                    .rhumbLineDistanceTo(waypoints.get(i + 1).getPos()) / 1852.0;
+        RouteGeometry geometry = getGeometry();
+        for (int i = 0; i < geometry.getLegCount(); i++) {
+            double dist = geometry.getPosition(i)
+                    .rhumbLineDistanceTo(geometry.getPosition(i + 1)) / 1852.0;
             routeRange += dist;
             ranges.add(routeRange);
         }
@@ -312,12 +313,13 @@ public class IntendedRoute extends Route {
             return null;
         } else {
 
-            for (int i = 0; i < getWaypoints().size(); i++) {
+            RouteGeometry geometry = getGeometry();
+            for (int i = 0; i < geometry.getWaypointCount(); i++) {
 
                 // We haven't found the match so the ship must have finished
                 // it's
                 // route - Display the box at the end
-                if (i == getWaypoints().size() - 1) {
+                if (i == geometry.getWaypointCount() - 1) {
                     plannedPositionBearing = 0;
                     return null;
 
@@ -335,32 +337,27 @@ public class IntendedRoute extends Route {
                                 .get(i).getTime()) / 1000;
 
                         double distanceTravelledNauticalMiles = Calculator
-                                .distanceAfterTimeMph(getWaypoints().get(i)
+                                .distanceAfterTimeMph(geometry.getWaypoint(i)
                                         .getOutLeg().getSpeed(),
                                         secondsSailTime);
 
-                        if (this.getWaypoints().get(i).getOutLeg().getHeading() == Heading.GC) {
+                        if (geometry.getLegHeading(i) == Heading.GC) {
                             plannedPosition = Calculator
                                     .findPosition(
-                                            this.getWaypoints().get(i).getPos(),
-                                            this.getWaypoints().get(i + 1)
-                                                    .getPos(),
+                                            geometry.getPosition(i),
+                                            geometry.getPosition(i + 1),
                                             Converter
                                                     .nmToMeters(distanceTravelledNauticalMiles));
                         } else {
                             plannedPosition = Calculator
                                     .findPosition(
-                                            this.getWaypoints().get(i).getPos(),
-                                            this.getWaypoints().get(i)
-                                                    .getOutLeg().calcBrg(),
+                                            geometry.getPosition(i),
+                                            geometry.getLegBearing(i),
                                             Converter
                                                     .nmToMeters(distanceTravelledNauticalMiles));
                         }
 
-                        RouteLeg leg = getWaypoints().get(i).getOutLeg();
-                        plannedPositionBearing = Calculator.bearing(leg
-                                .getStartWp().getPos(),
-                                leg.getEndWp().getPos(), leg.getHeading());
+                        plannedPositionBearing = geometry.getLegBearing(i);
 
                         return plannedPosition;
                     }
@@ -109,6 +109,12 @@ public class Route implements Serializable {
 
     protected EtaCalculationType etaCalculationType = EtaCalculationType.DYNAMIC_SPEED;
 
+    /**
+     * Cached geometry of the route, see {@linkplain #getGeometry()}
+     */
+    private transient volatile RouteGeometry geometry;
+    private transient long geometryVersion;
+
     public Route() {
 
     }
@@ -342,11 +348,11 @@ public class Route implements Serializable {
     }
 
     public double getWpRngSum(int index) {
-        double sum = 0;
-        for (int i = 0; i < index && i < dtgs.length; i++) {
-            sum += dtgs[i];
+        RouteGeometry geometry = getGeometry();
+        if (geometry.getWaypointCount() == 0 || index <= 0) {
+            return 0.0;
         }
-        return sum;
+        return geometry.getCumulativeRange(Math.min(index, geometry.getWaypointCount() - 1));
     }
 
     public Double getWpBrg(RouteWaypoint routeWaypoint) {
@@ -382,6 +388,33 @@ public class Route implements Serializable {
 
     public void setWaypoints(LinkedList<RouteWaypoint> waypoints) {
         this.waypoints = waypoints;
+        invalidateGeometry();
+    }
+
+    /**
+     * Returns the geometry of the route, i.e. the way points in an array along with the pre-computed ranges, bearings
+     * and bounding boxes of the legs.
+     * <p>
+     * The geometry is cached, and a new geometry with a higher version is computed when the way points, their
+     * positions or the leg headings have changed. Checking this is linear in the number of way points, but involves no
+     * trigonometry, so callers looping over the legs should fetch the geometry once and index into it.
+     *
+     * @return the geometry of the route
+     */
+    public synchronized RouteGeometry getGeometry() {
+        RouteGeometry geometry = this.geometry;
+        if (geometry == null || !geometry.isValidFor(waypoints)) {
+            geometry = new RouteGeometry(++geometryVersion, waypoints);
+            this.geometry = geometry;
+        }
+        return geometry;
+    }
+
+    /**
+     * Discards the cached geometry of the route. Called when the route is edited.
+     */
+    protected void invalidateGeometry() {
+        geometry = null;
     }
 
     public String getName() {
@@ -532,19 +565,24 @@ public class Route implements Serializable {
             return;
         }
 
+        if (force) {
+            invalidateGeometry();
+        }
+
         totalTtg = 0L;
         totalDtg = 0.0;
 
         if (waypoints.size() > 0) {
 
+            RouteGeometry geometry = getGeometry();
             // Create array TTG's and DTG's array
-            ttgs = new long[waypoints.size() - 1];
-            dtgs = new double[waypoints.size() - 1];
+            ttgs = new long[geometry.getLegCount()];
+            dtgs = new double[geometry.getLegCount()];
             // Iterate through legs
-            for (int i = 0; i < waypoints.size() - 1; i++) {
-                ttgs[i] = waypoints.get(i).getOutLeg().calcTtg();
+            for (int i = 0; i < geometry.getLegCount(); i++) {
+                dtgs[i] = geometry.getLegRange(i);
+                ttgs[i] = geometry.getWaypoint(i).getOutLeg().calcTtgForRange(dtgs[i]);
                 totalTtg += ttgs[i];
-                dtgs[i] = waypoints.get(i).getOutLeg().calcRng();
                 totalDtg += dtgs[i];
             }
             // Calculate ETA for each waypoint
@@ -837,32 +875,7 @@ public class Route implements Serializable {
         if (waypoints == null || waypoints.size() == 0) {
             return false;
         }
-        double minLat = 90;
-        double maxLat = -90;
-        double minLon = 180;
-        double maxLon = -180;
-        for (RouteWaypoint waypoint : waypoints) {
-            Position location = waypoint.getPos();
-            if (location.getLatitude() < minLat) {
-                minLat = location.getLatitude();
-            }
-            if (location.getLatitude() > maxLat) {
-                maxLat = location.getLatitude();
-            }
-            if (location.getLongitude() < minLon) {
-                minLon = location.getLongitude();
-            }
-            if (location.getLongitude() > maxLon) {
-                maxLon = location.getLongitude();
-            }
-        }
-
-        double pointLongitude = point.getLongitude();
-        double pointLatitude = point.getLatitude();
-        if (pointLongitude >= minLon && pointLongitude <= maxLon && pointLatitude >= minLat && pointLatitude <= maxLat) {
-            return true;
-        }
-        return false;
+        return getGeometry().isPointWithinBBox(point);
     }
 
     @Override
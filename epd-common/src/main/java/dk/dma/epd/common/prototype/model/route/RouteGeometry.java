@@ -0,0 +1,312 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.model.route;
+
+import java.util.Iterator;
+import java.util.List;
+
+import net.jcip.annotations.Immutable;
+import dk.dma.enav.model.geometry.Position;
+import dk.dma.epd.common.Heading;
+import dk.dma.epd.common.util.Calculator;
+
+/**
+ * Immutable snapshot of the geometry of a {@linkplain Route}.
+ * <p>
+ * Holds the way points in an array, along with the pre-computed range and bearing of each leg, the cumulative range to
+ * each way point, and the bounding boxes of each leg and of the whole route. The ranges and bearings are computed as
+ * by {@linkplain RouteLeg#calcRng()} and {@linkplain RouteLeg#calcBrg()}.
+ * <p>
+ * A snapshot is obtained through {@linkplain Route#getGeometry()}, which returns a new snapshot with a higher version
+ * whenever the way points, their positions or the leg headings have changed. The bounding boxes are plain
+ * latitude/longitude boxes of the way points, so great circle legs may bulge slightly outside them.
+ */
+@Immutable
+public final class RouteGeometry {
+
+    private final long version;
+    private final RouteWaypoint[] waypoints;
+    private final Position[] positions;
+    private final Heading[] headings;
+    private final double[] legRanges;
+    private final double[] legBearings;
+    private final double[] cumulativeRanges;
+    private final double[] legBBoxes;
+    private final double minLat;
+    private final double minLon;
+    private final double maxLat;
+    private final double maxLon;
+
+    /**
+     * Constructor
+     *
+     * @param version
+     *            the version of the geometry
+     * @param waypoints
+     *            the way points of the route
+     */
+    RouteGeometry(long version, List<RouteWaypoint> waypoints) {
+        this.version = version;
+        this.waypoints = waypoints.toArray(new RouteWaypoint[waypoints.size()]);
+        int n = this.waypoints.length;
+        int legs = Math.max(0, n - 1);
+        positions = new Position[n];
+        headings = new Heading[legs];
+        legRanges = new double[legs];
+        legBearings = new double[legs];
+        cumulativeRanges = new double[n];
+        legBBoxes = new double[legs * 4];
+
+        double minLat = 90, minLon = 180, maxLat = -90, maxLon = -180;
+        for (int i = 0; i < n; i++) {
+            Position pos = this.waypoints[i].getPos();
+            positions[i] = pos;
+            minLat = Math.min(minLat, pos.getLatitude());
+            minLon = Math.min(minLon, pos.getLongitude());
+            maxLat = Math.max(maxLat, pos.getLatitude());
+            maxLon = Math.max(maxLon, pos.getLongitude());
+        }
+        this.minLat = minLat;
+        this.minLon = minLon;
+        this.maxLat = maxLat;
+        this.maxLon = maxLon;
+
+        for (int i = 0; i < legs; i++) {
+            headings[i] = getLegHeading(this.waypoints[i]);
+            Position start = positions[i];
+            Position end = positions[i + 1];
+            legRanges[i] = Calculator.range(start, end, headings[i]);
+            legBearings[i] = Calculator.bearing(start, end, headings[i]);
+            cumulativeRanges[i + 1] = cumulativeRanges[i] + legRanges[i];
+            legBBoxes[i * 4] = Math.min(start.getLatitude(), end.getLatitude());
+            legBBoxes[i * 4 + 1] = Math.min(start.getLongitude(), end.getLongitude());
+            legBBoxes[i * 4 + 2] = Math.max(start.getLatitude(), end.getLatitude());
+            legBBoxes[i * 4 + 3] = Math.max(start.getLongitude(), end.getLongitude());
+        }
+    }
+
+    /**
+     * Returns the heading of the out-leg of the way point, which defaults to rhumb line
+     */
+    private static Heading getLegHeading(RouteWaypoint waypoint) {
+        RouteLeg leg = waypoint.getOutLeg();
+        return (leg == null || leg.getHeading() == null) ? Heading.RL : leg.getHeading();
+    }
+
+    /**
+     * Returns if this geometry is still valid for the given way points, i.e. if it holds the same way points, at the
+     * same positions, with the same leg headings. Runs in linear time without any trigonometry.
+     *
+     * @param waypoints
+     *            the way points to check
+     * @return if this geometry is still valid for the given way points
+     */
+    boolean isValidFor(List<RouteWaypoint> waypoints) {
+        if (waypoints.size() != this.waypoints.length) {
+            return false;
+        }
+        Iterator<RouteWaypoint> it = waypoints.iterator();
+        for (int i = 0; i < this.waypoints.length; i++) {
+            RouteWaypoint waypoint = it.next();
+            if (waypoint != this.waypoints[i] || waypoint.getPos() != positions[i]) {
+                return false;
+            }
+            if (i < headings.length && getLegHeading(waypoint) != headings[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the version of the geometry. The version increases each time the route geometry changes.
+     *
+     * @return the version of the geometry
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the number of way points
+     *
+     * @return the number of way points
+     */
+    public int getWaypointCount() {
+        return waypoints.length;
+    }
+
+    /**
+     * Returns the number of legs
+     *
+     * @return the number of legs
+     */
+    public int getLegCount() {
+        return legRanges.length;
+    }
+
+    /**
+     * Returns the way point with the given index
+     *
+     * @param index
+     *            the way point index
+     * @return the way point
+     */
+    public RouteWaypoint getWaypoint(int index) {
+        return waypoints[index];
+    }
+
+    /**
+     * Returns the position of the way point with the given index, as of the time the geometry was computed
+     *
+     * @param index
+     *            the way point index
+     * @return the position of the way point
+     */
+    public Position getPosition(int index) {
+        return positions[index];
+    }
+
+    /**
+     * Returns the heading of the leg starting at the way point with the given index
+     *
+     * @param index
+     *            the leg index
+     * @return the heading of the leg
+     */
+    public Heading getLegHeading(int index) {
+        return headings[index];
+    }
+
+    /**
+     * Returns the range of the leg starting at the way point with the given index
+     *
+     * @param index
+     *            the leg index
+     * @return the range of the leg in nautical miles
+     */
+    public double getLegRange(int index) {
+        return legRanges[index];
+    }
+
+    /**
+     * Returns the initial bearing of the leg starting at the way point with the given index
+     *
+     * @param index
+     *            the leg index
+     * @return the bearing of the leg in degrees
+     */
+    public double getLegBearing(int index) {
+        return legBearings[index];
+    }
+
+    /**
+     * Returns the range along the route from the first way point to the way point with the given index
+     *
+     * @param index
+     *            the way point index
+     * @return the cumulative range in nautical miles
+     */
+    public double getCumulativeRange(int index) {
+        return cumulativeRanges[index];
+    }
+
+    /**
+     * Returns the total range of the route
+     *
+     * @return the total range of the route in nautical miles
+     */
+    public double getTotalRange() {
+        return (cumulativeRanges.length == 0) ? 0.0 : cumulativeRanges[cumulativeRanges.length - 1];
+    }
+
+    public double getMinLat() {
+        return minLat;
+    }
+
+    public double getMinLon() {
+        return minLon;
+    }
+
+    public double getMaxLat() {
+        return maxLat;
+    }
+
+    public double getMaxLon() {
+        return maxLon;
+    }
+
+    /**
+     * Returns if the point is within the bounding box of the route
+     *
+     * @param point
+     *            the point to check
+     * @return if the point is within the bounding box of the route
+     */
+    public boolean isPointWithinBBox(Position point) {
+        double lat = point.getLatitude();
+        double lon = point.getLongitude();
+        return waypoints.length > 0 && lat >= minLat && lat <= maxLat && lon >= minLon && lon <= maxLon;
+    }
+
+    /**
+     * Returns if the point is within the bounding box of the given leg, extended by the given margin
+     *
+     * @param index
+     *            the leg index
+     * @param point
+     *            the point to check
+     * @param marginNm
+     *            the margin in nautical miles
+     * @return if the point is within the extended bounding box of the leg
+     */
+    public boolean isPointWithinLegBBox(int index, Position point, double marginNm) {
+        double latMargin = marginNm / 60.0;
+        double lonMargin = lonMargin(marginNm, Math.max(Math.abs(point.getLatitude()), Math.max(
+                Math.abs(legBBoxes[index * 4]), Math.abs(legBBoxes[index * 4 + 2]))));
+        double lat = point.getLatitude();
+        double lon = point.getLongitude();
+        return lat >= legBBoxes[index * 4] - latMargin && lat <= legBBoxes[index * 4 + 2] + latMargin
+                && lon >= legBBoxes[index * 4 + 1] - lonMargin && lon <= legBBoxes[index * 4 + 3] + lonMargin;
+    }
+
+    /**
+     * Returns if the bounding box of this route and the other route, extended by the given margin, intersect
+     *
+     * @param other
+     *            the other route geometry
+     * @param marginNm
+     *            the margin in nautical miles
+     * @return if the extended bounding boxes intersect
+     */
+    public boolean intersects(RouteGeometry other, double marginNm) {
+        if (waypoints.length == 0 || other.waypoints.length == 0) {
+            return false;
+        }
+        double latMargin = marginNm / 60.0;
+        double lonMargin = lonMargin(marginNm, Math.max(Math.max(Math.abs(minLat), Math.abs(maxLat)),
+                Math.max(Math.abs(other.minLat), Math.abs(other.maxLat))));
+        return minLat - latMargin <= other.maxLat && other.minLat <= maxLat + latMargin
+                && minLon - lonMargin <= other.maxLon && other.minLon <= maxLon + lonMargin;
+    }
+
+    /**
+     * Returns the longitude span of the given distance at the given latitude, or all longitudes near the poles
+     */
+    private static double lonMargin(double marginNm, double absLat) {
+        double cos = Math.cos(Math.toRadians(Math.min(90.0, absLat)));
+        return (cos < 0.01) ? 360.0 : marginNm / (60.0 * cos);
+    }
+}
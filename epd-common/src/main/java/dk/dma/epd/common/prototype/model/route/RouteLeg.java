@@ -222,7 +222,37 @@ public class RouteLeg implements Serializable {
         if (speed < 0.1) {
             return -1L;
         }
-        return Math.round(calcRng() * 3600.0 / speed * 1000.0);
+        return calcTtgForRange(calcRng());
+    }
+
+    /**
+     * Ttg in milliseconds for a pre-computed range of the leg, e.g. from the {@linkplain RouteGeometry}
+     *
+     * @param rng
+     *            the range of the leg in nautical miles
+     * @return The calculated TTG in milliseconds.
+     */
+    public long calcTtgForRange(double rng) {
+        if (speed < 0.1) {
+            return -1L;
+        }
+        return Math.round(rng * 3600.0 / speed * 1000.0);
+    }
+
+    /**
+     * Calculate TTG for a pre-computed range of the leg with an alternative speed value.
+     *
+     * @param rng
+     *            the range of the leg in nautical miles
+     * @param altSpeed
+     *            The alternative speed to be used in the TTG calculation.
+     * @return The calculated TTG in milliseconds.
+     */
+    public long calcTtgForRange(double rng, double altSpeed) {
+        if (altSpeed < 0.1) {
+            altSpeed = 0.1;
+        }
+        return Math.round(rng * 3600.0 / altSpeed * 1000.0);
     }
     
     /**
@@ -232,10 +262,7 @@ public class RouteLeg implements Serializable {
      * @return The calculated TTG in milliseconds.
      */
     public long calcTtg(double altSpeed) {
-        if(altSpeed < 0.1) {
-            altSpeed = 0.1;
-        }
-        return Math.round(calcRng() * 3600.0 / altSpeed * 1000.0);
+        return calcTtgForRange(calcRng(), altSpeed);
     }
 
     @Override
@@ -0,0 +1,276 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.model.voct;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import net.jcip.annotations.ThreadSafe;
+
+import org.joda.time.DateTime;
+
+import dk.dma.enav.model.geometry.Position;
+import dk.dma.epd.common.prototype.model.voct.sardata.DriftProbabilityGrid;
+import dk.dma.epd.common.prototype.model.voct.sardata.SARData;
+import dk.dma.epd.common.prototype.model.voct.sardata.SARWeatherData;
+
+/**
+ * Monte Carlo drift simulation, the probabilistic counterpart of the datum calculations of the
+ * {@linkplain SAROperation}.
+ * <p>
+ * Each particle starts at the last known position, displaced by the initial position and navigational errors, and
+ * drifts with the total water current and the leeway of each weather point of the SAR data. For every particle the
+ * current speed and direction, the leeway speed and the leeway divergence are randomised. The particle positions at the
+ * commence search start time are counted in a {@linkplain DriftProbabilityGrid}.
+ * <p>
+ * The particles are simulated in fixed-size chunks on a fork-join pool. Each chunk has its own random generator, seeded
+ * by mixing the simulation seed and the chunk index, so the result for a given seed does not depend on the number of
+ * threads, and the chunks of different seeds do not share random sequences.
+ * Positions are computed in a local flat-earth frame centered at the last known position, which is accurate for the
+ * extent of a search area.
+ */
+@ThreadSafe
+public class DriftSimulation {
+
+    /** Default number of particles */
+    public static final int DEFAULT_PARTICLES = 20000;
+
+    /** Default number of grid cells along the longest side of the grid */
+    public static final int DEFAULT_GRID_SIZE = 50;
+
+    /** Standard deviation of the current speed, relative to the current speed */
+    static final double CURRENT_SPEED_ERROR = 0.3;
+
+    /** Standard deviation of the current direction in degrees */
+    static final double CURRENT_DIRECTION_ERROR = 20.0;
+
+    /** Standard deviation of the leeway speed, relative to the leeway speed */
+    static final double LEEWAY_SPEED_ERROR = 0.25;
+
+    private static final int CHUNK_SIZE = 1024;
+
+    /** Fork-join pool shared by the SAR calculations */
+    static final ForkJoinPool POOL = new ForkJoinPool();
+
+    private final int particles;
+    private final int gridSize;
+
+    /**
+     * Constructor
+     *
+     * @param particles
+     *            the number of particles to simulate
+     * @param gridSize
+     *            the number of grid cells along the longest side of the grid
+     */
+    public DriftSimulation(int particles, int gridSize) {
+        if (particles <= 0 || gridSize <= 0) {
+            throw new IllegalArgumentException("The number of particles and the grid size must be positive");
+        }
+        this.particles = particles;
+        this.gridSize = gridSize;
+    }
+
+    /**
+     * Constructor using the default number of particles and grid size
+     */
+    public DriftSimulation() {
+        this(DEFAULT_PARTICLES, DEFAULT_GRID_SIZE);
+    }
+
+    /**
+     * Simulates the drift from the last known position until the commence search start time of the SAR data
+     *
+     * @param data
+     *            the SAR data
+     * @param seed
+     *            the seed of the random generators
+     * @return the probability-of-containment grid
+     */
+    public DriftProbabilityGrid simulate(SARData data, long seed) {
+        Position lkp = data.getLKP();
+        double[] x = new double[particles];
+        double[] y = new double[particles];
+
+        // Simulate the particles in parallel
+        POOL.invoke(new DriftTask(new Drift(data), seed, x, y, 0, (particles + CHUNK_SIZE - 1) / CHUNK_SIZE));
+
+        return createGrid(data.getCSSDate(), lkp, x, y);
+    }
+
+    /**
+     * Counts the particle positions in a grid covering all particles
+     */
+    private DriftProbabilityGrid createGrid(DateTime time, Position lkp, double[] x, double[] y) {
+        double minX = Double.MAX_VALUE, maxX = -Double.MAX_VALUE;
+        double minY = Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+        for (int i = 0; i < particles; i++) {
+            minX = Math.min(minX, x[i]);
+            maxX = Math.max(maxX, x[i]);
+            minY = Math.min(minY, y[i]);
+            maxY = Math.max(maxY, y[i]);
+        }
+
+        // Square cells, with a small margin so that the extreme particles fall inside the grid
+        double cellSize = Math.max(Math.max(maxX - minX, maxY - minY), 0.01) / (gridSize - 0.01);
+        int cols = Math.min(gridSize, (int) ((maxX - minX) / cellSize) + 1);
+        int rows = Math.min(gridSize, (int) ((maxY - minY) / cellSize) + 1);
+
+        int[] counts = new int[rows * cols];
+        for (int i = 0; i < particles; i++) {
+            int col = Math.min(cols - 1, (int) ((x[i] - minX) / cellSize));
+            int row = Math.min(rows - 1, (int) ((maxY - y[i]) / cellSize));
+            counts[row * cols + col]++;
+        }
+        float[] probabilities = new float[counts.length];
+        for (int i = 0; i < counts.length; i++) {
+            probabilities[i] = (float) counts[i] / particles;
+        }
+
+        // Convert the local frame to latitude and longitude
+        double cosLat = Math.cos(Math.toRadians(lkp.getLatitude()));
+        double north = lkp.getLatitude() + maxY / 60.0;
+        double west = lkp.getLongitude() + minX / (60.0 * cosLat);
+        return new DriftProbabilityGrid(time, particles, north, west, cellSize / 60.0, cellSize / (60.0 * cosLat), rows,
+                cols, probabilities);
+    }
+
+    /**
+     * The drift parameters of the SAR data, i.e. the duration, current and leeway of each weather point
+     */
+    private static final class Drift {
+        final double initialError;
+        final double divergence;
+        final double[] hours;
+        final double[] currentSpeed;
+        final double[] currentDirection;
+        final double[] leewaySpeed;
+        final double[] downWind;
+
+        Drift(SARData data) {
+            // Combine the initial position error and the navigational error, in nautical miles
+            initialError = Math.sqrt(data.getX() * data.getX() + data.getY() * data.getY());
+            divergence = SAROperation.searchObjectValue(data.getSearchObject());
+
+            List<SARWeatherData> weatherPoints = data.getWeatherPoints();
+            List<Double> validFor = SAROperation.findWeatherPointsValidFor(data);
+            int n = weatherPoints.size();
+            hours = new double[n];
+            currentSpeed = new double[n];
+            currentDirection = new double[n];
+            leewaySpeed = new double[n];
+            downWind = new double[n];
+            for (int i = 0; i < n; i++) {
+                SARWeatherData weather = weatherPoints.get(i);
+                hours[i] = validFor.get(i);
+                currentSpeed[i] = weather.getTWCknots();
+                currentDirection[i] = weather.getTWCHeading();
+                leewaySpeed[i] = Math.max(0.0,
+                        SAROperation.searchObjectValue(data.getSearchObject(), weather.getLWknots()));
+                downWind[i] = weather.getDownWind();
+            }
+        }
+
+        /**
+         * Simulates the particles of the given range
+         */
+        void simulate(Random random, double[] x, double[] y, int from, int to) {
+            for (int p = from; p < to; p++) {
+                double px = random.nextGaussian() * initialError;
+                double py = random.nextGaussian() * initialError;
+
+                // The leeway speed and divergence of the object stay the same during the drift
+                double leewayFactor = Math.max(0.0, 1.0 + random.nextGaussian() * LEEWAY_SPEED_ERROR);
+                double leewayOffset = (2.0 * random.nextDouble() - 1.0) * divergence;
+
+                for (int i = 0; i < hours.length; i++) {
+                    double current = Math.max(0.0, currentSpeed[i] * (1.0 + random.nextGaussian() * CURRENT_SPEED_ERROR))
+                            * hours[i];
+                    double currentDir = Math.toRadians(currentDirection[i] + random.nextGaussian()
+                            * CURRENT_DIRECTION_ERROR);
+                    px += current * Math.sin(currentDir);
+                    py += current * Math.cos(currentDir);
+
+                    double leeway = leewaySpeed[i] * leewayFactor * hours[i];
+                    double leewayDir = Math.toRadians(downWind[i] + leewayOffset);
+                    px += leeway * Math.sin(leewayDir);
+                    py += leeway * Math.cos(leewayDir);
+                }
+                x[p] = px;
+                y[p] = py;
+            }
+        }
+    }
+
+    /**
+     * Returns the seed of the random generator of a chunk. The simulation seed and the chunk index are mixed with the
+     * SplitMix64 finalizer, as used by {@linkplain java.util.SplittableRandom}, so that nearby seeds and chunk indices
+     * give unrelated seeds.
+     *
+     * @param seed
+     *            the simulation seed
+     * @param chunk
+     *            the chunk index
+     * @return the seed of the chunk
+     */
+    static long chunkSeed(long seed, int chunk) {
+        return mix64(mix64(seed) + (chunk + 1) * 0x9e3779b97f4a7c15L);
+    }
+
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Fork-join task simulating a range of chunks of particles
+     */
+    private static final class DriftTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Drift drift;
+        private final long seed;
+        private final double[] x;
+        private final double[] y;
+        private final int fromChunk;
+        private final int toChunk;
+
+        DriftTask(Drift drift, long seed, double[] x, double[] y, int fromChunk, int toChunk) {
+            this.drift = drift;
+            this.seed = seed;
+            this.x = x;
+            this.y = y;
+            this.fromChunk = fromChunk;
+            this.toChunk = toChunk;
+        }
+
+        @Override
+        protected void compute() {
+            if (toChunk - fromChunk > 1) {
+                int mid = (fromChunk + toChunk) >>> 1;
+                invokeAll(new DriftTask(drift, seed, x, y, fromChunk, mid), new DriftTask(drift, seed, x, y, mid,
+                        toChunk));
+                return;
+            }
+            for (int chunk = fromChunk; chunk < toChunk; chunk++) {
+                Random random = new Random(chunkSeed(seed, chunk));
+                drift.simulate(random, x, y, chunk * CHUNK_SIZE, Math.min(x.length, (chunk + 1) * CHUNK_SIZE));
+            }
+        }
+    }
+}
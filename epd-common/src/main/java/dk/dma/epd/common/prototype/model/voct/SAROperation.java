@@ -17,6 +17,9 @@ package dk.dma.epd.common.prototype.model.voct;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import org.joda.time.DateTime;
 
@@ -28,6 +31,7 @@ import dk.dma.enav.model.geometry.Position;
 import dk.dma.epd.common.Heading;
 import dk.dma.epd.common.prototype.model.voct.sardata.DatumLineData;
 import dk.dma.epd.common.prototype.model.voct.sardata.DatumPointData;
+import dk.dma.epd.common.prototype.model.voct.sardata.DriftProbabilityGrid;
 import dk.dma.epd.common.prototype.model.voct.sardata.EffortAllocationData;
 import dk.dma.epd.common.prototype.model.voct.sardata.RapidResponseData;
 import dk.dma.epd.common.prototype.model.voct.sardata.SARData;
@@ -50,6 +54,9 @@ public class SAROperation {
 
     SAR_TYPE operationType;
 
+    // Number of drift particles of the probabilistic mode, 0 if disabled
+    int driftParticles;
+
     // // Time of Last known position
     // DateTime TLKP;
     //
@@ -99,6 +106,44 @@ public class SAROperation {
         // this.voctManager = voctManager;
     }
 
+    /**
+     * Returns the number of particles of the probabilistic drift mode, 0 if the mode is disabled
+     * 
+     * @return the number of drift particles
+     */
+    public int getDriftParticles() {
+        return driftParticles;
+    }
+
+    /**
+     * Sets the number of particles of the probabilistic drift mode. When positive, the datum point and rapid response
+     * calculations also run a Monte Carlo drift simulation, and store the resulting probability grid in the SAR data.
+     * 
+     * @param driftParticles
+     *            the number of drift particles, or 0 to disable the probabilistic mode
+     */
+    public void setDriftParticles(int driftParticles) {
+        this.driftParticles = driftParticles;
+    }
+
+    /**
+     * Runs a Monte Carlo drift simulation of the SAR data, and stores the resulting probability grid in the SAR data.
+     * <p>
+     * The simulation is seeded from the time of the last known position, so the same input gives the same grid.
+     * 
+     * @param data
+     *            the SAR data
+     * @param particles
+     *            the number of particles to simulate
+     * @return the probability-of-containment grid
+     */
+    public DriftProbabilityGrid monteCarloDrift(SARData data, int particles) {
+        DriftProbabilityGrid grid = new DriftSimulation(particles, DriftSimulation.DEFAULT_GRID_SIZE).simulate(data,
+                data.getLKPDate().getMillis());
+        data.setDriftProbabilityGrid(grid);
+        return grid;
+    }
+
     public DatumLineData startDatumLineCalculations(DatumLineData data) {
 //        System.out.println("Datum line");
 
@@ -143,6 +188,10 @@ public class SAROperation {
 
         // System.out.println("Hours since started: " + difference);
 
+        if (driftParticles > 0) {
+            monteCarloDrift(data, driftParticles);
+        }
+
         return rapidResponse(data);
 
     }
@@ -158,19 +207,31 @@ public class SAROperation {
 
         // System.out.println("Hours since started: " + difference);
 
+        if (driftParticles > 0) {
+            monteCarloDrift(data, driftParticles);
+        }
+
         return datumPoint(data);
     }
 
-    public List<SARData> sarFutureCalculations(SARData data) {
+    public List<SARData> sarFutureCalculations(final SARData data) {
         List<SARData> futureDataList = new ArrayList<SARData>();
 
+        // The projections are independent, so compute them in parallel
+        List<Callable<SARData>> projections = new ArrayList<>();
+
         if (operationType == SAR_TYPE.RAPID_RESPONSE) {
 
             for (int i = 1; i < 9; i++) {
 
-                int additionalTime = i * 30;
+                final int additionalTime = i * 30;
 
-                futureDataList.add(rapidResponse(new RapidResponseData((RapidResponseData) data, additionalTime)));
+                projections.add(new Callable<SARData>() {
+                    @Override
+                    public SARData call() {
+                        return rapidResponse(new RapidResponseData((RapidResponseData) data, additionalTime));
+                    }
+                });
 
 //                System.out.println("Additional Time: " + additionalTime + " minutes");
 
@@ -182,9 +243,14 @@ public class SAROperation {
 
             for (int i = 1; i < 9; i++) {
 
-                int additionalTime = i * 30;
+                final int additionalTime = i * 30;
 
-                futureDataList.add(datumPoint(new DatumPointData((DatumPointData) data, additionalTime)));
+                projections.add(new Callable<SARData>() {
+                    @Override
+                    public SARData call() {
+                        return datumPoint(new DatumPointData((DatumPointData) data, additionalTime));
+                    }
+                });
 
 //                System.out.println("Additional Time: " + additionalTime + " minutes");
 
@@ -192,10 +258,20 @@ public class SAROperation {
 
         }
 
+        try {
+            for (Future<SARData> projection : DriftSimulation.POOL.invokeAll(projections)) {
+                futureDataList.add(projection.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Failed computing future SAR data", e.getCause());
+        }
+
         return futureDataList;
     }
 
-    private double searchObjectValue(int searchObject, double LWKnots) {
+    static double searchObjectValue(int searchObject, double LWKnots) {
 
         switch (searchObject) {
         case 0:
@@ -244,7 +320,7 @@ public class SAROperation {
         return -9999.9;
     }
 
-    private int searchObjectValue(int searchObject) {
+    static int searchObjectValue(int searchObject) {
 
         switch (searchObject) {
         case 0:
@@ -293,23 +369,21 @@ public class SAROperation {
         return -9999;
     }
 
-    public DatumPointData datumPoint(DatumPointData data) {
-
-        // We need to calculate for each weather point
+    /**
+     * Returns the number of hours each weather point of the SAR data is valid for, from the time of the last known
+     * position until the commence search start time
+     * 
+     * @param data
+     *            the SAR data
+     * @return the number of hours each weather point is valid for
+     */
+    static List<Double> findWeatherPointsValidFor(SARData data) {
 
         List<SARWeatherData> weatherPoints = data.getWeatherPoints();
         DateTime startTime = data.getLKPDate();
 
-        double leewayDivergence = searchObjectValue(data.getSearchObject());
-
         List<Double> weatherPointsValidFor = new ArrayList<Double>();
 
-        List<Position> datumPositionsDownWind = new ArrayList<Position>();
-        List<Position> datumPositionsMin = new ArrayList<Position>();
-        List<Position> datumPositionsMax = new ArrayList<Position>();
-
-        List<Position> currentPositions = new ArrayList<Position>();
-
         for (int i = 0; i < weatherPoints.size(); i++) {
 
             // Do we have a next?
@@ -340,6 +414,25 @@ public class SAROperation {
 
         }
 
+        return weatherPointsValidFor;
+    }
+
+    public DatumPointData datumPoint(DatumPointData data) {
+
+        // We need to calculate for each weather point
+
+        List<SARWeatherData> weatherPoints = data.getWeatherPoints();
+
+        double leewayDivergence = searchObjectValue(data.getSearchObject());
+
+        List<Double> weatherPointsValidFor = findWeatherPointsValidFor(data);
+
+        List<Position> datumPositionsDownWind = new ArrayList<Position>();
+        List<Position> datumPositionsMin = new ArrayList<Position>();
+        List<Position> datumPositionsMax = new ArrayList<Position>();
+
+        List<Position> currentPositions = new ArrayList<Position>();
+
         for (int i = 0; i < weatherPoints.size(); i++) {
             SARWeatherData weatherObject = weatherPoints.get(i);
             double validFor = weatherPointsValidFor.get(i);
@@ -0,0 +1,237 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.model.voct.sardata;
+
+import java.io.Serializable;
+
+import net.jcip.annotations.Immutable;
+
+import org.joda.time.DateTime;
+
+import dk.dma.enav.model.geometry.Position;
+
+/**
+ * Probability-of-containment grid produced by a Monte Carlo drift simulation.
+ * <p>
+ * The grid is aligned with the latitude and longitude axes. Row 0 is the northernmost row and column 0 the westernmost
+ * column. The probability of a cell is the fraction of the simulated drift particles that ended up in the cell, so the
+ * probabilities of all cells add up to 1.
+ */
+@Immutable
+public class DriftProbabilityGrid implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final DateTime time;
+    private final int particles;
+    private final double north;
+    private final double west;
+    private final double cellHeight;
+    private final double cellWidth;
+    private final int rows;
+    private final int cols;
+    private final float[] probabilities;
+    private final float maxProbability;
+
+    /**
+     * Constructor
+     *
+     * @param time
+     *            the time of the simulated positions
+     * @param particles
+     *            the number of simulated particles
+     * @param north
+     *            the northern latitude of the grid
+     * @param west
+     *            the western longitude of the grid
+     * @param cellHeight
+     *            the height of the cells in degrees of latitude
+     * @param cellWidth
+     *            the width of the cells in degrees of longitude
+     * @param rows
+     *            the number of rows
+     * @param cols
+     *            the number of columns
+     * @param probabilities
+     *            the probabilities of the cells, row by row
+     */
+    public DriftProbabilityGrid(DateTime time, int particles, double north, double west, double cellHeight,
+            double cellWidth, int rows, int cols, float[] probabilities) {
+        if (probabilities.length != rows * cols) {
+            throw new IllegalArgumentException("Expected " + rows * cols + " probabilities, got " + probabilities.length);
+        }
+        this.time = time;
+        this.particles = particles;
+        this.north = north;
+        this.west = west;
+        this.cellHeight = cellHeight;
+        this.cellWidth = cellWidth;
+        this.rows = rows;
+        this.cols = cols;
+        this.probabilities = probabilities.clone();
+        float max = 0f;
+        for (float p : probabilities) {
+            max = Math.max(max, p);
+        }
+        this.maxProbability = max;
+    }
+
+    /**
+     * @return the time of the simulated positions
+     */
+    public DateTime getTime() {
+        return time;
+    }
+
+    /**
+     * @return the number of simulated particles
+     */
+    public int getParticles() {
+        return particles;
+    }
+
+    /**
+     * @return the number of rows
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * @return the number of columns
+     */
+    public int getCols() {
+        return cols;
+    }
+
+    /**
+     * @return the northern latitude of the grid
+     */
+    public double getNorth() {
+        return north;
+    }
+
+    /**
+     * @return the western longitude of the grid
+     */
+    public double getWest() {
+        return west;
+    }
+
+    /**
+     * @return the southern latitude of the grid
+     */
+    public double getSouth() {
+        return north - rows * cellHeight;
+    }
+
+    /**
+     * @return the eastern longitude of the grid
+     */
+    public double getEast() {
+        return west + cols * cellWidth;
+    }
+
+    /**
+     * @return the height of the cells in degrees of latitude
+     */
+    public double getCellHeight() {
+        return cellHeight;
+    }
+
+    /**
+     * @return the width of the cells in degrees of longitude
+     */
+    public double getCellWidth() {
+        return cellWidth;
+    }
+
+    /**
+     * Returns the probability of the given cell
+     *
+     * @param row
+     *            the row
+     * @param col
+     *            the column
+     * @return the probability of the cell
+     */
+    public float getProbability(int row, int col) {
+        return probabilities[row * cols + col];
+    }
+
+    /**
+     * @return the highest probability of any cell
+     */
+    public float getMaxProbability() {
+        return maxProbability;
+    }
+
+    /**
+     * Returns the center of the given cell
+     *
+     * @param row
+     *            the row
+     * @param col
+     *            the column
+     * @return the center of the cell
+     */
+    public Position getCellCenter(int row, int col) {
+        return Position.create(north - (row + 0.5) * cellHeight, west + (col + 0.5) * cellWidth);
+    }
+
+    /**
+     * Returns the probability that the object is contained in the area A-B-D-C, as used for effort allocation areas,
+     * by adding up the probabilities of the cells whose center is inside the area
+     *
+     * @param A
+     *            the first corner of the area
+     * @param B
+     *            the corner after A
+     * @param C
+     *            the corner opposite of B
+     * @param D
+     *            the corner opposite of A
+     * @return the probability of containment
+     */
+    public double getContainment(Position A, Position B, Position C, Position D) {
+        double[] lats = { A.getLatitude(), B.getLatitude(), D.getLatitude(), C.getLatitude() };
+        double[] lons = { A.getLongitude(), B.getLongitude(), D.getLongitude(), C.getLongitude() };
+        double result = 0.0;
+        for (int row = 0; row < rows; row++) {
+            double lat = north - (row + 0.5) * cellHeight;
+            for (int col = 0; col < cols; col++) {
+                float p = probabilities[row * cols + col];
+                if (p > 0f && contains(lats, lons, lat, west + (col + 0.5) * cellWidth)) {
+                    result += p;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Even-odd test of whether the polygon contains the point
+     */
+    private static boolean contains(double[] lats, double[] lons, double lat, double lon) {
+        boolean inside = false;
+        for (int i = 0, j = lats.length - 1; i < lats.length; j = i++) {
+            if ((lats[i] > lat) != (lats[j] > lat)
+                    && lon < (lons[j] - lons[i]) * (lat - lats[i]) / (lats[j] - lats[i]) + lons[i]) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+}
@@ -54,6 +54,8 @@ public class SARData implements Serializable {
 
     private CopyOnWriteArrayList<SARTextLogMessage> sarMessages = new CopyOnWriteArrayList<SARTextLogMessage>();
 
+    private DriftProbabilityGrid driftProbabilityGrid;
+
     public SARData(String sarID, DateTime TLKP, DateTime CSS, Position LKP,
             double x, double y, double safetyFactor, int searchObject) {
 
@@ -319,6 +321,20 @@ public class SARData implements Serializable {
         this.sarMessages = sarMessages;
     }
 
+    /**
+     * @return the probability grid of the Monte Carlo drift simulation, or null if not simulated
+     */
+    public DriftProbabilityGrid getDriftProbabilityGrid() {
+        return driftProbabilityGrid;
+    }
+
+    /**
+     * @param driftProbabilityGrid the probability grid of the Monte Carlo drift simulation to set
+     */
+    public void setDriftProbabilityGrid(DriftProbabilityGrid driftProbabilityGrid) {
+        this.driftProbabilityGrid = driftProbabilityGrid;
+    }
+
     
     
 }
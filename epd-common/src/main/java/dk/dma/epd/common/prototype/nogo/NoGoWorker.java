@@ -14,9 +14,10 @@
  */
 package dk.dma.epd.common.prototype.nogo;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 
-import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -24,93 +25,107 @@ import dk.dma.enav.model.geometry.Position;
 import dk.dma.epd.common.prototype.communication.webservice.ShoreServiceException;
 import dk.dma.epd.common.prototype.shoreservice.ShoreServicesCommon;
 import dk.frv.enav.common.xml.nogo.response.NogoResponse;
-import dk.frv.enav.common.xml.nogoslices.response.NogoResponseSlices;
-
-public class NoGoWorker extends Thread {
+import dk.frv.enav.common.xml.nogo.types.NogoPolygon;
+
+/**
+ * Fetches a single NoGo time slice, tile by tile, and hands the merged result over to the
+ * {@linkplain NogoHandlerCommon}.
+ * <p>
+ * The worker is run on the executor of the handler, and stops as soon as it is interrupted or its request has been
+ * superseded by a newer one.
+ */
+public class NoGoWorker implements Runnable {
 
     private static final Logger LOG = LoggerFactory.getLogger(NoGoWorker.class);
 
     private NogoHandlerCommon nogoHandler;
     private ShoreServicesCommon shoreServices;
-    int id;
+    long requestId;
+    int slice;
     double draught;
-    Position northWestPoint;
-    Position southEastPoint;
+    List<Position[]> tiles;
     Date validFrom;
     Date validTo;
-    int slices;
 
-    public NoGoWorker(NogoHandlerCommon nogoHandler, ShoreServicesCommon shoreCommon, int id, int slices) {
+    /**
+     * Constructor
+     * 
+     * @param nogoHandler
+     *            the handler to deliver the result to
+     * @param shoreServices
+     *            the shore services used for the request
+     * @param requestId
+     *            the id of the request the slice belongs to
+     * @param slice
+     *            the index of the slice
+     */
+    public NoGoWorker(NogoHandlerCommon nogoHandler, ShoreServicesCommon shoreServices, long requestId, int slice) {
         this.nogoHandler = nogoHandler;
-        shoreServices = shoreCommon;
-        this.id = id;
-        this.slices = slices;
+        this.shoreServices = shoreServices;
+        this.requestId = requestId;
+        this.slice = slice;
     }
 
-    public void setValues(double draught, Position northWestPoint, Position southEastPoint, DateTime startDate, DateTime endDate) {
-
+    /**
+     * Sets the values of the request
+     * 
+     * @param draught
+     *            the draught
+     * @param tiles
+     *            the tiles of the area, each given by the north west and south east point
+     * @param validFrom
+     *            the start of the slice
+     * @param validTo
+     *            the end of the slice
+     */
+    public void setValues(double draught, List<Position[]> tiles, Date validFrom, Date validTo) {
         this.draught = draught;
-        this.northWestPoint = northWestPoint;
-        this.southEastPoint = southEastPoint;
-        this.validFrom = new Date(startDate.getMillis());
-        this.validTo = new Date(endDate.getMillis());
-
+        this.tiles = tiles;
+        this.validFrom = validFrom;
+        this.validTo = validTo;
     }
 
     @Override
     public void run() {
 
-        LOG.info("NoGo Worker has started its request");
-
         if (shoreServices == null) {
-            nogoHandler.noNetworkConnection();
-            // Send fault message
-
+            nogoHandler.nogoSliceFailed(requestId, false);
             return;
         }
 
-        try {
-
-            if (slices == 1) {
-
-                NogoResponse nogoResponse = shoreServices.nogoPoll(draught, northWestPoint, southEastPoint, validFrom, validTo);
-
-                // Check the nogoresponse stuff
+        List<NogoPolygon> polygons = new ArrayList<>();
+        int errorCode = 0;
+        String message = null;
 
-                if (nogoResponse == null || nogoResponse.getPolygons() == null) {
-                    nogoHandler.nogoTimedOut();
+        try {
+            for (Position[] tile : tiles) {
+                if (Thread.currentThread().isInterrupted() || !nogoHandler.isCurrentRequest(requestId)) {
+                    LOG.debug("NoGo slice " + slice + " of request " + requestId + " cancelled");
                     return;
                 }
 
-                // Store results
-
-                nogoHandler.nogoRequestCompleted(nogoResponse);
-            } else {
-                NogoResponseSlices nogoResponse = shoreServices.nogoPoll(draught, northWestPoint, southEastPoint, validFrom,
-                        validTo, slices);
+                NogoResponse nogoResponse = shoreServices.nogoPoll(draught, tile[0], tile[1], validFrom, validTo);
 
                 // Check the nogoresponse stuff
-
-                if (nogoResponse == null || nogoResponse.getResponses() == null) {
-                    nogoHandler.nogoTimedOut();
-                    nogoHandler.setNoGoRequestCompleted();
+                if (nogoResponse == null || nogoResponse.getPolygons() == null) {
+                    nogoHandler.nogoSliceFailed(requestId, true);
                     return;
                 }
 
-                // Store the responses
-                nogoHandler.nogoRequestCompleted(nogoResponse);
-
-                LOG.info("NoGo Worker has completed its request");
-
+                polygons.addAll(nogoResponse.getPolygons());
+                if (message == null || nogoResponse.getNoGoErrorCode() != 0 && errorCode == 0) {
+                    errorCode = nogoResponse.getNoGoErrorCode();
+                    message = nogoResponse.getNoGoMessage();
+                }
             }
         } catch (ShoreServiceException e) {
-            // TODO Auto-generated catch block
-            nogoHandler.noNetworkConnection();
             LOG.error("Failed to get NoGo from shore: " + e.getMessage());
-
+            nogoHandler.nogoSliceFailed(requestId, false);
+            return;
         }
-        // Perform the thing
-        nogoHandler.setNoGoRequestCompleted();
+
+        // Store the result
+        nogoHandler.nogoSliceCompleted(requestId, slice, polygons, errorCode, message);
     }
 
 }
@@ -17,6 +17,11 @@ package dk.dma.epd.common.prototype.nogo;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import net.jcip.annotations.ThreadSafe;
 
@@ -29,9 +34,7 @@ import com.bbn.openmap.MapHandlerChild;
 import dk.dma.enav.model.geometry.Position;
 import dk.dma.epd.common.prototype.layers.nogo.NogoLayer;
 import dk.dma.epd.common.prototype.shoreservice.ShoreServicesCommon;
-import dk.frv.enav.common.xml.nogo.response.NogoResponse;
 import dk.frv.enav.common.xml.nogo.types.NogoPolygon;
-import dk.frv.enav.common.xml.nogoslices.response.NogoResponseSlices;
 
 /**
  * Component for handling NOGO areas
@@ -64,10 +67,28 @@ public class NogoHandlerCommon extends MapHandlerChild {
 
     // private NoGoComponentPanel nogoPanel;
 
-    // int completedSlices;
-
     protected boolean requestInProgress;
 
+    /** Maximum number of slices and tiles fetched concurrently */
+    public static final int NOGO_THREADS = 4;
+
+    /** Maximum size of the tiles that large areas are split into, in degrees */
+    public static final double MAX_TILE_SIZE = 1.0;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(NOGO_THREADS, new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "NoGoWorker-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private final List<Future<?>> pendingSlices = new ArrayList<>();
+    private long currentRequestId;
+    private int completedSlices;
+
     public NogoLayer getNogoLayer() {
         return nogoLayer;
     }
@@ -93,8 +114,25 @@ public class NogoHandlerCommon extends MapHandlerChild {
     public NogoHandlerCommon() {
     }
 
+    /**
+     * Starts a new NoGo request. Any request in progress is cancelled.
+     * <p>
+     * The time slices, and the tiles of large areas, are fetched concurrently, and each slice is passed on to the
+     * layer as soon as it has been fetched.
+     * 
+     * @param useSlices
+     *            whether to split the request into time slices
+     * @param minutesBetween
+     *            the length of each time slice in minutes
+     */
     public synchronized void updateNogo(boolean useSlices, int minutesBetween) {
 
+        // Cancel any request in progress
+        cancelNogoRequest();
+        long requestId = ++currentRequestId;
+        requestInProgress = true;
+        completedSlices = 0;
+
         nogoData = new ArrayList<NoGoDataEntry>();
         // New Request - determine how many time slices are needed to complete the request or if we even need to do slices
 
@@ -129,16 +167,70 @@ public class NogoHandlerCommon extends MapHandlerChild {
             nogoData.add(nogoDataEntry);
         }
 
-        NoGoWorker nogoWorker = createWorker(nogoData.size(), new DateTime(validFrom.getTime()), new DateTime(validTo.getTime()));
+        LOG.info("Starting NoGo request " + requestId + " with " + nogoData.size() + " slices");
+        List<Position[]> tiles = splitArea(northWestPoint, southEastPoint, MAX_TILE_SIZE);
+        for (int i = 0; i < nogoData.size(); i++) {
+            NoGoDataEntry dataEntry = nogoData.get(i);
+            NoGoWorker nogoWorker = new NoGoWorker(this, shoreServices, requestId, i);
+            nogoWorker.setValues(draught, tiles, dataEntry.getValidFrom().toDate(), dataEntry.getValidTo().toDate());
+            pendingSlices.add(executor.submit(nogoWorker));
+        }
+    }
 
-        nogoWorker.start();
+    /**
+     * Cancels the NoGo request in progress, if any
+     */
+    public synchronized void cancelNogoRequest() {
+        if (requestInProgress) {
+            LOG.info("Cancelling NoGo request " + currentRequestId);
+        }
+        currentRequestId++;
+        for (Future<?> slice : pendingSlices) {
+            slice.cancel(true);
+        }
+        pendingSlices.clear();
+        requestInProgress = false;
+    }
 
+    /**
+     * Returns if the given request id is the current one, i.e. it has not been cancelled or superseded
+     * 
+     * @param requestId
+     *            the request id
+     * @return if the given request id is the current one
+     */
+    public synchronized boolean isCurrentRequest(long requestId) {
+        return requestId == currentRequestId;
     }
 
-    private NoGoWorker createWorker(int slices, DateTime startDate, DateTime endDate) {
-        NoGoWorker nogoWorker = new NoGoWorker(this, this.shoreServices, 0, slices);
-        nogoWorker.setValues(draught, northWestPoint, southEastPoint, startDate, endDate);
-        return nogoWorker;
+    /**
+     * Splits the area into tiles no larger than the given size in degrees
+     * 
+     * @param northWest
+     *            the north west point of the area
+     * @param southEast
+     *            the south east point of the area
+     * @param maxSize
+     *            the maximum tile size in degrees
+     * @return the tiles, each given by the north west and south east point
+     */
+    static List<Position[]> splitArea(Position northWest, Position southEast, double maxSize) {
+        double latSpan = northWest.getLatitude() - southEast.getLatitude();
+        double lonSpan = southEast.getLongitude() - northWest.getLongitude();
+        int rows = Math.max(1, (int) Math.ceil(Math.abs(latSpan) / maxSize));
+        int cols = Math.max(1, (int) Math.ceil(Math.abs(lonSpan) / maxSize));
+
+        List<Position[]> tiles = new ArrayList<>(rows * cols);
+        for (int row = 0; row < rows; row++) {
+            double north = northWest.getLatitude() - latSpan * row / rows;
+            double south = northWest.getLatitude() - latSpan * (row + 1) / rows;
+            for (int col = 0; col < cols; col++) {
+                double west = northWest.getLongitude() + lonSpan * col / cols;
+                double east = northWest.getLongitude() + lonSpan * (col + 1) / cols;
+                tiles.add(new Position[] { Position.create(north, west), Position.create(south, east) });
+            }
+        }
+        return tiles;
     }
 
     /**
@@ -152,41 +244,6 @@ public class NogoHandlerCommon extends MapHandlerChild {
 
     }
 
-    public synchronized void nogoRequestCompleted(NogoResponseSlices nogoResponses) {
-
-        LOG.info("NoGo Worker has completed its request");
-
-        int completedSlices = 0;
-
-        for (int i = 0; i < nogoResponses.getResponses().size(); i++) {
-            NogoResponse response = nogoResponses.getResponses().get(i);
-
-            completedSlices = completedSlices + 1;
-
-            NoGoDataEntry dataEntry = nogoData.get(i);
-
-            dataEntry.setNogoPolygons(response.getPolygons());
-            dataEntry.setNoGoMessage(response.getNoGoMessage());
-            dataEntry.setNoGoErrorCode(response.getNoGoErrorCode());
-
-            // Special handling of slices
-            if (this.useSlices) {
-                updatePanelCompleteMultiple(dataEntry.getNoGoErrorCode(), dataEntry.getNogoPolygons(), dataEntry.getValidFrom(),
-                        dataEntry.getValidTo(), draught, i);
-
-                updateLayerMultipleResult(i);
-
-                updatePanelCompletedSlices(completedSlices, nogoData.size());
-            } else {
-                updatePanelCompleteSingle(dataEntry.getNoGoErrorCode(), dataEntry.getNogoPolygons(), validFrom, validTo, draught);
-
-                updateLayerSingleResult();
-            }
-
-        }
-
-    }
-
     protected void updatePanelCompleteMultiple(int errorcode, List<NogoPolygon> polygons, DateTime validFrom, DateTime validTo,
             Double draught, int i) {
 
@@ -200,21 +257,75 @@ public class NogoHandlerCommon extends MapHandlerChild {
 
     }
 
-    public synchronized void nogoRequestCompleted(NogoResponse response) {
+    /**
+     * Called by a {@linkplain NoGoWorker} when a slice has been fetched. Results of cancelled requests are ignored.
+     * 
+     * @param requestId
+     *            the id of the request
+     * @param i
+     *            the index of the slice
+     * @param polygons
+     *            the NoGo polygons of all tiles of the slice
+     * @param errorCode
+     *            the NoGo error code
+     * @param message
+     *            the NoGo message
+     */
+    synchronized void nogoSliceCompleted(long requestId, int i, List<NogoPolygon> polygons, int errorCode, String message) {
+        if (!isCurrentRequest(requestId)) {
+            return;
+        }
 
-        NoGoDataEntry dataEntry = nogoData.get(0);
+        completedSlices++;
 
-        dataEntry.setNogoPolygons(response.getPolygons());
-        dataEntry.setNoGoMessage(response.getNoGoMessage());
-        dataEntry.setNoGoErrorCode(response.getNoGoErrorCode());
+        NoGoDataEntry dataEntry = nogoData.get(i);
 
-        updatePanelCompleteSingle(dataEntry.getNoGoErrorCode(), dataEntry.getNogoPolygons(), validFrom, validTo, draught);
+        dataEntry.setNogoPolygons(polygons);
+        dataEntry.setNoGoMessage(message);
+        dataEntry.setNoGoErrorCode(errorCode);
 
-        updateLayerSingleResult();
+        // Special handling of slices
+        if (this.useSlices) {
+            updatePanelCompleteMultiple(dataEntry.getNoGoErrorCode(), dataEntry.getNogoPolygons(), dataEntry.getValidFrom(),
+                    dataEntry.getValidTo(), draught, i);
+
+            updateLayerMultipleResult(i);
+
+            updatePanelCompletedSlices(completedSlices, nogoData.size());
+        } else {
+            updatePanelCompleteSingle(dataEntry.getNoGoErrorCode(), dataEntry.getNogoPolygons(), validFrom, validTo, draught);
+
+            updateLayerSingleResult();
+        }
+
+        if (completedSlices == nogoData.size()) {
+            LOG.info("NoGo request " + requestId + " has completed");
+            setNoGoRequestCompleted();
+        }
+    }
 
+    /**
+     * Called by a {@linkplain NoGoWorker} when a slice could not be fetched. The rest of the request is cancelled.
+     * 
+     * @param requestId
+     *            the id of the request
+     * @param timedOut
+     *            whether the request timed out or returned invalid data, rather than failed to connect
+     */
+    synchronized void nogoSliceFailed(long requestId, boolean timedOut) {
+        if (!isCurrentRequest(requestId)) {
+            return;
+        }
+        cancelNogoRequest();
+        if (timedOut) {
+            nogoTimedOut();
+        } else {
+            noNetworkConnection();
+        }
     }
 
     public synchronized void setNoGoRequestCompleted() {
+        pendingSlices.clear();
         requestInProgress = false;
     }
 
@@ -28,6 +28,7 @@ import dk.dma.enav.model.geometry.Position;
 import dk.dma.epd.common.Heading;
 import dk.dma.epd.common.prototype.EPD;
 import dk.dma.epd.common.prototype.model.route.Route;
+import dk.dma.epd.common.prototype.model.route.RouteGeometry;
 import dk.dma.epd.common.prototype.model.route.RouteWaypoint;
 import dk.dma.epd.common.util.Calculator;
 import dk.dma.epd.common.util.TimeUtils;
@@ -203,9 +204,10 @@ public class MsiNmNotification extends Notification<MCMessage, Integer> {
      */
     public boolean nearRoute(List<Route> routes) {
         for (Route route : routes) {
+            RouteGeometry geometry = route.getGeometry();
             for (MCLocation loc : get().getLocations()) {
                 for (MCPoint pt : loc.getPoints()) {
-                    if (route.isPointWithingBBox(toPos(pt))) {
+                    if (geometry.isPointWithinBBox(toPos(pt))) {
                         return true;
                     }
                 }
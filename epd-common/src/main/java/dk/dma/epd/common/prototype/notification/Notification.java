@@ -14,6 +14,8 @@
  */
 package dk.dma.epd.common.prototype.notification;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Date;
@@ -51,7 +53,7 @@ public class Notification<T, I> implements Serializable {
     protected boolean autoAcknowledge;
     protected Date date = new Date();
     protected MaritimeId targetId;
-    protected List<INotificationListener> listeners = new CopyOnWriteArrayList<>();
+    protected transient List<INotificationListener> listeners = new CopyOnWriteArrayList<>();
     
     /**
      * Constructor
@@ -95,7 +97,10 @@ public class Notification<T, I> implements Serializable {
      * @param severity the notification severity
      */
     public void setSeverity(NotificationSeverity severity) {
-        this.severity = severity;
+        if (severity != this.severity) {
+            this.severity = severity;
+            fireNotificationUpdated();
+        }
     }
 
     /**
@@ -329,7 +334,7 @@ public class Notification<T, I> implements Serializable {
      * @param listener the listener to remove
      */
     public void removeListener(INotificationListener listener) {
-        listeners.add(listener);
+        listeners.remove(listener);
     }
 
     /**
@@ -340,4 +345,12 @@ public class Notification<T, I> implements Serializable {
             listener.notificationUpdated(this);
         }
     }
+
+    /**
+     * The listeners are not serialized, so re-create the list after de-serialization
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        listeners = new CopyOnWriteArrayList<>();
+    }
 }
@@ -46,6 +46,9 @@ public class NotificationAlert implements Serializable {
     
     private static final long serialVersionUID = 1L;
 
+    /** Returned by {@linkplain #getNextTriggerTime(Notification)} when the alert will not trigger again */
+    public static final long NEVER = Long.MAX_VALUE;
+
     private Set<AlertType> alertTypes = new HashSet<>();
     private boolean initial = true;
     private List<Date> repeatAtTimes = new ArrayList<>();
@@ -101,7 +104,7 @@ public class NotificationAlert implements Serializable {
         // Check if a repeat-at date is found.
         // Note that the list of date is sorted.
         if (repeatAtTimes.size() > 0 && now.after(repeatAtTimes.get(0))) {
-            while (now.after(repeatAtTimes.get(0))) {
+            while (repeatAtTimes.size() > 0 && now.after(repeatAtTimes.get(0))) {
                 repeatAtTimes.remove(0);
             }
             return true;
@@ -117,6 +120,40 @@ public class NotificationAlert implements Serializable {
         return false;
     }
     
+    /**
+     * Returns the earliest time at which {@linkplain #shouldTrigger(Notification)} may
+     * return true, or {@linkplain #NEVER} if the alert will not trigger again in the 
+     * current state of the notification.
+     * <p>
+     * The time must be re-computed when the alert has been triggered, and when the
+     * read or acknowledged state of the notification changes.
+     * 
+     * @param notification the associated notification
+     * @return the next time the alert is due
+     */
+    public long getNextTriggerTime(Notification<?,?> notification) {
+        // Handle the initial alert
+        if (lastTriggered == -1 && initial) {
+            return 0L;
+        }
+        
+        // Check if the alert repeats and if the stop conditions have been met
+        if (!repeats() ||
+            (repeatUntilAcknowledged && notification.isAcknowledged()) ||
+             repeatUntilRead && notification.isRead()) {
+            return NEVER;
+        }
+        
+        long next = NEVER;
+        if (repeatAtTimes.size() > 0) {
+            next = repeatAtTimes.get(0).getTime() + 1L;
+        }
+        for (Long interval : repeatEveryTimes) {
+            next = Math.min(next, lastTriggered + interval.longValue() + 1L);
+        }
+        return next;
+    }
+    
     /**
      * Must be called whenever the alert has been triggered
      */
@@ -0,0 +1,492 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.notification;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import net.jcip.annotations.ThreadSafe;
+import dk.dma.epd.common.prototype.notification.Notification.NotificationSeverity;
+
+/**
+ * Indexed store of the notifications of a notification panel.
+ * <p>
+ * Besides the notifications in display order, the store maintains:
+ * <ul>
+ * <li>A look-up map from notification id to notification.</li>
+ * <li>Counters of the read, acknowledged and severity states, updated when a notification changes state.</li>
+ * <li>A priority queue of the pending alerts, ordered by the time they are next due.</li>
+ * </ul>
+ * The alert timer of the notification center thereby only touches the alerts that are due, and the notification table
+ * models can page through the notifications, copying only the notifications of a page.
+ * <p>
+ * The store registers itself as a listener of its notifications, so that the counters and alert schedules follow the
+ * read, acknowledged and severity state. Alerts added to a notification after it has been added to the store must be
+ * scheduled with {@linkplain #scheduleAlerts(Notification)}.
+ */
+@ThreadSafe
+public class NotificationStore<N extends Notification<?, ?>> implements INotificationListener {
+
+    private static final int READ = 1;
+    private static final int ACKNOWLEDGED = 2;
+    private static final int SEVERITY_SHIFT = 2;
+
+    private final List<N> notifications = new ArrayList<>();
+    private final List<N> notificationsView = Collections.unmodifiableList(notifications);
+    private final Map<Object, N> notificationsById = new HashMap<>();
+    private final Map<Notification<?, ?>, Integer> states = new IdentityHashMap<>();
+
+    private final PriorityQueue<PendingAlert<N>> pendingAlerts = new PriorityQueue<>();
+    private final Map<NotificationAlert, PendingAlert<N>> pendingAlertsByAlert = new IdentityHashMap<>();
+
+    private int unreadCount;
+    private int unacknowledgedCount;
+    private final int[] severityCounts = new int[NotificationSeverity.values().length];
+    private final int[] unacknowledgedSeverityCounts = new int[NotificationSeverity.values().length];
+
+    /*************************************/
+    /** Notification methods **/
+    /*************************************/
+
+    /**
+     * Adds a notification to the end of the store
+     *
+     * @param notification
+     *            the notification to add
+     * @return if the notification was added, i.e. was not already in the store
+     */
+    public synchronized boolean add(N notification) {
+        if (states.containsKey(notification)) {
+            return false;
+        }
+        notifications.add(notification);
+        index(notification);
+        return true;
+    }
+
+    /**
+     * Removes a notification from the store
+     *
+     * @param notification
+     *            the notification to remove
+     * @return if the notification was removed
+     */
+    public synchronized boolean remove(N notification) {
+        if (!states.containsKey(notification)) {
+            return false;
+        }
+        for (Iterator<N> it = notifications.iterator(); it.hasNext();) {
+            if (it.next() == notification) {
+                it.remove();
+                break;
+            }
+        }
+        unindex(notification);
+        return true;
+    }
+
+    /**
+     * Replaces the notifications of the store with the given list.
+     * <p>
+     * Notifications that are in both the store and the list keep their pending alerts.
+     *
+     * @param newNotifications
+     *            the new notifications
+     */
+    public synchronized void setAll(List<N> newNotifications) {
+        Map<N, Boolean> retained = new IdentityHashMap<>();
+        for (N notification : newNotifications) {
+            retained.put(notification, Boolean.TRUE);
+        }
+        for (N notification : notifications) {
+            if (!retained.containsKey(notification)) {
+                unindex(notification);
+            }
+        }
+        notifications.clear();
+        for (N notification : newNotifications) {
+            if (retained.remove(notification) == null) {
+                continue; // Duplicate
+            }
+            if (!states.containsKey(notification)) {
+                index(notification);
+            }
+            notifications.add(notification);
+        }
+    }
+
+    /**
+     * Removes all notifications from the store
+     */
+    public synchronized void clear() {
+        for (N notification : notifications) {
+            unindex(notification);
+        }
+        notifications.clear();
+    }
+
+    /**
+     * Returns the number of notifications
+     *
+     * @return the number of notifications
+     */
+    public synchronized int size() {
+        return notifications.size();
+    }
+
+    /**
+     * Returns the notification at the given index, or null if the index is out of range
+     *
+     * @param index
+     *            the index
+     * @return the notification at the given index
+     */
+    public synchronized N get(int index) {
+        if (index < 0 || index >= notifications.size()) {
+            return null;
+        }
+        return notifications.get(index);
+    }
+
+    /**
+     * Returns the notification with the given id, or null if none is found
+     *
+     * @param id
+     *            the notification id
+     * @return the notification with the given id
+     */
+    public synchronized N getById(Object id) {
+        return id == null ? null : notificationsById.get(id);
+    }
+
+    /**
+     * Returns the index of the notification with the given id, or -1 if none is found
+     *
+     * @param id
+     *            the notification id
+     * @return the index of the notification with the given id
+     */
+    public synchronized int indexOfId(Object id) {
+        N notification = getById(id);
+        if (notification != null) {
+            for (int i = 0; i < notifications.size(); i++) {
+                if (notifications.get(i) == notification) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns an unmodifiable live view of the notifications.
+     * <p>
+     * The view is not synchronized, and should only be iterated in the thread that updates the store, i.e. the Swing
+     * event thread.
+     *
+     * @return the notifications
+     */
+    public List<N> getNotifications() {
+        return notificationsView;
+    }
+
+    /**
+     * Returns a copy of a page of the notifications, which is not affected by later changes to the store
+     *
+     * @param from
+     *            the index of the first notification of the page
+     * @param count
+     *            the maximum number of notifications of the page
+     * @return the page of notifications
+     */
+    public synchronized List<N> getPage(int from, int count) {
+        int start = Math.min(Math.max(from, 0), notifications.size());
+        int end = Math.min(start + Math.max(count, 0), notifications.size());
+        return new ArrayList<>(notifications.subList(start, end));
+    }
+
+    /*************************************/
+    /** State counters **/
+    /*************************************/
+
+    /**
+     * Returns the number of unread notifications
+     *
+     * @return the number of unread notifications
+     */
+    public synchronized int getUnreadCount() {
+        return unreadCount;
+    }
+
+    /**
+     * Returns the number of unacknowledged notifications
+     *
+     * @return the number of unacknowledged notifications
+     */
+    public synchronized int getUnacknowledgedCount() {
+        return unacknowledgedCount;
+    }
+
+    /**
+     * Returns the number of notifications with the given severity
+     *
+     * @param severity
+     *            the severity
+     * @return the number of notifications with the given severity
+     */
+    public synchronized int getCount(NotificationSeverity severity) {
+        return severityCounts[severity.ordinal()];
+    }
+
+    /**
+     * Returns the number of unacknowledged notifications with the given severity
+     *
+     * @param severity
+     *            the severity
+     * @return the number of unacknowledged notifications with the given severity
+     */
+    public synchronized int getUnacknowledgedCount(NotificationSeverity severity) {
+        return unacknowledgedSeverityCounts[severity.ordinal()];
+    }
+
+    /*************************************/
+    /** Alert methods **/
+    /*************************************/
+
+    /**
+     * (Re-)schedules the alerts of the given notification
+     *
+     * @param notification
+     *            the notification
+     */
+    public synchronized void scheduleAlerts(N notification) {
+        if (states.containsKey(notification)) {
+            for (NotificationAlert alert : notification.getAlerts()) {
+                schedule(notification, alert);
+            }
+        }
+    }
+
+    /**
+     * (Re-)schedules the given alert of the given notification, e.g. after it has been triggered
+     *
+     * @param notification
+     *            the notification
+     * @param alert
+     *            the alert
+     */
+    public synchronized void scheduleAlert(N notification, NotificationAlert alert) {
+        if (states.containsKey(notification)) {
+            schedule(notification, alert);
+        }
+    }
+
+    /**
+     * Removes the alerts that are due at the given time from the queue, and returns the ones that should trigger.
+     * <p>
+     * The caller must re-schedule the returned alerts with {@linkplain #scheduleAlert(Notification, NotificationAlert)}
+     * once they have been triggered.
+     *
+     * @param now
+     *            the current time
+     * @return the alerts that should trigger
+     */
+    public synchronized List<PendingAlert<N>> pollDueAlerts(long now) {
+        List<PendingAlert<N>> result = new ArrayList<>();
+        List<PendingAlert<N>> notTriggered = new ArrayList<>();
+        while (!pendingAlerts.isEmpty() && pendingAlerts.peek().dueTime <= now) {
+            PendingAlert<N> pendingAlert = pendingAlerts.poll();
+            if (pendingAlertsByAlert.get(pendingAlert.alert) != pendingAlert) {
+                continue; // Stale entry
+            }
+            pendingAlertsByAlert.remove(pendingAlert.alert);
+            if (pendingAlert.alert.shouldTrigger(pendingAlert.notification)) {
+                result.add(pendingAlert);
+            } else {
+                notTriggered.add(pendingAlert);
+            }
+        }
+
+        // Re-schedule the alerts that were not triggered after all.
+        // Done after the loop, since they may still be due now
+        for (PendingAlert<N> pendingAlert : notTriggered) {
+            schedule(pendingAlert.notification, pendingAlert.alert);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of scheduled alerts
+     *
+     * @return the number of scheduled alerts
+     */
+    public synchronized int getPendingAlertCount() {
+        return pendingAlertsByAlert.size();
+    }
+
+    /**
+     * Called when the read or acknowledged state of a notification changes
+     *
+     * @param notification
+     *            the notification whose state has changed
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public synchronized void notificationUpdated(Notification<?, ?> notification) {
+        Integer oldState = states.get(notification);
+        if (oldState == null) {
+            return;
+        }
+        int newState = stateOf(notification);
+        if (newState != oldState) {
+            count(oldState, -1);
+            count(newState, 1);
+            states.put(notification, newState);
+        }
+        for (NotificationAlert alert : notification.getAlerts()) {
+            schedule((N) notification, alert);
+        }
+    }
+
+    /*************************************/
+    /** Helper methods **/
+    /*************************************/
+
+    /**
+     * Adds the notification to the indexes
+     */
+    private void index(N notification) {
+        int state = stateOf(notification);
+        states.put(notification, state);
+        count(state, 1);
+        if (notification.getId() != null && !notificationsById.containsKey(notification.getId())) {
+            notificationsById.put(notification.getId(), notification);
+        }
+        notification.addListener(this);
+        for (NotificationAlert alert : notification.getAlerts()) {
+            schedule(notification, alert);
+        }
+    }
+
+    /**
+     * Removes the notification from the indexes
+     */
+    private void unindex(N notification) {
+        Integer state = states.remove(notification);
+        if (state != null) {
+            count(state, -1);
+        }
+        if (notification.getId() != null && notificationsById.get(notification.getId()) == notification) {
+            notificationsById.remove(notification.getId());
+        }
+        notification.removeListener(this);
+        for (NotificationAlert alert : notification.getAlerts()) {
+            pendingAlertsByAlert.remove(alert);
+        }
+    }
+
+    /**
+     * Schedules the alert at its next trigger time. Any previous entry of the alert in the queue becomes stale.
+     */
+    private void schedule(N notification, NotificationAlert alert) {
+        long dueTime = alert.getNextTriggerTime(notification);
+        if (dueTime == NotificationAlert.NEVER) {
+            pendingAlertsByAlert.remove(alert);
+        } else {
+            PendingAlert<N> pendingAlert = new PendingAlert<>(notification, alert, dueTime);
+            pendingAlertsByAlert.put(alert, pendingAlert);
+            pendingAlerts.add(pendingAlert);
+        }
+
+        // Purge stale entries if they dominate the queue
+        if (pendingAlerts.size() > 2 * pendingAlertsByAlert.size() + 16) {
+            pendingAlerts.clear();
+            pendingAlerts.addAll(pendingAlertsByAlert.values());
+        }
+    }
+
+    private static int stateOf(Notification<?, ?> notification) {
+        return (notification.isRead() ? READ : 0) | (notification.isAcknowledged() ? ACKNOWLEDGED : 0)
+                | notification.getSeverity().ordinal() << SEVERITY_SHIFT;
+    }
+
+    private void count(int state, int delta) {
+        int severity = state >> SEVERITY_SHIFT;
+        severityCounts[severity] += delta;
+        if ((state & READ) == 0) {
+            unreadCount += delta;
+        }
+        if ((state & ACKNOWLEDGED) == 0) {
+            unacknowledgedCount += delta;
+            unacknowledgedSeverityCounts[severity] += delta;
+        }
+    }
+
+    /**
+     * An alert of a notification scheduled at the time it is next due
+     */
+    public static final class PendingAlert<N extends Notification<?, ?>> implements Comparable<PendingAlert<N>> {
+        private final N notification;
+        private final NotificationAlert alert;
+        private final long dueTime;
+
+        PendingAlert(N notification, NotificationAlert alert, long dueTime) {
+            this.notification = notification;
+            this.alert = alert;
+            this.dueTime = dueTime;
+        }
+
+        /**
+         * Returns the notification
+         *
+         * @return the notification
+         */
+        public N getNotification() {
+            return notification;
+        }
+
+        /**
+         * Returns the alert
+         *
+         * @return the alert
+         */
+        public NotificationAlert getAlert() {
+            return alert;
+        }
+
+        /**
+         * Returns the time the alert is due
+         *
+         * @return the time the alert is due
+         */
+        public long getDueTime() {
+            return dueTime;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int compareTo(PendingAlert<N> other) {
+            return Long.compare(dueTime, other.dueTime);
+        }
+    }
+}
@@ -0,0 +1,279 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.predictor;
+
+import java.util.Arrays;
+
+import net.jcip.annotations.Immutable;
+
+/**
+ * Dead-reckoned positions of a fleet of vessels, as computed by the {@linkplain FleetPredictor}.
+ * <p>
+ * The kinematics of the vessels and their predicted positions are stored in primitive arrays, column by column. The
+ * vessels are indexed from 0 to {@linkplain #size()} - 1 in ascending MMSI order, and the prediction steps from 0 to
+ * {@linkplain #getSteps()} - 1, where step {@code s} is {@code (s + 1) * interval} seconds after the prediction time.
+ * The kinematics are those of the last report of each vessel, and the vessels are dead-reckoned from the time of the
+ * report. The arrays are filled before the prediction is published and never modified afterwards.
+ */
+@Immutable
+public final class FleetPrediction {
+
+    private final long time;
+    private final int count;
+    private final int steps;
+    private final int interval;
+
+    private final long[] mmsi;
+    private final long[] reportTime;
+    private final double[] lat;
+    private final double[] lon;
+    private final float[] sog;
+    private final float[] cog;
+    private final float[] heading;
+    private final float[] rot;
+    private final float[] length;
+    private final float[] width;
+
+    // Indexed by vessel * steps + step
+    private final double[] predictedLat;
+    private final double[] predictedLon;
+    private final float[] predictedCog;
+    private final float[] predictedHeading;
+
+    /**
+     * Constructor used by the {@linkplain FleetPredictor}, which fills the arrays in place
+     */
+    FleetPrediction(long time, int count, int steps, int interval) {
+        this.time = time;
+        this.count = count;
+        this.steps = steps;
+        this.interval = interval;
+        mmsi = new long[count];
+        reportTime = new long[count];
+        lat = new double[count];
+        lon = new double[count];
+        sog = new float[count];
+        cog = new float[count];
+        heading = new float[count];
+        rot = new float[count];
+        length = new float[count];
+        width = new float[count];
+        predictedLat = new double[count * steps];
+        predictedLon = new double[count * steps];
+        predictedCog = new float[count * steps];
+        predictedHeading = new float[count * steps];
+    }
+
+    /**
+     * Returns the time of the prediction in milliseconds, i.e. the time of step -1
+     *
+     * @return the time of the prediction
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * Returns the number of vessels
+     *
+     * @return the number of vessels
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Returns the number of prediction steps per vessel
+     *
+     * @return the number of prediction steps
+     */
+    public int getSteps() {
+        return steps;
+    }
+
+    /**
+     * Returns the time between prediction steps in seconds
+     *
+     * @return the time between prediction steps
+     */
+    public int getInterval() {
+        return interval;
+    }
+
+    /**
+     * Returns the index of the vessel with the given MMSI, or a negative value if the vessel is not included
+     *
+     * @param mmsi
+     *            the MMSI of the vessel
+     * @return the index of the vessel
+     */
+    public int indexOf(long mmsi) {
+        return Arrays.binarySearch(this.mmsi, 0, count, mmsi);
+    }
+
+    public long getMmsi(int index) {
+        return mmsi[index];
+    }
+
+    /**
+     * Returns the time of the report of the kinematics in milliseconds, which is no later than the time of the
+     * prediction
+     *
+     * @param index
+     *            the vessel index
+     * @return the time of the report
+     */
+    public long getReportTime(int index) {
+        return reportTime[index];
+    }
+
+    public double getLatitude(int index) {
+        return lat[index];
+    }
+
+    public double getLongitude(int index) {
+        return lon[index];
+    }
+
+    public float getSog(int index) {
+        return sog[index];
+    }
+
+    public float getCog(int index) {
+        return cog[index];
+    }
+
+    public float getHeading(int index) {
+        return heading[index];
+    }
+
+    public float getRot(int index) {
+        return rot[index];
+    }
+
+    /**
+     * Returns the length of the vessel in meters, or 0 if unknown
+     *
+     * @param index
+     *            the vessel index
+     * @return the length of the vessel
+     */
+    public float getLength(int index) {
+        return length[index];
+    }
+
+    /**
+     * Returns the width of the vessel in meters, or 0 if unknown
+     *
+     * @param index
+     *            the vessel index
+     * @return the width of the vessel
+     */
+    public float getWidth(int index) {
+        return width[index];
+    }
+
+    public double getPredictedLatitude(int index, int step) {
+        return predictedLat[index * steps + step];
+    }
+
+    public double getPredictedLongitude(int index, int step) {
+        return predictedLon[index * steps + step];
+    }
+
+    public float getPredictedCog(int index, int step) {
+        return predictedCog[index * steps + step];
+    }
+
+    public float getPredictedHeading(int index, int step) {
+        return predictedHeading[index * steps + step];
+    }
+
+    /**
+     * Returns the time of the given prediction step in milliseconds
+     *
+     * @param step
+     *            the prediction step
+     * @return the time of the prediction step
+     */
+    public long getPredictedTime(int step) {
+        return time + (step + 1) * interval * 1000L;
+    }
+
+    /****************************************/
+    /** Filled by the FleetPredictor **/
+    /****************************************/
+
+    void setKinematics(int index, long mmsi, long reportTime, double lat, double lon, float sog, float cog,
+            float heading, float rot, float length, float width) {
+        this.mmsi[index] = mmsi;
+        this.reportTime[index] = Math.min(reportTime, time);
+        this.lat[index] = lat;
+        this.lon[index] = lon;
+        this.sog[index] = sog;
+        this.cog[index] = cog;
+        this.heading[index] = heading;
+        this.rot[index] = rot;
+        this.length[index] = length;
+        this.width[index] = width;
+    }
+
+    /**
+     * Dead-reckons the vessels of the given index range. The vessels are first advanced from the time of the report to
+     * the time of the prediction. The course and heading change by the rate of turn between steps, and each step is
+     * advanced along the course of the previous step in a local flat-earth frame.
+     */
+    void predict(int from, int to) {
+        double stepHours = interval / 3600.0;
+        for (int i = from; i < to; i++) {
+            double age = (time - reportTime[i]) / 1000.0; // Seconds
+            double pLat = lat[i];
+            double pLon = lon[i];
+            double pCog = cog[i];
+            double pHeading = heading[i];
+            int offset = i * steps;
+            // Step -1 advances from the report to the time of the prediction
+            for (int s = -1; s < steps; s++) {
+                double distance = sog[i] * (s < 0 ? age / 3600.0 : stepHours); // Nautical miles
+                double turn = rot[i] * (s < 0 ? age : interval) / 60.0; // Degrees
+                double c = Math.toRadians(pCog);
+                pLat += distance * Math.cos(c) / 60.0;
+                pLat = Math.max(-90.0, Math.min(90.0, pLat));
+                double cosLat = Math.max(Math.cos(Math.toRadians(pLat)), 1e-6);
+                pLon += distance * Math.sin(c) / (60.0 * cosLat);
+                if (pLon >= 180.0) {
+                    pLon -= 360.0;
+                } else if (pLon < -180.0) {
+                    pLon += 360.0;
+                }
+                pCog = normalize(pCog + turn);
+                pHeading = normalize(pHeading + turn);
+                if (s < 0) {
+                    continue;
+                }
+
+                predictedLat[offset + s] = pLat;
+                predictedLon[offset + s] = pLon;
+                predictedCog[offset + s] = (float) pCog;
+                predictedHeading[offset + s] = (float) pHeading;
+            }
+        }
+    }
+
+    private static double normalize(double deg) {
+        deg %= 360.0;
+        return deg < 0 ? deg + 360.0 : deg;
+    }
+}
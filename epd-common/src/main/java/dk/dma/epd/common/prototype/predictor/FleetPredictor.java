@@ -0,0 +1,338 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.predictor;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.dma.enav.model.geometry.Position;
+import dk.dma.epd.common.prototype.ais.AisHandlerCommon;
+import dk.dma.epd.common.prototype.ais.MobileTarget;
+import dk.dma.epd.common.prototype.ais.VesselPositionData;
+import dk.dma.epd.common.prototype.ais.VesselStaticData;
+import dk.dma.epd.common.prototype.sensor.pnt.PntTime;
+
+/**
+ * Dead-reckoning predictor for all the vessels of an AIS handler.
+ * <p>
+ * On each tick, the kinematics of the vessels (report time, position, SOG, COG, heading and ROT) are packed into
+ * primitive arrays, and the vessels are dead-reckoned from the time of their report in parallel chunks on the common fork-join pool. The resulting
+ * {@linkplain FleetPrediction} is published to the listeners, e.g. the {@code DynamicPredictorLayer}, and remains
+ * available through {@linkplain #getPrediction()}. No objects are created per vessel, and the packing buffers are
+ * reused between ticks.
+ */
+@ThreadSafe
+public class FleetPredictor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FleetPredictor.class);
+
+    /** Default number of prediction steps */
+    public static final int DEFAULT_STEPS = 30;
+
+    /** Default time between prediction steps in seconds */
+    public static final int DEFAULT_INTERVAL = 60;
+
+    /** Default time between ticks in milliseconds */
+    public static final long DEFAULT_TICK = 5000L;
+
+    private static final int CHUNK_SIZE = 512;
+
+    /** Index bits of the MMSI sort keys */
+    private static final int INDEX_BITS = 24;
+
+    /** Number of packed float values per vessel: SOG, COG, heading, ROT, length and width */
+    private static final int VALUES = 6;
+
+    private final AisHandlerCommon aisHandler;
+    private final int steps;
+    private final int interval;
+
+    private final CopyOnWriteArrayList<IFleetPredictionListener> listeners = new CopyOnWriteArrayList<>();
+
+    private volatile FleetPrediction prediction;
+
+    @GuardedBy("this")
+    private ScheduledExecutorService scheduler;
+
+    // Packing buffers, reused between ticks
+    @GuardedBy("this")
+    private long[] keys = new long[0];
+    @GuardedBy("this")
+    private long[] packedTime = new long[0];
+    @GuardedBy("this")
+    private double[] packedLat = new double[0];
+    @GuardedBy("this")
+    private double[] packedLon = new double[0];
+    @GuardedBy("this")
+    private float[] packedValues = new float[0];
+
+    /**
+     * Constructor
+     *
+     * @param aisHandler
+     *            the AIS handler providing the vessels
+     * @param steps
+     *            the number of prediction steps
+     * @param interval
+     *            the time between prediction steps in seconds
+     */
+    public FleetPredictor(AisHandlerCommon aisHandler, int steps, int interval) {
+        if (steps <= 0 || interval <= 0) {
+            throw new IllegalArgumentException("The number of steps and the interval must be positive");
+        }
+        this.aisHandler = aisHandler;
+        this.steps = steps;
+        this.interval = interval;
+    }
+
+    /**
+     * Constructor predicting 1 to 30 minutes ahead
+     *
+     * @param aisHandler
+     *            the AIS handler providing the vessels
+     */
+    public FleetPredictor(AisHandlerCommon aisHandler) {
+        this(aisHandler, DEFAULT_STEPS, DEFAULT_INTERVAL);
+    }
+
+    /**
+     * Starts predicting the vessels of the AIS handler at the given tick interval
+     *
+     * @param tickMillis
+     *            the time between ticks in milliseconds
+     */
+    public synchronized void start(long tickMillis) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "FleetPredictor");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                tick();
+            }
+        }, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops predicting
+     */
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Predicts the vessels of the AIS handler and publishes the prediction. Skipped when there are no listeners.
+     */
+    void tick() {
+        if (listeners.isEmpty()) {
+            return;
+        }
+        try {
+            FleetPrediction result = predict(aisHandler.getVesselTargets().values(), PntTime.getDate().getTime());
+            prediction = result;
+            for (IFleetPredictionListener listener : listeners) {
+                listener.fleetPredictionUpdated(result);
+            }
+        } catch (Exception e) {
+            LOG.error("Failed predicting the fleet", e);
+        }
+    }
+
+    /**
+     * Returns the most recent prediction, or null if no prediction has been made yet
+     *
+     * @return the most recent prediction
+     */
+    public FleetPrediction getPrediction() {
+        return prediction;
+    }
+
+    /**
+     * Predicts the given targets. Targets that are gone or have no position are left out.
+     *
+     * @param targets
+     *            the targets to predict
+     * @param time
+     *            the time of the prediction in milliseconds
+     * @return the prediction
+     */
+    public synchronized FleetPrediction predict(Collection<? extends MobileTarget> targets, long time) {
+        // Pack the kinematics in the order of the targets
+        MobileTarget[] snapshot = targets.toArray(new MobileTarget[0]);
+        ensureCapacity(snapshot.length);
+        int count = 0;
+        for (MobileTarget target : snapshot) {
+            if (pack(target, count, time)) {
+                count++;
+            }
+        }
+
+        // Sort by MMSI, keeping the packed index in the low bits of the keys
+        Arrays.sort(keys, 0, count);
+
+        FleetPrediction result = new FleetPrediction(time, count, steps, interval);
+        long indexMask = (1L << INDEX_BITS) - 1;
+        for (int i = 0; i < count; i++) {
+            int p = (int) (keys[i] & indexMask);
+            int v = p * VALUES;
+            result.setKinematics(i, keys[i] >>> INDEX_BITS, packedTime[p], packedLat[p], packedLon[p], packedValues[v],
+                    packedValues[v + 1], packedValues[v + 2], packedValues[v + 3], packedValues[v + 4],
+                    packedValues[v + 5]);
+        }
+
+        ForkJoinPool.commonPool().invoke(new PredictTask(result, 0, count));
+        return result;
+    }
+
+    /**
+     * Packs the kinematics of the target at the given index, along with the time of the report, which defaults to the
+     * time of the prediction. Returns false if the target should be left out.
+     */
+    @GuardedBy("this")
+    private boolean pack(MobileTarget target, int index, long time) {
+        long mmsi = target.getMmsi();
+        if (target.isGone() || mmsi < 0 || mmsi >= 1L << (63 - INDEX_BITS) || index > (1 << INDEX_BITS) - 1) {
+            return false;
+        }
+        VesselPositionData positionData = target.getPositionData();
+        if (positionData == null) {
+            return false;
+        }
+        float sog, cog, heading, rot;
+        Position pos;
+        synchronized (positionData) {
+            pos = positionData.getPos();
+            sog = positionData.getSog();
+            cog = positionData.getCog();
+            heading = positionData.getTrueHeading();
+            rot = positionData.getRot();
+        }
+        if (pos == null) {
+            return false;
+        }
+        if (heading < 0 || heading >= 360) {
+            // Heading not available
+            heading = cog;
+        }
+
+        float length = 0;
+        float width = 0;
+        VesselStaticData staticData = target.getStaticData();
+        if (staticData != null) {
+            synchronized (staticData) {
+                length = staticData.getDimBow() + staticData.getDimStern();
+                width = staticData.getDimPort() + staticData.getDimStarboard();
+            }
+        }
+
+        keys[index] = mmsi << INDEX_BITS | index;
+        Date lastReceived = target.getLastReceived();
+        packedTime[index] = (lastReceived != null) ? Math.min(time, lastReceived.getTime()) : time;
+        packedLat[index] = pos.getLatitude();
+        packedLon[index] = pos.getLongitude();
+        int v = index * VALUES;
+        packedValues[v] = sog;
+        packedValues[v + 1] = cog;
+        packedValues[v + 2] = heading;
+        packedValues[v + 3] = Float.isNaN(rot) ? 0f : rot;
+        packedValues[v + 4] = length;
+        packedValues[v + 5] = width;
+        return true;
+    }
+
+    @GuardedBy("this")
+    private void ensureCapacity(int n) {
+        if (keys.length < n) {
+            int capacity = Math.max(n, keys.length + (keys.length >> 1));
+            keys = new long[capacity];
+            packedTime = new long[capacity];
+            packedLat = new double[capacity];
+            packedLon = new double[capacity];
+            packedValues = new float[capacity * VALUES];
+        }
+    }
+
+    /**
+     * Adds a listener to receive the predictions
+     *
+     * @param listener
+     *            the listener to add
+     */
+    public void addListener(IFleetPredictionListener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    /**
+     * Removes a listener
+     *
+     * @param listener
+     *            the listener to remove
+     */
+    public void removeListener(IFleetPredictionListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Fork-join task predicting a range of vessels
+     */
+    private static final class PredictTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final FleetPrediction prediction;
+        private final int from;
+        private final int to;
+
+        PredictTask(FleetPrediction prediction, int from, int to) {
+            this.prediction = prediction;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > CHUNK_SIZE) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new PredictTask(prediction, from, mid), new PredictTask(prediction, mid, to));
+                return;
+            }
+            prediction.predict(from, to);
+        }
+    }
+}
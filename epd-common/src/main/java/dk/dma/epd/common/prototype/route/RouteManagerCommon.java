@@ -31,6 +31,7 @@ import net.jcip.annotations.ThreadSafe;
 import com.bbn.openmap.MapHandlerChild;
 
 import dk.dma.epd.common.prototype.EPD;
+import dk.dma.epd.common.prototype.communication.webservice.ShoreServiceErrorCode;
 import dk.dma.epd.common.prototype.communication.webservice.ShoreServiceException;
 import dk.dma.epd.common.prototype.model.route.ActiveRoute;
 import dk.dma.epd.common.prototype.model.route.IRoutesUpdateListener;
@@ -67,11 +68,31 @@ public abstract class RouteManagerCommon extends MapHandlerChild implements Runn
     @GuardedBy("this")
     protected int activeRouteIndex = -1;
 
+    private final transient RouteMetocScheduler metocScheduler = new RouteMetocScheduler(
+            new RouteMetocScheduler.MetocClient() {
+                @Override
+                public long getMetocRefreshTime(Route route, long now) {
+                    return RouteManagerCommon.this.getMetocRefreshTime(route, now);
+                }
+
+                @Override
+                public MetocForecast fetchRouteMetoc(Route route) throws ShoreServiceException {
+                    return RouteManagerCommon.this.fetchRouteMetoc(route);
+                }
+
+                @Override
+                public void routeMetocFetched(List<Route> routes, MetocForecast metocForecast,
+                        ShoreServiceException error) {
+                    RouteManagerCommon.this.routeMetocFetched(routes, metocForecast, error);
+                }
+            });
+
     /**
      * Constructor
      */
     public RouteManagerCommon() {
         enavSettings = EPD.getInstance().getSettings().getEnavSettings();
+        EPD.startThread(metocScheduler, "RouteMetocScheduler");
         EPD.startThread(this, "RouteManager");
     }
 
@@ -488,14 +509,15 @@ public abstract class RouteManagerCommon extends MapHandlerChild implements Runn
     }
 
     /**
-     * Checks all routes if the associated METOC data is still valid
+     * Checks all routes if the associated METOC data is still valid. Routes scheduled for a METOC refresh keep their
+     * METOC until the refresh has completed.
      */
     protected void checkValidMetoc() {
         boolean visualUpdate = false;
 
         synchronized (this) {
             for (Route route : routes) {
-                if (route.getMetocForecast() == null) {
+                if (route.getMetocForecast() == null || metocScheduler.isScheduled(route)) {
                     continue;
                 }
                 if (isMetocOld(route) || !route.isMetocValid(enavSettings.getMetocTimeDiffTolerance())) {
@@ -513,48 +535,116 @@ public abstract class RouteManagerCommon extends MapHandlerChild implements Runn
     }
 
     /**
-     * Polls for METOC data at regular intervals. Only applies for the active route (for now)
+     * Returns the routes to refresh the METOC of in the background, i.e. all routes and the active route
+     * 
+     * @return the routes to refresh the METOC of
      */
-    protected void pollForMetoc() {
-        if (!isRouteActive()) {
-            return;
+    protected synchronized List<Route> getMetocRoutes() {
+        List<Route> metocRoutes = new ArrayList<>(routes);
+        if (activeRoute != null) {
+            metocRoutes.add(activeRoute);
         }
-        synchronized (this) {
-            if (activeRoute.getRouteMetocSettings() == null || !activeRoute.getRouteMetocSettings().isShowRouteMetoc()) {
-                return;
+        return metocRoutes;
+    }
+
+    /**
+     * Returns the time the METOC of the given route should be refreshed by the {@linkplain RouteMetocScheduler}.
+     * <p>
+     * The METOC of the active route is polled at the active route METOC poll interval, when it is old or no longer
+     * valid. The METOC of other visible routes is refreshed shortly before it gets old, or at once if it is no longer
+     * valid. Only routes showing METOC are refreshed.
+     * 
+     * @param route
+     *            the route
+     * @param now
+     *            the current time
+     * @return the time to refresh the METOC, or {@linkplain RouteMetocScheduler#NEVER}
+     */
+    protected long getMetocRefreshTime(Route route, long now) {
+        if (route.getRouteMetocSettings() == null || !route.getRouteMetocSettings().isShowRouteMetoc()) {
+            return RouteMetocScheduler.NEVER;
+        }
+        MetocForecast metocForecast = route.getMetocForecast();
+        boolean hasMetoc = metocForecast != null && metocForecast.getCreated() != null;
+        long metocTtl = enavSettings.getMetocTtl() * 60 * 1000L;
+
+        if (route instanceof ActiveRoute) {
+            long activeRouteMetocPollInterval = enavSettings.getActiveRouteMetocPollInterval() * 60 * 1000L;
+            // Maybe we never want to refresh metoc
+            if (activeRouteMetocPollInterval <= 0) {
+                return RouteMetocScheduler.NEVER;
             }
+            if (!hasMetoc) {
+                return now;
+            }
+            long created = metocForecast.getCreated().getTime();
+            // Wait for the poll interval, and until the METOC is old unless it is no longer valid
+            if (route.isMetocValid(enavSettings.getMetocTimeDiffTolerance())) {
+                return created + Math.max(activeRouteMetocPollInterval, metocTtl);
+            }
+            return created + activeRouteMetocPollInterval;
         }
-        long activeRouteMetocPollInterval = enavSettings.getActiveRouteMetocPollInterval() * 60 * 1000;
-        // Maybe we never want to refresh metoc
-        if (activeRouteMetocPollInterval <= 0) {
-            return;
+
+        if (!route.isVisible() || !hasMetoc) {
+            return RouteMetocScheduler.NEVER;
         }
-        // Find the age of the current METOC
-        long metocAge = Long.MAX_VALUE;
-        if (getActiveRoute().getMetocForecast() != null) {
-            Date now = PntTime.getDate();
-            metocAge = now.getTime() - getActiveRoute().getMetocForecast().getCreated().getTime();
+        if (isMetocOld(route) || !route.isMetocValid(enavSettings.getMetocTimeDiffTolerance())) {
+            return now;
         }
-        // Check if minimum time since last update has passed
-        if (metocAge <= activeRouteMetocPollInterval) {
-            return;
+        return metocForecast.getCreated().getTime() + metocTtl - metocTtl / 10;
+    }
+
+    /**
+     * Fetches the METOC of the given route from shore. Called by the {@linkplain RouteMetocScheduler}.
+     * 
+     * @param route
+     *            the route to fetch METOC for
+     * @return the METOC forecast
+     */
+    MetocForecast fetchRouteMetoc(Route route) throws ShoreServiceException {
+        ShoreServicesCommon shoreServices = this.shoreServices;
+        if (shoreServices == null) {
+            throw new ShoreServiceException(ShoreServiceErrorCode.NO_CONTACT);
         }
-        // Check if not old and still valid
-        synchronized (this) {
-            if (!isMetocOld(activeRoute) && activeRoute.isMetocValid(enavSettings.getMetocTimeDiffTolerance())) {
-                return;
+        return shoreServices.routeMetoc(route);
+    }
+
+    /**
+     * Called by the {@linkplain RouteMetocScheduler} when the METOC of the given routes has been fetched.
+     * <p>
+     * On success, the METOC is set on all the routes. On failure, the METOC of the active route is removed, as is the
+     * METOC of other routes that is old or no longer valid.
+     * 
+     * @param routes
+     *            the routes the METOC was fetched for
+     * @param metocForecast
+     *            the METOC forecast, or null on failure
+     * @param error
+     *            the error, or null on success
+     */
+    void routeMetocFetched(List<Route> routes, MetocForecast metocForecast, ShoreServiceException error) {
+        if (error == null) {
+            for (Route route : routes) {
+                route.setMetocForecast(metocForecast);
+                route.getRouteMetocSettings().setShowRouteMetoc(true);
             }
+            notifyListeners(RoutesUpdateEvent.ROUTE_METOC_CHANGED);
+            LOG.info("Auto updated route metoc for " + routes.size() + " route(s)");
+            return;
         }
 
-        try {
-            requestRouteMetoc(getActiveRoute());
-            notifyListeners(RoutesUpdateEvent.ROUTE_METOC_CHANGED);
-            LOG.info("Auto updated route metoc for active route");
-        } catch (ShoreServiceException e) {
-            LOG.error("Failed to auto update METOC for active route: " + e.getMessage());
-            synchronized (this) {
-                activeRoute.removeMetoc();
+        boolean visualUpdate = false;
+        synchronized (this) {
+            for (Route route : routes) {
+                LOG.error("Failed to auto update METOC for route " + route.getName() + ": " + error.getMessage());
+                if (route instanceof ActiveRoute || isMetocOld(route)
+                        || !route.isMetocValid(enavSettings.getMetocTimeDiffTolerance())) {
+                    route.removeMetoc();
+                    visualUpdate = true;
+                }
             }
+        }
+        if (visualUpdate) {
             notifyListeners(RoutesUpdateEvent.METOC_SETTINGS_CHANGED);
         }
     }
@@ -666,8 +756,8 @@ public abstract class RouteManagerCommon extends MapHandlerChild implements Runn
         while (true) {
             Util.sleep(10000);
 
-            // Active route poll for METOC
-            pollForMetoc();
+            // Schedule the METOC refresh of the active route and the visible routes
+            metocScheduler.update(getMetocRoutes());
 
             // Check validity of METOC for all routes
             checkValidMetoc();
@@ -0,0 +1,485 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.route;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.dma.epd.common.Heading;
+import dk.dma.epd.common.prototype.communication.webservice.ShoreServiceErrorCode;
+import dk.dma.epd.common.prototype.communication.webservice.ShoreServiceException;
+import dk.dma.epd.common.prototype.model.route.ActiveRoute;
+import dk.dma.epd.common.prototype.model.route.Route;
+import dk.dma.epd.common.prototype.model.route.RouteGeometry;
+import dk.dma.epd.common.prototype.sensor.pnt.PntTime;
+import dk.frv.enav.common.xml.metoc.MetocForecast;
+
+/**
+ * Refreshes the METOC forecasts of the routes of a {@linkplain RouteManagerCommon} in the background.
+ * <p>
+ * The routes are kept in a priority queue ordered by the time their METOC must be refreshed, as given by the
+ * {@linkplain MetocClient}. A dispatcher thread takes the routes off the queue when they are due, and fetches their
+ * METOC on a bounded pool of {@linkplain #METOC_THREADS} worker threads, so the requests for many routes run
+ * concurrently without blocking each other or the route manager thread. Routes with identical way points, leg
+ * headings, ETAs and METOC interval share a single request. The active route is never coalesced, since its request
+ * includes the current position.
+ * <p>
+ * A route that failed to refresh is not retried for {@linkplain #RETRY_DELAY} milliseconds.
+ */
+@ThreadSafe
+public class RouteMetocScheduler implements Runnable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RouteMetocScheduler.class);
+
+    /** Maximum number of METOC requests made concurrently */
+    public static final int METOC_THREADS = 4;
+
+    /** The time to wait before retrying a failed METOC request in milliseconds */
+    public static final long RETRY_DELAY = 60 * 1000L;
+
+    /** Refresh time of routes that should not be refreshed */
+    public static final long NEVER = Long.MAX_VALUE;
+
+    /** The maximum time the dispatcher waits before checking the queue again */
+    private static final long MAX_WAIT = 10 * 1000L;
+
+    private final MetocClient client;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(METOC_THREADS, new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "RouteMetocWorker-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    @GuardedBy("this")
+    private final PriorityQueue<ScheduledRoute> queue = new PriorityQueue<>();
+    @GuardedBy("this")
+    private final Map<Route, ScheduledRoute> scheduled = new IdentityHashMap<>();
+    @GuardedBy("this")
+    private final Map<MetocRequestKey, MetocRequest> requests = new HashMap<>();
+    @GuardedBy("this")
+    private final Map<Route, MetocRequest> requestedRoutes = new IdentityHashMap<>();
+    @GuardedBy("this")
+    private final Map<Route, Long> retryTimes = new IdentityHashMap<>();
+    @GuardedBy("this")
+    private int runningRequests;
+    @GuardedBy("this")
+    private boolean stopped;
+
+    /**
+     * Constructor
+     *
+     * @param client
+     *            the client that provides the refresh times of, and fetches the METOC of, the routes
+     */
+    public RouteMetocScheduler(MetocClient client) {
+        this.client = client;
+    }
+
+    /**
+     * Updates the schedule with the current set of routes.
+     * <p>
+     * The refresh time of each route is looked up in the client, and routes that are no longer included are
+     * dropped from the schedule. Routes whose METOC is being fetched are left alone.
+     *
+     * @param routes
+     *            the routes to refresh the METOC of
+     */
+    public void update(Collection<? extends Route> routes) {
+        long now = now();
+
+        // Look up the refresh times without holding the lock
+        Map<Route, Long> refreshTimes = new IdentityHashMap<>();
+        for (Route route : routes) {
+            refreshTimes.put(route, client.getMetocRefreshTime(route, now));
+        }
+
+        synchronized (this) {
+            for (Map.Entry<Route, Long> refreshTime : refreshTimes.entrySet()) {
+                Route route = refreshTime.getKey();
+                if (requestedRoutes.containsKey(route)) {
+                    continue;
+                }
+                long dueTime = refreshTime.getValue();
+                Long retryTime = retryTimes.get(route);
+                if (retryTime != null && dueTime != NEVER) {
+                    dueTime = Math.max(dueTime, retryTime);
+                }
+
+                ScheduledRoute entry = scheduled.get(route);
+                if (entry != null && entry.dueTime == dueTime) {
+                    continue;
+                }
+                if (entry != null) {
+                    unschedule(route);
+                }
+                if (dueTime != NEVER) {
+                    entry = new ScheduledRoute(route, dueTime);
+                    scheduled.put(route, entry);
+                    queue.add(entry);
+                }
+            }
+
+            // Drop the routes that are no longer included
+            for (Route route : new ArrayList<>(scheduled.keySet())) {
+                if (!refreshTimes.containsKey(route)) {
+                    unschedule(route);
+                }
+            }
+            retryTimes.keySet().retainAll(refreshTimes.keySet());
+
+            // The queue entries are removed lazily. Purge them if there are too many.
+            if (queue.size() > 2 * scheduled.size() + 16) {
+                queue.clear();
+                queue.addAll(scheduled.values());
+            }
+            notifyAll();
+        }
+    }
+
+    /**
+     * Removes the route from the schedule. The queue entry is flagged as stale and dropped when it is polled.
+     */
+    @GuardedBy("this")
+    private void unschedule(Route route) {
+        ScheduledRoute entry = scheduled.remove(route);
+        if (entry != null) {
+            entry.stale = true;
+        }
+    }
+
+    /**
+     * Returns if the METOC of the given route is scheduled for refresh or being fetched
+     *
+     * @param route
+     *            the route to check
+     * @return if the METOC of the route is scheduled for refresh or being fetched
+     */
+    public synchronized boolean isScheduled(Route route) {
+        return scheduled.containsKey(route) || requestedRoutes.containsKey(route);
+    }
+
+    /**
+     * Returns the time the METOC of the given route is scheduled to be refreshed
+     *
+     * @param route
+     *            the route to check
+     * @return the time the METOC of the route is scheduled to be refreshed, or {@linkplain #NEVER} if not scheduled
+     */
+    synchronized long getDueTime(Route route) {
+        ScheduledRoute entry = scheduled.get(route);
+        return (entry == null) ? NEVER : entry.dueTime;
+    }
+
+    /**
+     * Returns the number of routes scheduled for refresh
+     *
+     * @return the number of routes scheduled for refresh
+     */
+    public synchronized int getScheduledCount() {
+        return scheduled.size();
+    }
+
+    /**
+     * Stops the dispatcher and the worker threads
+     */
+    public void stop() {
+        synchronized (this) {
+            stopped = true;
+            notifyAll();
+        }
+        executor.shutdownNow();
+    }
+
+    /**
+     * Dispatcher thread run method
+     */
+    @Override
+    public void run() {
+        while (true) {
+            synchronized (this) {
+                if (stopped) {
+                    return;
+                }
+                ScheduledRoute head = queue.peek();
+                while (head != null && head.stale) {
+                    queue.poll();
+                    head = queue.peek();
+                }
+
+                long now = now();
+                if (head == null || head.dueTime > now || runningRequests >= METOC_THREADS) {
+                    long wait = (head == null || runningRequests >= METOC_THREADS) ? MAX_WAIT : Math.min(MAX_WAIT,
+                            head.dueTime - now);
+                    try {
+                        wait(Math.max(1L, wait));
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    continue;
+                }
+
+                queue.poll();
+                scheduled.remove(head.route);
+                dispatch(head.route, now);
+            }
+        }
+    }
+
+    /**
+     * Starts a METOC request for the given route, or adds the route to a request for an identical route
+     */
+    @GuardedBy("this")
+    private void dispatch(Route route, long now) {
+        MetocRequestKey key = MetocRequestKey.create(route);
+        MetocRequest request = (key == null) ? null : requests.get(key);
+        if (request != null) {
+            request.add(route);
+            return;
+        }
+
+        request = new MetocRequest(key, route);
+        if (key != null) {
+            requests.put(key, request);
+
+            // Add the other due routes with identical requests
+            for (Iterator<ScheduledRoute> it = scheduled.values().iterator(); it.hasNext();) {
+                ScheduledRoute entry = it.next();
+                if (entry.dueTime <= now && key.equals(MetocRequestKey.create(entry.route))) {
+                    entry.stale = true;
+                    it.remove();
+                    request.add(entry.route);
+                }
+            }
+        }
+        requestedRoutes.put(route, request);
+        runningRequests++;
+        executor.execute(request);
+    }
+
+    /**
+     * Called when a METOC request has completed
+     */
+    private void completed(MetocRequest request, MetocForecast metocForecast, ShoreServiceException error) {
+        List<Route> routes;
+        synchronized (this) {
+            if (request.key != null) {
+                requests.remove(request.key);
+            }
+            routes = request.routes;
+            long retryTime = now() + RETRY_DELAY;
+            for (Route route : routes) {
+                requestedRoutes.remove(route);
+                if (error == null) {
+                    retryTimes.remove(route);
+                } else {
+                    retryTimes.put(route, retryTime);
+                }
+            }
+            runningRequests--;
+            notifyAll();
+        }
+        client.routeMetocFetched(routes, metocForecast, error);
+    }
+
+    /**
+     * Returns the current time, in the same time base as the METOC forecasts
+     */
+    private static long now() {
+        return PntTime.getDate().getTime();
+    }
+
+    /**
+     * A route in the priority queue, ordered by the time the METOC of the route must be refreshed
+     */
+    private static final class ScheduledRoute implements Comparable<ScheduledRoute> {
+        final Route route;
+        final long dueTime;
+        boolean stale;
+
+        ScheduledRoute(Route route, long dueTime) {
+            this.route = route;
+            this.dueTime = dueTime;
+        }
+
+        @Override
+        public int compareTo(ScheduledRoute other) {
+            return Long.compare(dueTime, other.dueTime);
+        }
+    }
+
+    /**
+     * A METOC request for one or more routes with identical requests
+     */
+    private final class MetocRequest implements Runnable {
+        final MetocRequestKey key;
+        final Route route;
+        @GuardedBy("RouteMetocScheduler.this")
+        final List<Route> routes = new ArrayList<>();
+
+        MetocRequest(MetocRequestKey key, Route route) {
+            this.key = key;
+            this.route = route;
+            routes.add(route);
+        }
+
+        @GuardedBy("RouteMetocScheduler.this")
+        void add(Route route) {
+            routes.add(route);
+            requestedRoutes.put(route, this);
+        }
+
+        @Override
+        public void run() {
+            MetocForecast metocForecast = null;
+            ShoreServiceException error = null;
+            try {
+                metocForecast = client.fetchRouteMetoc(route);
+            } catch (ShoreServiceException e) {
+                error = e;
+            } catch (RuntimeException e) {
+                LOG.error("Failed fetching route METOC", e);
+                error = new ShoreServiceException(ShoreServiceErrorCode.INTERNAL_ERROR);
+            }
+            completed(this, metocForecast, error);
+        }
+    }
+
+    /**
+     * The client of the scheduler, which provides the refresh times of the routes and fetches their METOC
+     */
+    interface MetocClient {
+
+        /**
+         * Returns the time the METOC of the given route should be refreshed
+         *
+         * @param route
+         *            the route
+         * @param now
+         *            the current time
+         * @return the time to refresh the METOC, or {@linkplain RouteMetocScheduler#NEVER}
+         */
+        long getMetocRefreshTime(Route route, long now);
+
+        /**
+         * Fetches the METOC of the given route. Called on a worker thread.
+         *
+         * @param route
+         *            the route to fetch METOC for
+         * @return the METOC forecast
+         */
+        MetocForecast fetchRouteMetoc(Route route) throws ShoreServiceException;
+
+        /**
+         * Called on a worker thread when the METOC of the given routes has been fetched
+         *
+         * @param routes
+         *            the routes the METOC was fetched for
+         * @param metocForecast
+         *            the METOC forecast, or null on failure
+         * @param error
+         *            the error, or null on success
+         */
+        void routeMetocFetched(List<Route> routes, MetocForecast metocForecast, ShoreServiceException error);
+    }
+
+    /**
+     * Identifies the METOC request of a route by its way point positions, ETAs, leg headings and METOC interval
+     */
+    static final class MetocRequestKey {
+        private final double[] positions;
+        private final long[] etas;
+        private final Heading[] headings;
+        private final int interval;
+        private final int hash;
+
+        private MetocRequestKey(double[] positions, long[] etas, Heading[] headings, int interval) {
+            this.positions = positions;
+            this.etas = etas;
+            this.headings = headings;
+            this.interval = interval;
+            this.hash = 31 * (31 * (31 * Arrays.hashCode(positions) + Arrays.hashCode(etas)) + Arrays
+                    .hashCode(headings)) + interval;
+        }
+
+        /**
+         * Returns the request key of the route, or null if the request of the route cannot be shared
+         */
+        static MetocRequestKey create(Route route) {
+            if (route instanceof ActiveRoute || route.getRouteMetocSettings() == null) {
+                return null;
+            }
+            RouteGeometry geometry = route.getGeometry();
+            List<Date> routeEtas = route.getEtas();
+            if (routeEtas == null || routeEtas.size() != geometry.getWaypointCount()) {
+                return null;
+            }
+            double[] positions = new double[geometry.getWaypointCount() * 2];
+            long[] etas = new long[geometry.getWaypointCount()];
+            Heading[] headings = new Heading[geometry.getLegCount()];
+            for (int i = 0; i < etas.length; i++) {
+                positions[i * 2] = geometry.getPosition(i).getLatitude();
+                positions[i * 2 + 1] = geometry.getPosition(i).getLongitude();
+                etas[i] = routeEtas.get(i).getTime();
+            }
+            // The METOC points of a leg are sampled along its rhumb line or great circle
+            for (int i = 0; i < headings.length; i++) {
+                headings[i] = geometry.getLegHeading(i);
+            }
+            return new MetocRequestKey(positions, etas, headings, route.getRouteMetocSettings().getInterval());
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof MetocRequestKey)) {
+                return false;
+            }
+            MetocRequestKey other = (MetocRequestKey) obj;
+            return hash == other.hash && interval == other.interval && Arrays.equals(positions, other.positions)
+                    && Arrays.equals(etas, other.etas) && Arrays.equals(headings, other.headings);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.sensor.nmea;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import net.jcip.annotations.NotThreadSafe;
+
+/**
+ * Line reader for large files, which reads through memory-mapped windows of the file and supports seeking to
+ * arbitrary byte offsets.
+ * <p>
+ * Lines are terminated by '\n', and an optional trailing '\r' is stripped. Characters are decoded as ISO-8859-1,
+ * which is sufficient for NMEA.
+ */
+@NotThreadSafe
+public class MappedLineReader implements Closeable {
+
+    private static final long WINDOW_SIZE = 64L * 1024L * 1024L; // 64 MB
+
+    private final long windowSize;
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final long size;
+
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long position;
+    private byte[] lineBuffer = new byte[256];
+
+    /**
+     * Constructor
+     *
+     * @param filename
+     *            the file to read
+     * @throws IOException
+     */
+    public MappedLineReader(String filename) throws IOException {
+        this(filename, WINDOW_SIZE);
+    }
+
+    /**
+     * Constructor with a given window size, used for testing lines crossing windows
+     *
+     * @param filename
+     *            the file to read
+     * @param windowSize
+     *            the size of the memory-mapped windows in bytes
+     * @throws IOException
+     */
+    MappedLineReader(String filename, long windowSize) throws IOException {
+        this.windowSize = windowSize;
+        file = new RandomAccessFile(filename, "r");
+        channel = file.getChannel();
+        size = channel.size();
+    }
+
+    /**
+     * Reads the next line
+     *
+     * @return the next line, or null at the end of the file
+     * @throws IOException
+     */
+    public String readLine() throws IOException {
+        if (position >= size) {
+            return null;
+        }
+        int len = 0;
+        while (position < size) {
+            byte b = get(position++);
+            if (b == '\n') {
+                break;
+            }
+            if (len == lineBuffer.length) {
+                lineBuffer = Arrays.copyOf(lineBuffer, len * 2);
+            }
+            lineBuffer[len++] = b;
+        }
+        if (len > 0 && lineBuffer[len - 1] == '\r') {
+            len--;
+        }
+        return new String(lineBuffer, 0, len, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Moves the read position to the given byte offset
+     *
+     * @param offset
+     *            the byte offset. Should be the start of a line
+     */
+    public void seek(long offset) {
+        position = Math.max(0L, Math.min(offset, size));
+    }
+
+    /**
+     * Returns the byte offset of the next line to be read
+     *
+     * @return the byte offset of the next line to be read
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * Returns the size of the file
+     *
+     * @return the size of the file
+     */
+    public long getSize() {
+        return size;
+    }
+
+    private byte get(long pos) throws IOException {
+        if (window == null || pos < windowStart || pos >= windowStart + window.limit()) {
+            windowStart = pos;
+            window = channel.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(windowSize, size - pos));
+        }
+        return window.get((int) (pos - windowStart));
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+        file.close();
+    }
+}
@@ -0,0 +1,285 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.sensor.nmea;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import net.jcip.annotations.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.dma.ais.message.AisMessage;
+import dk.dma.ais.packet.AisPacket;
+import dk.dma.ais.packet.AisPacketParser;
+import dk.dma.epd.common.prototype.status.NmeaDecodeStatus;
+
+/**
+ * Three stage pipeline used by the {@linkplain NmeaSensor} for decoding NMEA lines:
+ * <ol>
+ * <li><b>Read:</b> The sensor read loop submits each line through {@linkplain #submit(String, boolean)}.</li>
+ * <li><b>Decode:</b> VDM/VDO lines are decoded in parallel by a number of decoder threads, each with its own
+ * {@linkplain AisPacketParser}. All fragments of a multi-sentence message, identified by sequence id and channel,
+ * are routed to the same decoder thread, whereas single sentence messages are distributed round robin.</li>
+ * <li><b>Deliver:</b> A single delivery thread hands over the decoded messages, and all other sentences, to the
+ * sensor in the order the lines were read.</li>
+ * </ol>
+ * The stages are connected by bounded queues. When the queues are full, lines are either dropped or the read stage
+ * is blocked, depending on the {@code blockWhenFull} flag.
+ */
+@ThreadSafe
+final class NmeaDecodePipeline {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NmeaDecodePipeline.class);
+
+    private final NmeaSensor sensor;
+    private final NmeaDecodeStatus status;
+    private final boolean blockWhenFull;
+    private final List<Decoder> decoders = new ArrayList<>();
+    private final BlockingQueue<Item> deliveryQueue;
+    private final int capacity;
+    private final Thread deliveryThread;
+    private volatile boolean stopped;
+    private int nextDecoder; // Only accessed from the read stage
+
+    /**
+     * Constructor
+     *
+     * @param sensor
+     *            the sensor to deliver lines and messages to
+     * @param decodeThreads
+     *            the number of decoder threads
+     * @param capacity
+     *            the maximum number of lines in the pipeline
+     * @param blockWhenFull
+     *            whether to block the read stage, rather than drop lines, when the pipeline is full
+     * @param status
+     *            the status to update with pipeline statistics
+     */
+    NmeaDecodePipeline(NmeaSensor sensor, int decodeThreads, int capacity, boolean blockWhenFull, NmeaDecodeStatus status) {
+        this.sensor = sensor;
+        this.status = status;
+        this.blockWhenFull = blockWhenFull;
+        this.capacity = capacity;
+        this.deliveryQueue = new ArrayBlockingQueue<>(capacity);
+
+        int decoderCapacity = Math.max(1, capacity / decodeThreads);
+        for (int i = 0; i < decodeThreads; i++) {
+            decoders.add(new Decoder(decoderCapacity, "NmeaDecoder-" + i));
+        }
+        deliveryThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                deliverLoop();
+            }
+        }, "NmeaDelivery");
+        deliveryThread.setDaemon(true);
+    }
+
+    /**
+     * Starts the decode and delivery threads
+     */
+    void start() {
+        for (Decoder decoder : decoders) {
+            decoder.thread.start();
+        }
+        deliveryThread.start();
+    }
+
+    /**
+     * Stops the decode and delivery threads. Lines still in the pipeline are discarded.
+     */
+    void stop() {
+        stopped = true;
+        for (Decoder decoder : decoders) {
+            decoder.thread.interrupt();
+        }
+        deliveryThread.interrupt();
+    }
+
+    /**
+     * Submits a line to the pipeline. Must be called from the read stage only.
+     *
+     * @param line
+     *            the line to submit
+     * @param ais
+     *            whether the line is a VDM/VDO sentence that should be decoded
+     */
+    void submit(String line, boolean ais) throws InterruptedException {
+        status.markRead();
+        if (!blockWhenFull && deliveryQueue.remainingCapacity() == 0) {
+            status.markDropped();
+            return;
+        }
+
+        Item item = new Item(line, ais);
+        if (ais) {
+            Decoder decoder = selectDecoder(line);
+            if (blockWhenFull) {
+                if (!put(decoder.queue, item)) {
+                    return;
+                }
+            } else if (!decoder.queue.offer(item)) {
+                status.markDropped();
+                return;
+            }
+        } else {
+            item.decoded();
+        }
+        // Never blocks unless blockWhenFull is set, since only the read stage adds to the delivery queue
+        put(deliveryQueue, item);
+        status.setQueueDepth(deliveryQueue.size(), capacity);
+    }
+
+    /**
+     * Blocks until the item has been added to the queue, or the pipeline is stopped
+     *
+     * @return if the item was added
+     */
+    private boolean put(BlockingQueue<Item> queue, Item item) throws InterruptedException {
+        while (!queue.offer(item, 100, TimeUnit.MILLISECONDS)) {
+            if (stopped) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Selects the decoder for a VDM/VDO line. Fragments of multi-sentence messages are routed by sequence id and
+     * channel, so that the same decoder assembles all fragments of a message.
+     */
+    private Decoder selectDecoder(String line) {
+        // Locate the fields in e.g. "!AIVDM,2,1,3,B,payload,0*hh", possibly prefixed by a comment block
+        int start = line.indexOf('!');
+        int c1 = line.indexOf(',', start + 1);
+        int c2 = c1 < 0 ? -1 : line.indexOf(',', c1 + 1);
+        if (c2 < 0 || (c2 - c1 == 2 && line.charAt(c1 + 1) == '1')) {
+            // Single sentence message (or malformed line)
+            nextDecoder = (nextDecoder + 1) % decoders.size();
+            return decoders.get(nextDecoder);
+        }
+        int c3 = line.indexOf(',', c2 + 1);
+        int c4 = c3 < 0 ? -1 : line.indexOf(',', c3 + 1);
+        int c5 = c4 < 0 ? -1 : line.indexOf(',', c4 + 1);
+        int hash = 0;
+        if (c5 > 0) {
+            // Hash over "<seqId>,<channel>"
+            for (int i = c3 + 1; i < c5; i++) {
+                hash = 31 * hash + line.charAt(i);
+            }
+        }
+        return decoders.get((hash & Integer.MAX_VALUE) % decoders.size());
+    }
+
+    /**
+     * Delivers the items in the order they were submitted
+     */
+    private void deliverLoop() {
+        while (!stopped) {
+            Item item;
+            try {
+                item = deliveryQueue.take();
+                item.await();
+            } catch (InterruptedException e) {
+                continue;
+            }
+            long decodedNanos = item.decodedNanos;
+            try {
+                if (item.ais) {
+                    if (item.message != null) {
+                        sensor.distributeAisMessage(item.message, item.ownMessage);
+                    }
+                } else {
+                    sensor.handleSentence(item.line);
+                }
+            } catch (Exception e) {
+                LOG.error("Failed delivering NMEA line: " + item.line, e);
+            }
+            status.markDelivered(decodedNanos - item.readNanos, System.nanoTime() - decodedNanos);
+            status.setQueueDepth(deliveryQueue.size(), capacity);
+        }
+    }
+
+    /**
+     * A decoder thread along with its input queue and AIS packet parser
+     */
+    private final class Decoder implements Runnable {
+        final BlockingQueue<Item> queue;
+        final AisPacketParser packetParser = new AisPacketParser();
+        final Thread thread;
+
+        Decoder(int capacity, String name) {
+            queue = new ArrayBlockingQueue<>(capacity);
+            thread = new Thread(this, name);
+            thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (!stopped) {
+                Item item;
+                try {
+                    item = queue.take();
+                } catch (InterruptedException e) {
+                    continue;
+                }
+                try {
+                    AisPacket packet = sensor.readAisPacket(packetParser, item.line);
+                    if (packet != null) {
+                        item.message = sensor.parseAisMessage(packet);
+                        item.ownMessage = packet.getVdm().isOwnMessage();
+                    }
+                } catch (Exception e) {
+                    LOG.error("Failed decoding NMEA line: " + item.line, e);
+                } finally {
+                    item.decoded();
+                }
+            }
+        }
+    }
+
+    /**
+     * A line travelling through the pipeline
+     */
+    static final class Item {
+        final String line;
+        final boolean ais;
+        final long readNanos = System.nanoTime();
+        volatile long decodedNanos;
+        volatile AisMessage message;
+        volatile boolean ownMessage;
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        Item(String line, boolean ais) {
+            this.line = line;
+            this.ais = ais;
+        }
+
+        void decoded() {
+            decodedNanos = System.nanoTime();
+            done.countDown();
+        }
+
+        void await() throws InterruptedException {
+            done.await();
+        }
+    }
+}
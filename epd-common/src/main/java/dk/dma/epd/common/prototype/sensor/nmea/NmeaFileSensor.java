@@ -15,9 +15,8 @@
 package dk.dma.epd.common.prototype.sensor.nmea;
 
 import java.awt.Frame;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.util.Date;
 
 import javax.swing.JOptionPane;
 
@@ -36,6 +35,11 @@ import dk.dma.epd.common.util.Util;
 
 /**
  * NMEA sensor reading from file
+ * <p>
+ * The file is read through memory-mapped windows, and a timestamp index of the file is used for moving the replay
+ * directly to the replay start date, or to a date given through {@linkplain #seekReplay(Date)}. The index is loaded or
+ * built in the background, and until it is available the replay streams from the start of the file, skipping the data
+ * before the date. The replay can also be paused and have its speed changed while running.
  */
 @ThreadSafe
 public class NmeaFileSensor extends NmeaSensor {
@@ -43,8 +47,12 @@ public class NmeaFileSensor extends NmeaSensor {
     private static final Logger LOG = LoggerFactory.getLogger(NmeaFileSensor.class);
     
     private final String filename;
-    private InputStream inputStream;
     private volatile Frame frame;
+    private volatile NmeaReplayIndex index;
+    private volatile Date pendingSeek;
+    private Date unindexedSeek; // Only accessed by the reading thread
+    private final Object pauseLock = new Object();
+    private boolean paused; // Guarded by pauseLock
     
     public NmeaFileSensor(String filename, SensorSettings sensorSettings) {
         LOG.info("Using AIS replay file: " + filename);
@@ -58,14 +66,31 @@ public class NmeaFileSensor extends NmeaSensor {
     @Override
     public void run() {
         // Open file
-        inputStream = null;
+        MappedLineReader reader;
         try {
-            inputStream = new FileInputStream(filename);
+            reader = new MappedLineReader(filename);
         } catch (IOException e) {
             LOG.error("Failed to open replay file: " + filename + ": " + e.getMessage());
             return;
         }
-        
+
+        // Load or build timestamp index in the background
+        Thread indexThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    index = NmeaReplayIndex.loadOrBuild(filename);
+                } catch (IOException e) {
+                    LOG.warn("Failed to index replay file, seeking disabled: " + filename + ": " + e.getMessage());
+                }
+            }
+        }, "NmeaReplayIndex");
+        indexThread.setDaemon(true);
+        indexThread.start();
+        if (getReplayStartDate() != null) {
+            pendingSeek = getReplayStartDate();
+        }
+
         // Wait for frame and confirmation
         while (frame == null) {
             Util.sleep(1000);
@@ -76,26 +101,158 @@ public class NmeaFileSensor extends NmeaSensor {
         
         // Read
         try {
-            readLoop(inputStream);
+            String line;
+            while (!isStopped()) {
+                awaitResume();
+                Date seek = pendingSeek;
+                if (seek != null) {
+                    pendingSeek = null;
+                    seek(reader, seek);
+                } else if (unindexedSeek != null && index != null) {
+                    // The index became available while skipping to the date of a seek
+                    Date replayTime = getReplayTime();
+                    if (replayTime == null || replayTime.before(unindexedSeek)) {
+                        seek(reader, unindexedSeek);
+                    } else {
+                        unindexedSeek = null;
+                    }
+                }
+                if ((line = reader.readLine()) == null) {
+                    break;
+                }
+                handleLine(line);
+            }
         } catch (IOException e) {
             LOG.error("Error while reading replay file: " + filename + ": " + e.getMessage());
         }
         
-        long dataElapsed = getDataEnd().getTime() - getDataStart().getTime();
-        long realElapsed = (getReplayEnd().getTime() - getReplayStart().getTime()) * getReplaySpeedup();
-                
-        LOG.info("Replay data start: " + getDataStart() + " end: " + getDataEnd() + " elapsed: " + dataElapsed / 1000);
-        LOG.info("Replay real start: " + getReplayStart() + " end: " + getReplayEnd() + " elapsed: " + realElapsed / 1000);
+        if (getDataStart() != null && getReplayStart() != null) {
+            long dataElapsed = getDataEnd().getTime() - getDataStart().getTime();
+            long realElapsed = (getReplayEnd().getTime() - getReplayStart().getTime()) * getReplaySpeedup();
+
+            LOG.info("Replay data start: " + getDataStart() + " end: " + getDataEnd() + " elapsed: " + dataElapsed / 1000);
+            LOG.info("Replay real start: " + getReplayStart() + " end: " + getReplayEnd() + " elapsed: " + realElapsed / 1000);
+        }
         
         if (frame != null && !isStopped()) {
             JOptionPane.showMessageDialog(frame, "Replay finished");
         }
         
         // Flag that the sensor has terminated
-        try { inputStream.close(); } catch (Exception ex) {}
+        try { reader.close(); } catch (Exception ex) {}
         flagTerminated();
         LOG.warn("File NMEA sensor terminated");
     }
+
+    /**
+     * Moves the reader to the given date. Without an index, the reader stays put when moving forward, or is moved to
+     * the start of the file, and the data before the date is skipped while reading.
+     */
+    private void seek(MappedLineReader reader, Date date) {
+        NmeaReplayIndex index = this.index;
+        unindexedSeek = null;
+        if (index != null) {
+            long offset = index.getOffset(date);
+            LOG.info("Moving replay to " + date + " at offset " + offset);
+            reader.seek(offset);
+        } else {
+            Date replayTime = getReplayTime();
+            if (replayTime != null && !replayTime.before(date)) {
+                reader.seek(0L);
+            }
+            LOG.info("Moving replay to " + date + " without index from offset " + reader.getPosition());
+            unindexedSeek = date;
+        }
+        setReplayStartDate(date);
+        resetReplayClock();
+    }
+
+    /**
+     * Blocks while the replay is paused
+     */
+    private void awaitResume() {
+        synchronized (pauseLock) {
+            while (paused && !isStopped()) {
+                try {
+                    pauseLock.wait(1000);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Pauses the replay
+     */
+    public void pauseReplay() {
+        synchronized (pauseLock) {
+            paused = true;
+        }
+    }
+
+    /**
+     * Resumes a paused replay from where it was paused
+     */
+    public void resumeReplay() {
+        synchronized (pauseLock) {
+            if (paused) {
+                paused = false;
+                resetReplayClock();
+                pauseLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Returns if the replay is paused
+     * 
+     * @return if the replay is paused
+     */
+    public boolean isReplayPaused() {
+        synchronized (pauseLock) {
+            return paused;
+        }
+    }
+
+    /**
+     * Moves the replay to the given date. The move is performed by the reading thread before the next line is read.
+     * 
+     * @param date
+     *            the date to continue the replay from
+     */
+    public void seekReplay(Date date) {
+        pendingSeek = date;
+    }
+
+    /**
+     * Changes the speedup of the replay
+     * 
+     * @param replaySpeedup
+     *            the new speedup
+     */
+    public void setReplaySpeed(int replaySpeedup) {
+        setReplaySpeedup(Math.max(1, replaySpeedup));
+        resetReplayClock();
+    }
+
+    /**
+     * Returns the timestamp of the data currently being replayed
+     * 
+     * @return the timestamp of the data currently being replayed
+     */
+    public Date getReplayPosition() {
+        return getReplayTime();
+    }
+
+    /**
+     * Returns the index of the replay file, or null if the file has not been indexed
+     * 
+     * @return the index of the replay file
+     */
+    public NmeaReplayIndex getReplayIndex() {
+        return index;
+    }
     
     @Override
     public void findAndInit(Object obj) {
@@ -0,0 +1,133 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.sensor.nmea;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import net.jcip.annotations.NotThreadSafe;
+
+/**
+ * Assembles NMEA lines from the bytes read from a stream or datagram channel, without creating strings.
+ * <p>
+ * Bytes are copied into a fixed line buffer until a '\n' or '\r' terminator, and partial lines are kept between
+ * reads. The completed line is exposed as a {@linkplain CharSequence}, so that it can be classified with the
+ * {@linkplain NmeaSentenceClassifier} before deciding whether to create a string with {@linkplain #toString()}. Empty
+ * lines are skipped, and lines longer than {@linkplain #MAX_LINE_LENGTH} are dropped. Characters are decoded as
+ * ISO-8859-1, which is sufficient for NMEA.
+ */
+@NotThreadSafe
+final class NmeaLineAssembler implements CharSequence {
+
+    /** The maximum line length, allowing for comment blocks preceding the sentence */
+    static final int MAX_LINE_LENGTH = 1024;
+
+    private final byte[] bytes = new byte[MAX_LINE_LENGTH];
+    private int length;
+    private int pos;
+    private boolean overflow;
+    private long dropped;
+
+    /**
+     * Reads bytes from the buffer until a line has been completed or the buffer is exhausted. The completed line is
+     * valid until the next call.
+     *
+     * @param buffer
+     *            the buffer to read from
+     * @return if a line has been completed
+     */
+    boolean next(ByteBuffer buffer) {
+        while (buffer.hasRemaining()) {
+            byte b = buffer.get();
+            if (b == '\n' || b == '\r') {
+                if (complete()) {
+                    return true;
+                }
+            } else if (pos < bytes.length) {
+                bytes[pos++] = b;
+            } else {
+                overflow = true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Completes any partial line, e.g. at the end of a datagram
+     *
+     * @return if a line has been completed
+     */
+    boolean flush() {
+        return complete();
+    }
+
+    /**
+     * Discards any partial line, e.g. when the connection is lost
+     */
+    void reset() {
+        length = 0;
+        pos = 0;
+        overflow = false;
+    }
+
+    /**
+     * Returns the number of lines dropped for exceeding the maximum line length
+     *
+     * @return the number of dropped lines
+     */
+    long getDropped() {
+        return dropped;
+    }
+
+    private boolean complete() {
+        if (overflow) {
+            dropped++;
+        }
+        boolean completed = pos > 0 && !overflow;
+        length = completed ? pos : 0;
+        pos = 0;
+        overflow = false;
+        return completed;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", length: " + length);
+        }
+        return (char) (bytes[index] & 0xff);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("Range: " + start + "-" + end + ", length: " + length);
+        }
+        return new String(bytes, start, end - start, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Returns the completed line as a string
+     */
+    @Override
+    public String toString() {
+        return new String(bytes, 0, length, StandardCharsets.ISO_8859_1);
+    }
+}
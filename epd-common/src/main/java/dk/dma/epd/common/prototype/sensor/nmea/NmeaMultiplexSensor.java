@@ -0,0 +1,572 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.sensor.nmea;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.UnresolvedAddressException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.jcip.annotations.ThreadSafe;
+
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.dma.ais.message.AisMessage;
+import dk.dma.ais.packet.AisPacket;
+import dk.dma.ais.packet.AisPacketParser;
+import dk.dma.ais.reader.SendException;
+import dk.dma.ais.reader.SendRequest;
+import dk.dma.ais.sentence.Abk;
+import dk.dma.enav.util.function.Consumer;
+import dk.dma.epd.common.prototype.sensor.nmea.NmeaSentenceClassifier.SentenceType;
+
+/**
+ * NMEA sensor reading many TCP and UDP feeds on a few threads.
+ * <p>
+ * The feeds are distributed among a number of selector threads, each multiplexing its feeds with a non-blocking NIO
+ * {@linkplain Selector} and reading into a reusable direct buffer. Lines are assembled per feed by a
+ * {@linkplain NmeaLineAssembler} and classified before a string is created, so lines that are not handled by the
+ * sensor are skipped. VDM/VDO sentences are decoded on the selector thread with a packet parser per feed, so that the
+ * fragments of multi-sentence messages from different feeds are never mixed. The decoded messages and other sentences
+ * are delivered to the listeners one at a time.
+ * <p>
+ * A TCP feed that fails to connect, is closed or is silent for more than a minute is reconnected after a delay, which
+ * is doubled on each failure up to a minute and reset once data is received. Each {@linkplain Feed} keeps counters of
+ * the bytes and lines received.
+ * <p>
+ * The decode pipeline of the {@linkplain NmeaSensor} is not used, as decoding is already spread over the selector
+ * threads.
+ */
+@ThreadSafe
+public class NmeaMultiplexSensor extends NmeaSensor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NmeaMultiplexSensor.class);
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final long READ_TIMEOUT = 60000L; // 1 min
+    private static final long MIN_RECONNECT_INTERVAL = 1000L;
+    private static final long MAX_RECONNECT_INTERVAL = 60000L;
+    private static final long SELECT_TIMEOUT = 1000L;
+
+    private final List<Feed> feeds = new CopyOnWriteArrayList<>();
+    private final List<SelectorLoop> loops = new CopyOnWriteArrayList<>();
+    private final Object deliveryLock = new Object();
+    private volatile int selectorThreads = 1;
+    private volatile boolean started;
+
+    public NmeaMultiplexSensor() {
+    }
+
+    /**
+     * Constructor
+     *
+     * @param feeds
+     *            comma separated list of feeds, given as {@code host:port} for TCP feeds and {@code udp:port} for UDP
+     *            feeds
+     */
+    public NmeaMultiplexSensor(String feeds) {
+        this();
+        for (String feed : StringUtils.split(feeds, ',')) {
+            String[] parts = StringUtils.split(feed.trim(), ':');
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Invalid NMEA feed: " + feed);
+            }
+            int port = Integer.parseInt(parts[1].trim());
+            if (parts[0].trim().equalsIgnoreCase("udp")) {
+                addUdpFeed(port);
+            } else {
+                addTcpFeed(parts[0].trim(), port);
+            }
+        }
+    }
+
+    /**
+     * Adds a TCP feed. Must be called before {@linkplain #start()}.
+     *
+     * @param hostname
+     *            the host to connect to
+     * @param port
+     *            the port to connect to
+     * @return the feed
+     */
+    public Feed addTcpFeed(String hostname, int port) {
+        return addFeed(new Feed(hostname, port));
+    }
+
+    /**
+     * Adds a UDP feed. Must be called before {@linkplain #start()}.
+     *
+     * @param port
+     *            the port to listen on
+     * @return the feed
+     */
+    public Feed addUdpFeed(int port) {
+        return addFeed(new Feed(null, port));
+    }
+
+    private Feed addFeed(Feed feed) {
+        if (started) {
+            throw new IllegalStateException("Feeds must be added before the sensor is started");
+        }
+        feeds.add(feed);
+        return feed;
+    }
+
+    /**
+     * Returns the feeds of the sensor
+     *
+     * @return the feeds of the sensor
+     */
+    public List<Feed> getFeeds() {
+        return Collections.unmodifiableList(feeds);
+    }
+
+    /**
+     * Sets the number of threads reading the feeds. Must be called before {@linkplain #start()}.
+     *
+     * @param selectorThreads
+     *            the number of threads reading the feeds
+     */
+    public void setSelectorThreads(int selectorThreads) {
+        this.selectorThreads = Math.max(1, selectorThreads);
+    }
+
+    /**
+     * Ignored, as the feeds are decoded on the selector threads
+     */
+    @Override
+    public synchronized void setDecodeThreads(int decodeThreads, int decodeQueueSize) {
+        super.setDecodeThreads(0, decodeQueueSize);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void start() {
+        started = true;
+        super.start();
+    }
+
+    @Override
+    public void run() {
+        int n = Math.max(1, Math.min(selectorThreads, feeds.size()));
+        try {
+            for (int i = 0; i < n; i++) {
+                loops.add(new SelectorLoop());
+            }
+        } catch (IOException e) {
+            LOG.error("Failed to open NMEA feed selector", e);
+            for (SelectorLoop loop : loops) {
+                loop.close();
+            }
+            flagTerminated();
+            return;
+        }
+        for (int i = 0; i < feeds.size(); i++) {
+            loops.get(i % n).feeds.add(feeds.get(i));
+        }
+
+        // Run the first selector loop on this thread
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 1; i < n; i++) {
+            Thread thread = new Thread(loops.get(i), "NmeaMultiplexSensor-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+        loops.get(0).run();
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // Flag that the sensor has terminated
+        flagTerminated();
+        LOG.warn("Multiplexed NMEA sensor terminated");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void stop() {
+        super.stop();
+        for (SelectorLoop loop : loops) {
+            loop.selector.wakeup();
+        }
+    }
+
+    @Override
+    public void send(SendRequest sendRequest, Consumer<Abk> resultListener) throws SendException {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Handles the line completed by the line assembler of the feed
+     */
+    private void handleFeedLine(Feed feed) {
+        feed.lines.incrementAndGet();
+        SentenceType type = NmeaSentenceClassifier.classify(feed.line);
+        if (!isHandled(type)) {
+            return;
+        }
+        String msg = feed.line.toString();
+        if (type == SentenceType.VDM || type == SentenceType.VDO) {
+            AisPacket packet = readAisPacket(feed.packetParser, msg);
+            AisMessage message = (packet != null) ? parseAisMessage(packet) : null;
+            if (message != null) {
+                synchronized (deliveryLock) {
+                    distributeAisMessage(message, packet.getVdm().isOwnMessage());
+                }
+            }
+        } else {
+            synchronized (deliveryLock) {
+                handleSentence(msg);
+            }
+        }
+    }
+
+    /**
+     * Selector thread multiplexing a subset of the feeds
+     */
+    private final class SelectorLoop implements Runnable {
+        final Selector selector;
+        final List<Feed> feeds = new ArrayList<>();
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+
+        SelectorLoop() throws IOException {
+            selector = Selector.open();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!isStopped()) {
+                    long timeout = checkFeeds(System.currentTimeMillis());
+                    selector.select(timeout);
+                    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while (it.hasNext()) {
+                        SelectionKey key = it.next();
+                        it.remove();
+                        Feed feed = (Feed) key.attachment();
+                        try {
+                            if (!key.isValid()) {
+                                continue;
+                            }
+                            if (key.isConnectable()) {
+                                finishConnect(feed, key);
+                            } else if (key.isReadable()) {
+                                read(feed);
+                            }
+                        } catch (IOException e) {
+                            fail(feed, e.getMessage());
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                LOG.error("NMEA feed selector failed", e);
+            } finally {
+                close();
+            }
+        }
+
+        /**
+         * Opens the feeds due for reconnection and fails the silent TCP feeds
+         *
+         * @return the time in milliseconds until the next reconnection
+         */
+        private long checkFeeds(long now) {
+            long timeout = SELECT_TIMEOUT;
+            for (Feed feed : feeds) {
+                if (feed.channel == null) {
+                    if (now >= feed.reconnectTime) {
+                        open(feed, now);
+                    } else {
+                        timeout = Math.min(timeout, feed.reconnectTime - now);
+                    }
+                } else if (!feed.isUdp() && now - feed.lastActivity > READ_TIMEOUT) {
+                    fail(feed, "no data received in " + READ_TIMEOUT / 1000 + " seconds");
+                }
+            }
+            return Math.max(1L, timeout);
+        }
+
+        private void open(Feed feed, long now) {
+            feed.lastActivity = now;
+            try {
+                if (feed.isUdp()) {
+                    DatagramChannel channel = DatagramChannel.open();
+                    feed.channel = channel;
+                    channel.configureBlocking(false);
+                    channel.bind(new InetSocketAddress(feed.port));
+                    channel.register(selector, SelectionKey.OP_READ, feed);
+                    connected(feed);
+                } else {
+                    SocketChannel channel = SocketChannel.open();
+                    feed.channel = channel;
+                    channel.configureBlocking(false);
+                    channel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+                    if (channel.connect(new InetSocketAddress(feed.hostname, feed.port))) {
+                        channel.register(selector, SelectionKey.OP_READ, feed);
+                        connected(feed);
+                    } else {
+                        channel.register(selector, SelectionKey.OP_CONNECT, feed);
+                    }
+                }
+            } catch (IOException | UnresolvedAddressException e) {
+                fail(feed, "could not connect: " + e.getMessage());
+            }
+        }
+
+        private void finishConnect(Feed feed, SelectionKey key) throws IOException {
+            if (((SocketChannel) feed.channel).finishConnect()) {
+                key.interestOps(SelectionKey.OP_READ);
+                connected(feed);
+            }
+        }
+
+        private void connected(Feed feed) {
+            feed.connected = true;
+            feed.connects.incrementAndGet();
+            LOG.info("NMEA feed connected " + feed);
+        }
+
+        private void read(Feed feed) throws IOException {
+            if (feed.isUdp()) {
+                DatagramChannel channel = (DatagramChannel) feed.channel;
+                buffer.clear();
+                while (channel.receive(buffer) != null) {
+                    buffer.flip();
+                    consume(feed);
+                    // A datagram may hold a single sentence without a terminator
+                    if (feed.line.flush()) {
+                        deliver(feed);
+                    }
+                    buffer.clear();
+                }
+            } else {
+                buffer.clear();
+                int n = ((SocketChannel) feed.channel).read(buffer);
+                if (n < 0) {
+                    fail(feed, "connection closed");
+                    return;
+                }
+                buffer.flip();
+                consume(feed);
+            }
+        }
+
+        private void consume(Feed feed) {
+            if (!buffer.hasRemaining()) {
+                return;
+            }
+            feed.bytes.addAndGet(buffer.remaining());
+            feed.lastActivity = System.currentTimeMillis();
+            feed.lastReceived = feed.lastActivity;
+            feed.reconnectInterval = MIN_RECONNECT_INTERVAL;
+            while (feed.line.next(buffer)) {
+                deliver(feed);
+            }
+            feed.dropped = feed.line.getDropped();
+        }
+
+        private void deliver(Feed feed) {
+            try {
+                handleFeedLine(feed);
+            } catch (Exception e) {
+                LOG.error("Failed handling NMEA line from " + feed + ": " + feed.line, e);
+            }
+        }
+
+        /**
+         * Closes the feed and schedules a reconnection, doubling the reconnect interval
+         */
+        private void fail(Feed feed, String reason) {
+            closeFeed(feed);
+            feed.failures.incrementAndGet();
+            feed.reconnectTime = System.currentTimeMillis() + feed.reconnectInterval;
+            LOG.error("NMEA feed " + feed + " failed: " + reason + " retry in " + feed.reconnectInterval / 1000
+                    + " seconds");
+            feed.reconnectInterval = Math.min(feed.reconnectInterval * 2, MAX_RECONNECT_INTERVAL);
+        }
+
+        private void closeFeed(Feed feed) {
+            if (feed.channel != null) {
+                try {
+                    feed.channel.close();
+                } catch (IOException e) {
+                }
+                feed.channel = null;
+            }
+            feed.connected = false;
+            feed.line.reset();
+            feed.packetParser = new AisPacketParser();
+        }
+
+        void close() {
+            for (Feed feed : feeds) {
+                closeFeed(feed);
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+            }
+        }
+    }
+
+    /**
+     * A TCP or UDP feed of the sensor along with its throughput counters.
+     * <p>
+     * The connection state is only accessed from the selector thread of the feed, whereas the counters may be read
+     * from any thread.
+     */
+    @ThreadSafe
+    public static final class Feed {
+        private final String hostname;
+        private final int port;
+
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicLong lines = new AtomicLong();
+        private final AtomicLong connects = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private volatile long dropped;
+        private volatile long lastReceived;
+        private volatile boolean connected;
+
+        // Selector thread state
+        private SelectableChannel channel;
+        private final NmeaLineAssembler line = new NmeaLineAssembler();
+        private AisPacketParser packetParser = new AisPacketParser();
+        private long lastActivity;
+        private long reconnectTime;
+        private long reconnectInterval = MIN_RECONNECT_INTERVAL;
+
+        Feed(String hostname, int port) {
+            this.hostname = hostname;
+            this.port = port;
+        }
+
+        /**
+         * Returns if this is a UDP feed
+         *
+         * @return if this is a UDP feed
+         */
+        public boolean isUdp() {
+            return hostname == null;
+        }
+
+        /**
+         * Returns the host of a TCP feed, or null for a UDP feed
+         *
+         * @return the host of a TCP feed
+         */
+        public String getHostname() {
+            return hostname;
+        }
+
+        public int getPort() {
+            return port;
+        }
+
+        /**
+         * Returns if the feed is connected, or bound for a UDP feed
+         *
+         * @return if the feed is connected
+         */
+        public boolean isConnected() {
+            return connected;
+        }
+
+        /**
+         * Returns the number of bytes received
+         *
+         * @return the number of bytes received
+         */
+        public long getBytes() {
+            return bytes.get();
+        }
+
+        /**
+         * Returns the number of lines received, including the lines not handled by the sensor
+         *
+         * @return the number of lines received
+         */
+        public long getLines() {
+            return lines.get();
+        }
+
+        /**
+         * Returns the number of lines dropped for exceeding the maximum line length
+         *
+         * @return the number of dropped lines
+         */
+        public long getDropped() {
+            return dropped;
+        }
+
+        /**
+         * Returns the number of successful connections
+         *
+         * @return the number of connections
+         */
+        public long getConnects() {
+            return connects.get();
+        }
+
+        /**
+         * Returns the number of failed connections and connection losses
+         *
+         * @return the number of failures
+         */
+        public long getFailures() {
+            return failures.get();
+        }
+
+        /**
+         * Returns the time data was last received in milliseconds, or 0 if no data has been received
+         *
+         * @return the time data was last received
+         */
+        public long getLastReceived() {
+            return lastReceived;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return isUdp() ? "udp:" + port : hostname + ":" + port;
+        }
+    }
+}
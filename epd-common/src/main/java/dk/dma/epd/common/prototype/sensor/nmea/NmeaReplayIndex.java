@@ -0,0 +1,239 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.sensor.nmea;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Date;
+
+import net.jcip.annotations.Immutable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.dma.ais.proprietary.IProprietarySourceTag;
+import dk.dma.ais.proprietary.IProprietaryTag;
+import dk.dma.ais.proprietary.ProprietaryFactory;
+import dk.dma.ais.sentence.SentenceLine;
+
+/**
+ * Index of an NMEA replay file, mapping the timestamps of the proprietary source tags to the byte offset of the tag
+ * lines.
+ * <p>
+ * An entry is recorded for at most every {@linkplain #RESOLUTION} milliseconds of data, and only for increasing
+ * timestamps. The index is stored in a sidecar file next to the replay file, and is rebuilt if the replay file
+ * changes.
+ */
+@Immutable
+public final class NmeaReplayIndex {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NmeaReplayIndex.class);
+
+    /** The minimum time between two index entries in milliseconds */
+    public static final long RESOLUTION = 1000L;
+
+    private static final String SUFFIX = ".idx";
+    private static final int MAGIC = 0x4E4D4958; // "NMIX"
+    private static final int VERSION = 1;
+
+    private final long[] timestamps;
+    private final long[] offsets;
+
+    private NmeaReplayIndex(long[] timestamps, long[] offsets) {
+        this.timestamps = timestamps;
+        this.offsets = offsets;
+    }
+
+    /**
+     * Loads the index of the given replay file from the sidecar file, or builds and saves it if it does not exist or
+     * is out of date
+     *
+     * @param filename
+     *            the replay file
+     * @return the index
+     * @throws IOException
+     */
+    public static NmeaReplayIndex loadOrBuild(String filename) throws IOException {
+        File file = new File(filename);
+        File indexFile = new File(filename + SUFFIX);
+
+        NmeaReplayIndex index = load(file, indexFile);
+        if (index != null) {
+            LOG.info("Loaded replay index " + indexFile + " with " + index.size() + " entries");
+            return index;
+        }
+
+        long t0 = System.currentTimeMillis();
+        index = build(filename);
+        LOG.info("Built replay index for " + filename + " with " + index.size() + " entries in "
+                + (System.currentTimeMillis() - t0) + " ms");
+        try {
+            index.save(file, indexFile);
+        } catch (IOException e) {
+            LOG.warn("Failed to save replay index " + indexFile + ": " + e.getMessage());
+        }
+        return index;
+    }
+
+    /**
+     * Builds the index by scanning the given replay file
+     *
+     * @param filename
+     *            the replay file
+     * @return the index
+     * @throws IOException
+     */
+    public static NmeaReplayIndex build(String filename) throws IOException {
+        long[] timestamps = new long[1024];
+        long[] offsets = new long[1024];
+        int count = 0;
+        long last = Long.MIN_VALUE;
+
+        try (MappedLineReader reader = new MappedLineReader(filename)) {
+            long offset = reader.getPosition();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("$P") && ProprietaryFactory.isProprietaryTag(line)) {
+                    Date timestamp = parseTimestamp(line);
+                    if (timestamp != null && (count == 0 || timestamp.getTime() >= last + RESOLUTION)) {
+                        if (count == timestamps.length) {
+                            timestamps = Arrays.copyOf(timestamps, count * 2);
+                            offsets = Arrays.copyOf(offsets, count * 2);
+                        }
+                        timestamps[count] = timestamp.getTime();
+                        offsets[count] = offset;
+                        last = timestamp.getTime();
+                        count++;
+                    }
+                }
+                offset = reader.getPosition();
+            }
+        }
+        return new NmeaReplayIndex(Arrays.copyOf(timestamps, count), Arrays.copyOf(offsets, count));
+    }
+
+    /**
+     * Returns the timestamp of the given proprietary source tag line, or null if not defined
+     *
+     * @param line
+     *            the proprietary tag line
+     * @return the timestamp or null
+     */
+    static Date parseTimestamp(String line) {
+        try {
+            IProprietaryTag tag = ProprietaryFactory.parseTag(new SentenceLine(line));
+            if (tag instanceof IProprietarySourceTag) {
+                return ((IProprietarySourceTag) tag).getTimestamp();
+            }
+        } catch (Exception e) {
+            // Not a valid source tag
+        }
+        return null;
+    }
+
+    /**
+     * Returns the byte offset to start reading from in order to replay the data from the given time
+     *
+     * @param time
+     *            the time to replay from
+     * @return the byte offset to start reading from
+     */
+    public long getOffset(Date time) {
+        int pos = Arrays.binarySearch(timestamps, time.getTime());
+        if (pos < 0) {
+            // Use the last entry before the requested time
+            pos = -pos - 2;
+        }
+        return pos < 0 ? 0L : offsets[pos];
+    }
+
+    /**
+     * Returns the first indexed timestamp, or null if the index is empty
+     *
+     * @return the first indexed timestamp
+     */
+    public Date getStart() {
+        return timestamps.length == 0 ? null : new Date(timestamps[0]);
+    }
+
+    /**
+     * Returns the last indexed timestamp, or null if the index is empty
+     *
+     * @return the last indexed timestamp
+     */
+    public Date getEnd() {
+        return timestamps.length == 0 ? null : new Date(timestamps[timestamps.length - 1]);
+    }
+
+    /**
+     * Returns the number of index entries
+     *
+     * @return the number of index entries
+     */
+    public int size() {
+        return timestamps.length;
+    }
+
+    /**
+     * Loads the index from the sidecar file. Returns null if the index file does not exist or does not match the
+     * replay file.
+     */
+    private static NmeaReplayIndex load(File file, File indexFile) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != file.length()
+                    || in.readLong() != file.lastModified()) {
+                return null;
+            }
+            int count = in.readInt();
+            long[] timestamps = new long[count];
+            long[] offsets = new long[count];
+            for (int i = 0; i < count; i++) {
+                timestamps[i] = in.readLong();
+                offsets[i] = in.readLong();
+            }
+            return new NmeaReplayIndex(timestamps, offsets);
+        } catch (FileNotFoundException e) {
+            // Not an error
+        } catch (IOException e) {
+            LOG.warn("Failed to load replay index " + indexFile + ": " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Saves the index to the sidecar file
+     */
+    private void save(File file, File indexFile) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(file.length());
+            out.writeLong(file.lastModified());
+            out.writeInt(timestamps.length);
+            for (int i = 0; i < timestamps.length; i++) {
+                out.writeLong(timestamps[i]);
+                out.writeLong(offsets[i]);
+            }
+        }
+    }
+}
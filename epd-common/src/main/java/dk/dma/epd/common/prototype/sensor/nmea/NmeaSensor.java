@@ -50,9 +50,11 @@ import dk.dma.ais.sentence.SentenceException;
 import dk.dma.ais.sentence.SentenceLine;
 import dk.dma.enav.model.geometry.Position;
 import dk.dma.enav.util.function.Consumer;
+import dk.dma.epd.common.prototype.sensor.nmea.NmeaSentenceClassifier.SentenceType;
 import dk.dma.epd.common.prototype.sensor.predictor.DynamicPredictorData;
 import dk.dma.epd.common.prototype.sensor.predictor.IDynamicPredictorDataListener;
 import dk.dma.epd.common.prototype.sensor.rpnt.ResilientPntData;
+import dk.dma.epd.common.prototype.status.NmeaDecodeStatus;
 import dk.dma.epd.common.util.Util;
 
 /**
@@ -88,6 +90,12 @@ public abstract class NmeaSensor extends MapHandlerChild implements Runnable {
     @GuardedBy("this")
     private boolean terminated;
     private volatile boolean vessel = true;
+    @GuardedBy("this")
+    private int decodeThreads;
+    @GuardedBy("this")
+    private int decodeQueueSize = 10000;
+    private volatile NmeaDecodePipeline pipeline;
+    private final NmeaDecodeStatus decodeStatus = new NmeaDecodeStatus();
 
     private final AisPacketParser packetReader = new AisPacketParser();
 
@@ -120,7 +128,16 @@ public abstract class NmeaSensor extends MapHandlerChild implements Runnable {
         if (isReplay()) {
             handleReplay(line);
         }
-        handleSentence(line);
+        NmeaDecodePipeline pipeline = this.pipeline;
+        if (pipeline != null) {
+            try {
+                pipeline.submit(line, aisListeners.size() > 0 && isVdm(line));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        } else {
+            handleSentence(line);
+        }
     }
 
     /**
@@ -222,13 +239,23 @@ public abstract class NmeaSensor extends MapHandlerChild implements Runnable {
 
     }
 
-    protected void handleProprietary(String msg) {        
-        if (msg.indexOf("$PSTT,10A") >= 0) {
+    protected void handleProprietary(String msg) {
+        handleProprietary(msg, NmeaSentenceClassifier.classify(msg));
+    }
+
+    private void handleProprietary(String msg, SentenceType type) {
+        switch (type) {
+        case PSTT:
             handlePstt(msg);
-        } else if (msg.indexOf("$PRPNT") >= 0) {
+            break;
+        case PRPNT:
             handlePrpnt(msg);
-        } else if (msg.indexOf("$PDYPN") >= 0 || msg.indexOf("$PDYPP") >= 0) {
+            break;
+        case PDYP:
             handleDynamicPredictor(msg);
+            break;
+        default:
+            break;
         }
     }
 
@@ -239,30 +266,59 @@ public abstract class NmeaSensor extends MapHandlerChild implements Runnable {
      *            the sentence to handle
      */
     protected void handleSentence(String msg) {
-        if (pntListeners.size() > 0 && RmcSentence.getParser(msg) != null) {
-            handleRmc(msg);
-        } else if (aisListeners.size() > 0 && isVdm(msg)) {
-            handleAis(msg);
-        } else if (Abk.isAbk(msg)) {
+        SentenceType type = NmeaSentenceClassifier.classify(msg);
+        switch (type) {
+        case RMC:
+            if (pntListeners.size() > 0) {
+                handleRmc(msg);
+            }
+            break;
+        case VDM:
+        case VDO:
+            if (aisListeners.size() > 0) {
+                handleAis(msg);
+            }
+            break;
+        case ABK:
             handleAbk(msg);
-        } else if (msg.indexOf("$P") >= 0) {
-            handleProprietary(msg);
+            break;
+        default:
+            handleProprietary(msg, type);
+        }
+    }
+
+    /**
+     * Returns if {@linkplain #handleSentence(String)} handles sentences of the given type with the current listeners,
+     * allowing readers to skip other lines before creating a string
+     * 
+     * @param type
+     *            the sentence type
+     * @return if sentences of the given type are handled
+     */
+    boolean isHandled(SentenceType type) {
+        switch (type) {
+        case RMC:
+            return pntListeners.size() > 0;
+        case VDM:
+        case VDO:
+            return aisListeners.size() > 0;
+        case ABK:
+        case PSTT:
+        case PRPNT:
+        case PDYP:
+            return true;
+        default:
+            return false;
         }
     }
 
-	protected boolean isVdm(String msg) {
-		return msg.indexOf("!AIVDM") >= 0 || msg.indexOf("!AIVDO") >= 0
-		        || msg.indexOf("!BSVDM") >= 0 || msg.indexOf("!ABVDM") >= 0;
-	}
+    protected boolean isVdm(String msg) {
+        SentenceType type = NmeaSentenceClassifier.classify(msg);
+        return type == SentenceType.VDM || type == SentenceType.VDO;
+    }
 
     protected void handleAis(String msg) {
-        AisPacket packet;
-        try {
-            packet = packetReader.readLine(msg);
-        } catch (SentenceException se) {
-            LOG.info("Sentence error: " + se.getMessage() + " msg: " + msg);
-            return;
-        }
+        AisPacket packet = readAisPacket(packetReader, msg);
 
         // No complete packet yet
         if (packet == null) {
@@ -270,15 +326,7 @@ public abstract class NmeaSensor extends MapHandlerChild implements Runnable {
         }
 
         // Get AIS message
-        AisMessage message = null;
-        // Parse AIS message
-        try {
-            message = AisMessage.getInstance(packet.getVdm());
-        } catch (AisMessageException me) {
-            LOG.info("AIS message exception: " + me.getMessage() + " vdm: " + packet.getVdm().getOrgLinesJoined());
-        } catch (SixbitException se) {
-            LOG.info("Sixbit error: " + se.getMessage() + " vdm: " + packet.getVdm().getOrgLinesJoined());
-        }
+        AisMessage message = parseAisMessage(packet);
         if (message == null) {
             return;
         }
@@ -286,6 +334,54 @@ public abstract class NmeaSensor extends MapHandlerChild implements Runnable {
         // Check if simulated own ship
         boolean ownMessage = packet.getVdm().isOwnMessage();
 
+        distributeAisMessage(message, ownMessage);
+    }
+
+    /**
+     * Feeds the line to the given packet parser
+     * 
+     * @param parser
+     *            the packet parser to use
+     * @param msg
+     *            the VDM/VDO line
+     * @return the complete packet, or null if the packet is not yet complete or the line is invalid
+     */
+    AisPacket readAisPacket(AisPacketParser parser, String msg) {
+        try {
+            return parser.readLine(msg);
+        } catch (SentenceException se) {
+            LOG.info("Sentence error: " + se.getMessage() + " msg: " + msg);
+            return null;
+        }
+    }
+
+    /**
+     * Parses the AIS message of the given packet
+     * 
+     * @param packet
+     *            the packet to parse
+     * @return the AIS message, or null if the packet could not be parsed
+     */
+    AisMessage parseAisMessage(AisPacket packet) {
+        try {
+            return AisMessage.getInstance(packet.getVdm());
+        } catch (AisMessageException me) {
+            LOG.info("AIS message exception: " + me.getMessage() + " vdm: " + packet.getVdm().getOrgLinesJoined());
+        } catch (SixbitException se) {
+            LOG.info("Sixbit error: " + se.getMessage() + " vdm: " + packet.getVdm().getOrgLinesJoined());
+        }
+        return null;
+    }
+
+    /**
+     * Distributes the AIS message to the AIS listeners
+     * 
+     * @param message
+     *            the message to distribute
+     * @param ownMessage
+     *            whether the message is an own-ship (VDO) message
+     */
+    void distributeAisMessage(AisMessage message, boolean ownMessage) {
         // Distribute message
         for (IAisSensorListener aisListener : aisListeners) {
             if (ownMessage && vessel) {
@@ -465,9 +561,39 @@ public abstract class NmeaSensor extends MapHandlerChild implements Runnable {
     }
 
     public void start() {
+        synchronized (this) {
+            if (decodeThreads > 0) {
+                // Block rather than drop lines when replaying from file
+                pipeline = new NmeaDecodePipeline(this, decodeThreads, decodeQueueSize, isReplay(), decodeStatus);
+                pipeline.start();
+            }
+        }
         new Thread(this).start();
     }
 
+    /**
+     * Enables decoding of VDM/VDO sentences in parallel on separate threads, rather than on the thread reading the
+     * sentences. Must be called before {@linkplain #start()}.
+     * 
+     * @param decodeThreads
+     *            the number of decoder threads. If 0, sentences are decoded on the reading thread
+     * @param decodeQueueSize
+     *            the maximum number of sentences in the decode pipeline. When exceeded, sentences are dropped
+     */
+    public synchronized void setDecodeThreads(int decodeThreads, int decodeQueueSize) {
+        this.decodeThreads = Math.max(0, decodeThreads);
+        this.decodeQueueSize = Math.max(1, decodeQueueSize);
+    }
+
+    /**
+     * Returns the status of the decode pipeline
+     * 
+     * @return the status of the decode pipeline
+     */
+    public NmeaDecodeStatus getDecodeStatus() {
+        return decodeStatus;
+    }
+
     private synchronized boolean isReplay() {
         return replay;
     }
@@ -516,7 +642,7 @@ public abstract class NmeaSensor extends MapHandlerChild implements Runnable {
         this.dataEnd = dataEnd;
     }
 
-    private synchronized Date getReplayTime() {
+    protected synchronized Date getReplayTime() {
         return replayTime;
     }
 
@@ -524,10 +650,19 @@ public abstract class NmeaSensor extends MapHandlerChild implements Runnable {
         this.replayTime = replayTime;
     }
 
-    private synchronized Date getReplayStartDate() {
+    protected synchronized Date getReplayStartDate() {
         return replayStartDate;
     }
 
+    /**
+     * Resets the anchors used for pacing the replay, so that the replay continues in real time (times the speedup)
+     * from the next timestamp read. Used when the replay is paused, moved or changes speed.
+     */
+    protected synchronized void resetReplayClock() {
+        this.dataStart = null;
+        this.replayStart = null;
+    }
+
     protected synchronized void setReplayStartDate(Date replayStartDate) {
         this.replayStartDate = replayStartDate;
     }
@@ -548,6 +683,9 @@ public abstract class NmeaSensor extends MapHandlerChild implements Runnable {
      */
     public synchronized void stop() {
         this.stopped = true;
+        if (pipeline != null) {
+            pipeline.stop();
+        }
     }
 
     /**
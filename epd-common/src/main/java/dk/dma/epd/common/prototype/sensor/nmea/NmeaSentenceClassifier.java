@@ -0,0 +1,144 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.sensor.nmea;
+
+/**
+ * Classifies NMEA lines in a single pass over the sentence prefix, without allocating.
+ * <p>
+ * The sentence start character ('$' or '!'), talker and sentence id are packed into a key, which is looked up in a
+ * precomputed open-addressing table of the sentences handled by the {@linkplain NmeaSensor}. Any prefix preceding
+ * the sentence start character, such as a comment block, is skipped.
+ */
+public final class NmeaSentenceClassifier {
+
+    /**
+     * The sentence types handled by the {@linkplain NmeaSensor}
+     */
+    public enum SentenceType {
+        RMC, VDM, VDO, ABK, PSTT, PRPNT, PDYP, PROPRIETARY, OTHER
+    }
+
+    private static final int TABLE_SIZE = 32; // Power of two
+    private static final long[] KEYS = new long[TABLE_SIZE];
+    private static final SentenceType[] TYPES = new SentenceType[TABLE_SIZE];
+
+    static {
+        register("$GPRMC", SentenceType.RMC);
+        register("$ELRMC", SentenceType.RMC);
+        register("$RDRMC", SentenceType.RMC);
+        register("!AIVDM", SentenceType.VDM);
+        register("!BSVDM", SentenceType.VDM);
+        register("!ABVDM", SentenceType.VDM);
+        register("!AIVDO", SentenceType.VDO);
+    }
+
+    private NmeaSentenceClassifier() {
+    }
+
+    /**
+     * Classifies the given line
+     *
+     * @param line
+     *            the line to classify
+     * @return the sentence type of the line
+     */
+    public static SentenceType classify(CharSequence line) {
+        if (line == null) {
+            return SentenceType.OTHER;
+        }
+
+        // Locate the sentence start
+        int len = line.length();
+        int start = 0;
+        while (start < len && line.charAt(start) != '$' && line.charAt(start) != '!') {
+            start++;
+        }
+        if (start + 6 > len) {
+            return SentenceType.OTHER;
+        }
+
+        // Proprietary sentences, i.e. "$P..."
+        if (line.charAt(start) == '$' && line.charAt(start + 1) == 'P') {
+            return classifyProprietary(line, start + 2);
+        }
+
+        // Look up start character, talker and sentence id
+        long key = 0L;
+        for (int i = start; i < start + 6; i++) {
+            char c = line.charAt(i);
+            if (c > 0x7F) {
+                return SentenceType.OTHER;
+            }
+            key = (key << 8) | c;
+        }
+        for (int slot = slot(key);; slot = (slot + 1) & (TABLE_SIZE - 1)) {
+            if (TYPES[slot] == null) {
+                break;
+            } else if (KEYS[slot] == key) {
+                return TYPES[slot];
+            }
+        }
+
+        // Acknowledgements are accepted from any talker
+        if (line.charAt(start + 3) == 'A' && line.charAt(start + 4) == 'B' && line.charAt(start + 5) == 'K') {
+            return SentenceType.ABK;
+        }
+        return SentenceType.OTHER;
+    }
+
+    /**
+     * Classifies the proprietary sentence, where {@code pos} is the index following "$P"
+     */
+    private static SentenceType classifyProprietary(CharSequence line, int pos) {
+        if (startsWith(line, pos, "STT,10A")) {
+            return SentenceType.PSTT;
+        } else if (startsWith(line, pos, "RPNT")) {
+            return SentenceType.PRPNT;
+        } else if (startsWith(line, pos, "DYPN") || startsWith(line, pos, "DYPP")) {
+            return SentenceType.PDYP;
+        }
+        return SentenceType.PROPRIETARY;
+    }
+
+    private static boolean startsWith(CharSequence line, int pos, String prefix) {
+        if (pos + prefix.length() > line.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (line.charAt(pos + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void register(String prefix, SentenceType type) {
+        long key = 0L;
+        for (int i = 0; i < prefix.length(); i++) {
+            key = (key << 8) | prefix.charAt(i);
+        }
+        int slot = slot(key);
+        while (TYPES[slot] != null) {
+            slot = (slot + 1) & (TABLE_SIZE - 1);
+        }
+        KEYS[slot] = key;
+        TYPES[slot] = type;
+    }
+
+    private static int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 59) & (TABLE_SIZE - 1);
+    }
+}
@@ -14,7 +14,6 @@
  */
 package dk.dma.epd.common.prototype.service;
 
-import dk.dma.enav.model.geometry.CoordinateSystem;
 import dk.dma.enav.model.geometry.Position;
 import dk.dma.epd.common.Heading;
 import dk.dma.epd.common.prototype.EPD;
@@ -27,6 +26,7 @@ import dk.dma.epd.common.prototype.model.intendedroute.IntendedRouteFilterMessag
 import dk.dma.epd.common.prototype.model.route.ActiveRoute;
 import dk.dma.epd.common.prototype.model.route.IntendedRoute;
 import dk.dma.epd.common.prototype.model.route.Route;
+import dk.dma.epd.common.prototype.model.route.RouteGeometry;
 import dk.dma.epd.common.prototype.model.route.RouteLeg;
 import dk.dma.epd.common.prototype.model.route.RouteWaypoint;
 import dk.dma.epd.common.prototype.notification.GeneralNotification;
@@ -38,13 +38,13 @@ import dk.dma.epd.common.prototype.notification.NotificationAlert.AlertType;
 import dk.dma.epd.common.prototype.notification.NotificationType;
 import dk.dma.epd.common.prototype.sensor.pnt.PntTime;
 import dk.dma.epd.common.prototype.settings.EnavSettings;
-import dk.dma.epd.common.util.Calculator;
+import dk.dma.epd.common.text.Formatter;
 import dk.dma.epd.common.util.Converter;
+import dk.dma.epd.common.util.CpaCalculator;
 import dk.dma.epd.common.util.TypedValue.Dist;
 import dk.dma.epd.common.util.TypedValue.DistType;
 import dk.dma.epd.common.util.TypedValue.Speed;
 import dk.dma.epd.common.util.TypedValue.SpeedType;
-import dk.dma.epd.common.util.TypedValue.Time;
 import dk.dma.epd.common.util.TypedValue.TimeType;
 import dma.route.IntendedRouteBroadcast;
 import net.maritimecloud.net.BroadcastConsumer;
@@ -54,7 +54,6 @@ import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.Iterator;
@@ -86,6 +85,16 @@ public abstract class IntendedRouteHandlerCommon extends EnavServiceHandlerCommo
     public static double FILTER_DISTANCE_EPSILON; // Nautical miles
     public static double ALERT_DISTANCE_EPSILON; // Nautical miles
 
+    /**
+     * How far ahead of the current time TCPA's are searched for
+     */
+    public static final long TCPA_HORIZON = 3 * 60 * 60 * 1000; // 3 hours
+
+    /**
+     * In nautical miles - maximum length of the segments that great circle legs are split into
+     */
+    static final double MAX_LEG_SEGMENT = 10.0;
+
     protected ConcurrentHashMap<Long, IntendedRoute> intendedRoutes = new ConcurrentHashMap<>();
     protected FilteredIntendedRoutes filteredIntendedRoutes = new FilteredIntendedRoutes();
 
@@ -154,7 +163,7 @@ public abstract class IntendedRouteHandlerCommon extends EnavServiceHandlerCommo
      * @param mmsi
      * @param r
      */
-    private synchronized void updateIntendedRoute(long mmsi, IntendedRouteBroadcast r) {
+    protected synchronized void updateIntendedRoute(long mmsi, IntendedRouteBroadcast r) {
 
         IntendedRoute intendedRoute = new IntendedRoute(r);
         intendedRoute.setMmsi(mmsi);
@@ -170,10 +179,8 @@ public abstract class IntendedRouteHandlerCommon extends EnavServiceHandlerCommo
                 intendedRoutes.remove(mmsi);
                 // fireIntendedRouteRemoved(intendedRoute);
             }
-            if (filteredIntendedRoutes.containsKey(mmsi)) {
-                filteredIntendedRoutes.remove(mmsi);
-                LOG.debug("Removing Route due to Route no longer being transmitted");
-            }
+            LOG.debug("Removing Route due to Route no longer being transmitted");
+            intendedRouteRemoved(mmsi);
             // return;
         } else {
 
@@ -212,18 +219,32 @@ public abstract class IntendedRouteHandlerCommon extends EnavServiceHandlerCommo
     /**
      * Remove stale intended routes.
      */
-    private synchronized void checkForInactiveRoutes() {
+    protected synchronized void checkForInactiveRoutes() {
         Date now = PntTime.getDate();
         for (Iterator<Map.Entry<Long, IntendedRoute>> it = intendedRoutes.entrySet().iterator(); it.hasNext();) {
             Map.Entry<Long, IntendedRoute> entry = it.next();
             if (now.getTime() - entry.getValue().getReceived().getTime() > ROUTE_TTL) {
                 // Remove the intended route
                 it.remove();
+                intendedRouteRemoved(entry.getKey());
                 fireIntendedEvent(entry.getValue());
             }
         }
     }
 
+    /**
+     * Called when the intended route of the given vessel has been removed, either because the vessel no longer
+     * transmits one or because it has expired. Removes the filtered intended routes involving the vessel.
+     * <p>
+     * Sub-classes that keep further state per intended route should override this method to clean it up as well.
+     * 
+     * @param mmsi
+     *            the MMSI of the vessel
+     */
+    protected void intendedRouteRemoved(long mmsi) {
+        filteredIntendedRoutes.remove(mmsi);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -465,7 +486,15 @@ public abstract class IntendedRouteHandlerCommon extends EnavServiceHandlerCommo
      * @param index
      * @return
      */
-    private DateTime getEta(Route route, int index) {
+    protected DateTime getEta(Route route, int index) {
+        return getEta(route, route.getGeometry(), index);
+    }
+
+    /**
+     * Calculates the ETA for the given way point index of the given route, using the pre-computed leg ranges of the
+     * route geometry.
+     */
+    private DateTime getEta(Route route, RouteGeometry geometry, int index) {
 
         int activeWpIndex = (route instanceof IntendedRoute) ? ((IntendedRoute) route).getActiveWpIndex() : ((ActiveRoute) route)
                 .getActiveWaypointIndex();
@@ -478,8 +507,8 @@ public abstract class IntendedRouteHandlerCommon extends EnavServiceHandlerCommo
         // Calculate backwards from the active way point
         DateTime date = new DateTime(route.getEtas().get(activeWpIndex));
         for (int j = activeWpIndex - 1; j >= index; j--) {
-            RouteLeg leg = route.getWaypoints().get(j).getOutLeg();
-            date = date.minus(new Dist(DistType.NAUTICAL_MILES, leg.calcRng())
+            RouteLeg leg = geometry.getWaypoint(j).getOutLeg();
+            date = date.minus(new Dist(DistType.NAUTICAL_MILES, geometry.getLegRange(j))
                     .withSpeed(new Speed(SpeedType.KNOTS, leg.getSpeed())).in(TimeType.MILLISECONDS).longValue());
         }
         return date;
@@ -488,7 +517,10 @@ public abstract class IntendedRouteHandlerCommon extends EnavServiceHandlerCommo
     /**
      * Finds the TCPA for two routes and returns the corresponding {@linkplain FilteredIntendedRoute}.
      * <p>
-     * This method is only valid if the current start way point of route 1 is before route 2.
+     * Both routes are split into time parameterised legs, from the leg leading to the active way point, and the
+     * closest point of approach of each pair of legs overlapping in time is computed in closed form by the
+     * {@linkplain CpaCalculator}. A filter message is added for each future CPA, within the next
+     * {@linkplain #TCPA_HORIZON}, that is within one of the filter distances. The order of the routes does not matter.
      * 
      * @param route1
      * @param route2
@@ -496,376 +528,91 @@ public abstract class IntendedRouteHandlerCommon extends EnavServiceHandlerCommo
      */
     protected FilteredIntendedRoute findTCPA(Route route1, Route route2) {
 
-        // Focus on time
         FilteredIntendedRoute filteredIntendedRoute = new FilteredIntendedRoute(getMmsi(route1), getMmsi(route2));
 
-        // We need to check if there's a previous waypoint, ie. we are either
-        // starting navigating or are between two waypoints
-        // int route1StartWp = route1.getActiveWpIndex();
-        // int route2StartWp = route2.getActiveWpIndex();
-
-        int route1StartWp = 0;
-        int route2StartWp = 0;
-
-        int route1ActiveWp = 0;
-
-        if (route1 instanceof IntendedRoute) {
-            route1StartWp = ((IntendedRoute) route1).getActiveWpIndex();
-            route1ActiveWp = ((IntendedRoute) route1).getActiveWpIndex();
-        }
-
-        if (route2 instanceof IntendedRoute) {
-            route2StartWp = ((IntendedRoute) route2).getActiveWpIndex();
-
-        }
-
-        if (route1 instanceof ActiveRoute) {
-            route1StartWp = ((ActiveRoute) route1).getActiveWaypointIndex();
-            route1ActiveWp = ((ActiveRoute) route1).getActiveWaypointIndex();
-        }
-
-        if (route2 instanceof ActiveRoute) {
-            route2StartWp = ((ActiveRoute) route2).getActiveWaypointIndex();
-
-        }
-
-        // if (route1StartWp > 0) {
-        // route1StartWp = route1StartWp - 1;
-        // }
-        //
-        // if (route2StartWp > 0) {
-        // route2StartWp = route2StartWp - 1;
-        // }
-
-        // Should the comparison even be made
-
-        DateTime route1Start = getEta(route1, route1StartWp);
-        DateTime route1End = getEta(route1, route1.getEtas().size() - 1);
-
-        DateTime route2Start = getEta(route2, route2StartWp);
-        DateTime route2End = getEta(route2, route2.getEtas().size() - 1);
-
-        // The route dates does not overlap, return immediately
-        if (route2Start.isAfter(route1End) || route1Start.isAfter(route2End)) {
-            LOG.debug("The route dates does not overlap, return immediately");
-
-            LOG.debug("Route 1 Start: " + route1Start + " and end: " + route1End);
-            LOG.debug("Route 2 Start: " + route2Start + " and end: " + route2End);
+        long now = PntTime.getDate().getTime();
+        double maxDistance = Math.max(ENC_DISTANCE_EPSILON, Math.max(ALERT_DISTANCE_EPSILON, FILTER_DISTANCE_EPSILON));
 
+        // Routes whose bounding boxes are farther apart than the largest filter distance cannot come close
+        if (!route1.getGeometry().intersects(route2.getGeometry(), maxDistance)) {
             return filteredIntendedRoute;
         }
 
-        // Find first point in time that they have in common
-        if (route1Start.isBefore(route2Start)) {
-            // Route1 starts first
-            // Thus route2 start must be first common timeslot
+        List<CpaCalculator.Cpa> cpas = CpaCalculator.findCpas(getLegs(route1), getLegs(route2), now, now + TCPA_HORIZON,
+                Converter.nmToMeters(maxDistance));
 
-            // Find location for both at route2start time
-            // route2Start
+        for (CpaCalculator.Cpa cpa : cpas) {
+            double currentDistance = Converter.metersToNm(cpa.getDistance());
 
-            // Location for route2 is given from
-            Position route2StartPos = route2.getWaypoints().get(route2StartWp).getPos();
+            IntendedRouteFilterType filterType = IntendedRouteFilterType.FILTERONLY;
 
-            DateTime route1WpStart = null;
-            DateTime route1WpEnd;
-
-            boolean foundSegment = false;
-
-            int i;
-            for (i = route1ActiveWp; i < route1.getWaypoints().size(); i++) {
-                if (i > 0) {
-                    route1WpStart = getEta(route1, i - 1);
-                    route1WpEnd = getEta(route1, i);
-
-                    if (route1WpStart.isBefore(route2Start) && route1WpEnd.isAfter(route2Start)) {
-                        // We have the found the segment we need to start from
-
-                        LOG.debug("Found segment");
-                        foundSegment = true;
-                        break;
-                    }
-                }
+            // We want an ENC graphics but no warning
+            if (currentDistance <= ENC_DISTANCE_EPSILON) {
+                filterType = IntendedRouteFilterType.ENC;
             }
 
-            if (foundSegment) {
-
-                // Now find position at time of route2Start
-
-                LOG.debug("Route 1 WP Start is at " + route1.getEtas().get(i - 1));
-                LOG.debug("Route 2 Start is at " + route2.getEtas().get(route2StartWp));
-
-                // How long will we have travelled along our route (route 1)
-                long timeTravelledSeconds = (route2Start.getMillis() - route1WpStart.getMillis()) / 1000;
-
-                double speedInLeg = route1.getWaypoints().get(i - 1).getOutLeg().getSpeed();
-
-                LOG.debug("We have travelled for how many minutes " + timeTravelledSeconds / 60 + " at speed " + speedInLeg);
-
-                double distanceTravelled = Calculator.distanceAfterTimeMph(speedInLeg, timeTravelledSeconds);
-
-                LOG.debug("We have travelled " + distanceTravelled + " nautical miles in direction: "
-                        + route1.getWaypoints().get(i - 1).calcBrg());
-
-                Position position = Calculator.findPosition(route1.getWaypoints().get(i - 1).getPos(),
-                        route1.getWaypoints().get(i - 1).calcBrg(), Converter.nmToMeters(distanceTravelled));
-
-                LOG.debug("Difference start pos" + route1.getWaypoints().get(i - 1).getPos() + " vs " + position);
-
-                LOG.debug("The distance between points is "
-                        + Converter.metersToNm(position.distanceTo(route2StartPos, CoordinateSystem.CARTESIAN)));
-
-                // intersectPositions.add(position);
-                //
-                // intersectPositions.add(route2StartPos);
-
-                // In nautical miles
-                // double route1SegmentTraversed = distanceTravelled;
-                // double route2SegmentTraversed = 0;
-
-                // Okay so we are in position and in route2StartPos
-                // We must start traversing the route now, assume straight
-                // lines, for each traversing check the distance between
-                // points
-
-                // Adaptive traversing, start with time slots of 10 minutes, if
-                // distance between points is smaller than x
-                // Or if distance is simply decreasing, reduce time traversing.
-                // If the distance becomes below the threshold locate point
-                // where it starts
-
-                // Ensure that we do not traverse beyond the length of the route
-
-                // We need to switch segments at some point - wait with that
-
-                Position route1CurrentPosition = position;
-                Position route2CurrentPosition = route2StartPos;
-
-                int route1CurrentWaypoint = i - 1;
-                int route2CurrentWaypoint = route2StartWp - 1;
-
-                if (route2CurrentWaypoint < 0) {
-                    route2CurrentWaypoint = 0;
-                }
-
-                if (route1CurrentWaypoint < 0) {
-                    route1CurrentWaypoint = 0;
-                }
-
-                DateTime traverseTime = route2Start;
-
-                DateTime route1SegmentEnd = getEta(route1, route1CurrentWaypoint + 1);
-                DateTime route2SegmentEnd = getEta(route2, route2CurrentWaypoint + 1);
-
-                while (true) {
-
-                    double currentDistance = Converter.metersToNm(route1CurrentPosition.distanceTo(route2CurrentPosition,
-                            CoordinateSystem.CARTESIAN));
-
-                    if (currentDistance <= ENC_DISTANCE_EPSILON || currentDistance <= ALERT_DISTANCE_EPSILON
-                            || currentDistance <= FILTER_DISTANCE_EPSILON) {
-
-                        if (traverseTime.isAfter(PntTime.getDate().getTime())) {
-
-                            IntendedRouteFilterType filterType = IntendedRouteFilterType.FILTERONLY;
-
-                            // Top level filter only, no msg or graphics
-                            // if (currentDistance <= FILTER_DISTANCE_EPSILON) {
-                            // filterType = IntendedRouteFilterType.FILTERONLY;
-                            // }
-
-                            // We want an ENC graphics but no warning
-                            if (currentDistance <= ENC_DISTANCE_EPSILON) {
-                                filterType = IntendedRouteFilterType.ENC;
-                            }
-
-                            // We want an alert
-                            if (currentDistance <= ALERT_DISTANCE_EPSILON) {
-                                filterType = IntendedRouteFilterType.ALERT;
-                            }
-
-                            // We want both
-                            if (currentDistance <= ALERT_DISTANCE_EPSILON && currentDistance <= ENC_DISTANCE_EPSILON) {
-                                filterType = IntendedRouteFilterType.ALERT;
-                            }
-
-                            DecimalFormat df = new DecimalFormat("#.##");
-
-                            IntendedRouteFilterMessage filterMessage = new IntendedRouteFilterMessage(route1, route2,
-                                    route1CurrentPosition, route2CurrentPosition, "TCPA Warning, proxmity of "
-                                            + df.format(currentDistance) + " nautical miles ", 0, 0, filterType);
-
-                            filterMessage.setTime1(traverseTime);
-                            filterMessage.setTime2(traverseTime);
-
-                            filteredIntendedRoute.getFilterMessages().add(filterMessage);
-                            LOG.debug("Adding warning");
-                        }
-                    } else {
-                        LOG.debug("Found distance of " + currentDistance + " at " + traverseTime);
-                    }
-
-                    // Traverse with a minute
-                    traverseTime = traverseTime.plusMinutes(1);
-                    route1CurrentPosition = traverseLine(route1, route1CurrentWaypoint, route1CurrentPosition, 60);
-                    route2CurrentPosition = traverseLine(route2, route2CurrentWaypoint, route2CurrentPosition, 60);
-
-                    if (traverseTime.isAfter(route1SegmentEnd)) {
-
-                        // LOG.debug("We have traversed " +
-                        // route1SegmentTraversed + " nautical miles");
-                        LOG.debug("We are at waypoint id  " + route1CurrentWaypoint + " and the route has a total of "
-                                + route1.getWaypoints().size() + " waypoints");
-                        // We are done with current leg, is there a next one?
-
-                        // No more waypoints - terminate zero indexing and last
-                        // waypoint does not have an out leg thus -2
-                        if (route1CurrentWaypoint >= route1.getWaypoints().size() - 2) {
-                            LOG.debug("We are breaking - route 1 is done");
-                            break;
-                        } else {
-                            LOG.debug("SWITCHING LEG FOR ROUTE 1, current bearing is ");
-                            // Switch to next leg
-                            route1CurrentWaypoint++;
-
-                            LOG.debug("We are now at waypoint " + route1CurrentWaypoint);
-
-                            // Traverse a bit
-                            int missingSecs = (int) (traverseTime.toDate().getTime() - route1SegmentEnd.toDate().getTime()) / 1000;
-                            route1CurrentPosition = traverseLine(route1, route1CurrentWaypoint,
-                                    route1.getWaypoints().get(route1CurrentWaypoint).getPos(), missingSecs);
-
-                            route1SegmentEnd = getEta(route1, route1CurrentWaypoint + 1);
-
-                            // Skip to next WP start traverse
-                            // traverseTime = new
-                            // DateTime(route1.getEtas().get(route1CurrentWaypoint));
-                        }
-                    }
-
-                    // if (route2SegmentTraversed >
-                    // Converter.milesToNM(route2.getWaypoints().get(route2CurrentWaypoint).calcRng()))
-                    // {
-                    if (traverseTime.isAfter(route2SegmentEnd)) {
-
-                        // LOG.debug("ROUTE 2: We have traversed " +
-                        // route2SegmentTraversed + " nautical miles out of "
-                        // +
-                        // Converter.milesToNM(route2.getWaypoints().get(route2CurrentWaypoint).calcRng()));
-                        LOG.debug("We are at waypoint id  " + route2CurrentWaypoint + " and the route has a total of "
-                                + route2.getWaypoints().size() + " waypoints");
-
-                        // No more waypoints - terminate
-                        if (route2CurrentWaypoint >= route2.getWaypoints().size() - 2) {
-                            LOG.debug("We are breaking - route 2 is done");
-                            break;
-                        } else {
-                            LOG.debug("SWITCHING LEG FOR ROUTE 1");
-
-                            // Switch to next leg
-                            route2CurrentWaypoint++;
-
-                            int missingSecs = (int) (traverseTime.toDate().getTime() - route2SegmentEnd.toDate().getTime()) / 1000;
-                            route2CurrentPosition = traverseLine(route2, route2CurrentWaypoint,
-                                    route2.getWaypoints().get(route2CurrentWaypoint).getPos(), missingSecs);
-
-                            route2SegmentEnd = getEta(route2, route2CurrentWaypoint + 1);
-
-                            // Skip to next WP start traverse
-                            // traverseTime = new
-                            // DateTime(route2.getEtas().get(route2CurrentWaypoint));
-                        }
-
-                    }
-
-                    // Are we more than x hours in the future then stop
-                    DateTime currentTime = new DateTime(PntTime.getDate().getTime());
-
-                    if (traverseTime.isAfter(currentTime.plusHours(3))) {
-                        LOG.debug("More than 3 hours head of current time, ending checks");
-                        break;
-                    }
-
-                }
-            } else {
-                LOG.debug("No segment was found - not sure how we reached this point...");
+            // We want an alert
+            if (currentDistance <= ALERT_DISTANCE_EPSILON) {
+                filterType = IntendedRouteFilterType.ALERT;
             }
 
-        } else {
-            // Route2 starts first
-            // Thus route1 start must be first common timeslot
+            IntendedRouteFilterMessage filterMessage = new IntendedRouteFilterMessage(route1, route2, cpa.getPosition1(),
+                    cpa.getPosition2(), "TCPA Warning, proxmity of " + Formatter.formatDistNM(currentDistance), cpa
+                            .getLeg1().getIndex(), cpa.getLeg2().getIndex(), filterType);
 
-        }
+            DateTime time = new DateTime(cpa.getTime());
+            filterMessage.setTime1(time);
+            filterMessage.setTime2(time);
 
-        // findPosition(Position startingLocation, Position endLocation, double
-        // distanceTravelled){
+            filteredIntendedRoute.getFilterMessages().add(filterMessage);
+        }
 
         return filteredIntendedRoute;
     }
 
     /**
-     * Traverses the route leg based at the given index from the given position
+     * Returns the time parameterised legs of the given route, starting with the leg leading to the active way point.
+     * <p>
+     * Great circle legs are split into rhumb line segments of at most {@linkplain #MAX_LEG_SEGMENT} nautical miles.
      * 
      * @param route
      *            the route
-     * @param index
-     *            the way point index
-     * @param currentPos
-     *            the current position
-     * @param seconds
-     *            the number of seconds
-     * @return the updated position
+     * @return the legs of the route
      */
-    private Position traverseLine(Route route, int index, Position currentPos, int seconds) {
-        RouteWaypoint wp = route.getWaypoints().get(index);
-
-        double dist = new Speed(SpeedType.KNOTS, wp.getOutLeg().getSpeed()).forTime(new Time(TimeType.SECONDS, seconds))
-                .in(DistType.NAUTICAL_MILES).doubleValue();
-
-        if (wp.getHeading() == Heading.RL) {
-            return traverseLineRL(currentPos, wp.calcBrg(), dist);
-        } else {
-            return traverseLineGC(currentPos, wp.getOutLeg().getEndWp().getPos(), dist);
+    protected List<CpaCalculator.Leg> getLegs(Route route) {
+        int activeWp = 0;
+        if (route instanceof IntendedRoute) {
+            activeWp = ((IntendedRoute) route).getActiveWpIndex();
+        } else if (route instanceof ActiveRoute) {
+            activeWp = ((ActiveRoute) route).getActiveWaypointIndex();
         }
-    }
 
-    /**
-     * Rhumb line traversing
-     * 
-     * @param startPosition
-     * @param bearing
-     * @param distanceTravelled
-     * @return
-     */
-    private Position traverseLineRL(Position startPosition, double bearing, double distanceTravelled) {
-
-        // How long will we have travelled along our route (route 1)
-        // long timeTravelledSeconds = minutes * 60;
-
-        // double distanceTravelled = Calculator.distanceAfterTimeMph(speed,
-        // timeTravelledSeconds);
-
-        Position position = Calculator.findPosition(startPosition, bearing, Converter.nmToMeters(distanceTravelled));
-
-        return position;
+        RouteGeometry geometry = route.getGeometry();
+        List<CpaCalculator.Leg> legs = new ArrayList<>();
+        long startTime = 0L;
+        for (int index = Math.max(0, activeWp - 1); index < geometry.getWaypointCount(); index++) {
+            long endTime = getEta(route, geometry, index).getMillis();
+            if (index >= activeWp && index > 0) {
+                addLegs(legs, geometry, index - 1, startTime, endTime);
+            }
+            startTime = endTime;
+        }
+        return legs;
     }
 
     /**
-     * Great Circle Traversing
-     * 
-     * @param startPosition
-     * @return
+     * Adds the leg starting at the given way point, split into segments if it is a long great circle leg
      */
-    private Position traverseLineGC(Position startPosition, Position endPosition, double distanceTravelled) {
-
-        // How long will we have travelled along our route (route 1)
-        // long timeTravelledSeconds = minutes * 60;
-
-        // double distanceTravelled = Calculator.distanceAfterTimeMph(speed,
-        // timeTravelledSeconds);
-
-        Position position = Calculator.findPosition(startPosition, endPosition, Converter.nmToMeters(distanceTravelled));
-
-        return position;
+    private void addLegs(List<CpaCalculator.Leg> legs, RouteGeometry geometry, int index, long startTime, long endTime) {
+        RouteWaypoint start = geometry.getWaypoint(index);
+        Position startPos = geometry.getPosition(index);
+        Position endPos = geometry.getPosition(index + 1);
+        double length = start.getOutLeg() != null ? geometry.getLegRange(index) : 0.0;
+        if (start.getHeading() != Heading.GC || length <= MAX_LEG_SEGMENT) {
+            legs.add(new CpaCalculator.Leg(index, startPos, startTime, endPos, endTime));
+        } else {
+            CpaCalculator.addGreatCircleLegs(legs, index, startPos, startTime, endPos, endTime, length, MAX_LEG_SEGMENT);
+        }
     }
 
     /**
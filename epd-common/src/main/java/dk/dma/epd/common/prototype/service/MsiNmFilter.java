@@ -0,0 +1,243 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import com.bbn.openmap.proj.Projection;
+
+import dk.dma.enav.model.geometry.Position;
+import dk.dma.epd.common.prototype.model.route.Route;
+import dk.dma.epd.common.prototype.model.route.RouteWaypoint;
+import dk.dma.epd.common.prototype.notification.MsiNmNotification;
+
+/**
+ * Incrementally maintained MSI-NM filter, used by the {@linkplain MsiNmServiceHandlerCommon} when MSI-NM filtering is
+ * on.
+ * <p>
+ * The messages are indexed by the bounding box of their geometry, and the set of messages within range is kept for
+ * each filter criterion between updates. An own-ship move, a route change or a mouse move while drawing a route thus
+ * only re-evaluates the messages near the affected area, whereas a change of the messages or the ranges re-evaluates
+ * all messages.
+ */
+@NotThreadSafe
+class MsiNmFilter {
+
+    private final MsiNmFilterIndex index = new MsiNmFilterIndex();
+    private final Set<MsiNmNotification> nearShip = new HashSet<>();
+    private final Set<MsiNmNotification> nearRoutes = new HashSet<>();
+    private final Set<MsiNmNotification> nearMousePosition = new HashSet<>();
+    private final Set<MsiNmNotification> nearNewRoute = new HashSet<>();
+
+    private List<MsiNmNotification> messages = new ArrayList<>();
+    private List<Route> routes = new ArrayList<>();
+    private Position shipPosition;
+    private Position newRouteMousePosition;
+    private Route newRoute;
+    private Projection newRouteProjection;
+    private double shipRange;
+    private double newWaypointRange;
+
+    private boolean rebuild = true;
+    private boolean shipMoved;
+    private boolean routesChanged;
+    private boolean newRouteChanged;
+
+    /**
+     * Sets the messages to filter, which causes all messages to be re-evaluated by the next update
+     *
+     * @param messages
+     *            the messages to filter
+     */
+    void setMessages(List<MsiNmNotification> messages) {
+        this.messages = messages;
+        rebuild = true;
+    }
+
+    /**
+     * Sets the ranges of the filter. If changed, all messages are re-evaluated by the next update
+     *
+     * @param shipRange
+     *            the range from own-ship in nautical miles
+     * @param newWaypointRange
+     *            the range from the route being drawn in nautical miles
+     */
+    void setRanges(double shipRange, double newWaypointRange) {
+        if (shipRange != this.shipRange || newWaypointRange != this.newWaypointRange) {
+            this.shipRange = shipRange;
+            this.newWaypointRange = newWaypointRange;
+            rebuild = true;
+        }
+    }
+
+    /**
+     * Sets the own-ship position
+     *
+     * @param shipPosition
+     *            the own-ship position, or null if unknown
+     */
+    void setShipPosition(Position shipPosition) {
+        this.shipPosition = shipPosition;
+        shipMoved = true;
+    }
+
+    /**
+     * Sets the visible routes
+     *
+     * @param routes
+     *            the visible routes
+     */
+    void setRoutes(List<Route> routes) {
+        this.routes = routes;
+        routesChanged = true;
+    }
+
+    /**
+     * Sets the route being drawn along with the mouse position
+     *
+     * @param newRouteMousePosition
+     *            the current mouse position
+     * @param newRoute
+     *            the new route
+     * @param newRouteProjection
+     *            the new route projection
+     */
+    void setNewRoute(Position newRouteMousePosition, Route newRoute, Projection newRouteProjection) {
+        this.newRouteMousePosition = newRouteMousePosition;
+        this.newRoute = newRoute;
+        this.newRouteProjection = newRouteProjection;
+        newRouteChanged = true;
+    }
+
+    /**
+     * Causes all messages to be re-evaluated by the next update, e.g. because the message list has been modified
+     */
+    void invalidate() {
+        rebuild = true;
+    }
+
+    /**
+     * Returns if the message is within range of any of the filter criteria as of the last update. Messages without a
+     * location are always included.
+     *
+     * @param msg
+     *            the message
+     * @return if the message is included by the filter
+     */
+    boolean isIncluded(MsiNmNotification msg) {
+        return msg.getLocation() == null || nearShip.contains(msg) || nearRoutes.contains(msg)
+                || nearMousePosition.contains(msg) || nearNewRoute.contains(msg);
+    }
+
+    /**
+     * Updates the per-criterion filter state and returns the messages whose inclusion may have changed
+     *
+     * @return the messages to re-compute the filtered flag for
+     */
+    Set<MsiNmNotification> update() {
+        Set<MsiNmNotification> changed = new HashSet<>();
+        boolean all = rebuild;
+        if (all) {
+            index.rebuild(messages);
+            nearShip.clear();
+            nearRoutes.clear();
+            nearMousePosition.clear();
+            nearNewRoute.clear();
+            rebuild = false;
+            changed.addAll(messages);
+        }
+
+        // 1) Check proximity to ship
+        if (all || shipMoved) {
+            Set<MsiNmNotification> candidates = new HashSet<>(nearShip);
+            if (shipPosition != null) {
+                candidates.addAll(index.findNear(shipPosition, shipRange));
+            }
+            nearShip.clear();
+            for (MsiNmNotification msg : candidates) {
+                Double dist = msg.getDistanceToPosition(shipPosition);
+                if (dist != null && dist < shipRange) {
+                    nearShip.add(msg);
+                }
+            }
+            changed.addAll(candidates);
+            shipMoved = false;
+        }
+
+        // 2) Check proximity to routes
+        if (all || routesChanged) {
+            Set<MsiNmNotification> candidates = new HashSet<>(nearRoutes);
+            for (Route route : routes) {
+                candidates.addAll(index.findNear(route));
+            }
+            nearRoutes.clear();
+            for (MsiNmNotification msg : candidates) {
+                if (msg.nearRoute(routes)) {
+                    nearRoutes.add(msg);
+                }
+            }
+            changed.addAll(candidates);
+            routesChanged = false;
+        }
+
+        if (all || newRouteChanged) {
+            // 3) Check proximity from a new route mouse position
+            Set<MsiNmNotification> candidates = new HashSet<>(nearMousePosition);
+            if (newRouteMousePosition != null) {
+                candidates.addAll(index.findNear(newRouteMousePosition, newWaypointRange));
+            }
+            nearMousePosition.clear();
+            for (MsiNmNotification msg : candidates) {
+                Double dist = msg.getDistanceToPosition(newRouteMousePosition);
+                if (dist != null && dist < newWaypointRange) {
+                    nearMousePosition.add(msg);
+                }
+            }
+            changed.addAll(candidates);
+
+            // 4) Check proximity to the new route, using the corridors of the route legs
+            candidates = new HashSet<>(nearNewRoute);
+            boolean drawing = newRoute != null && newRouteMousePosition != null && newRouteProjection != null;
+            if (drawing) {
+                Position prev = null;
+                for (RouteWaypoint wp : newRoute.getWaypoints()) {
+                    if (prev != null) {
+                        candidates.addAll(index.findNear(prev, wp.getPos(), newWaypointRange));
+                    }
+                    prev = wp.getPos();
+                }
+                if (prev != null) {
+                    candidates.addAll(index.findNear(prev, newRouteMousePosition, newWaypointRange));
+                }
+            }
+            nearNewRoute.clear();
+            for (MsiNmNotification msg : candidates) {
+                if (drawing && !nearMousePosition.contains(msg)
+                        && msg.nearNewRoute(newRoute, newRouteMousePosition, newRouteProjection)) {
+                    nearNewRoute.add(msg);
+                }
+            }
+            changed.addAll(candidates);
+            newRouteChanged = false;
+        }
+
+        return changed;
+    }
+}
@@ -0,0 +1,212 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.jcip.annotations.NotThreadSafe;
+import dk.dma.enav.model.geometry.Position;
+import dk.dma.epd.common.prototype.model.route.Route;
+import dk.dma.epd.common.prototype.model.route.RouteWaypoint;
+import dk.dma.epd.common.prototype.notification.MsiNmNotification;
+import dma.msinm.MCLocation;
+import dma.msinm.MCLocationType;
+import dma.msinm.MCPoint;
+
+/**
+ * Grid index of the bounding boxes of the MSI-NM message geometries, used by the {@linkplain MsiNmServiceHandlerCommon}
+ * for finding the messages that may be within range of a position, a route or a route leg corridor.
+ * <p>
+ * Messages without a location are not indexed.
+ */
+@NotThreadSafe
+class MsiNmFilterIndex {
+
+    private static final double CELL_SIZE = 0.25; // Degrees
+
+    private final Map<Long, List<Entry>> cells = new HashMap<>();
+
+    /**
+     * Rebuilds the index from the given messages
+     *
+     * @param messages
+     *            the messages to index
+     */
+    void rebuild(List<MsiNmNotification> messages) {
+        cells.clear();
+        for (MsiNmNotification msg : messages) {
+            Entry entry = createEntry(msg);
+            if (entry == null) {
+                continue;
+            }
+            for (int row = row(entry.minLat); row <= row(entry.maxLat); row++) {
+                for (int col = col(entry.minLon); col <= col(entry.maxLon); col++) {
+                    List<Entry> cell = cells.get(key(row, col));
+                    if (cell == null) {
+                        cell = new ArrayList<>();
+                        cells.put(key(row, col), cell);
+                    }
+                    cell.add(entry);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the messages whose bounding box is within the given range of the position
+     *
+     * @param pos
+     *            the position
+     * @param range
+     *            the range in nautical miles
+     * @return the candidate messages
+     */
+    Set<MsiNmNotification> findNear(Position pos, double range) {
+        return findNear(pos, pos, range);
+    }
+
+    /**
+     * Returns the messages whose bounding box intersects the bounding box of the line between the positions, expanded
+     * by the given range
+     *
+     * @param pos1
+     *            the first position
+     * @param pos2
+     *            the second position
+     * @param range
+     *            the range in nautical miles
+     * @return the candidate messages
+     */
+    Set<MsiNmNotification> findNear(Position pos1, Position pos2, double range) {
+        double minLat = Math.min(pos1.getLatitude(), pos2.getLatitude());
+        double maxLat = Math.max(pos1.getLatitude(), pos2.getLatitude());
+        double minLon = Math.min(pos1.getLongitude(), pos2.getLongitude());
+        double maxLon = Math.max(pos1.getLongitude(), pos2.getLongitude());
+        double latMargin = range / 60.0;
+        double lonMargin = latMargin
+                / Math.cos(Math.toRadians(Math.min(89.0, Math.max(Math.abs(minLat), Math.abs(maxLat)) + latMargin)));
+        Set<MsiNmNotification> result = new HashSet<>();
+        find(minLat - latMargin, maxLat + latMargin, minLon - lonMargin, maxLon + lonMargin, result);
+        return result;
+    }
+
+    /**
+     * Returns the messages whose bounding box intersects the bounding box of the route
+     *
+     * @param route
+     *            the route
+     * @return the candidate messages
+     */
+    Set<MsiNmNotification> findNear(Route route) {
+        Set<MsiNmNotification> result = new HashSet<>();
+        if (route.getWaypoints() == null || route.getWaypoints().size() == 0) {
+            return result;
+        }
+        double minLat = 90, maxLat = -90, minLon = 180, maxLon = -180;
+        for (RouteWaypoint wp : route.getWaypoints()) {
+            minLat = Math.min(minLat, wp.getPos().getLatitude());
+            maxLat = Math.max(maxLat, wp.getPos().getLatitude());
+            minLon = Math.min(minLon, wp.getPos().getLongitude());
+            maxLon = Math.max(maxLon, wp.getPos().getLongitude());
+        }
+        find(minLat, maxLat, minLon, maxLon, result);
+        return result;
+    }
+
+    private void find(double minLat, double maxLat, double minLon, double maxLon, Set<MsiNmNotification> result) {
+        minLat = Math.max(-90.0, minLat);
+        maxLat = Math.min(90.0, maxLat);
+        minLon = Math.max(-180.0, minLon);
+        maxLon = Math.min(180.0, maxLon);
+        for (int row = row(minLat); row <= row(maxLat); row++) {
+            for (int col = col(minLon); col <= col(maxLon); col++) {
+                List<Entry> cell = cells.get(key(row, col));
+                if (cell == null) {
+                    continue;
+                }
+                for (Entry entry : cell) {
+                    if (entry.minLat <= maxLat && minLat <= entry.maxLat && entry.minLon <= maxLon
+                            && minLon <= entry.maxLon) {
+                        result.add(entry.msg);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes the bounding box of the message geometry, including the radius of circles. Returns null for messages
+     * without a location.
+     */
+    private static Entry createEntry(MsiNmNotification msg) {
+        if (msg.getLocation() == null || msg.get().getLocations() == null) {
+            return null;
+        }
+        double minLat = 90, maxLat = -90, minLon = 180, maxLon = -180;
+        boolean empty = true;
+        for (MCLocation loc : msg.get().getLocations()) {
+            double radius = 0.0;
+            if (loc.getType() == MCLocationType.CIRCLE && loc.getRadius() != null) {
+                radius = loc.getRadius().doubleValue();
+            }
+            for (MCPoint pt : loc.getPoints()) {
+                double latMargin = radius / 60.0;
+                double lonMargin = latMargin / Math.cos(Math.toRadians(Math.min(89.0, Math.abs(pt.getLat()))));
+                minLat = Math.min(minLat, pt.getLat() - latMargin);
+                maxLat = Math.max(maxLat, pt.getLat() + latMargin);
+                minLon = Math.min(minLon, pt.getLon() - lonMargin);
+                maxLon = Math.max(maxLon, pt.getLon() + lonMargin);
+                empty = false;
+            }
+        }
+        return empty ? null : new Entry(msg, minLat, maxLat, minLon, maxLon);
+    }
+
+    private static int row(double lat) {
+        return (int) Math.floor((Math.max(-90.0, Math.min(90.0, lat)) + 90.0) / CELL_SIZE);
+    }
+
+    private static int col(double lon) {
+        return (int) Math.floor((Math.max(-180.0, Math.min(180.0, lon)) + 180.0) / CELL_SIZE);
+    }
+
+    private static long key(int row, int col) {
+        return ((long) row << 32) | (col & 0xFFFFFFFFL);
+    }
+
+    /**
+     * A message and the bounding box of its geometry
+     */
+    private static final class Entry {
+        final MsiNmNotification msg;
+        final double minLat;
+        final double maxLat;
+        final double minLon;
+        final double maxLon;
+
+        Entry(MsiNmNotification msg, double minLat, double maxLat, double minLon, double maxLon) {
+            this.msg = msg;
+            this.minLat = minLat;
+            this.maxLat = maxLat;
+            this.minLon = minLon;
+            this.maxLon = maxLon;
+        }
+    }
+}
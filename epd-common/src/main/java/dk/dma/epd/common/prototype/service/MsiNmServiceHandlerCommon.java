@@ -49,6 +49,10 @@ import java.util.concurrent.TimeUnit;
 
 /**
  * An implementation of a Maritime Cloud MSI-NM service
+ * <p>
+ * When MSI-NM filtering is on, the filter is maintained incrementally. The messages are indexed by the bounding box of
+ * their geometry, and the filter state of each criterion is kept between updates, so that an own-ship move, a route
+ * change or a mouse move while drawing a route only re-evaluates the messages near the affected area.
  */
 public class MsiNmServiceHandlerCommon extends EnavServiceHandlerCommon implements IRoutesUpdateListener, IPntDataListener {
 
@@ -69,9 +73,10 @@ public class MsiNmServiceHandlerCommon extends EnavServiceHandlerCommon implemen
     private Timestamp msiNmLastUpdate;
 
     private Position currentShipPosition;
-    private Position newRouteMousePosition;
-    private Route newRoute;
-    private Projection newRouteProjection;
+
+    // Incremental filter state
+    private final MsiNmFilter filter = new MsiNmFilter();
+    private boolean routesChanged;
 
     /**
      * Constructor
@@ -90,6 +95,7 @@ public class MsiNmServiceHandlerCommon extends EnavServiceHandlerCommon implemen
         msiNmStore = MsiNmStore.loadFromFile(EPD.getInstance().getHomePath());
         msiNmMessages = msiNmStore.getMsiNmMessages();
         deletedMsiNmIds = msiNmStore.getDeletedMsiNmIds();
+        filter.setMessages(msiNmMessages);
 
         // Schedule a refresh of the chat services and active MSI-NM messages
         // NB: The calls are combined to avoid too many internet connections on sea
@@ -100,9 +106,11 @@ public class MsiNmServiceHandlerCommon extends EnavServiceHandlerCommon implemen
             }
         }, 20, enavSettings.getMsiPollInterval(), TimeUnit.SECONDS);
 
-        // Schedule re-computation of message filter
+        // Schedule re-computation of message filter. Route changes that are not
+        // signalled by a route event, e.g. of the visible routes, are picked up here
         getScheduler().scheduleWithFixedDelay(new Runnable() {
                     @Override public void run() {
+                        markRoutesChanged();
                         recomputeMsiNmMessageFilter(true);
                     }
                 }, 17, 30, TimeUnit.SECONDS);
@@ -268,6 +276,7 @@ public class MsiNmServiceHandlerCommon extends EnavServiceHandlerCommon implemen
         }
 
         msiNmMessages = newMsiNmMessages;
+        filter.setMessages(msiNmMessages);
 
         // Update the store
         msiNmStore.setMsiNmMessages(msiNmMessages);
@@ -319,6 +328,7 @@ public class MsiNmServiceHandlerCommon extends EnavServiceHandlerCommon implemen
         msiNmLastUpdate = null;
         msiNmMessages = new ArrayList<>();
         deletedMsiNmIds = new HashSet<>();
+        filter.setMessages(msiNmMessages);
         msiNmStore.setMsiNmMessages(msiNmMessages);
         msiNmStore.setDeletedMsiNmIds(deletedMsiNmIds);
         fetchPublishedMsiNmMessages();
@@ -339,12 +349,18 @@ public class MsiNmServiceHandlerCommon extends EnavServiceHandlerCommon implemen
     public synchronized void deleteMsiNmMessage(MsiNmNotification message) {
         if (message != null && msiNmMessages.remove(message)) {
             deletedMsiNmIds.add(message.getId());
+            filter.invalidate();
             doUpdate();
         }
     }
 
     /**
-     * Re-computes the filtered state of the MSI-NM messages
+     * Re-computes the filtered state of the MSI-NM messages.
+     * <p>
+     * If the message list or the filter settings have changed, all messages are re-evaluated. Otherwise, only the
+     * criteria affected by own-ship, route or new route changes since the last computation are re-evaluated, and only
+     * for the messages that were, or may have become, within range.
+     *
      * @param notifyListeners whether to notify listeners or not
      */
     public synchronized void recomputeMsiNmMessageFilter(boolean notifyListeners) {
@@ -358,47 +374,19 @@ public class MsiNmServiceHandlerCommon extends EnavServiceHandlerCommon implemen
                 updated |= !msg.isFiltered();
                 msg.setFiltered(true);
             }
+            filter.invalidate();
 
         } else {
             // MSI-NM filtering is on
+            filter.setRanges(enavSettings.getMsiRelevanceFromOwnShipRange(), enavSettings.getMsiVisibilityFromNewWaypoint());
+            if (routesChanged && routeManager != null) {
+                filter.setRoutes(routeManager.getVisibleRoutes());
+                routesChanged = false;
+            }
 
-            for (MsiNmNotification msg : msiNmMessages) {
-
+            for (MsiNmNotification msg : filter.update()) {
                 boolean wasFiltered = msg.isFiltered();
-                msg.setFiltered(false);
-
-                // Messages without location always included
-                if (msg.getLocation() == null) {
-                    msg.setFiltered(true);
-                }
-
-                // 1) Check proximity to ship
-                if (!msg.isFiltered() && currentShipPosition != null) {
-                    Double dist = msg.getDistanceToPosition(currentShipPosition);
-                    if (dist != null && dist < enavSettings.getMsiRelevanceFromOwnShipRange()) {
-                        msg.setFiltered(true);
-                    }
-                }
-
-                // 2) Check proximity to routes
-                if (!msg.isFiltered() && msg.nearRoute(routeManager.getVisibleRoutes())) {
-                    msg.setFiltered(true);
-                }
-
-                // 3) Check proximity from a new route mouse position
-                if (!msg.isFiltered() && newRouteMousePosition != null) {
-                    Double dist = msg.getDistanceToPosition(newRouteMousePosition);
-                    if (dist != null && dist < enavSettings.getMsiVisibilityFromNewWaypoint()) {
-                        msg.setFiltered(true);
-                    }
-                }
-
-                // 4) Check proximity to the new route
-                if (!msg.isFiltered() && newRoute != null && newRouteMousePosition != null && newRouteProjection != null &&
-                        msg.nearNewRoute(newRoute, newRouteMousePosition, newRouteProjection)) {
-                    msg.setFiltered(true);
-                }
-
+                msg.setFiltered(filter.isIncluded(msg));
                 updated |= wasFiltered != msg.isFiltered();
             }
         }
@@ -418,9 +406,7 @@ public class MsiNmServiceHandlerCommon extends EnavServiceHandlerCommon implemen
      * @param newRouteProjection the new route projection
      */
     public synchronized void updateNewRouteMousePosition(Position newRouteMousePosition, Route newRoute, Projection newRouteProjection) {
-        this.newRouteMousePosition = newRouteMousePosition;
-        this.newRoute = newRoute;
-        this.newRouteProjection = newRouteProjection;
+        filter.setNewRoute(newRouteMousePosition, newRoute, newRouteProjection);
         recomputeMsiNmMessageFilter(true);
     }
 
@@ -433,7 +419,10 @@ public class MsiNmServiceHandlerCommon extends EnavServiceHandlerCommon implemen
 
         if (currentShipPosition == null ||
                 Calculator.range(position, currentShipPosition, Heading.GC) > enavSettings.getMsiRelevanceGpsUpdateRange()) {
-            currentShipPosition = position;
+            synchronized (this) {
+                currentShipPosition = position;
+                filter.setShipPosition(position);
+            }
             recomputeMsiNmMessageFilter(true);
         }
 
@@ -453,11 +442,23 @@ public class MsiNmServiceHandlerCommon extends EnavServiceHandlerCommon implemen
                 case ROUTE_ADDED:
                 case ROUTE_REMOVED:
                 case ROUTE_CHANGED:
+                case ROUTE_VISIBILITY_CHANGED:
+                case ROUTE_WAYPOINT_DELETED:
+                case ROUTE_WAYPOINT_APPENDED:
+                case ROUTE_WAYPOINT_MOVED:
+                    markRoutesChanged();
                     recomputeMsiNmMessageFilter(true);
             }
         }
     }
 
+    /**
+     * Flags that the proximity of the messages to the visible routes must be re-evaluated
+     */
+    private synchronized void markRoutesChanged() {
+        routesChanged = true;
+    }
+
     @Override
     public void findAndInit(Object obj) {
         super.findAndInit(obj);
@@ -465,6 +466,7 @@ public class MsiNmServiceHandlerCommon extends EnavServiceHandlerCommon implemen
         if (routeManager == null && obj instanceof RouteManagerCommon) {
             routeManager = (RouteManagerCommon) obj;
             routeManager.addListener(this);
+            markRoutesChanged();
         }
         if (pntHandler == null && obj instanceof PntHandler) {
             pntHandler = (PntHandler) obj;
@@ -48,6 +48,8 @@ public class AisSettings implements Serializable {
     private int pastTrackDisplayTime = 30; // In minutes
     private int pastTrackMinDist = 100; // In meters
     private int pastTrackOwnShipMinDist = 20; // In meters
+    private int batchDispatchInterval; // In milliseconds, 0 to dispatch every update
+    private int viewCheckpointInterval = 300; // In seconds, 0 to only save the AIS view on exit
 
     /**
      * The minimum length of the COG vector in minutes.
@@ -117,6 +119,8 @@ public class AisSettings implements Serializable {
         pastTrackDisplayTime = PropUtils.intFromProperties(props, PREFIX + "pastTrackDisplayTime", pastTrackDisplayTime);
         pastTrackMinDist = PropUtils.intFromProperties(props, PREFIX + "pastTrackMinDist", pastTrackMinDist);
         pastTrackOwnShipMinDist = PropUtils.intFromProperties(props, PREFIX + "pastTrackOwnShipMinDist", pastTrackOwnShipMinDist);
+        batchDispatchInterval = PropUtils.intFromProperties(props, PREFIX + "batchDispatchInterval", batchDispatchInterval);
+        viewCheckpointInterval = PropUtils.intFromProperties(props, PREFIX + "viewCheckpointInterval", viewCheckpointInterval);
 
         this.cogVectorLengthMin = PropUtils.intFromProperties(props, PREFIX + this.varNameCogVectorLengthMin,
                 this.cogVectorLengthMin);
@@ -150,6 +154,8 @@ public class AisSettings implements Serializable {
         props.put(PREFIX + "pastTrackDisplayTime", Integer.toString(pastTrackDisplayTime));
         props.put(PREFIX + "pastTrackMinDist", Integer.toString(pastTrackMinDist));
         props.put(PREFIX + "pastTrackOwnShipMinDist", Integer.toString(pastTrackOwnShipMinDist));
+        props.put(PREFIX + "batchDispatchInterval", Integer.toString(batchDispatchInterval));
+        props.put(PREFIX + "viewCheckpointInterval", Integer.toString(viewCheckpointInterval));
 
         props.put(PREFIX + this.varNameCogVectorLengthMin, Integer.toString(this.cogVectorLengthMin));
         props.put(PREFIX + this.varNameCogVectorLengthMax, Integer.toString(this.cogVectorLengthMax));
@@ -258,6 +264,22 @@ public class AisSettings implements Serializable {
         this.pastTrackOwnShipMinDist = pastTrackOwnShipMinDist;
     }
 
+    public int getBatchDispatchInterval() {
+        return batchDispatchInterval;
+    }
+
+    public void setBatchDispatchInterval(int batchDispatchInterval) {
+        this.batchDispatchInterval = batchDispatchInterval;
+    }
+
+    public int getViewCheckpointInterval() {
+        return viewCheckpointInterval;
+    }
+
+    public void setViewCheckpointInterval(int viewCheckpointInterval) {
+        this.viewCheckpointInterval = viewCheckpointInterval;
+    }
+
     public int getCogVectorLengthMin() {
         return cogVectorLengthMin;
     }
@@ -67,6 +67,11 @@ public class EnavSettings implements Serializable {
     private String monaLisaServer = "www.optiroute.se/RouteRequest";
     private int monaLisaPort = 80;
     
+    /**
+     * Number of particles of the Monte Carlo drift simulation of SAR operations, 0 - disabled
+     */
+    private int sarDriftParticles;
+    
     private long routeTimeToLive = 10 * 60 * 1000; // 10 minutes.
     private double filterDistance = 1;
     private double markerDistance = 0.5; // Nautical miles.
@@ -115,6 +120,7 @@ public class EnavSettings implements Serializable {
         
         monaLisaServer = props.getProperty(PREFIX + "monaLisaServer", monaLisaServer);
         monaLisaPort = PropUtils.intFromProperties(props, PREFIX + "monaLisaPort", monaLisaPort);    
+        sarDriftParticles = PropUtils.intFromProperties(props, PREFIX + "sarDriftParticles", sarDriftParticles);
     }
     
     public void setProperties(Properties props) {
@@ -141,6 +147,7 @@ public class EnavSettings implements Serializable {
         props.put(PREFIX + "msiNmServiceId", StringUtils.defaultString(msiNmServiceId));
         props.put(PREFIX + "monaLisaServer", monaLisaServer);
         props.put(PREFIX + "monaLisaPort", Integer.toString(monaLisaPort));
+        props.put(PREFIX + "sarDriftParticles", Integer.toString(sarDriftParticles));
         props.put(PREFIX + "routeTimeToLive", Long.toString(this.getRouteTimeToLive()));
         props.put(PREFIX + "filterDistance", Double.toString(this.getFilterDistance()));
         props.put(PREFIX + "markerDistance", Double.toString(this.getMarkerDistance()));
@@ -362,4 +369,12 @@ public class EnavSettings implements Serializable {
     public void setRouteTimeToLive(long routeTimeToLive) {
         this.routeTimeToLive = routeTimeToLive;
     }
+
+    public int getSarDriftParticles() {
+        return sarDriftParticles;
+    }
+
+    public void setSarDriftParticles(int sarDriftParticles) {
+        this.sarDriftParticles = sarDriftParticles;
+    }
 }
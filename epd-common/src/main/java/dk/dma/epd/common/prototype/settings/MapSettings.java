@@ -46,6 +46,9 @@ public class MapSettings implements Serializable {
     private boolean s52TwoShades;
     private String color = "Day";
     private String wmsQuery = "";
+    private int wmsCacheSize = 64; // MB
+    private int wmsCacheMaxAge = 30; // Days
+    private int wmsCacheDiskSize = 512; // MB
     private boolean multipleBackgrounds;
     
     public MapSettings() {
@@ -68,6 +71,9 @@ public class MapSettings implements Serializable {
         
         //settings for wms
         wmsQuery = props.getProperty(PREFIX + "wmsQuery", "");
+        wmsCacheSize = PropUtils.intFromProperties(props, PREFIX + "wmsCacheSize", wmsCacheSize);
+        wmsCacheMaxAge = PropUtils.intFromProperties(props, PREFIX + "wmsCacheMaxAge", wmsCacheMaxAge);
+        wmsCacheDiskSize = PropUtils.intFromProperties(props, PREFIX + "wmsCacheDiskSize", wmsCacheDiskSize);
         
         // settings for S52 layer
         s52ShowText = PropUtils.booleanFromProperties(props, PREFIX + "s52ShowText", s52ShowText);
@@ -94,6 +100,9 @@ public class MapSettings implements Serializable {
         props.put(PREFIX + "multipleBackgrounds", Boolean.toString(multipleBackgrounds));
         
         props.put(PREFIX + "wmsQuery", wmsQuery);
+        props.put(PREFIX + "wmsCacheSize", Integer.toString(wmsCacheSize));
+        props.put(PREFIX + "wmsCacheMaxAge", Integer.toString(wmsCacheMaxAge));
+        props.put(PREFIX + "wmsCacheDiskSize", Integer.toString(wmsCacheDiskSize));
         
         // settings for S52 layer
         props.put(PREFIX + "s52ShowText", Boolean.toString(s52ShowText));
@@ -190,6 +199,46 @@ public class MapSettings implements Serializable {
         this.wmsQuery = wmsQuery;
     }
 
+    /**
+     * Returns the size of the in-memory WMS tile cache in MB
+     * 
+     * @return the size of the in-memory WMS tile cache in MB
+     */
+    public int getWmsCacheSize() {
+        return wmsCacheSize;
+    }
+
+    public void setWmsCacheSize(int wmsCacheSize) {
+        this.wmsCacheSize = wmsCacheSize;
+    }
+
+    /**
+     * Returns the number of days a WMS tile is kept in the disk cache before being downloaded again
+     * 
+     * @return the maximum age of disk cached WMS tiles in days
+     */
+    public int getWmsCacheMaxAge() {
+        return wmsCacheMaxAge;
+    }
+
+    public void setWmsCacheMaxAge(int wmsCacheMaxAge) {
+        this.wmsCacheMaxAge = wmsCacheMaxAge;
+    }
+
+    /**
+     * Returns the maximum size of the WMS tile disk cache in MB. The least recently stored tiles are deleted when the
+     * disk cache grows larger.
+     * 
+     * @return the maximum size of the WMS tile disk cache in MB
+     */
+    public int getWmsCacheDiskSize() {
+        return wmsCacheDiskSize;
+    }
+
+    public void setWmsCacheDiskSize(int wmsCacheDiskSize) {
+        this.wmsCacheDiskSize = wmsCacheDiskSize;
+    }
+
     public int getS52ShallowContour() {
         return s52ShallowContour;
     }
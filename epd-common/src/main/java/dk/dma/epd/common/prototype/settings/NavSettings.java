@@ -41,6 +41,8 @@ public class NavSettings implements Serializable {
     private float routeWidth = 2.0f;
     private boolean dynamicPrediction;
     private boolean showXtd;
+    private boolean cpaMonitoring;
+    private String cpaArea = ""; // minLat,minLon,maxLat,maxLon
     
     public NavSettings() {
     }
@@ -60,6 +62,8 @@ public class NavSettings implements Serializable {
         routeWidth = (float)PropUtils.doubleFromProperties(props, PREFIX + "routeWidth", routeWidth);
         dynamicPrediction = PropUtils.booleanFromProperties(props, PREFIX + "dynamicPrediction", dynamicPrediction);
         showXtd = PropUtils.booleanFromProperties(props, PREFIX + "showXtd", showXtd);
+        cpaMonitoring = PropUtils.booleanFromProperties(props, PREFIX + "cpaMonitoring", cpaMonitoring);
+        cpaArea = props.getProperty(PREFIX + "cpaArea", cpaArea);
     }
     
     public void setProperties(Properties props) {
@@ -77,6 +81,8 @@ public class NavSettings implements Serializable {
         props.put(PREFIX + "routeWidth", Float.toString(routeWidth));
         props.put(PREFIX + "dynamicPrediction", Boolean.toString(dynamicPrediction));
         props.put(PREFIX + "showXtd", Boolean.toString(showXtd));        
+        props.put(PREFIX + "cpaMonitoring", Boolean.toString(cpaMonitoring));
+        props.put(PREFIX + "cpaArea", cpaArea);
     }
     
     public boolean isAutoFollow() {
@@ -186,5 +192,21 @@ public class NavSettings implements Serializable {
     public void setShowXtd(boolean showXtd) {
         this.showXtd = showXtd;
     }
+
+    public boolean isCpaMonitoring() {
+        return cpaMonitoring;
+    }
+
+    public void setCpaMonitoring(boolean cpaMonitoring) {
+        this.cpaMonitoring = cpaMonitoring;
+    }
+
+    public String getCpaArea() {
+        return cpaArea;
+    }
+
+    public void setCpaArea(String cpaArea) {
+        this.cpaArea = cpaArea;
+    }
     
 }
@@ -139,6 +139,10 @@ public class SensorSettings implements Serializable {
     private String aisFilename = "";
     private int aisTcpOrUdpPort = 4001;
     private int aisSerialPortBaudRate = 38400;
+    private int aisDecodeThreads; // 0 to decode on the reading thread
+    private int aisDecodeQueueSize = 10000;
+    private String aisFeeds = ""; // Comma separated host:port or udp:port feeds, overriding the connection type
+    private int aisFeedThreads = 1;
 
     private SensorConnectionType gpsConnectionType = SensorConnectionType.NONE;
     private String gpsHostOrSerialPort = "COM3";
@@ -192,6 +196,10 @@ public class SensorSettings implements Serializable {
         aisHostOrSerialPort = props.getProperty(PREFIX + "aisHostOrSerialPort", aisHostOrSerialPort);
         aisTcpOrUdpPort = PropUtils.intFromProperties(props, PREFIX + "aisTcpOrUdpPort", aisTcpOrUdpPort);
         aisSerialPortBaudRate = PropUtils.intFromProperties(props, PREFIX + "aisSerialPortBaudRate", aisSerialPortBaudRate);
+        aisDecodeThreads = PropUtils.intFromProperties(props, PREFIX + "aisDecodeThreads", aisDecodeThreads);
+        aisDecodeQueueSize = PropUtils.intFromProperties(props, PREFIX + "aisDecodeQueueSize", aisDecodeQueueSize);
+        aisFeeds = props.getProperty(PREFIX + "aisFeeds", aisFeeds);
+        aisFeedThreads = PropUtils.intFromProperties(props, PREFIX + "aisFeedThreads", aisFeedThreads);
         gpsConnectionType = SensorConnectionType.parseString(props.getProperty(PREFIX + "gpsConnectionType",
                 gpsConnectionType.name()));
         gpsHostOrSerialPort = props.getProperty(PREFIX + "gpsHostOrSerialPort", gpsHostOrSerialPort);
@@ -245,6 +253,10 @@ public class SensorSettings implements Serializable {
         props.put(PREFIX + "aisHostOrSerialPort", aisHostOrSerialPort);
         props.put(PREFIX + "aisTcpOrUdpPort", Integer.toString(aisTcpOrUdpPort));
         props.put(PREFIX + "aisSerialPortBaudRate", Integer.toString(aisSerialPortBaudRate));
+        props.put(PREFIX + "aisDecodeThreads", Integer.toString(aisDecodeThreads));
+        props.put(PREFIX + "aisDecodeQueueSize", Integer.toString(aisDecodeQueueSize));
+        props.put(PREFIX + "aisFeeds", aisFeeds);
+        props.put(PREFIX + "aisFeedThreads", Integer.toString(aisFeedThreads));
         props.put(PREFIX + "gpsConnectionType", gpsConnectionType.name());
         props.put(PREFIX + "gpsHostOrSerialPort", gpsHostOrSerialPort);
         props.put(PREFIX + "gpsTcpOrUdpPort", Integer.toString(gpsTcpOrUdpPort));
@@ -396,6 +408,38 @@ public class SensorSettings implements Serializable {
         this.startTransponder = startTransponder;
     }
 
+    public int getAisDecodeThreads() {
+        return aisDecodeThreads;
+    }
+
+    public void setAisDecodeThreads(int aisDecodeThreads) {
+        this.aisDecodeThreads = aisDecodeThreads;
+    }
+
+    public int getAisDecodeQueueSize() {
+        return aisDecodeQueueSize;
+    }
+
+    public void setAisDecodeQueueSize(int aisDecodeQueueSize) {
+        this.aisDecodeQueueSize = aisDecodeQueueSize;
+    }
+
+    public String getAisFeeds() {
+        return aisFeeds;
+    }
+
+    public void setAisFeeds(String aisFeeds) {
+        this.aisFeeds = aisFeeds;
+    }
+
+    public int getAisFeedThreads() {
+        return aisFeedThreads;
+    }
+
+    public void setAisFeedThreads(int aisFeedThreads) {
+        this.aisFeedThreads = aisFeedThreads;
+    }
+
     public double getAisSensorRange() {
         return aisSensorRange;
     }
@@ -262,7 +262,7 @@ public class ShoreServicesCommon extends MapHandlerChild implements IStatusCompo
     private ShoreServiceResponse makeRequest(String uri, String reqContextPath, String resContextPath, Object request)
             throws ShoreServiceException {
         // Create HTTP request
-        ShoreHttp shoreHttp = new ShoreHttp(uri, enavSettings);
+        ShoreHttp shoreHttp = new ShoreHttp(uri, enavSettings, true);
         // Init HTTP
         shoreHttp.init();
         // Set content
@@ -33,6 +33,7 @@ public class AisStatus extends ComponentStatus {
     private Boolean sendOk;
     private Status sendStatus = Status.UNKNOWN;
     private Status receiveStatus = Status.UNKNOWN;
+    private NmeaDecodeStatus decodeStatus;
     
     public AisStatus() {
         super("AIS");
@@ -102,6 +103,9 @@ public class AisStatus extends ComponentStatus {
         } else {
             buf.append("Last send: " + Formatter.formatLongDateTime(lastSent));
         }
+        if (decodeStatus != null) {
+            buf.append("<br/>" + decodeStatus.getStatusHtml());
+        }
         return buf.toString();
     }
     
@@ -117,4 +121,20 @@ public class AisStatus extends ComponentStatus {
         return lastSent;
     }
 
+    /**
+     * Returns the status of the NMEA decode pipeline of the AIS sensor, or null if not defined
+     * @return the status of the NMEA decode pipeline
+     */
+    public synchronized NmeaDecodeStatus getDecodeStatus() {
+        return decodeStatus;
+    }
+
+    /**
+     * Sets the status of the NMEA decode pipeline of the AIS sensor
+     * @param decodeStatus the status of the NMEA decode pipeline
+     */
+    public synchronized void setDecodeStatus(NmeaDecodeStatus decodeStatus) {
+        this.decodeStatus = decodeStatus;
+    }
+
 }
@@ -0,0 +1,115 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.status;
+
+import java.util.Date;
+
+import net.jcip.annotations.ThreadSafe;
+import dk.dma.epd.common.text.Formatter;
+
+/**
+ * Status of the NMEA read/decode/delivery pipeline of a sensor.
+ * <p>
+ * Latencies are exponential moving averages in milliseconds.
+ */
+@ThreadSafe
+public class NmeaDecodeStatus extends ComponentStatus {
+
+    private static final long DROP_INTERVAL = 30000; // 30 secs
+    private static final double ALPHA = 0.05;
+
+    private long readLines;
+    private long droppedLines;
+    private Date lastDropped;
+    private int queueDepth;
+    private int queueCapacity;
+    private double decodeLatency;
+    private double deliveryLatency;
+
+    public NmeaDecodeStatus() {
+        super("NMEA decoding");
+    }
+
+    public synchronized void markRead() {
+        readLines++;
+    }
+
+    public synchronized void markDropped() {
+        droppedLines++;
+        lastDropped = new Date();
+    }
+
+    public synchronized void setQueueDepth(int queueDepth, int queueCapacity) {
+        this.queueDepth = queueDepth;
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Registers the latencies of a delivered line
+     *
+     * @param decodeNanos
+     *            time from the line was read until it was decoded
+     * @param deliveryNanos
+     *            time from the line was decoded until it was delivered
+     */
+    public synchronized void markDelivered(long decodeNanos, long deliveryNanos) {
+        decodeLatency += ALPHA * (decodeNanos / 1e6 - decodeLatency);
+        deliveryLatency += ALPHA * (deliveryNanos / 1e6 - deliveryLatency);
+    }
+
+    @Override
+    public synchronized Status getStatus() {
+        boolean recentDrop = lastDropped != null && System.currentTimeMillis() - lastDropped.getTime() < DROP_INTERVAL;
+        status = recentDrop ? Status.PARTIAL : Status.OK;
+        shortStatusText = "Queue " + queueDepth + "/" + queueCapacity + " - Dropped " + droppedLines;
+        return status;
+    }
+
+    @Override
+    public synchronized String getStatusHtml() {
+        getStatus();
+        StringBuilder buf = new StringBuilder();
+        buf.append("Lines read: " + readLines + "<br/>");
+        buf.append("Lines dropped: " + droppedLines + "<br/>");
+        if (lastDropped != null) {
+            buf.append("Last dropped: " + Formatter.formatLongDateTime(lastDropped) + "<br/>");
+        }
+        buf.append("Queue depth: " + queueDepth + " / " + queueCapacity + "<br/>");
+        buf.append(String.format("Decode latency: %.1f ms<br/>", decodeLatency));
+        buf.append(String.format("Delivery latency: %.1f ms", deliveryLatency));
+        return buf.toString();
+    }
+
+    public synchronized long getReadLines() {
+        return readLines;
+    }
+
+    public synchronized long getDroppedLines() {
+        return droppedLines;
+    }
+
+    public synchronized int getQueueDepth() {
+        return queueDepth;
+    }
+
+    public synchronized double getDecodeLatency() {
+        return decodeLatency;
+    }
+
+    public synchronized double getDeliveryLatency() {
+        return deliveryLatency;
+    }
+
+}
@@ -93,6 +93,9 @@ public class VOCTManagerCommon extends MapHandlerChild implements Runnable,
         // System.out.println("SET SAR TYPE " + type);
         sarOperation = null;
         sarOperation = new SAROperation(type);
+        // Probabilistic drift mode, if enabled
+        sarOperation.setDriftParticles(EPD.getInstance().getSettings()
+                .getEnavSettings().getSarDriftParticles());
     }
 
     public SAR_TYPE getSarType() {
@@ -22,6 +22,18 @@ import dk.dma.epd.common.prototype.settings.AisSettings;
  * @author Janus Varmarken
  */
 public final class ScaleDependentValues {
+
+    /**
+     * The size of a screen pixel at scale 1:1, i.e. the standard 0.28 mm rendering pixel.
+     */
+    private static final double PIXEL_SIZE_METERS = 0.00028;
+
+    /**
+     * The smallest map scale of each polygon simplification level. The levels are at most a factor of 2.5 apart, so
+     * polygons are never drawn with much more detail than can be seen.
+     */
+    private static final float[] POLYGON_SIMPLIFICATION_SCALES = { 0f, 10000f, 25000f, 50000f, 100000f, 250000f,
+            500000f, 1000000f, 2000000f, 5000000f, 10000000f };
     
     /**
      * Get the length (in minutes) of the COG & speed vector based on map scale.
@@ -45,6 +57,49 @@ public final class ScaleDependentValues {
         return aisSettings.getCogVectorLengthMax();
     }
 
+    /**
+     * Get the number of polygon simplification levels.
+     * @return The number of polygon simplification levels.
+     */
+    public static int getPolygonSimplificationLevelCount() {
+        return POLYGON_SIMPLIFICATION_SCALES.length;
+    }
+
+    /**
+     * Get the polygon simplification level of a given map scale. Level 0 is the most detailed level.
+     * @param mapScale The map scale to base the level on.
+     * @return The polygon simplification level.
+     */
+    public static int getPolygonSimplificationLevel(float mapScale) {
+        for (int level = POLYGON_SIMPLIFICATION_SCALES.length - 1; level > 0; level--) {
+            if (mapScale >= POLYGON_SIMPLIFICATION_SCALES[level]) {
+                return level;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Get the tolerance (in meters) used for simplifying polygons drawn at a given simplification level.
+     * The tolerance is the size of a screen pixel at the smallest scale of the level,
+     * so the simplification is never visible. No simplification is done at the most detailed level.
+     * @param level The polygon simplification level, see {@linkplain #getPolygonSimplificationLevel(float)}.
+     * @return The polygon simplification tolerance in meters.
+     */
+    public static double getPolygonSimplificationLevelTolerance(int level) {
+        return getPolygonSimplificationTolerance(POLYGON_SIMPLIFICATION_SCALES[level]);
+    }
+
+    /**
+     * Get the tolerance (in meters) used for simplifying polygons drawn at a given map scale,
+     * i.e. the size of a screen pixel at the map scale.
+     * @param mapScale The map scale to base the tolerance on.
+     * @return The polygon simplification tolerance in meters.
+     */
+    public static double getPolygonSimplificationTolerance(float mapScale) {
+        return mapScale * PIXEL_SIZE_METERS;
+    }
+
     /**
      * Constructor is private as this class should not be instantiated.
      */
@@ -0,0 +1,199 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.util;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+
+import net.jcip.annotations.Immutable;
+
+/**
+ * Static R-tree over latitude/longitude bounding boxes.
+ * <p>
+ * The tree is bulk loaded using Sort-Tile-Recursive packing, so all nodes except the last one on each level are full
+ * and the boxes are kept in flat arrays per level. The items are identified by their index in the bounding box array
+ * given to the constructor, and a query sets the bits of the matching items, so callers can iterate the hits in the
+ * original order of the items.
+ * <p>
+ * The bounding boxes are stored as four consecutive values {@code minLat, minLon, maxLat, maxLon} per item, as in the
+ * leg bounding boxes of the {@linkplain dk.dma.epd.common.prototype.model.route.RouteGeometry}.
+ */
+@Immutable
+public final class BBoxRTree {
+
+    /** The maximum number of children of a node */
+    static final int NODE_CAPACITY = 16;
+
+    private final int size;
+
+    /** The item indices in the order of the leaf level */
+    private final int[] items;
+
+    /** The boxes of each level, starting with the leaf level and ending with the root */
+    private final double[][] levels;
+
+    /**
+     * Constructor
+     *
+     * @param bboxes
+     *            the bounding boxes of the items as {@code minLat, minLon, maxLat, maxLon} per item
+     */
+    public BBoxRTree(final double[] bboxes) {
+        if (bboxes.length % 4 != 0) {
+            throw new IllegalArgumentException("Bounding boxes must have four values each");
+        }
+        size = bboxes.length / 4;
+
+        // Sort the items into vertical slices by longitude, and each slice by latitude
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        int leaves = (size + NODE_CAPACITY - 1) / NODE_CAPACITY;
+        int sliceSize = (int) Math.ceil(Math.sqrt(leaves)) * NODE_CAPACITY;
+        Arrays.sort(order, new CenterComparator(bboxes, 1));
+        for (int from = 0; from < size; from += sliceSize) {
+            Arrays.sort(order, from, Math.min(size, from + sliceSize), new CenterComparator(bboxes, 0));
+        }
+
+        items = new int[size];
+        double[] leafLevel = new double[size * 4];
+        for (int i = 0; i < size; i++) {
+            items[i] = order[i];
+            System.arraycopy(bboxes, order[i] * 4, leafLevel, i * 4, 4);
+        }
+
+        // Group consecutive nodes into parents until a single root remains
+        int levelCount = 1;
+        for (int n = size; n > 1; n = (n + NODE_CAPACITY - 1) / NODE_CAPACITY) {
+            levelCount++;
+        }
+        levels = new double[levelCount][];
+        levels[0] = leafLevel;
+        for (int l = 1; l < levelCount; l++) {
+            double[] children = levels[l - 1];
+            int childCount = children.length / 4;
+            int nodeCount = (childCount + NODE_CAPACITY - 1) / NODE_CAPACITY;
+            double[] nodes = new double[nodeCount * 4];
+            for (int node = 0; node < nodeCount; node++) {
+                double minLat = Double.MAX_VALUE, minLon = Double.MAX_VALUE;
+                double maxLat = -Double.MAX_VALUE, maxLon = -Double.MAX_VALUE;
+                for (int c = node * NODE_CAPACITY; c < Math.min(childCount, (node + 1) * NODE_CAPACITY); c++) {
+                    minLat = Math.min(minLat, children[c * 4]);
+                    minLon = Math.min(minLon, children[c * 4 + 1]);
+                    maxLat = Math.max(maxLat, children[c * 4 + 2]);
+                    maxLon = Math.max(maxLon, children[c * 4 + 3]);
+                }
+                nodes[node * 4] = minLat;
+                nodes[node * 4 + 1] = minLon;
+                nodes[node * 4 + 2] = maxLat;
+                nodes[node * 4 + 3] = maxLon;
+            }
+            levels[l] = nodes;
+        }
+    }
+
+    /**
+     * Returns the number of indexed items
+     *
+     * @return the number of indexed items
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Sets the bits of the items whose bounding boxes intersect the given box
+     *
+     * @param minLat
+     *            the minimum latitude of the box
+     * @param minLon
+     *            the minimum longitude of the box
+     * @param maxLat
+     *            the maximum latitude of the box
+     * @param maxLon
+     *            the maximum longitude of the box
+     * @param result
+     *            the bit set to update with the indices of the matching items
+     */
+    public void query(double minLat, double minLon, double maxLat, double maxLon, BitSet result) {
+        if (size == 0) {
+            return;
+        }
+        // Depth first search with an explicit stack of (level, node) pairs
+        int[] stack = new int[2 * NODE_CAPACITY * levels.length];
+        int top = 0;
+        stack[top++] = levels.length - 1;
+        stack[top++] = 0;
+        while (top > 0) {
+            int node = stack[--top];
+            int level = stack[--top];
+            double[] boxes = levels[level];
+            if (boxes[node * 4] > maxLat || boxes[node * 4 + 2] < minLat || boxes[node * 4 + 1] > maxLon
+                    || boxes[node * 4 + 3] < minLon) {
+                continue;
+            }
+            if (level == 0) {
+                result.set(items[node]);
+                continue;
+            }
+            int childCount = levels[level - 1].length / 4;
+            for (int c = node * NODE_CAPACITY; c < Math.min(childCount, (node + 1) * NODE_CAPACITY); c++) {
+                stack[top++] = level - 1;
+                stack[top++] = c;
+            }
+        }
+    }
+
+    /**
+     * Returns the indices of the items whose bounding boxes intersect the given box
+     *
+     * @param minLat
+     *            the minimum latitude of the box
+     * @param minLon
+     *            the minimum longitude of the box
+     * @param maxLat
+     *            the maximum latitude of the box
+     * @param maxLon
+     *            the maximum longitude of the box
+     * @return the indices of the matching items
+     */
+    public BitSet query(double minLat, double minLon, double maxLat, double maxLon) {
+        BitSet result = new BitSet(size);
+        query(minLat, minLon, maxLat, maxLon, result);
+        return result;
+    }
+
+    /**
+     * Orders item indices by the center of their bounding boxes along one axis
+     */
+    private static final class CenterComparator implements Comparator<Integer> {
+        private final double[] bboxes;
+        private final int axis;
+
+        CenterComparator(double[] bboxes, int axis) {
+            this.bboxes = bboxes;
+            this.axis = axis;
+        }
+
+        @Override
+        public int compare(Integer i1, Integer i2) {
+            double c1 = bboxes[i1 * 4 + axis] + bboxes[i1 * 4 + axis + 2];
+            double c2 = bboxes[i2 * 4 + axis] + bboxes[i2 * 4 + axis + 2];
+            return Double.compare(c1, c2);
+        }
+    }
+}
@@ -0,0 +1,394 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.jcip.annotations.Immutable;
+import dk.dma.enav.model.geometry.Position;
+
+/**
+ * Closed form closest point of approach (CPA) calculations for vessels moving along time parameterised legs.
+ * <p>
+ * A {@linkplain Leg} is a straight movement from a start position at a start time to an end position at an end time.
+ * For each pair of legs overlapping in time, the movement is projected onto a local tangent plane centred between the
+ * legs, in which both vessels move with constant velocity, and the time of minimum distance is found analytically.
+ * The tangent plane approximation is accurate for the short distances relevant for CPA warnings, and the CPA
+ * distance itself is evaluated in a plane centred on the CPA positions.
+ */
+public final class CpaCalculator {
+
+    /** Mean earth radius in meters */
+    static final double EARTH_RADIUS = 6371008.8;
+
+    private CpaCalculator() {
+    }
+
+    /**
+     * Finds the closest point of approach of two legs within the given time interval
+     *
+     * @param leg1
+     *            the first leg
+     * @param leg2
+     *            the second leg
+     * @param from
+     *            the earliest time to consider in milliseconds
+     * @param to
+     *            the latest time to consider in milliseconds
+     * @return the CPA, or null if the legs do not overlap in time within the interval
+     */
+    public static Cpa findCpa(Leg leg1, Leg leg2, long from, long to) {
+        long start = Math.max(from, Math.max(leg1.startTime, leg2.startTime));
+        long end = Math.min(to, Math.min(leg1.endTime, leg2.endTime));
+        if (start > end) {
+            return null;
+        }
+
+        // Local tangent plane centred between the legs
+        double lat0 = (leg1.startLat + leg2.startLat) / 2.0;
+        double lon0 = leg1.startLon;
+        double cosLat0 = Math.cos(Math.toRadians(lat0));
+
+        // Positions at the start of the interval and relative velocity, in meters and meters/ms
+        double x1 = x(leg1.lonAt(start), lon0, cosLat0);
+        double y1 = y(leg1.latAt(start), lat0);
+        double x2 = x(leg2.lonAt(start), lon0, cosLat0);
+        double y2 = y(leg2.latAt(start), lat0);
+        double vx = velocityX(leg1, lon0, cosLat0) - velocityX(leg2, lon0, cosLat0);
+        double vy = velocityY(leg1, lat0) - velocityY(leg2, lat0);
+        double px = x1 - x2;
+        double py = y1 - y2;
+
+        // Minimise |p + v t| for t in [0, end - start]
+        double vv = vx * vx + vy * vy;
+        double t = vv > 0.0 ? -(px * vx + py * vy) / vv : 0.0;
+        t = Math.max(0.0, Math.min(end - start, t));
+
+        // The distance is evaluated in a plane centred on the CPA positions
+        long time = start + Math.round(t);
+        double lat1 = leg1.latAt(time);
+        double lat2 = leg2.latAt(time);
+        double dx = x(leg1.lonAt(time), leg2.lonAt(time), Math.cos(Math.toRadians((lat1 + lat2) / 2.0)));
+        double dy = y(lat1, lat2);
+        return new Cpa(leg1, leg2, time, Math.sqrt(dx * dx + dy * dy));
+    }
+
+    /**
+     * Finds the closest point of approach of each pair of legs overlapping in time, for which the distance is within
+     * the given maximum distance.
+     * <p>
+     * The legs of each list must be ordered by time and must not overlap in time, as is the case for the legs of a
+     * route.
+     *
+     * @param legs1
+     *            the legs of the first vessel
+     * @param legs2
+     *            the legs of the second vessel
+     * @param from
+     *            the earliest time to consider in milliseconds
+     * @param to
+     *            the latest time to consider in milliseconds
+     * @param maxDistance
+     *            the maximum CPA distance in meters
+     * @return the CPA's within the maximum distance, ordered by time
+     */
+    public static List<Cpa> findCpas(List<Leg> legs1, List<Leg> legs2, long from, long to, double maxDistance) {
+        List<Cpa> result = new ArrayList<>();
+        int i = 0, j = 0;
+        while (i < legs1.size() && j < legs2.size()) {
+            Leg leg1 = legs1.get(i);
+            Leg leg2 = legs2.get(j);
+            Cpa cpa = findCpa(leg1, leg2, from, to);
+            if (cpa != null && cpa.distance <= maxDistance) {
+                result.add(cpa);
+            }
+            // Advance the leg that ends first
+            if (leg1.endTime < leg2.endTime) {
+                i++;
+            } else if (leg2.endTime < leg1.endTime) {
+                j++;
+            } else {
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds a great circle movement to the given list of legs, split into legs of at most the given length, so that the
+     * straight legs stay close to the great circle
+     *
+     * @param legs
+     *            the list to add the legs to
+     * @param index
+     *            the index of the legs, e.g. the index of the start way point in a route
+     * @param start
+     *            the start position
+     * @param startTime
+     *            the start time in milliseconds
+     * @param end
+     *            the end position
+     * @param endTime
+     *            the end time in milliseconds
+     * @param length
+     *            the great circle distance between the start and end positions in nautical miles
+     * @param maxLength
+     *            the maximum length of each leg in nautical miles
+     */
+    public static void addGreatCircleLegs(List<Leg> legs, int index, Position start, long startTime, Position end,
+            long endTime, double length, double maxLength) {
+        int segments = Math.max(1, (int) Math.ceil(length / maxLength));
+        Position segmentStart = start;
+        long segmentStartTime = startTime;
+        for (int i = 1; i <= segments; i++) {
+            Position segmentEnd = (i == segments) ? end : Calculator.findPosition(start, end,
+                    Converter.nmToMeters(length * i / segments));
+            long segmentEndTime = startTime + (endTime - startTime) * i / segments;
+            legs.add(new Leg(index, segmentStart, segmentStartTime, segmentEnd, segmentEndTime));
+            segmentStart = segmentEnd;
+            segmentStartTime = segmentEndTime;
+        }
+    }
+
+    /**
+     * Finds the closest point of approach of two vessels moving with constant speed and course, within the given time
+     * horizon. The vessels are projected onto a local tangent plane centred on the second vessel.
+     * <p>
+     * This variant does not allocate any objects, for use when many pairs of vessels are checked.
+     *
+     * @param lat1
+     *            the latitude of the first vessel
+     * @param lon1
+     *            the longitude of the first vessel
+     * @param sog1
+     *            the speed over ground of the first vessel in knots
+     * @param cog1
+     *            the course over ground of the first vessel in degrees
+     * @param lat2
+     *            the latitude of the second vessel
+     * @param lon2
+     *            the longitude of the second vessel
+     * @param sog2
+     *            the speed over ground of the second vessel in knots
+     * @param cog2
+     *            the course over ground of the second vessel in degrees
+     * @param horizon
+     *            the latest time to consider in milliseconds from now
+     * @param result
+     *            receives the time to the CPA in milliseconds at index 0, and the CPA distance in meters at index 1
+     */
+    public static void findCpa(double lat1, double lon1, double sog1, double cog1, double lat2, double lon2,
+            double sog2, double cog2, long horizon, double[] result) {
+        double cosLat0 = Math.cos(Math.toRadians(lat2));
+        double px = x(lon1, lon2, cosLat0);
+        double py = y(lat1, lat2);
+
+        // Relative velocity in meters/ms
+        double s1 = sog1 * 1852.0 / 3600000.0;
+        double s2 = sog2 * 1852.0 / 3600000.0;
+        double c1 = Math.toRadians(cog1);
+        double c2 = Math.toRadians(cog2);
+        double vx = s1 * Math.sin(c1) - s2 * Math.sin(c2);
+        double vy = s1 * Math.cos(c1) - s2 * Math.cos(c2);
+
+        // Minimise |p + v t| for t in [0, horizon]
+        double vv = vx * vx + vy * vy;
+        double t = vv > 0.0 ? -(px * vx + py * vy) / vv : 0.0;
+        t = Math.max(0.0, Math.min(horizon, t));
+        // The east-west distance is scaled to the mean latitude at the CPA
+        double latCpa = (lat1 + lat2) / 2.0
+                + Math.toDegrees((s1 * Math.cos(c1) + s2 * Math.cos(c2)) / 2.0 * t / EARTH_RADIUS);
+        double dx = (px + vx * t) * Math.cos(Math.toRadians(latCpa)) / cosLat0;
+        double dy = py + vy * t;
+        result[0] = t;
+        result[1] = Math.sqrt(dx * dx + dy * dy);
+    }
+
+    private static double x(double lon, double lon0, double cosLat0) {
+        double dLon = lon - lon0;
+        if (dLon > 180.0) {
+            dLon -= 360.0;
+        } else if (dLon < -180.0) {
+            dLon += 360.0;
+        }
+        return Math.toRadians(dLon) * cosLat0 * EARTH_RADIUS;
+    }
+
+    private static double y(double lat, double lat0) {
+        return Math.toRadians(lat - lat0) * EARTH_RADIUS;
+    }
+
+    private static double velocityX(Leg leg, double lon0, double cosLat0) {
+        if (leg.endTime == leg.startTime) {
+            return 0.0;
+        }
+        double dx = x(leg.endLon, lon0, cosLat0) - x(leg.startLon, lon0, cosLat0);
+        return dx / (leg.endTime - leg.startTime);
+    }
+
+    private static double velocityY(Leg leg, double lat0) {
+        if (leg.endTime == leg.startTime) {
+            return 0.0;
+        }
+        return (y(leg.endLat, lat0) - y(leg.startLat, lat0)) / (leg.endTime - leg.startTime);
+    }
+
+    /**
+     * A straight movement from a start position at a start time to an end position at an end time
+     */
+    @Immutable
+    public static final class Leg {
+        final int index;
+        final long startTime;
+        final long endTime;
+        final double startLat;
+        final double startLon;
+        final double endLat;
+        final double endLon;
+
+        /**
+         * Constructor
+         *
+         * @param index
+         *            the index of the leg, e.g. the index of the start way point in a route
+         * @param start
+         *            the start position
+         * @param startTime
+         *            the start time in milliseconds
+         * @param end
+         *            the end position
+         * @param endTime
+         *            the end time in milliseconds
+         */
+        public Leg(int index, Position start, long startTime, Position end, long endTime) {
+            this.index = index;
+            this.startTime = startTime;
+            this.endTime = Math.max(startTime, endTime);
+            this.startLat = start.getLatitude();
+            this.startLon = start.getLongitude();
+            this.endLat = end.getLatitude();
+            this.endLon = end.getLongitude();
+        }
+
+        /**
+         * Returns the position on the leg at the given time
+         *
+         * @param time
+         *            the time in milliseconds
+         * @return the position on the leg
+         */
+        public Position getPosition(long time) {
+            return Position.create(latAt(time), lonAt(time));
+        }
+
+        double latAt(long time) {
+            return startLat + (endLat - startLat) * fraction(time);
+        }
+
+        double lonAt(long time) {
+            double dLon = endLon - startLon;
+            if (dLon > 180.0) {
+                dLon -= 360.0;
+            } else if (dLon < -180.0) {
+                dLon += 360.0;
+            }
+            double lon = startLon + dLon * fraction(time);
+            return lon > 180.0 ? lon - 360.0 : lon < -180.0 ? lon + 360.0 : lon;
+        }
+
+        private double fraction(long time) {
+            if (endTime == startTime) {
+                return 0.0;
+            }
+            return Math.max(0.0, Math.min(1.0, (double) (time - startTime) / (endTime - startTime)));
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public long getStartTime() {
+            return startTime;
+        }
+
+        public long getEndTime() {
+            return endTime;
+        }
+    }
+
+    /**
+     * The closest point of approach of two legs
+     */
+    @Immutable
+    public static final class Cpa {
+        final Leg leg1;
+        final Leg leg2;
+        final long time;
+        final double distance;
+
+        Cpa(Leg leg1, Leg leg2, long time, double distance) {
+            this.leg1 = leg1;
+            this.leg2 = leg2;
+            this.time = time;
+            this.distance = distance;
+        }
+
+        /**
+         * Returns the time of the CPA in milliseconds
+         *
+         * @return the time of the CPA
+         */
+        public long getTime() {
+            return time;
+        }
+
+        /**
+         * Returns the CPA distance in meters
+         *
+         * @return the CPA distance in meters
+         */
+        public double getDistance() {
+            return distance;
+        }
+
+        public Leg getLeg1() {
+            return leg1;
+        }
+
+        public Leg getLeg2() {
+            return leg2;
+        }
+
+        /**
+         * Returns the position of the first vessel at the CPA
+         *
+         * @return the position of the first vessel at the CPA
+         */
+        public Position getPosition1() {
+            return leg1.getPosition(time);
+        }
+
+        /**
+         * Returns the position of the second vessel at the CPA
+         *
+         * @return the position of the second vessel at the CPA
+         */
+        public Position getPosition2() {
+            return leg2.getPosition(time);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.util;
+
+import java.util.Arrays;
+
+/**
+ * Douglas-Peucker simplification of polygons and polylines used for drawing them at small map scales.
+ * <p>
+ * The points are mapped to a local equirectangular plane in meters around the mean latitude, which is accurate enough
+ * for tolerances in the order of a screen pixel. The ranges still to be split are kept on an explicit work stack, so
+ * long coastlines do not overflow the call stack.
+ */
+public final class PolygonSimplifier {
+
+    private static final double METERS_PER_DEGREE = 60.0 * 1852.0;
+
+    /**
+     * Returns the points to keep when simplifying the given polygon or polyline.
+     * <p>
+     * A closed ring is given without repeating the first point. It is split at the point farthest from the first point,
+     * so at least three points are kept of a ring with three or more points.
+     *
+     * @param lats
+     *            the latitudes of the points
+     * @param lons
+     *            the longitudes of the points
+     * @param toleranceMeters
+     *            the maximum distance of a dropped point from the simplified outline
+     * @param ring
+     *            whether the points form a closed ring
+     * @return the flags of the points to keep
+     */
+    public static boolean[] simplify(double[] lats, double[] lons, double toleranceMeters, boolean ring) {
+        int n = lats.length;
+        boolean[] keep = new boolean[n];
+        if (n <= 2 || toleranceMeters <= 0.0) {
+            Arrays.fill(keep, true);
+            return keep;
+        }
+
+        // Map the points to a local plane in meters
+        double meanLat = 0.0;
+        for (double lat : lats) {
+            meanLat += lat;
+        }
+        double cos = Math.cos(Math.toRadians(meanLat / n));
+        double[] x = new double[n];
+        double[] y = new double[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = lons[i] * cos * METERS_PER_DEGREE;
+            y[i] = lats[i] * METERS_PER_DEGREE;
+        }
+
+        int[] stack = new int[64];
+        int top = 0;
+        keep[0] = true;
+        keep[n - 1] = true;
+        if (ring) {
+            int farthest = 0;
+            double maxDist = -1.0;
+            for (int i = 1; i < n; i++) {
+                double dist = (x[i] - x[0]) * (x[i] - x[0]) + (y[i] - y[0]) * (y[i] - y[0]);
+                if (dist > maxDist) {
+                    maxDist = dist;
+                    farthest = i;
+                }
+            }
+            keep[farthest] = true;
+            stack[top++] = 0;
+            stack[top++] = farthest;
+            stack[top++] = farthest;
+            stack[top++] = n - 1;
+        } else {
+            stack[top++] = 0;
+            stack[top++] = n - 1;
+        }
+
+        double toleranceSq = toleranceMeters * toleranceMeters;
+        while (top > 0) {
+            int end = stack[--top];
+            int start = stack[--top];
+            if (end - start < 2) {
+                continue;
+            }
+            int split = -1;
+            double maxDistSq = toleranceSq;
+            for (int i = start + 1; i < end; i++) {
+                double distSq = segmentDistanceSq(x[i], y[i], x[start], y[start], x[end], y[end]);
+                if (distSq > maxDistSq) {
+                    maxDistSq = distSq;
+                    split = i;
+                }
+            }
+            if (split < 0) {
+                continue;
+            }
+            keep[split] = true;
+            if (top + 4 > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+            stack[top++] = start;
+            stack[top++] = split;
+            stack[top++] = split;
+            stack[top++] = end;
+        }
+        return keep;
+    }
+
+    /**
+     * Returns the squared distance from the point to the segment
+     */
+    private static double segmentDistanceSq(double px, double py, double x1, double y1, double x2, double y2) {
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+        double lengthSq = dx * dx + dy * dy;
+        double f = (lengthSq > 0.0) ? ((px - x1) * dx + (py - y1) * dy) / lengthSq : 0.0;
+        f = Math.min(1.0, Math.max(0.0, f));
+        double ex = px - (x1 + f * dx);
+        double ey = py - (y1 + f * dy);
+        return ex * ex + ey * ey;
+    }
+
+    /**
+     * Constructor is private as this class should not be instantiated.
+     */
+    private PolygonSimplifier() {
+    }
+}
@@ -0,0 +1,111 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.ais;
+
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import dk.dma.enav.model.geometry.Position;
+import dk.dma.epd.common.prototype.ais.AisCpaEngine.Mode;
+
+/**
+ * Measures the time of an {@linkplain AisCpaEngine} tick in {@linkplain Mode#ALL_PAIRS} mode with 10,000 targets
+ * spread over the Danish waters, to verify that the engine keeps up with a 1 Hz tick.
+ * <p>
+ * Each tick, the given fraction of the targets report a new position, corresponding to the mix of class A and B report
+ * intervals, whereas a fraction of 1 has every target recomputed. The average tick time must stay well below a second.
+ * Run with:
+ *
+ * <pre>
+ * java -cp ... dk.dma.epd.common.prototype.ais.AisCpaEngineBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(org.openjdk.jmh.annotations.Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class AisCpaEngineBenchmark {
+
+    @Param({ "10000" })
+    private int targets;
+
+    @Param({ "0.2", "1.0" })
+    private double updatedFraction;
+
+    private AisCpaEngine engine;
+    private VesselTarget[] vessels;
+    private Random random;
+    private long now = 1400000000000L;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        random = new Random(42L);
+        engine = new AisCpaEngine(null, Mode.ALL_PAIRS) {
+            @Override
+            protected void alert(AisCpa cpa, long time) {
+            }
+        };
+        vessels = new VesselTarget[targets];
+        for (int i = 0; i < targets; i++) {
+            VesselTarget target = new VesselTarget();
+            target.setMmsi(219000000L + i);
+            target.setStatus(AisTarget.Status.OK);
+            VesselPositionData positionData = new VesselPositionData();
+            positionData.setPos(Position.create(54.5 + random.nextDouble() * 3.5, 8.0 + random.nextDouble() * 7.0));
+            positionData.setSog(random.nextFloat() * 20f);
+            positionData.setCog(random.nextFloat() * 360f);
+            target.setPositionData(positionData);
+            target.setLastReceived(new Date(now));
+            vessels[i] = target;
+            engine.targetUpdated(target);
+        }
+        engine.tick(now);
+    }
+
+    @Benchmark
+    public void tick() {
+        now += 1000L;
+        int updates = (int) (targets * updatedFraction);
+        Date lastReceived = new Date(now);
+        for (int i = 0; i < updates; i++) {
+            VesselTarget target = vessels[random.nextInt(targets)];
+            target.setLastReceived(lastReceived);
+            engine.targetUpdated(target);
+        }
+        engine.tick(now);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(AisCpaEngineBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,226 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.ais;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import dk.dma.enav.model.geometry.Position;
+import dk.dma.epd.common.prototype.ais.AisCpaEngine.Mode;
+
+/**
+ * Tests of the {@linkplain AisCpaEngine}
+ */
+public class AisCpaEngineTest {
+
+    private static final double LAT = 56.0;
+    private static final double LON = 11.0;
+
+    /** One nautical mile east at {@linkplain #LAT} in degrees */
+    private static final double NM_LON = 1.0 / 60.0 / Math.cos(Math.toRadians(LAT));
+
+    private long now = 1400000000000L;
+    private List<AisCpa> alerts;
+    private AisCpaEngine engine;
+
+    @Before
+    public void setUp() {
+        alerts = new ArrayList<>();
+        engine = new AisCpaEngine(null, Mode.ALL_PAIRS) {
+            @Override
+            protected void alert(AisCpa cpa, long time) {
+                alerts.add(cpa);
+            }
+        };
+    }
+
+    private VesselTarget target(long mmsi, double lat, double lon, float sog, float cog) {
+        VesselTarget target = new VesselTarget();
+        target.setMmsi(mmsi);
+        VesselPositionData positionData = new VesselPositionData();
+        positionData.setPos(Position.create(lat, lon));
+        positionData.setSog(sog);
+        positionData.setCog(cog);
+        target.setPositionData(positionData);
+        target.setStatus(AisTarget.Status.OK);
+        target.setLastReceived(new Date(now));
+        return target;
+    }
+
+    private AisCpa find(long mmsi1, long mmsi2) {
+        for (AisCpa cpa : engine.getCpas()) {
+            if (cpa.getMmsi1() == mmsi1 && cpa.getMmsi2() == mmsi2) {
+                return cpa;
+            }
+        }
+        return null;
+    }
+
+    private void tick(long millis) {
+        now += millis;
+        engine.tick(now);
+    }
+
+    @Test
+    public void testHeadOn() {
+        // Two vessels 1 nm apart on opposite courses at 10 knots meet in 3 minutes
+        engine.targetUpdated(target(1, LAT, LON, 10f, 90f));
+        engine.targetUpdated(target(2, LAT, LON + NM_LON, 10f, 270f));
+        tick(0);
+
+        AisCpa cpa = find(1, 2);
+        assertEquals(1, engine.getCpas().size());
+        assertEquals(now + 3 * 60 * 1000L, cpa.getTime(), 1000.0);
+        assertEquals(0.0, cpa.getDistance(), 5.0);
+        assertEquals(20.0, cpa.getRelativeSpeed(), 0.01);
+        assertEquals(1, alerts.size());
+    }
+
+    @Test
+    public void testIncrementalRecompute() {
+        VesselTarget target1 = target(1, LAT, LON, 10f, 90f);
+        engine.targetUpdated(target1);
+        engine.targetUpdated(target(2, LAT, LON + NM_LON, 10f, 270f));
+        engine.targetUpdated(target(3, LAT + 1.0, LON, 10f, 90f));
+        engine.targetUpdated(target(4, LAT + 1.0, LON + NM_LON, 10f, 270f));
+        tick(0);
+        AisCpa cpa12 = find(1, 2);
+        AisCpa cpa34 = find(3, 4);
+        assertEquals(2, engine.getCpas().size());
+
+        // Only the pairs of the updated target are recomputed
+        tick(10000L);
+        engine.targetUpdated(target(1, LAT, LON + NM_LON / 36.0, 10f, 90f));
+        tick(0);
+        assertNotSame(cpa12, find(1, 2));
+        assertSame(cpa34, find(3, 4));
+        assertEquals(cpa12.getTime(), find(1, 2).getTime(), 1000.0);
+
+        // A target turning away drops the pair
+        engine.targetUpdated(target(2, LAT, LON + 1.5 * NM_LON, 10f, 0f));
+        engine.targetUpdated(target(1, LAT, LON, 10f, 180f));
+        tick(1000L);
+        assertEquals(null, find(1, 2));
+        assertSame(cpa34, find(3, 4));
+    }
+
+    @Test
+    public void testRemoval() {
+        engine.setArea(LAT - 2.0, LON - 2.0, LAT + 2.0, LON + 2.0);
+        engine.targetUpdated(target(1, LAT, LON, 10f, 90f));
+        VesselTarget target2 = target(2, LAT, LON + NM_LON, 10f, 270f);
+        engine.targetUpdated(target2);
+        engine.targetUpdated(target(3, LAT + 1.0, LON, 10f, 90f));
+        engine.targetUpdated(target(4, LAT + 1.0, LON + NM_LON, 10f, 270f));
+        tick(0);
+        assertEquals(2, engine.getCpas().size());
+
+        // Gone target
+        target2.setStatus(AisTarget.Status.GONE);
+        engine.targetUpdated(target2);
+        tick(1000L);
+        assertEquals(null, find(1, 2));
+
+        // Target leaving the area
+        engine.setArea(LAT - 2.0, LON - 2.0, LAT + 0.5, LON + 2.0);
+        engine.targetUpdated(target(4, LAT + 1.0, LON + NM_LON, 10f, 270f));
+        tick(1000L);
+        assertEquals(null, find(3, 4));
+        assertTrue(engine.getCpas().isEmpty());
+
+        // The removed targets are not matched against new targets
+        engine.targetUpdated(target(5, LAT, LON + NM_LON, 10f, 270f));
+        tick(1000L);
+        assertEquals(null, find(2, 5));
+        assertTrue(find(1, 5) != null);
+        assertEquals(1, engine.getCpas().size());
+    }
+
+    @Test
+    public void testAlertRearm() {
+        engine.targetUpdated(target(1, LAT, LON, 10f, 90f));
+        engine.targetUpdated(target(2, LAT, LON + NM_LON, 10f, 270f));
+        tick(0);
+        assertEquals(1, alerts.size());
+
+        // Still closing: no new alert
+        tick(1000L);
+        engine.targetUpdated(target(2, LAT, LON + NM_LON - NM_LON / 360.0, 10f, 270f));
+        tick(0);
+        assertEquals(1, alerts.size());
+
+        // Turning parallel leaves the alert zone
+        engine.targetUpdated(target(2, LAT, LON + NM_LON, 10f, 90f));
+        tick(1000L);
+        assertEquals(1, alerts.size());
+
+        // Turning back alerts again
+        engine.targetUpdated(target(2, LAT, LON + NM_LON, 10f, 270f));
+        tick(1000L);
+        assertEquals(2, alerts.size());
+    }
+
+    @Test
+    public void testStationary() {
+        // Vessels lying still next to each other are tracked but never alerted
+        engine.targetUpdated(target(1, LAT, LON, 0f, 90f));
+        engine.targetUpdated(target(2, LAT, LON + NM_LON / 10.0, 0.1f, 270f));
+        tick(0);
+        assertEquals(1, engine.getCpas().size());
+        tick(180000L);
+        engine.targetUpdated(target(1, LAT, LON, 0f, 90f));
+        engine.targetUpdated(target(2, LAT, LON + NM_LON / 10.0, 0.1f, 270f));
+        tick(0);
+        assertTrue(alerts.isEmpty());
+
+        // A moored vessel reporting speed is not alerted either
+        VesselTarget moored = target(3, LAT + 1.0, LON, 5f, 90f);
+        moored.getPositionData().setNavStatus(5);
+        engine.targetUpdated(moored);
+        engine.targetUpdated(target(4, LAT + 1.0, LON + NM_LON, 10f, 270f));
+        tick(1000L);
+        assertTrue(find(3, 4) != null);
+        assertTrue(alerts.isEmpty());
+    }
+
+    @Test
+    public void testOwnShip() {
+        engine = new AisCpaEngine(null, Mode.OWN_SHIP) {
+            @Override
+            protected void alert(AisCpa cpa, long time) {
+                alerts.add(cpa);
+            }
+        };
+        engine.updateOwnShip(target(219000000L, LAT, LON, 10f, 90f));
+        engine.targetUpdated(target(2, LAT, LON + NM_LON, 10f, 270f));
+        engine.targetUpdated(target(3, LAT, LON + 1.5 * NM_LON, 10f, 270f));
+        tick(0);
+
+        // Only own ship pairs, with the own ship first
+        assertEquals(2, engine.getCpas().size());
+        assertTrue(find(AisCpaEngine.OWN_SHIP, 2) != null);
+        assertTrue(find(AisCpaEngine.OWN_SHIP, 3) != null);
+        assertEquals(2, alerts.size());
+    }
+}
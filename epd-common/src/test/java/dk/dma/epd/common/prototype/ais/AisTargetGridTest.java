@@ -0,0 +1,192 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.ais;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+import dk.dma.enav.model.geometry.Position;
+
+/**
+ * Tests of the {@linkplain AisTargetGrid}
+ */
+public class AisTargetGridTest {
+
+    @Test
+    public void testUpdateAndRemove() {
+        AisTargetGrid grid = new AisTargetGrid(1.0);
+        grid.update(1L, Position.create(55.5, 11.5));
+        grid.update(2L, Position.create(55.5, 11.6));
+        assertEquals(2, grid.size());
+        assertEquals(1, grid.getCellCount());
+        assertEquals(set(1L, 2L), set(grid.query(55.0, 11.0, 56.0, 12.0)));
+
+        // Moving a target removes it from the old cell
+        grid.update(1L, Position.create(57.5, 11.5));
+        assertEquals(55.5, grid.getPosition(2L).getLatitude(), 0.0);
+        assertEquals(57.5, grid.getPosition(1L).getLatitude(), 0.0);
+        assertEquals(set(2L), set(grid.query(55.0, 11.0, 56.0, 12.0)));
+        assertEquals(Arrays.asList(1L), grid.query(57.0, 11.0, 58.0, 12.0));
+
+        // A null position removes the target
+        grid.update(1L, null);
+        assertNull(grid.getPosition(1L));
+        assertTrue(grid.query(57.0, 11.0, 58.0, 12.0).isEmpty());
+
+        grid.remove(2L);
+        assertEquals(0, grid.size());
+        assertTrue(grid.query(-90.0, -180.0, 90.0, 180.0).isEmpty());
+
+        grid.update(3L, Position.create(55.5, 11.5));
+        grid.clear();
+        assertEquals(0, grid.size());
+        assertEquals(0, grid.getCellCount());
+    }
+
+    @Test
+    public void testEdgeCells() {
+        AisTargetGrid grid = new AisTargetGrid(1.0);
+        // Inside the box, in an interior cell
+        grid.update(1L, Position.create(55.5, 11.5));
+        // Inside the box, in edge cells
+        grid.update(2L, Position.create(54.3, 10.3));
+        grid.update(3L, Position.create(56.7, 12.7));
+        // Outside the box, in edge cells
+        grid.update(4L, Position.create(54.1, 11.5));
+        grid.update(5L, Position.create(55.5, 12.9));
+        // Outside the box and its cells
+        grid.update(6L, Position.create(53.5, 11.5));
+
+        assertEquals(set(1L, 2L, 3L), set(grid.query(54.2, 10.2, 56.8, 12.8)));
+    }
+
+    @Test
+    public void testDateLine() {
+        AisTargetGrid grid = new AisTargetGrid(1.0);
+        grid.update(1L, Position.create(10.5, 179.5));
+        grid.update(2L, Position.create(10.5, -179.5));
+        grid.update(3L, Position.create(10.5, 180.0));
+        grid.update(4L, Position.create(10.5, 0.0));
+        grid.update(5L, Position.create(10.5, 178.5));
+
+        assertEquals(set(1L, 2L, 3L), set(grid.query(10.0, 179.0, 11.0, -179.0)));
+        // Longitudes outside [-180, 180] are wrapped
+        assertEquals(set(1L, 2L, 3L), set(grid.query(10.0, 179.0, 11.0, 181.0)));
+        assertEquals(set(1L, 2L, 3L), set(grid.query(10.0, -181.0, 11.0, -179.0)));
+        // ... and a box spanning all longitudes finds everything
+        assertEquals(set(1L, 2L, 3L, 4L, 5L), set(grid.query(10.0, -190.0, 11.0, 190.0)));
+
+        // Radius queries across the date line
+        assertEquals(set(1L, 2L, 3L), set(grid.queryRadius(Position.create(10.5, 180.0), 60000.0)));
+        assertEquals(set(1L, 5L), set(grid.queryRadius(Position.create(10.5, 179.0), 60000.0)));
+    }
+
+    @Test
+    public void testPoles() {
+        AisTargetGrid grid = new AisTargetGrid(1.0);
+        grid.update(1L, Position.create(90.0, 0.0));
+        grid.update(2L, Position.create(89.95, 180.0));
+        grid.update(3L, Position.create(89.5, 0.0));
+        grid.update(4L, Position.create(-90.0, 0.0));
+        grid.update(5L, Position.create(-89.95, 90.0));
+
+        assertEquals(set(1L, 2L, 3L), set(grid.query(89.0, -180.0, 90.0, 180.0)));
+        assertEquals(set(4L, 5L), set(grid.query(-90.0, -180.0, -89.0, 180.0)));
+
+        // A radius query close to a pole covers all longitudes
+        assertEquals(set(1L, 2L), set(grid.queryRadius(Position.create(89.95, 0.0), 20000.0)));
+        assertEquals(set(4L, 5L), set(grid.queryRadius(Position.create(-90.0, 0.0), 10000.0)));
+    }
+
+    @Test
+    public void testQueryRadius() {
+        AisTargetGrid grid = new AisTargetGrid(0.25);
+        Position center = Position.create(55.0, 11.0);
+        // 1 and 3 nautical miles north, 1 nautical mile west
+        grid.update(1L, Position.create(55.0 + 1.0 / 60.0, 11.0));
+        grid.update(2L, Position.create(55.0 + 3.0 / 60.0, 11.0));
+        grid.update(3L, Position.create(55.0, 11.0 - 1.0 / 60.0 / Math.cos(Math.toRadians(55.0))));
+
+        assertEquals(set(1L, 3L), set(grid.queryRadius(center, 2 * 1852.0)));
+        assertEquals(set(1L, 2L, 3L), set(grid.queryRadius(center, 4 * 1852.0)));
+        assertTrue(grid.queryRadius(center, 0.5 * 1852.0).isEmpty());
+    }
+
+    @Test
+    public void testConcurrentUpdates() throws InterruptedException {
+        final AisTargetGrid grid = new AisTargetGrid(1.0);
+        final int targets = 50;
+        final int threads = 4;
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final Random random = new Random(t);
+            Thread worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < 20000; i++) {
+                        long mmsi = random.nextInt(targets);
+                        if (random.nextInt(10) == 0) {
+                            grid.remove(mmsi);
+                        } else {
+                            grid.update(mmsi, Position.create(random.nextDouble() * 4.0, random.nextDouble() * 4.0));
+                        }
+                    }
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        // Each indexed target is found exactly once, in the cell of its position
+        List<Long> all = grid.query(-90.0, -180.0, 90.0, 180.0);
+        assertEquals(grid.size(), all.size());
+        assertEquals(all.size(), set(all).size());
+        for (Long mmsi : all) {
+            Position pos = grid.getPosition(mmsi);
+            double lat = Math.floor(pos.getLatitude());
+            double lon = Math.floor(pos.getLongitude());
+            assertTrue(grid.query(lat, lon, lat + 0.999, lon + 0.999).contains(mmsi));
+        }
+    }
+
+    private static Set<Long> set(Long... mmsi) {
+        return new HashSet<>(Arrays.asList(mmsi));
+    }
+
+    private static Set<Long> set(List<Long> mmsi) {
+        return new HashSet<>(mmsi);
+    }
+}
@@ -0,0 +1,200 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.ais;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import dk.dma.ais.message.ShipTypeCargo;
+import dk.dma.enav.model.geometry.Position;
+
+/**
+ * Round trip tests of the {@linkplain AisViewSnapshot} format
+ */
+public class AisViewSnapshotTest {
+
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = Files.createTempFile("aisview", ".bin");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        Date now = new Date();
+        VesselTarget vessel = new VesselTarget();
+        vessel.setMmsi(219000001L);
+        vessel.setLastReceived(now);
+        vessel.setAisClass(VesselTarget.AisClass.A);
+        vessel.setShowIntendedRoute(true);
+
+        VesselPositionData pos = new VesselPositionData();
+        pos.setPos(Position.create(55.6761, 12.5683));
+        pos.setNavStatus(5);
+        pos.setSog(12.3f);
+        pos.setCog(271.5f);
+        pos.setTrueHeading(270f);
+        pos.setRot(-2.5f);
+        pos.setPosAcc(1);
+        vessel.setPositionData(pos);
+
+        VesselStaticData stat = new VesselStaticData();
+        stat.setName("ÆRØ FERRY");
+        stat.setCallsign("OXYZ");
+        stat.setDestination(null);
+        stat.setImo(9123456L);
+        stat.setShipType(new ShipTypeCargo(60));
+        stat.setDimBow(100);
+        stat.setDimStern(20);
+        stat.setDimPort(10);
+        stat.setDimStarboard(12);
+        stat.setDraught(5.5f);
+        vessel.setStaticData(stat);
+
+        vessel.getSettings().setShowPastTrack(true);
+        vessel.getSettings().setPastTrackMinDist(100);
+        vessel.getPastTrackData().add(now.getTime() - 60000L, 55.67, 12.56, false);
+        vessel.getPastTrackData().add(now.getTime(), 55.6761, 12.5683, true);
+
+        // Vessel without position and static data
+        VesselTarget bare = new VesselTarget();
+        bare.setMmsi(219000002L);
+        bare.setLastReceived(now);
+
+        SarTarget sar = new SarTarget();
+        sar.setMmsi(970000001L);
+        sar.setLastReceived(now);
+        sar.setFirstReceived(new Date(now.getTime() - 1000L));
+        sar.setOld(true);
+
+        AtoNTarget aton = new AtoNTarget();
+        aton.setMmsi(992191000L);
+        aton.setLastReceived(now);
+        aton.setPos(Position.create(56.0, 11.0));
+        aton.setName("BUOY");
+        aton.setVirtual(1);
+
+        AisStore store = new AisStore();
+        Map<Long, VesselTarget> vessels = new HashMap<>();
+        vessels.put(vessel.getMmsi(), vessel);
+        vessels.put(bare.getMmsi(), bare);
+        store.setVesselTargets(vessels);
+        Map<Long, SarTarget> sars = new HashMap<>();
+        sars.put(sar.getMmsi(), sar);
+        store.setSarTargets(sars);
+        Map<Integer, AtoNTarget> atons = new HashMap<>();
+        atons.put((int) aton.getMmsi(), aton);
+        store.setAtonTargets(atons);
+
+        AisViewSnapshot.write(file, store);
+        assertTrue(AisViewSnapshot.isSnapshot(file));
+        AisStore loaded = AisViewSnapshot.read(file);
+
+        assertEquals(2, loaded.getVesselTargets().size());
+        VesselTarget v = loaded.getVesselTargets().get(219000001L);
+        assertEquals(now, v.getLastReceived());
+        assertEquals(VesselTarget.AisClass.A, v.getAisClass());
+        assertTrue(v.isShowIntendedRoute());
+        assertEquals(55.6761, v.getPositionData().getPos().getLatitude(), 1e-6);
+        assertEquals(12.5683, v.getPositionData().getPos().getLongitude(), 1e-6);
+        assertEquals(5, v.getPositionData().getNavStatus());
+        assertEquals(12.3f, v.getPositionData().getSog(), 0f);
+        assertEquals(271.5f, v.getPositionData().getCog(), 0f);
+        assertEquals(-2.5f, v.getPositionData().getRot(), 0f);
+        assertEquals("ÆRØ FERRY", v.getStaticData().getName());
+        assertEquals("OXYZ", v.getStaticData().getCallsign());
+        assertNull(v.getStaticData().getDestination());
+        assertEquals(9123456L, v.getStaticData().getImo());
+        assertEquals(100, v.getStaticData().getDimBow());
+        assertEquals(12, v.getStaticData().getDimStarboard());
+        assertTrue(v.getSettings().isShowPastTrack());
+        assertEquals(100, v.getSettings().getPastTrackMinDist());
+
+        PastTrackRingBuffer pastTrack = v.getPastTrackData();
+        assertEquals(2, pastTrack.size());
+        assertFalse(pastTrack.isGone(0));
+        assertTrue(pastTrack.isGone(1));
+        assertEquals(now.getTime(), pastTrack.getTime(1));
+        assertEquals(55.67, pastTrack.getLatitude(0), 1e-6);
+
+        VesselTarget b = loaded.getVesselTargets().get(219000002L);
+        assertNull(b.getPositionData());
+        assertNull(b.getStaticData());
+
+        SarTarget s = loaded.getSarTargets().get(970000001L);
+        assertTrue(s.isOld());
+        assertEquals(sar.getFirstReceived(), s.getFirstReceived());
+
+        AtoNTarget a = loaded.getAtonTargets().get((int) 992191000L);
+        assertEquals("BUOY", a.getName());
+        assertEquals(1, a.getVirtual());
+        assertEquals(56.0, a.getPos().getLatitude(), 1e-6);
+    }
+
+    @Test
+    public void testManyTargets() throws IOException {
+        Map<Long, VesselTarget> vessels = new HashMap<>();
+        for (long mmsi = 1; mmsi <= 10000; mmsi++) {
+            VesselTarget vessel = new VesselTarget();
+            vessel.setMmsi(mmsi);
+            vessel.setLastReceived(new Date(mmsi));
+            VesselPositionData pos = new VesselPositionData();
+            pos.setPos(Position.create(50.0 + mmsi / 1000.0, 10.0 + mmsi / 1000.0));
+            vessel.setPositionData(pos);
+            vessels.put(mmsi, vessel);
+        }
+        AisStore store = new AisStore();
+        store.setVesselTargets(vessels);
+
+        AisViewSnapshot.write(file, store);
+        AisStore loaded = AisViewSnapshot.read(file);
+
+        assertEquals(10000, loaded.getVesselTargets().size());
+        assertEquals(0, loaded.getSarTargets().size());
+        assertEquals(0, loaded.getAtonTargets().size());
+        for (VesselTarget vessel : loaded.getVesselTargets().values()) {
+            assertEquals(vessel.getMmsi(), vessel.getLastReceived().getTime());
+            assertEquals(50.0 + vessel.getMmsi() / 1000.0, vessel.getPositionData().getPos().getLatitude(), 1e-6);
+        }
+    }
+
+    @Test
+    public void testLegacyFileIsNotSnapshot() throws IOException {
+        try (ObjectOutputStream out = new ObjectOutputStream(Files.newOutputStream(file))) {
+            out.writeObject(new AisStore());
+        }
+        assertFalse(AisViewSnapshot.isSnapshot(file));
+    }
+}
@@ -0,0 +1,173 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.ais;
+
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import dk.dma.enav.model.geometry.Position;
+
+/**
+ * Compares the memory use of the {@linkplain PastTrackRingBuffer} against the {@linkplain PastTrackSortedSet} under a
+ * synthetic feed of 10,000 targets.
+ * <p>
+ * The setup fills the past tracks of all targets and prints the retained heap of each implementation. The benchmarks
+ * measure a feed round, where every target reports a new position and is cleaned up, and the time window queries used
+ * for painting, and are run with the GC profiler to report the allocation rates. Run with:
+ *
+ * <pre>
+ * java -cp ... dk.dma.epd.common.prototype.ais.PastTrackBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class PastTrackBenchmark {
+
+    private static final int TTL = 3600; // Seconds
+
+    @Param({ "10000" })
+    private int targets;
+
+    @Param({ "200" })
+    private int pointsPerTarget;
+
+    private PastTrackSortedSet[] sortedSets;
+    private PastTrackRingBuffer[] ringBuffers;
+    private Position[] positions;
+    private Random random;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        random = new Random(42L);
+        positions = new Position[targets];
+        for (int i = 0; i < targets; i++) {
+            positions[i] = Position.create(54.0 + random.nextDouble() * 4.0, 8.0 + random.nextDouble() * 7.0);
+        }
+
+        // Spread the initial points over the TTL, so that the feed rounds remove about as many points as they add
+        long now = System.currentTimeMillis();
+        long interval = TTL * 1000L / pointsPerTarget;
+
+        long before = usedMemory();
+        sortedSets = new PastTrackSortedSet[targets];
+        for (int i = 0; i < targets; i++) {
+            sortedSets[i] = new PastTrackSortedSet();
+            for (int j = 0; j < pointsPerTarget; j++) {
+                sortedSets[i].add(new PastTrackPoint(new Date(now - (pointsPerTarget - j) * interval), positions[i]));
+            }
+        }
+        long sortedSetBytes = usedMemory() - before;
+
+        before = usedMemory();
+        ringBuffers = new PastTrackRingBuffer[targets];
+        for (int i = 0; i < targets; i++) {
+            ringBuffers[i] = new PastTrackRingBuffer();
+            for (int j = 0; j < pointsPerTarget; j++) {
+                ringBuffers[i].add(now - (pointsPerTarget - j) * interval, positions[i].getLatitude(),
+                        positions[i].getLongitude(), false);
+            }
+        }
+        long ringBufferBytes = usedMemory() - before;
+
+        System.out.printf("%nRetained heap for %d targets with %d points each:%n", targets, pointsPerTarget);
+        System.out.printf("  PastTrackSortedSet:  %,d bytes (%d bytes/point)%n", sortedSetBytes, sortedSetBytes
+                / ((long) targets * pointsPerTarget));
+        System.out.printf("  PastTrackRingBuffer: %,d bytes (%d bytes/point)%n", ringBufferBytes, ringBufferBytes
+                / ((long) targets * pointsPerTarget));
+    }
+
+    @Benchmark
+    public void feedSortedSet() {
+        for (int i = 0; i < targets; i++) {
+            sortedSets[i].addPosition(nextPosition(i), 0);
+            sortedSets[i].cleanup(TTL);
+        }
+    }
+
+    @Benchmark
+    public void feedRingBuffer() {
+        for (int i = 0; i < targets; i++) {
+            ringBuffers[i].addPosition(nextPosition(i), 0);
+            ringBuffers[i].cleanup(TTL);
+        }
+    }
+
+    @Benchmark
+    public void windowSortedSet(Blackhole bh) {
+        Date time = new Date(System.currentTimeMillis() - TTL * 500L);
+        for (int i = 0; i < targets; i++) {
+            for (PastTrackPoint point : sortedSets[i].getPointsNewerThan(time)) {
+                bh.consume(point.getPosition().getLatitude());
+            }
+        }
+    }
+
+    @Benchmark
+    public void windowRingBuffer(final Blackhole bh) {
+        long time = System.currentTimeMillis() - TTL * 500L;
+        PastTrackRingBuffer.PointVisitor visitor = new PastTrackRingBuffer.PointVisitor() {
+            @Override
+            public void visit(long t, double lat, double lon, boolean gone) {
+                bh.consume(lat);
+            }
+        };
+        for (int i = 0; i < targets; i++) {
+            ringBuffers[i].visitNewerThan(time, visitor);
+        }
+    }
+
+    private Position nextPosition(int i) {
+        Position pos = positions[i];
+        positions[i] = Position.create(pos.getLatitude() + (random.nextDouble() - 0.5) * 0.001, pos.getLongitude()
+                + (random.nextDouble() - 0.5) * 0.001);
+        return positions[i];
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(PastTrackBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class).build()).run();
+    }
+}
@@ -0,0 +1,124 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.ais;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+
+import dk.dma.enav.model.geometry.Position;
+
+/**
+ * Tests of the {@linkplain PastTrackRingBuffer}
+ */
+public class PastTrackRingBufferTest {
+
+    @Test
+    public void testAddPositionMinDist() {
+        PastTrackRingBuffer track = new PastTrackRingBuffer();
+        track.addPosition(Position.create(55.0, 11.0), 100);
+        // About 55 meters north
+        track.addPosition(Position.create(55.0005, 11.0), 100);
+        assertEquals(1, track.size());
+        // About 111 meters north
+        track.addPosition(Position.create(55.001, 11.0), 100);
+        assertEquals(2, track.size());
+        assertEquals(55.001, track.getLatitude(1), 0.0);
+    }
+
+    @Test
+    public void testGrowAndWrapAround() {
+        long now = System.currentTimeMillis();
+        PastTrackRingBuffer track = new PastTrackRingBuffer(4);
+        // Old points that are removed by the cleanup, moving the head
+        for (int i = 0; i < 3; i++) {
+            track.add(now - 3600000L + i, 50.0, 10.0, false);
+        }
+        track.cleanup(60);
+        assertEquals(0, track.size());
+
+        // Wrap around the end of the arrays and grow several times
+        for (int i = 0; i < 100; i++) {
+            track.add(now + i * 1000L, 50.0 + i, 10.0 - i, i == 99);
+        }
+        assertEquals(100, track.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(now + i * 1000L, track.getTime(i));
+            assertEquals(50.0 + i, track.getLatitude(i), 0.0);
+            assertEquals(10.0 - i, track.getLongitude(i), 0.0);
+            assertEquals(i == 99, track.isGone(i));
+        }
+    }
+
+    @Test
+    public void testOutOfOrderAdd() {
+        PastTrackRingBuffer track = new PastTrackRingBuffer();
+        track.add(1000L, 1.0, 1.0, false);
+        track.add(3000L, 3.0, 3.0, false);
+        track.add(2000L, 2.0, 2.0, false);
+        assertEquals(3, track.size());
+        assertEquals(2000L, track.getTime(1));
+        assertEquals(3.0, track.getLatitude(2), 0.0);
+    }
+
+    @Test
+    public void testTimeWindow() {
+        PastTrackRingBuffer track = new PastTrackRingBuffer();
+        for (int i = 0; i < 10; i++) {
+            track.add(i * 1000L, i, i, false);
+        }
+        assertEquals(0, track.indexOfFirstNewerThan(-1L));
+        assertEquals(5, track.indexOfFirstNewerThan(4000L));
+        assertEquals(5, track.indexOfFirstNewerThan(4500L));
+        assertEquals(10, track.indexOfFirstNewerThan(9000L));
+
+        final List<Long> times = new ArrayList<>();
+        track.visitNewerThan(6500L, new PastTrackRingBuffer.PointVisitor() {
+            @Override
+            public void visit(long time, double lat, double lon, boolean gone) {
+                times.add(time);
+            }
+        });
+        assertEquals(3, times.size());
+        assertEquals(7000L, times.get(0).longValue());
+
+        List<PastTrackPoint> points = new ArrayList<>(track.getPointsNewerThan(new Date(7000L)));
+        assertEquals(2, points.size());
+        assertEquals(8.0, points.get(0).getPosition().getLatitude(), 0.0);
+    }
+
+    @Test
+    public void testFlagGoneAndCopy() {
+        PastTrackRingBuffer track = new PastTrackRingBuffer();
+        track.flagGone();
+        track.add(1000L, 1.0, 1.0, false);
+        track.add(2000L, 2.0, 2.0, false);
+        track.flagGone();
+
+        PastTrackRingBuffer copy = new PastTrackRingBuffer(track);
+        track.clear();
+        assertEquals(0, track.size());
+        assertEquals(2, copy.size());
+        assertFalse(copy.isGone(0));
+        assertTrue(copy.isGone(1));
+        assertTrue(new ArrayList<>(copy.getPoints()).get(1).hasGone());
+    }
+}
@@ -0,0 +1,107 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.layers.ais;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import org.junit.Test;
+
+import dk.dma.epd.common.prototype.ais.AisTarget;
+import dk.dma.epd.common.prototype.ais.VesselTarget;
+
+/**
+ * Tests of the {@linkplain AisTargetRenderModel}
+ */
+public class AisTargetRenderModelTest {
+
+    @Test
+    public void testVersions() {
+        AisTargetRenderModel model = new AisTargetRenderModel();
+        assertEquals(0L, model.getVersion());
+
+        VesselTarget vessel1 = createVessel(219000001L);
+        VesselTarget vessel2 = createVessel(219000002L);
+        model.targetUpdated(vessel1);
+        long version1 = model.getVersion();
+        model.targetUpdated(vessel2);
+        long version2 = model.getVersion();
+
+        // Each update changes the model version and stamps the target with it
+        assertTrue(version1 > 0L);
+        assertTrue(version2 > version1);
+        assertEquals(2, model.size());
+        assertSame(vessel1, model.getState(219000001L).getTarget());
+        assertEquals(version1, model.getState(219000001L).getVersion());
+        assertEquals(version2, model.getState(219000002L).getVersion());
+
+        // Updating one target leaves the version of the other unchanged
+        VesselTarget update1 = createVessel(219000001L);
+        model.targetUpdated(update1);
+        assertTrue(model.getVersion() > version2);
+        assertSame(update1, model.getState(219000001L).getTarget());
+        assertEquals(model.getVersion(), model.getState(219000001L).getVersion());
+        assertEquals(version2, model.getState(219000002L).getVersion());
+
+        // Null updates are ignored
+        long version = model.getVersion();
+        model.targetUpdated(null);
+        assertEquals(version, model.getVersion());
+    }
+
+    @Test
+    public void testGoneTargets() {
+        AisTargetRenderModel model = new AisTargetRenderModel();
+        VesselTarget vessel1 = createVessel(219000001L);
+        VesselTarget vessel2 = createVessel(219000002L);
+        VesselTarget vessel3 = createVessel(219000003L);
+        model.targetsUpdated(Arrays.<AisTarget> asList(vessel1, vessel2, vessel3));
+        assertEquals(3, model.size());
+        long version = model.getVersion();
+
+        // A gone target is removed, and the change bumps the model version
+        vessel2.setStatus(AisTarget.Status.GONE);
+        model.targetUpdated(vessel2);
+        assertNull(model.getState(219000002L));
+        assertEquals(2, model.size());
+        assertTrue(model.getVersion() > version);
+
+        // ... also within a batch
+        vessel1.setStatus(AisTarget.Status.GONE);
+        VesselTarget update3 = createVessel(219000003L);
+        model.targetsUpdated(Arrays.<AisTarget> asList(vessel1, update3));
+        assertNull(model.getState(219000001L));
+        assertSame(update3, model.getState(219000003L).getTarget());
+        assertEquals(1, model.size());
+
+        // A target that reappears gets a new state
+        VesselTarget reappeared = createVessel(219000002L);
+        model.targetUpdated(reappeared);
+        assertSame(reappeared, model.getState(219000002L).getTarget());
+        assertEquals(model.getVersion(), model.getState(219000002L).getVersion());
+    }
+
+    private static VesselTarget createVessel(long mmsi) {
+        VesselTarget vessel = new VesselTarget();
+        vessel.setMmsi(mmsi);
+        vessel.setLastReceived(new Date());
+        return vessel;
+    }
+}
@@ -0,0 +1,138 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.layers.background;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests of the {@linkplain CoastlineLevel} and {@linkplain ShapeFileReader}
+ */
+public class CoastlineLevelTest {
+
+    /**
+     * Returns a shape file with a single polygon record of the given closed ring of longitude/latitude values
+     */
+    private static ByteBuffer createShapeFile(double... ring) {
+        int numPoints = ring.length / 2;
+        int contentLength = 44 + 4 + numPoints * 16;
+        ByteBuffer buf = ByteBuffer.allocate(100 + 8 + contentLength);
+        buf.order(ByteOrder.BIG_ENDIAN);
+        buf.putInt(0, 9994);
+        buf.putInt(24, buf.capacity() / 2);
+        buf.putInt(100, 1);
+        buf.putInt(104, contentLength / 2);
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(28, 1000);
+        buf.putInt(32, 5);
+        buf.putInt(108, 5);
+        buf.putInt(108 + 36, 1);
+        buf.putInt(108 + 40, numPoints);
+        buf.putInt(108 + 44, 0);
+        for (int i = 0; i < ring.length; i++) {
+            buf.putDouble(108 + 48 + i * 8, ring[i]);
+        }
+        return buf;
+    }
+
+    /**
+     * Returns a square of the given size with the given number of points along each side
+     */
+    private static double[] createSquare(double lon, double lat, double size, int pointsPerSide) {
+        double[] ring = new double[pointsPerSide * 4 * 2];
+        int j = 0;
+        for (int side = 0; side < 4; side++) {
+            for (int i = 0; i < pointsPerSide; i++) {
+                double f = size * i / pointsPerSide;
+                double[] p = (side == 0) ? new double[] { lon + f, lat } : (side == 1) ? new double[] { lon + size,
+                        lat + f } : (side == 2) ? new double[] { lon + size - f, lat + size } : new double[] { lon,
+                        lat + size - f };
+                ring[j++] = p[0];
+                ring[j++] = p[1];
+            }
+        }
+        return ring;
+    }
+
+    private static double area(double[] latLons) {
+        double area = 0.0;
+        int n = latLons.length / 2;
+        for (int i = 0; i < n; i++) {
+            int k = (i + 1) % n;
+            area += latLons[i * 2 + 1] * latLons[k * 2] - latLons[k * 2 + 1] * latLons[i * 2];
+        }
+        return Math.abs(area) / 2.0;
+    }
+
+    @Test
+    public void testReadRings() throws Exception {
+        double[] closed = { 10.0, 55.0, 11.0, 55.0, 11.0, 56.0, 10.0, 56.0, 10.0, 55.0 };
+        List<double[]> rings = ShapeFileReader.readRings(createShapeFile(closed));
+        assertEquals(1, rings.size());
+        assertArrayEquals(Arrays.copyOf(closed, 8), rings.get(0), 0.0);
+    }
+
+    @Test
+    public void testTilesCoverPolygon() throws Exception {
+        // A 10 by 10 degree square crossing several 1.40625 degree tiles
+        double[] square = createSquare(5.0, 50.0, 10.0, 50);
+        CoastlineLevel level = CoastlineLevel.build(Arrays.asList(square), 0f, 0.0, 7);
+        assertEquals(1.40625, level.getTileSize(), 0.0);
+
+        List<CoastlineTile> tiles = level.getTiles(-90.0, -180.0, 90.0, 180.0);
+        assertEquals(level.getTileCount(), tiles.size());
+        assertEquals(8 * 8, tiles.size());
+
+        // The fills of the tiles add up to the square, and the outlines hold all the edges
+        double area = 0.0;
+        int outlineSegments = 0;
+        for (CoastlineTile tile : tiles) {
+            for (int i = 0; i < tile.getFillCount(); i++) {
+                area += area(tile.getFillPoints(i));
+            }
+            for (int i = 0; i < tile.getOutlineCount(); i++) {
+                outlineSegments += tile.getOutlinePoints(i).length / 2 - 1;
+            }
+        }
+        assertEquals(100.0, area, 1e-3);
+        assertTrue(outlineSegments >= 200);
+
+        // Only the tiles near the viewport are returned
+        assertEquals(4, level.getTiles(52.0, 7.0, 53.0, 8.0).size());
+        assertEquals(0, level.getTiles(0.0, 7.0, 1.0, 8.0).size());
+    }
+
+    @Test
+    public void testSimplifiedLevel() throws Exception {
+        double[] square = createSquare(5.0, 50.0, 10.0, 50);
+        double[] island = createSquare(20.0, 50.0, 0.001, 10);
+        CoastlineLevel level = CoastlineLevel.build(Arrays.asList(square, island), 1000000f, 280.0, 1);
+
+        // The square is reduced to its corners, and the small island is dropped
+        assertEquals(1, level.getTileCount());
+        CoastlineTile tile = level.getTiles(50.0, 5.0, 60.0, 15.0).get(0);
+        assertEquals(1, tile.getFillCount());
+        assertTrue(tile.getFillPoints(0).length / 2 <= 6);
+        assertEquals(100.0, area(tile.getFillPoints(0)), 1e-3);
+    }
+}
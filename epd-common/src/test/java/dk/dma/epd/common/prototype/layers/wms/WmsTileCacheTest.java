@@ -0,0 +1,117 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.layers.wms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import dk.dma.epd.common.prototype.layers.wms.WmsTileCache.TileKey;
+
+/**
+ * Tests of the {@linkplain WmsTileCache}
+ */
+public class WmsTileCacheTest {
+
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path write(Path dir, String name, int size, long age) throws IOException {
+        Path file = dir.resolve(name);
+        Files.createDirectories(dir);
+        Files.write(file, new byte[size]);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() - age));
+        return file;
+    }
+
+    @Test
+    public void testDiskCache() throws IOException {
+        WmsTileCache cache = new WmsTileCache(1024 * 1024, DAY, 1024 * 1024, folder.getRoot().toPath());
+
+        // "Aa" and "BB" have the same String hash code, but are different queries
+        TileKey key1 = new TileKey("Aa", 50000, 1, 2);
+        TileKey key2 = new TileKey("BB", 50000, 1, 2);
+        assertNotEquals(key1, key2);
+        assertNotEquals(cache.getFile(key1), cache.getFile(key2));
+        assertEquals(64, cache.getFile(key1).getParent().getParent().getFileName().toString().length());
+
+        cache.put(key1, new BufferedImage(16, 16, BufferedImage.TYPE_INT_ARGB));
+        assertTrue(Files.exists(cache.getFile(key1)));
+        cache.clearMemory();
+        BufferedImage image = cache.get(key1);
+        assertNotNull(image);
+        assertEquals(16, image.getWidth());
+        assertNull(cache.get(key2));
+
+        // Expired tiles are not read
+        Files.setLastModifiedTime(cache.getFile(key1), FileTime.fromMillis(System.currentTimeMillis() - 2 * DAY));
+        cache.clearMemory();
+        assertNull(cache.get(key1));
+    }
+
+    @Test
+    public void testPurgeBySize() throws IOException {
+        Path dir = folder.getRoot().toPath();
+        WmsTileCache cache = new WmsTileCache(1024, DAY, 10000, dir);
+        assertEquals(-1L, cache.getDiskSize());
+
+        Path oldest = write(dir.resolve("a").resolve("1"), "0_0.png", 4000, 3000);
+        Path older = write(dir.resolve("a").resolve("2"), "0_0.png", 4000, 2000);
+        Path newest = write(dir.resolve("b").resolve("1"), "0_0.png", 4000, 1000);
+
+        // The oldest tiles are deleted until the disk cache is below the purge fraction of the maximum size
+        cache.purgeDisk();
+        assertFalse(Files.exists(oldest));
+        assertTrue(Files.exists(older));
+        assertTrue(Files.exists(newest));
+        assertEquals(8000L, cache.getDiskSize());
+
+        Path added = write(dir.resolve("b").resolve("1"), "1_0.png", 4000, 0);
+        cache.purgeDisk();
+        assertFalse(Files.exists(older));
+        assertTrue(Files.exists(newest));
+        assertTrue(Files.exists(added));
+        assertEquals(8000L, cache.getDiskSize());
+    }
+
+    @Test
+    public void testPurgeByAge() throws IOException {
+        Path dir = folder.getRoot().toPath();
+        WmsTileCache cache = new WmsTileCache(1024, DAY, 1024 * 1024, dir);
+
+        Path expired = write(dir.resolve("a").resolve("1"), "0_0.png", 100, 2 * DAY);
+        Path fresh = write(dir.resolve("a").resolve("1"), "0_1.png", 100, DAY / 2);
+        cache.purgeDisk();
+        assertFalse(Files.exists(expired));
+        assertTrue(Files.exists(fresh));
+        assertEquals(100L, cache.getDiskSize());
+    }
+}
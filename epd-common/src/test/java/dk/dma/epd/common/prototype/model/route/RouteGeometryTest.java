@@ -0,0 +1,111 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.model.route;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.LinkedList;
+
+import org.junit.Test;
+
+import dk.dma.enav.model.geometry.Position;
+import dk.dma.epd.common.Heading;
+
+/**
+ * Tests of the {@linkplain RouteGeometry}
+ */
+public class RouteGeometryTest {
+
+    private static LinkedList<RouteWaypoint> createWaypoints(double... latLons) {
+        LinkedList<RouteWaypoint> waypoints = new LinkedList<>();
+        for (int i = 0; i < latLons.length; i += 2) {
+            RouteWaypoint waypoint = new RouteWaypoint();
+            waypoint.setPos(Position.create(latLons[i], latLons[i + 1]));
+            if (!waypoints.isEmpty()) {
+                new RouteLeg(waypoints.getLast(), waypoint);
+            }
+            waypoints.add(waypoint);
+        }
+        return waypoints;
+    }
+
+    @Test
+    public void testLegMetrics() {
+        LinkedList<RouteWaypoint> waypoints = createWaypoints(55.0, 11.0, 55.5, 11.0, 55.5, 12.0, 56.0, 12.5);
+        RouteGeometry geometry = new RouteGeometry(1L, waypoints);
+
+        assertEquals(4, geometry.getWaypointCount());
+        assertEquals(3, geometry.getLegCount());
+        double sum = 0.0;
+        for (int i = 0; i < geometry.getLegCount(); i++) {
+            RouteLeg leg = waypoints.get(i).getOutLeg();
+            assertSame(waypoints.get(i), geometry.getWaypoint(i));
+            assertEquals(leg.calcRng(), geometry.getLegRange(i), 1e-9);
+            assertEquals(leg.calcBrg(), geometry.getLegBearing(i), 1e-9);
+            assertEquals(sum, geometry.getCumulativeRange(i), 1e-9);
+            sum += leg.calcRng();
+        }
+        assertEquals(sum, geometry.getTotalRange(), 1e-9);
+        assertEquals(30.0, geometry.getLegRange(0), 0.1);
+    }
+
+    @Test
+    public void testBoundingBoxes() {
+        RouteGeometry geometry = new RouteGeometry(1L, createWaypoints(55.0, 11.0, 55.5, 11.0, 55.5, 12.0));
+
+        assertTrue(geometry.isPointWithinBBox(Position.create(55.2, 11.5)));
+        assertFalse(geometry.isPointWithinBBox(Position.create(54.9, 11.5)));
+
+        // The point is in the route box, but only near the second leg
+        Position point = Position.create(55.49, 11.5);
+        assertFalse(geometry.isPointWithinLegBBox(0, point, 1.0));
+        assertTrue(geometry.isPointWithinLegBBox(1, point, 1.0));
+        assertTrue(geometry.isPointWithinLegBBox(0, Position.create(55.2, 11.02), 1.0));
+
+        // Boxes 10 nm apart only intersect with a margin of more than 10 nm
+        RouteGeometry other = new RouteGeometry(2L, createWaypoints(55.0, 12.0 + 10.0 / 60.0 / Math.cos(Math
+                .toRadians(55.5)), 55.5, 13.0));
+        assertFalse(geometry.intersects(other, 9.0));
+        assertTrue(geometry.intersects(other, 11.0));
+
+        assertFalse(new RouteGeometry(3L, new LinkedList<RouteWaypoint>()).isPointWithinBBox(point));
+    }
+
+    @Test
+    public void testValidity() {
+        LinkedList<RouteWaypoint> waypoints = createWaypoints(55.0, 11.0, 55.5, 11.0, 55.5, 12.0);
+        RouteGeometry geometry = new RouteGeometry(1L, waypoints);
+        assertTrue(geometry.isValidFor(waypoints));
+
+        // Moving a way point invalidates the geometry
+        waypoints.get(1).setPos(Position.create(55.6, 11.0));
+        assertFalse(geometry.isValidFor(waypoints));
+        geometry = new RouteGeometry(2L, waypoints);
+        assertTrue(geometry.isValidFor(waypoints));
+
+        // ... as does changing a leg heading
+        waypoints.get(0).getOutLeg().setHeading(Heading.GC);
+        assertFalse(geometry.isValidFor(waypoints));
+        geometry = new RouteGeometry(3L, waypoints);
+        assertEquals(Heading.GC, geometry.getLegHeading(0));
+
+        // ... and removing a way point
+        waypoints.removeLast();
+        assertFalse(geometry.isValidFor(waypoints));
+    }
+}
@@ -0,0 +1,88 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.model.voct;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import dk.dma.enav.model.geometry.Position;
+import dk.dma.epd.common.prototype.model.voct.sardata.DatumPointData;
+import dk.dma.epd.common.prototype.model.voct.sardata.DriftProbabilityGrid;
+import dk.dma.epd.common.prototype.model.voct.sardata.SARData;
+import dk.dma.epd.common.prototype.model.voct.sardata.SARWeatherData;
+
+/**
+ * Measures the time of a Monte Carlo {@linkplain DriftSimulation} of a datum point operation with 24 hours of hourly
+ * weather points. Run with:
+ *
+ * <pre>
+ * java -cp ... dk.dma.epd.common.prototype.model.voct.DriftSimulationBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class DriftSimulationBenchmark {
+
+    @Param({ "20000", "100000" })
+    private int particles;
+
+    private DriftSimulation simulation;
+    private SARData data;
+
+    @Setup
+    public void setup() {
+        DateTime css = new DateTime(2014, 6, 1, 12, 0);
+        DateTime lkpDate = css.minusHours(24);
+        data = new DatumPointData("1", lkpDate, css, Position.create(56, 11), 1.0, 0.1, 1.0, 0);
+
+        List<SARWeatherData> weatherPoints = new ArrayList<>();
+        for (int i = 0; i < 24; i++) {
+            weatherPoints.add(new SARWeatherData(45.0 + i, 1.0, 15.0, 30.0 + i * 2, lkpDate.plusHours(i)));
+        }
+        data.setWeatherPoints(weatherPoints);
+
+        simulation = new DriftSimulation(particles, DriftSimulation.DEFAULT_GRID_SIZE);
+    }
+
+    @Benchmark
+    public DriftProbabilityGrid simulate() {
+        return simulation.simulate(data, 42L);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(DriftSimulationBenchmark.class.getSimpleName()).build()).run();
+    }
+}
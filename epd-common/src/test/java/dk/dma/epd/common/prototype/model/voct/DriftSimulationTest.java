@@ -0,0 +1,160 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.model.voct;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import dk.dma.enav.model.geometry.CoordinateSystem;
+import dk.dma.enav.model.geometry.Position;
+import dk.dma.epd.common.prototype.model.voct.sardata.DatumPointData;
+import dk.dma.epd.common.prototype.model.voct.sardata.DriftProbabilityGrid;
+import dk.dma.epd.common.prototype.model.voct.sardata.SARWeatherData;
+import dk.dma.epd.common.util.Converter;
+
+/**
+ * Tests of the Monte Carlo {@linkplain DriftSimulation}
+ */
+public class DriftSimulationTest {
+
+    private static DatumPointData createData() {
+        DateTime css = new DateTime(2014, 6, 1, 12, 0);
+        DateTime lastKnowPositionTs = css.minusHours(1);
+        Position lastKnowPosition = Position.create(61, -51);
+
+        DatumPointData data = new DatumPointData("1", lastKnowPositionTs, css, lastKnowPosition, 1.0, 0.1, 1.0, 0);
+
+        List<SARWeatherData> surfaceDriftData = new ArrayList<>();
+        surfaceDriftData.add(new SARWeatherData(45.0, 5.0, 15.0, 30.0, lastKnowPositionTs));
+        data.setWeatherPoints(surfaceDriftData);
+        return data;
+    }
+
+    private static float[] probabilities(DriftProbabilityGrid grid) {
+        float[] result = new float[grid.getRows() * grid.getCols()];
+        for (int row = 0; row < grid.getRows(); row++) {
+            for (int col = 0; col < grid.getCols(); col++) {
+                result[row * grid.getCols() + col] = grid.getProbability(row, col);
+            }
+        }
+        return result;
+    }
+
+    @Test
+    public void testSameSeedGivesSameGrid() {
+        DriftSimulation simulation = new DriftSimulation(10000, 40);
+        DriftProbabilityGrid grid1 = simulation.simulate(createData(), 42L);
+        DriftProbabilityGrid grid2 = simulation.simulate(createData(), 42L);
+
+        assertEquals(grid1.getRows(), grid2.getRows());
+        assertEquals(grid1.getCols(), grid2.getCols());
+        assertEquals(grid1.getNorth(), grid2.getNorth(), 0.0);
+        assertEquals(grid1.getWest(), grid2.getWest(), 0.0);
+        assertTrue(Arrays.equals(probabilities(grid1), probabilities(grid2)));
+    }
+
+    @Test
+    public void testDifferentSeedsGiveDifferentGrids() {
+        DriftSimulation simulation = new DriftSimulation(10000, 40);
+        DriftProbabilityGrid grid1 = simulation.simulate(createData(), 1L);
+        DriftProbabilityGrid grid2 = simulation.simulate(createData(), 2L);
+
+        assertFalse(grid1.getNorth() == grid2.getNorth() && Arrays.equals(probabilities(grid1), probabilities(grid2)));
+    }
+
+    @Test
+    public void testChunkSeedsOfDifferentSeedsDiffer() {
+        // java.util.Random only uses the lower 48 bits of the seed
+        Set<Long> chunkSeeds = new HashSet<>();
+        for (long seed = 0; seed < 100; seed++) {
+            for (int chunk = 0; chunk < 100; chunk++) {
+                assertTrue(chunkSeeds.add(DriftSimulation.chunkSeed(seed, chunk) & ((1L << 48) - 1)));
+            }
+        }
+    }
+
+    @Test
+    public void testGridIsProbabilityDistribution() {
+        DriftProbabilityGrid grid = new DriftSimulation(20000, 50).simulate(createData(), 7L);
+
+        assertEquals(20000, grid.getParticles());
+        assertTrue(grid.getRows() <= 50 && grid.getCols() <= 50);
+
+        double sum = 0.0;
+        for (float p : probabilities(grid)) {
+            sum += p;
+        }
+        assertEquals(1.0, sum, 1e-4);
+
+        // An area around the whole grid contains all particles
+        Position A = Position.create(grid.getNorth() + 0.1, grid.getWest() - 0.1);
+        Position B = Position.create(grid.getNorth() + 0.1, grid.getEast() + 0.1);
+        Position C = Position.create(grid.getSouth() - 0.1, grid.getWest() - 0.1);
+        Position D = Position.create(grid.getSouth() - 0.1, grid.getEast() + 0.1);
+        assertEquals(1.0, grid.getContainment(A, B, C, D), 1e-4);
+    }
+
+    /**
+     * The errors are symmetric around the deterministic drift, so the mean particle position should be close to the
+     * downwind datum. Divergence and direction errors shorten the mean drift slightly.
+     */
+    @Test
+    public void testMeanIsCloseToDownWindDatum() {
+        DatumPointData data = createData();
+        DriftProbabilityGrid grid = new DriftSimulation(20000, 50).simulate(data, 42L);
+
+        SAROperation operation = new SAROperation(SAR_TYPE.DATUM_POINT);
+        operation.startDatumPointCalculations(data);
+
+        double lat = 0.0;
+        double lon = 0.0;
+        for (int row = 0; row < grid.getRows(); row++) {
+            for (int col = 0; col < grid.getCols(); col++) {
+                Position center = grid.getCellCenter(row, col);
+                lat += grid.getProbability(row, col) * center.getLatitude();
+                lon += grid.getProbability(row, col) * center.getLongitude();
+            }
+        }
+        double distance = Converter.metersToNm(Position.create(lat, lon).distanceTo(data.getDatumDownWind(),
+                CoordinateSystem.CARTESIAN));
+        assertTrue("Mean is " + distance + " nm from the datum", distance < 0.75);
+    }
+
+    @Test
+    public void testProbabilisticMode() {
+        SAROperation operation = new SAROperation(SAR_TYPE.DATUM_POINT);
+        DatumPointData data = createData();
+        operation.startDatumPointCalculations(data);
+        assertEquals(null, data.getDriftProbabilityGrid());
+
+        operation.setDriftParticles(5000);
+        data = createData();
+        operation.startDatumPointCalculations(data);
+        assertNotNull(data.getDriftProbabilityGrid());
+        assertEquals(5000, data.getDriftProbabilityGrid().getParticles());
+        assertEquals(data.getCSSDate(), data.getDriftProbabilityGrid().getTime());
+    }
+}
@@ -0,0 +1,162 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.notification;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import dk.dma.epd.common.prototype.notification.Notification.NotificationSeverity;
+import dk.dma.epd.common.prototype.notification.NotificationAlert.AlertType;
+import dk.dma.epd.common.prototype.notification.NotificationStore.PendingAlert;
+
+/**
+ * Tests of the {@linkplain NotificationStore}
+ */
+public class NotificationStoreTest {
+
+    private static Notification<String, Integer> create(int id, NotificationSeverity severity) {
+        Notification<String, Integer> notification = new Notification<>("Notification " + id, id,
+                NotificationType.NOTIFICATION);
+        notification.setSeverity(severity);
+        return notification;
+    }
+
+    @Test
+    public void testIndexes() {
+        NotificationStore<Notification<String, Integer>> store = new NotificationStore<>();
+        for (int i = 0; i < 100; i++) {
+            store.add(create(i, i % 10 == 0 ? NotificationSeverity.ALERT : NotificationSeverity.MESSAGE));
+        }
+
+        assertEquals(100, store.size());
+        assertEquals(42, store.getById(42).getId().intValue());
+        assertEquals(42, store.indexOfId(42));
+        assertNull(store.getById(100));
+        assertEquals(-1, store.indexOfId(100));
+
+        List<Notification<String, Integer>> page = store.getPage(90, 20);
+        assertEquals(10, page.size());
+        assertEquals(90, page.get(0).getId().intValue());
+
+        assertEquals(100, store.getUnreadCount());
+        assertEquals(10, store.getCount(NotificationSeverity.ALERT));
+        assertEquals(10, store.getUnacknowledgedCount(NotificationSeverity.ALERT));
+
+        // State changes are tracked by the counters
+        store.getById(0).setRead(true);
+        store.getById(10).setAcknowledged(true);
+        assertEquals(99, store.getUnreadCount());
+        assertEquals(99, store.getUnacknowledgedCount());
+        assertEquals(9, store.getUnacknowledgedCount(NotificationSeverity.ALERT));
+        store.getById(1).setSeverity(NotificationSeverity.ALERT);
+        assertEquals(11, store.getCount(NotificationSeverity.ALERT));
+        assertEquals(10, store.getUnacknowledgedCount(NotificationSeverity.ALERT));
+        store.getById(1).setSeverity(NotificationSeverity.MESSAGE);
+        assertEquals(9, store.getUnacknowledgedCount(NotificationSeverity.ALERT));
+
+        // Removal
+        assertTrue(store.remove(store.getById(20)));
+        assertEquals(99, store.size());
+        assertNull(store.getById(20));
+        assertEquals(8, store.getUnacknowledgedCount(NotificationSeverity.ALERT));
+        assertEquals(20, store.indexOfId(21));
+
+        // Pages are copies, unaffected by later changes
+        assertEquals(10, page.size());
+        assertEquals(90, page.get(0).getId().intValue());
+    }
+
+    @Test
+    public void testSetAll() {
+        NotificationStore<Notification<String, Integer>> store = new NotificationStore<>();
+        Notification<String, Integer> n1 = create(1, NotificationSeverity.MESSAGE);
+        Notification<String, Integer> n2 = create(2, NotificationSeverity.MESSAGE);
+        Notification<String, Integer> n3 = create(3, NotificationSeverity.WARNING);
+        n1.addAlerts(new NotificationAlert(AlertType.POPUP));
+        n2.addAlerts(new NotificationAlert(AlertType.POPUP));
+        store.setAll(Arrays.asList(n1, n2));
+        assertEquals(2, store.getPendingAlertCount());
+
+        store.setAll(Arrays.asList(n3, n2, n2));
+        assertEquals(2, store.size());
+        assertSame(n3, store.get(0));
+        assertSame(n2, store.get(1));
+        assertNull(store.getById(1));
+        assertEquals(1, store.getCount(NotificationSeverity.WARNING));
+        assertEquals(1, store.getPendingAlertCount());
+
+        // Removed notifications are no longer tracked
+        n1.setRead(true);
+        assertEquals(2, store.getUnreadCount());
+    }
+
+    @Test
+    public void testInitialAlerts() {
+        NotificationStore<Notification<String, Integer>> store = new NotificationStore<>();
+        List<Notification<String, Integer>> notifications = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            Notification<String, Integer> notification = create(i, NotificationSeverity.MESSAGE);
+            if (i % 100 == 0) {
+                notification.addAlerts(new NotificationAlert(AlertType.POPUP));
+            }
+            notifications.add(notification);
+        }
+        store.setAll(notifications);
+        assertEquals(10, store.getPendingAlertCount());
+
+        long now = System.currentTimeMillis();
+        List<PendingAlert<Notification<String, Integer>>> due = store.pollDueAlerts(now);
+        assertEquals(10, due.size());
+        for (PendingAlert<Notification<String, Integer>> pendingAlert : due) {
+            pendingAlert.getAlert().flagTriggered();
+            store.scheduleAlert(pendingAlert.getNotification(), pendingAlert.getAlert());
+        }
+
+        // Non-repeating alerts only trigger once
+        assertEquals(0, store.getPendingAlertCount());
+        assertEquals(0, store.pollDueAlerts(now + 1000L).size());
+    }
+
+    @Test
+    public void testRepeatingAlerts() {
+        NotificationStore<Notification<String, Integer>> store = new NotificationStore<>();
+        Notification<String, Integer> notification = create(1, NotificationSeverity.ALERT);
+        NotificationAlert alert = new NotificationAlert(AlertType.POPUP).setInitial(false).setRepeatEvery(1);
+        notification.addAlerts(alert);
+        alert.flagTriggered();
+        store.add(notification);
+
+        long now = System.currentTimeMillis();
+        assertEquals(1, store.getPendingAlertCount());
+        assertEquals(0, store.pollDueAlerts(now).size());
+        assertEquals(1, store.getPendingAlertCount());
+
+        // Acknowledging the notification stops the repetitions
+        notification.setAcknowledged(true);
+        assertEquals(0, store.getPendingAlertCount());
+
+        // ... and un-acknowledging it resumes them
+        notification.setAcknowledged(false);
+        assertEquals(1, store.getPendingAlertCount());
+    }
+}
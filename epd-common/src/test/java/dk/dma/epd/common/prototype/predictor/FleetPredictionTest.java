@@ -0,0 +1,88 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.predictor;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Tests of the {@linkplain FleetPrediction}
+ */
+public class FleetPredictionTest {
+
+    @Test
+    public void testStraightCourse() {
+        FleetPrediction prediction = new FleetPrediction(0L, 2, 30, 60);
+        // 10 knots north, and 6 knots east on the equator
+        prediction.setKinematics(0, 219000001L, 0L, 55.0, 11.0, 10f, 0f, 0f, 0f, 100f, 20f);
+        prediction.setKinematics(1, 219000002L, 0L, 0.0, 179.99, 6f, 90f, 90f, 0f, 0f, 0f);
+        prediction.predict(0, 2);
+
+        // 5 nautical miles after 30 minutes
+        assertEquals(55.0 + 5.0 / 60.0, prediction.getPredictedLatitude(0, 29), 1e-9);
+        assertEquals(11.0, prediction.getPredictedLongitude(0, 29), 1e-9);
+        assertEquals(0f, prediction.getPredictedCog(0, 29), 1e-6);
+
+        // 3 nautical miles after 30 minutes, crossing the date line
+        assertEquals(0.0, prediction.getPredictedLatitude(1, 29), 1e-9);
+        assertEquals(179.99 + 3.0 / 60.0 - 360.0, prediction.getPredictedLongitude(1, 29), 1e-9);
+        assertEquals(30 * 60 * 1000L, prediction.getPredictedTime(29));
+    }
+
+    @Test
+    public void testRateOfTurn() {
+        FleetPrediction prediction = new FleetPrediction(0L, 1, 10, 60);
+        // Turning to port at 10 degrees per minute
+        prediction.setKinematics(0, 219000001L, 0L, 55.0, 11.0, 12f, 5f, 7f, -10f, 0f, 0f);
+        prediction.predict(0, 1);
+
+        assertEquals(355f, prediction.getPredictedCog(0, 0), 1e-4);
+        assertEquals(357f, prediction.getPredictedHeading(0, 0), 1e-4);
+        assertEquals(265f, prediction.getPredictedCog(0, 9), 1e-4);
+        // The first step follows the initial course
+        assertEquals(55.0 + 0.2 * Math.cos(Math.toRadians(5)) / 60.0, prediction.getPredictedLatitude(0, 0), 1e-9);
+    }
+
+    @Test
+    public void testReportTime() {
+        FleetPrediction prediction = new FleetPrediction(10 * 60 * 1000L, 2, 5, 60);
+        // Reported 10 minutes before the prediction at 12 knots north
+        prediction.setKinematics(0, 219000001L, 0L, 55.0, 11.0, 12f, 0f, 0f, 0f, 0f, 0f);
+        // Reported after the time of the prediction, which is ignored
+        prediction.setKinematics(1, 219000002L, 11 * 60 * 1000L, 55.0, 11.0, 12f, 0f, 0f, 0f, 0f, 0f);
+        prediction.predict(0, 2);
+
+        // 2 nautical miles to the time of the prediction, and 0.2 more for the first step
+        assertEquals(55.0 + 2.2 / 60.0, prediction.getPredictedLatitude(0, 0), 1e-9);
+        assertEquals(55.0 + 3.0 / 60.0, prediction.getPredictedLatitude(0, 4), 1e-9);
+        assertEquals(55.0, prediction.getLatitude(0), 0.0);
+        assertEquals(0L, prediction.getReportTime(0));
+
+        assertEquals(10 * 60 * 1000L, prediction.getReportTime(1));
+        assertEquals(55.0 + 0.2 / 60.0, prediction.getPredictedLatitude(1, 0), 1e-9);
+    }
+
+    @Test
+    public void testIndexOf() {
+        FleetPrediction prediction = new FleetPrediction(0L, 3, 1, 60);
+        prediction.setKinematics(0, 1L, 0L, 0, 0, 0, 0, 0, 0, 0, 0);
+        prediction.setKinematics(1, 5L, 0L, 0, 0, 0, 0, 0, 0, 0, 0);
+        prediction.setKinematics(2, 9L, 0L, 0, 0, 0, 0, 0, 0, 0, 0);
+        assertEquals(1, prediction.indexOf(5L));
+        assertEquals(2, prediction.indexOf(9L));
+        assertEquals(true, prediction.indexOf(4L) < 0);
+    }
+}
@@ -0,0 +1,255 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.route;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import dk.dma.enav.model.geometry.Position;
+import dk.dma.epd.common.Heading;
+import dk.dma.epd.common.prototype.communication.webservice.ShoreServiceErrorCode;
+import dk.dma.epd.common.prototype.communication.webservice.ShoreServiceException;
+import dk.dma.epd.common.prototype.model.route.Route;
+import dk.dma.epd.common.prototype.model.route.RouteLeg;
+import dk.dma.epd.common.prototype.model.route.RouteMetocSettings;
+import dk.dma.epd.common.prototype.model.route.RouteWaypoint;
+import dk.dma.epd.common.prototype.route.RouteMetocScheduler.MetocRequestKey;
+import dk.dma.epd.common.prototype.sensor.pnt.PntTime;
+import dk.frv.enav.common.xml.metoc.MetocForecast;
+
+/**
+ * Tests of the {@linkplain RouteMetocScheduler}
+ */
+public class RouteMetocSchedulerTest {
+
+    private static final long TIMEOUT = 5000L;
+
+    private final TestClient client = new TestClient();
+    private RouteMetocScheduler scheduler;
+
+    @BeforeClass
+    public static void initTime() {
+        PntTime.init(false);
+    }
+
+    @Before
+    public void startScheduler() {
+        scheduler = new RouteMetocScheduler(client);
+        Thread thread = new Thread(scheduler, "RouteMetocScheduler");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @After
+    public void stopScheduler() {
+        scheduler.stop();
+    }
+
+    private static Route createRoute(long starttime, int interval, double... latLons) {
+        LinkedList<RouteWaypoint> waypoints = new LinkedList<>();
+        for (int i = 0; i < latLons.length; i += 2) {
+            RouteWaypoint waypoint = new RouteWaypoint();
+            waypoint.setPos(Position.create(latLons[i], latLons[i + 1]));
+            if (!waypoints.isEmpty()) {
+                new RouteLeg(waypoints.getLast(), waypoint).setSpeed(10.0);
+            }
+            waypoints.add(waypoint);
+        }
+        Route route = new Route();
+        route.setWaypoints(waypoints);
+        route.setStarttime(new Date(starttime));
+        RouteMetocSettings metocSettings = new RouteMetocSettings();
+        metocSettings.setInterval(interval);
+        route.setRouteMetocSettings(metocSettings);
+        return route;
+    }
+
+    private static Route createRoute(long starttime) {
+        return createRoute(starttime, 15, 55.0, 11.0, 55.5, 11.0, 55.5, 12.0);
+    }
+
+    @Test
+    public void testRequestKey() {
+        long starttime = PntTime.getDate().getTime();
+        Route route = createRoute(starttime);
+        MetocRequestKey key = MetocRequestKey.create(route);
+        assertEquals(key, MetocRequestKey.create(createRoute(starttime)));
+        assertEquals(key.hashCode(), MetocRequestKey.create(createRoute(starttime)).hashCode());
+
+        // Routes that differ in ETAs, METOC interval or way points have different requests
+        assertNotEquals(key, MetocRequestKey.create(createRoute(starttime + 60 * 1000L)));
+        assertNotEquals(key, MetocRequestKey.create(createRoute(starttime, 30, 55.0, 11.0, 55.5, 11.0, 55.5, 12.0)));
+        assertNotEquals(key, MetocRequestKey.create(createRoute(starttime, 15, 55.0, 11.0, 55.5, 11.0, 55.5, 12.1)));
+
+        // ... as do routes that differ in a leg heading only. The first leg runs along a meridian, so the ETAs agree.
+        Route greatCircle = createRoute(starttime);
+        greatCircle.getWaypoints().get(0).getOutLeg().setHeading(Heading.GC);
+        assertNotEquals(key, MetocRequestKey.create(greatCircle));
+
+        // Routes without METOC settings are never shared
+        route.setRouteMetocSettings(null);
+        assertNull(MetocRequestKey.create(route));
+    }
+
+    @Test
+    public void testDispatch() throws InterruptedException {
+        long starttime = PntTime.getDate().getTime();
+        Route due = createRoute(starttime);
+        Route later = createRoute(starttime + 60 * 1000L);
+        Route never = createRoute(starttime + 120 * 1000L);
+        client.refreshTimes.put(due, 0L);
+        client.refreshTimes.put(later, starttime + 60 * 60 * 1000L);
+        client.refreshTimes.put(never, RouteMetocScheduler.NEVER);
+
+        client.expectFetched(1);
+        scheduler.update(Arrays.asList(due, later, never));
+        client.awaitFetched();
+
+        assertEquals(Arrays.asList(due), client.fetchedRoutes());
+        assertEquals(1, client.fetches.get());
+        assertNull(client.lastError);
+
+        // Only the route that is not due yet remains scheduled
+        assertFalse(scheduler.isScheduled(due));
+        assertTrue(scheduler.isScheduled(later));
+        assertFalse(scheduler.isScheduled(never));
+        assertEquals(starttime + 60 * 60 * 1000L, scheduler.getDueTime(later));
+        assertEquals(1, scheduler.getScheduledCount());
+
+        // Routes that are no longer included are dropped
+        client.refreshTimes.put(due, RouteMetocScheduler.NEVER);
+        scheduler.update(Arrays.asList(due, never));
+        assertFalse(scheduler.isScheduled(later));
+        assertEquals(0, scheduler.getScheduledCount());
+    }
+
+    @Test
+    public void testCoalescing() throws InterruptedException {
+        long starttime = PntTime.getDate().getTime();
+        Route route1 = createRoute(starttime);
+        Route route2 = createRoute(starttime);
+        Route greatCircle = createRoute(starttime);
+        greatCircle.getWaypoints().get(0).getOutLeg().setHeading(Heading.GC);
+        for (Route route : Arrays.asList(route1, route2, greatCircle)) {
+            client.refreshTimes.put(route, 0L);
+        }
+
+        // The identical routes share a request, while the great circle route gets its own
+        client.expectFetched(3);
+        scheduler.update(Arrays.asList(route1, route2, greatCircle));
+        client.awaitFetched();
+
+        assertEquals(2, client.fetches.get());
+        assertEquals(3, client.fetchedRoutes().size());
+        assertTrue(client.fetchedRoutes().containsAll(Arrays.asList(route1, route2, greatCircle)));
+    }
+
+    @Test
+    public void testRetry() throws InterruptedException {
+        long starttime = PntTime.getDate().getTime();
+        Route route = createRoute(starttime);
+        client.refreshTimes.put(route, 0L);
+        client.error = new ShoreServiceException(ShoreServiceErrorCode.NO_CONTACT);
+
+        client.expectFetched(1);
+        scheduler.update(Arrays.asList(route));
+        client.awaitFetched();
+        assertEquals(ShoreServiceErrorCode.NO_CONTACT, client.lastError.getErrroCode());
+
+        // The failed route is held back for the retry delay, even though it is due
+        long failed = PntTime.getDate().getTime();
+        scheduler.update(Arrays.asList(route));
+        assertTrue(scheduler.isScheduled(route));
+        long dueTime = scheduler.getDueTime(route);
+        assertTrue(dueTime >= starttime + RouteMetocScheduler.RETRY_DELAY);
+        assertTrue(dueTime <= failed + RouteMetocScheduler.RETRY_DELAY);
+        Thread.sleep(100L);
+        assertEquals(1, client.fetches.get());
+
+        // ... but routes that should not be refreshed are still dropped
+        client.refreshTimes.put(route, RouteMetocScheduler.NEVER);
+        scheduler.update(Arrays.asList(route));
+        assertFalse(scheduler.isScheduled(route));
+    }
+
+    /**
+     * Client that records the METOC requests and completions
+     */
+    private static final class TestClient implements RouteMetocScheduler.MetocClient {
+        final Map<Route, Long> refreshTimes = Collections.synchronizedMap(new IdentityHashMap<Route, Long>());
+        final AtomicInteger fetches = new AtomicInteger();
+        final List<Route> fetched = new ArrayList<>();
+        volatile ShoreServiceException error;
+        volatile ShoreServiceException lastError;
+        private volatile CountDownLatch latch;
+
+        void expectFetched(int routes) {
+            latch = new CountDownLatch(routes);
+        }
+
+        void awaitFetched() throws InterruptedException {
+            assertTrue(latch.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        }
+
+        synchronized List<Route> fetchedRoutes() {
+            return new ArrayList<>(fetched);
+        }
+
+        @Override
+        public long getMetocRefreshTime(Route route, long now) {
+            return refreshTimes.get(route);
+        }
+
+        @Override
+        public MetocForecast fetchRouteMetoc(Route route) throws ShoreServiceException {
+            fetches.incrementAndGet();
+            if (error != null) {
+                throw error;
+            }
+            return new MetocForecast();
+        }
+
+        @Override
+        public void routeMetocFetched(List<Route> routes, MetocForecast metocForecast, ShoreServiceException error) {
+            synchronized (this) {
+                fetched.addAll(routes);
+            }
+            lastError = error;
+            for (int i = 0; i < routes.size(); i++) {
+                latch.countDown();
+            }
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.sensor.nmea;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests of the {@linkplain MappedLineReader}
+ */
+public class MappedLineReaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private String write(String content) throws IOException {
+        File file = folder.newFile();
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(content.getBytes(StandardCharsets.ISO_8859_1));
+        }
+        return file.getPath();
+    }
+
+    @Test
+    public void testReadLines() throws IOException {
+        try (MappedLineReader reader = new MappedLineReader(write("!AIVDM,1\r\n\n$GPRMC,2\n$GPRMC,3"))) {
+            assertEquals(28, reader.getSize());
+            assertEquals("!AIVDM,1", reader.readLine());
+            assertEquals("", reader.readLine());
+            assertEquals("$GPRMC,2", reader.readLine());
+            // The last line has no terminator
+            assertEquals("$GPRMC,3", reader.readLine());
+            assertNull(reader.readLine());
+            assertEquals(28, reader.getPosition());
+        }
+    }
+
+    @Test
+    public void testEmptyFile() throws IOException {
+        try (MappedLineReader reader = new MappedLineReader(write(""))) {
+            assertNull(reader.readLine());
+        }
+    }
+
+    @Test
+    public void testSeek() throws IOException {
+        try (MappedLineReader reader = new MappedLineReader(write("line1\nline2\r\nline3\n"))) {
+            assertEquals("line1", reader.readLine());
+            long offset = reader.getPosition();
+            assertEquals(6, offset);
+            assertEquals("line2", reader.readLine());
+            assertEquals("line3", reader.readLine());
+
+            reader.seek(offset);
+            assertEquals("line2", reader.readLine());
+            reader.seek(0);
+            assertEquals("line1", reader.readLine());
+
+            // Seeking is bounded by the file
+            reader.seek(-5);
+            assertEquals(0, reader.getPosition());
+            reader.seek(1000);
+            assertNull(reader.readLine());
+        }
+    }
+
+    @Test
+    public void testLongLine() throws IOException {
+        char[] chars = new char[1000];
+        Arrays.fill(chars, 'x');
+        String line = new String(chars);
+        try (MappedLineReader reader = new MappedLineReader(write(line + "\r\n" + line + "\n"))) {
+            assertEquals(line, reader.readLine());
+            assertEquals(line, reader.readLine());
+            assertNull(reader.readLine());
+        }
+    }
+
+    @Test
+    public void testWindows() throws IOException {
+        // Lines crossing the boundaries of small windows, including a seek back into an earlier window
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            content.append("$GPRMC,").append(i).append("\r\n");
+        }
+        try (MappedLineReader reader = new MappedLineReader(write(content.toString()), 7)) {
+            long offset50 = 0;
+            for (int i = 0; i < 100; i++) {
+                if (i == 50) {
+                    offset50 = reader.getPosition();
+                }
+                assertEquals("$GPRMC," + i, reader.readLine());
+            }
+            assertNull(reader.readLine());
+            reader.seek(offset50);
+            assertEquals("$GPRMC,50", reader.readLine());
+        }
+    }
+}
@@ -0,0 +1,286 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.sensor.nmea;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import dk.dma.ais.message.AisMessage;
+import dk.dma.ais.packet.AisPacket;
+import dk.dma.ais.packet.AisPacketParser;
+import dk.dma.ais.reader.SendException;
+import dk.dma.ais.reader.SendRequest;
+import dk.dma.ais.sentence.Abk;
+import dk.dma.enav.util.function.Consumer;
+import dk.dma.epd.common.prototype.status.NmeaDecodeStatus;
+
+/**
+ * Tests of the {@linkplain NmeaDecodePipeline}
+ */
+public class NmeaDecodePipelineTest {
+
+    private static final String VDM = "!AIVDM,1,1,,A,13u?etPv2;0n:dDPwUM1U1Cb069D,0*24";
+    private static final long TIMEOUT = 5000L;
+
+    private final NmeaDecodeStatus status = new NmeaDecodeStatus();
+    private TestSensor sensor;
+    private NmeaDecodePipeline pipeline;
+
+    @After
+    public void stopPipeline() throws InterruptedException {
+        if (sensor != null) {
+            sensor.release();
+        }
+        if (pipeline != null) {
+            pipeline.stop();
+        }
+        assertPipelineThreadsTerminated();
+    }
+
+    @Test
+    public void testInOrderDelivery() throws InterruptedException {
+        sensor = new TestSensor(true);
+        pipeline = new NmeaDecodePipeline(sensor, 4, 100, true, status);
+        pipeline.start();
+        sensor.release();
+
+        // Interleave AIS lines, which are decoded in parallel with random delays, with other sentences
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            String line = (i % 3 == 0) ? "$PTEST," + i : new String(VDM);
+            lines.add(line);
+            pipeline.submit(line, line.startsWith("!"));
+        }
+
+        List<String> delivered = sensor.awaitDelivered(lines.size());
+        assertEquals(lines.size(), delivered.size());
+        for (int i = 0; i < lines.size(); i++) {
+            assertSame("Line " + i, lines.get(i), delivered.get(i));
+        }
+        assertEquals(lines.size(), status.getReadLines());
+        assertEquals(0L, status.getDroppedLines());
+    }
+
+    @Test
+    public void testBlockWhenFull() throws InterruptedException {
+        sensor = new TestSensor(false);
+        pipeline = new NmeaDecodePipeline(sensor, 2, 4, true, status);
+        pipeline.start();
+
+        // The decoders are blocked, so the read stage must block once the pipeline is full
+        final int count = 20;
+        final AtomicInteger submitted = new AtomicInteger();
+        final List<String> lines = Collections.synchronizedList(new ArrayList<String>());
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < count; i++) {
+                        String line = new String(VDM);
+                        lines.add(line);
+                        pipeline.submit(line, true);
+                        submitted.incrementAndGet();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        reader.start();
+
+        Thread.sleep(500L);
+        assertTrue(reader.isAlive());
+        assertTrue(submitted.get() < count);
+        assertEquals(0L, status.getDroppedLines());
+
+        // Once released, all lines are delivered in order and nothing is dropped
+        sensor.release();
+        reader.join(TIMEOUT);
+        assertFalse(reader.isAlive());
+        List<String> delivered = sensor.awaitDelivered(count);
+        assertEquals(count, delivered.size());
+        for (int i = 0; i < count; i++) {
+            assertSame("Line " + i, lines.get(i), delivered.get(i));
+        }
+        assertEquals(count, status.getReadLines());
+        assertEquals(0L, status.getDroppedLines());
+    }
+
+    @Test
+    public void testDropWhenFull() throws InterruptedException {
+        sensor = new TestSensor(false);
+        pipeline = new NmeaDecodePipeline(sensor, 1, 4, false, status);
+        pipeline.start();
+
+        // The decoder is blocked, so lines are dropped once the pipeline is full, without blocking the read stage
+        final int count = 50;
+        for (int i = 0; i < count; i++) {
+            pipeline.submit(new String(VDM), true);
+            pipeline.submit("$PTEST," + i, false);
+        }
+        assertEquals(2 * count, status.getReadLines());
+        long dropped = status.getDroppedLines();
+        assertTrue(dropped > 0);
+
+        // Every line read is either dropped or delivered
+        sensor.release();
+        int accepted = (int) (2 * count - dropped);
+        assertEquals(accepted, sensor.awaitDelivered(accepted).size());
+        Thread.sleep(200L);
+        assertEquals(accepted, sensor.getDelivered().size());
+        assertEquals(dropped, status.getDroppedLines());
+    }
+
+    @Test
+    public void testShutdown() throws InterruptedException {
+        sensor = new TestSensor(false);
+        pipeline = new NmeaDecodePipeline(sensor, 2, 4, true, status);
+        pipeline.start();
+
+        // Block the read stage on a full pipeline
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < 20; i++) {
+                        pipeline.submit(new String(VDM), true);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        reader.start();
+        Thread.sleep(200L);
+        assertTrue(reader.isAlive());
+
+        // Stopping the pipeline releases the read stage and terminates the decode and delivery threads, even though
+        // the decoders never finish the lines in the pipeline
+        pipeline.stop();
+        reader.join(TIMEOUT);
+        assertFalse(reader.isAlive());
+        assertPipelineThreadsTerminated();
+        assertTrue(sensor.getDelivered().isEmpty());
+    }
+
+    /**
+     * Waits for the decode and delivery threads of the pipeline to terminate
+     */
+    private static void assertPipelineThreadsTerminated() throws InterruptedException {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith("NmeaDecoder-") || thread.getName().equals("NmeaDelivery")) {
+                thread.join(TIMEOUT);
+                assertFalse(thread.getName(), thread.isAlive());
+            }
+        }
+    }
+
+    /**
+     * Sensor recording the delivered lines. The decoding of AIS lines is blocked until released, and may be delayed
+     * randomly to make the decoders finish out of order.
+     */
+    private static class TestSensor extends NmeaSensor {
+
+        private final boolean randomDelay;
+        private final CountDownLatch released = new CountDownLatch(1);
+        private final Map<Object, String> lines = Collections.synchronizedMap(new IdentityHashMap<Object, String>());
+        private final List<String> delivered = new ArrayList<>();
+
+        TestSensor(boolean randomDelay) {
+            this.randomDelay = randomDelay;
+        }
+
+        void release() {
+            released.countDown();
+        }
+
+        @Override
+        AisPacket readAisPacket(AisPacketParser parser, String msg) {
+            try {
+                released.await();
+                if (randomDelay) {
+                    Thread.sleep(new Random().nextInt(3));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            AisPacket packet = super.readAisPacket(parser, msg);
+            if (packet != null) {
+                lines.put(packet, msg);
+            }
+            return packet;
+        }
+
+        @Override
+        AisMessage parseAisMessage(AisPacket packet) {
+            AisMessage message = super.parseAisMessage(packet);
+            if (message != null) {
+                lines.put(message, lines.remove(packet));
+            }
+            return message;
+        }
+
+        @Override
+        void distributeAisMessage(AisMessage message, boolean ownMessage) {
+            deliver(lines.remove(message));
+        }
+
+        @Override
+        protected void handleSentence(String msg) {
+            deliver(msg);
+        }
+
+        private synchronized void deliver(String line) {
+            delivered.add(line);
+            notifyAll();
+        }
+
+        synchronized List<String> getDelivered() {
+            return new ArrayList<>(delivered);
+        }
+
+        synchronized List<String> awaitDelivered(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + TIMEOUT;
+            while (delivered.size() < count && System.currentTimeMillis() < deadline) {
+                wait(Math.max(1L, deadline - System.currentTimeMillis()));
+            }
+            return new ArrayList<>(delivered);
+        }
+
+        @Override
+        public void send(SendRequest sendRequest, Consumer<Abk> resultListener) throws SendException {
+            throw new SendException("Cannot send to test sensor");
+        }
+
+        @Override
+        public void run() {
+        }
+    }
+}
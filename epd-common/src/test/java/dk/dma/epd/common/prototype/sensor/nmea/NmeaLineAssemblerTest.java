@@ -0,0 +1,84 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.sensor.nmea;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import dk.dma.epd.common.prototype.sensor.nmea.NmeaSentenceClassifier.SentenceType;
+
+public class NmeaLineAssemblerTest {
+
+    private static ByteBuffer direct(String str) {
+        byte[] bytes = str.getBytes(StandardCharsets.ISO_8859_1);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes);
+        buffer.flip();
+        return buffer;
+    }
+
+    private static List<String> readLines(NmeaLineAssembler assembler, String str) {
+        List<String> lines = new ArrayList<>();
+        ByteBuffer buffer = direct(str);
+        while (assembler.next(buffer)) {
+            lines.add(assembler.toString());
+        }
+        return lines;
+    }
+
+    @Test
+    public void splitTest() {
+        NmeaLineAssembler assembler = new NmeaLineAssembler();
+        Assert.assertEquals(Arrays.asList("!AIVDM,1", "$GPRMC,2", "$GPRMC,3"),
+                readLines(assembler, "!AIVDM,1\r\n$GPRMC,2\n\n$GPRMC,3\r\n"));
+    }
+
+    @Test
+    public void partialLineTest() {
+        NmeaLineAssembler assembler = new NmeaLineAssembler();
+        Assert.assertEquals(Arrays.asList("$GPRMC,1"), readLines(assembler, "$GPRMC,1\r\n!AIV"));
+        Assert.assertEquals(Arrays.asList("!AIVDM,2"), readLines(assembler, "DM,2\r"));
+        Assert.assertEquals(Arrays.asList(), readLines(assembler, "\n$GPRMC"));
+        Assert.assertTrue(assembler.flush());
+        Assert.assertEquals("$GPRMC", assembler.toString());
+        Assert.assertFalse(assembler.flush());
+    }
+
+    @Test
+    public void overflowTest() {
+        NmeaLineAssembler assembler = new NmeaLineAssembler();
+        char[] chars = new char[NmeaLineAssembler.MAX_LINE_LENGTH + 1];
+        Arrays.fill(chars, 'x');
+        Assert.assertEquals(Arrays.asList("$GPRMC,1"), readLines(assembler, new String(chars) + "\r\n$GPRMC,1\r\n"));
+        Assert.assertEquals(1, assembler.getDropped());
+    }
+
+    @Test
+    public void classifyTest() {
+        NmeaLineAssembler assembler = new NmeaLineAssembler();
+        Assert.assertTrue(assembler.next(direct("!AIVDM,1,1,,A,13u?etPv2;0n:dDPwUM1U1Cb069D,0*24\r\n")));
+        Assert.assertEquals(SentenceType.VDM, NmeaSentenceClassifier.classify(assembler));
+        Assert.assertEquals("!AIVDM", assembler.subSequence(0, 6).toString());
+        Assert.assertTrue(assembler.next(direct("$GPGGA,101134,5153.5205,N*47\n")));
+        Assert.assertEquals(SentenceType.OTHER, NmeaSentenceClassifier.classify(assembler));
+    }
+
+}
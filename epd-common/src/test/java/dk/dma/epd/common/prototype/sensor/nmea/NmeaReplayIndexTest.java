@@ -0,0 +1,123 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.sensor.nmea;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests of the {@linkplain NmeaReplayIndex}
+ */
+public class NmeaReplayIndexTest {
+
+    private static final String VDM = "!AIVDM,1,1,,A,13u?etPv2;0n:dDPwUM1U1Cb069D,0*24\r\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Returns a Gatehouse source tag line with the given time of day
+     */
+    private static String tag(int minute, int second, int millis) {
+        String sentence = "PGHP,1,2013,3,13,10," + minute + "," + second + "," + millis + ",219,,2190047,1,4A";
+        int checksum = 0;
+        for (int i = 0; i < sentence.length(); i++) {
+            checksum ^= sentence.charAt(i);
+        }
+        return String.format("$%s*%02X\r\n", sentence, checksum);
+    }
+
+    private static void write(File file, String content, boolean append) throws IOException {
+        try (OutputStream out = new FileOutputStream(file, append)) {
+            out.write(content.getBytes(StandardCharsets.ISO_8859_1));
+        }
+    }
+
+    @Test
+    public void testBuild() throws IOException {
+        StringBuilder content = new StringBuilder();
+        content.append(tag(39, 0, 0)).append(VDM);
+        // Within the resolution of the previous entry
+        content.append(tag(39, 0, 500)).append(VDM);
+        long offset1 = content.length();
+        content.append(tag(39, 1, 0)).append(VDM);
+        // Going back in time, and an invalid tag
+        content.append(tag(38, 59, 0)).append("$PGHP,1,bad*00\r\n").append(VDM);
+        long offset2 = content.length();
+        content.append(tag(39, 5, 0)).append(VDM);
+        File file = folder.newFile();
+        write(file, content.toString(), false);
+
+        NmeaReplayIndex index = NmeaReplayIndex.build(file.getPath());
+        assertEquals(3, index.size());
+        long start = index.getStart().getTime();
+        assertEquals(start + 5000L, index.getEnd().getTime());
+
+        // The last entry before the requested time, or the start of the file
+        assertEquals(0L, index.getOffset(new Date(start - 1000L)));
+        assertEquals(0L, index.getOffset(new Date(start + 999L)));
+        assertEquals(offset1, index.getOffset(new Date(start + 1000L)));
+        assertEquals(offset1, index.getOffset(new Date(start + 4999L)));
+        assertEquals(offset2, index.getOffset(new Date(start + 5000L)));
+        assertEquals(offset2, index.getOffset(new Date(start + 60000L)));
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        File file = folder.newFile();
+        write(file, VDM + VDM, false);
+
+        NmeaReplayIndex index = NmeaReplayIndex.build(file.getPath());
+        assertEquals(0, index.size());
+        assertEquals(null, index.getStart());
+        assertEquals(0L, index.getOffset(new Date()));
+    }
+
+    @Test
+    public void testLoadOrBuild() throws IOException {
+        File file = folder.newFile();
+        write(file, tag(39, 0, 0) + VDM + tag(39, 2, 0) + VDM, false);
+
+        // Built and saved next to the replay file
+        NmeaReplayIndex index = NmeaReplayIndex.loadOrBuild(file.getPath());
+        assertEquals(2, index.size());
+        File indexFile = new File(file.getPath() + ".idx");
+        assertTrue(indexFile.exists());
+        long saved = indexFile.length();
+
+        // Loaded from the sidecar file
+        NmeaReplayIndex loaded = NmeaReplayIndex.loadOrBuild(file.getPath());
+        assertEquals(index.size(), loaded.size());
+        assertEquals(index.getStart(), loaded.getStart());
+        assertEquals(index.getEnd(), loaded.getEnd());
+
+        // Rebuilt when the replay file changes
+        write(file, tag(39, 4, 0) + VDM, true);
+        NmeaReplayIndex rebuilt = NmeaReplayIndex.loadOrBuild(file.getPath());
+        assertEquals(3, rebuilt.size());
+        assertTrue(indexFile.length() > saved);
+    }
+}
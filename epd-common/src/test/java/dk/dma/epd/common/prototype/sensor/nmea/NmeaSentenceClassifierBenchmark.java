@@ -0,0 +1,128 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.sensor.nmea;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import dk.dma.ais.sentence.Abk;
+import dk.dma.epd.common.prototype.sensor.nmea.NmeaSentenceClassifier.SentenceType;
+
+/**
+ * Compares the throughput of the {@linkplain NmeaSentenceClassifier} against the former indexOf-based classification
+ * of {@linkplain NmeaSensor#handleSentence(String)}.
+ * <p>
+ * Replays the recorded NMEA file given by the {@code nmea.file} system property, or a small built-in sample if not
+ * specified. Run with:
+ * 
+ * <pre>
+ * java -cp ... -Dnmea.file=/path/to/recording.txt dk.dma.epd.common.prototype.sensor.nmea.NmeaSentenceClassifierBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class NmeaSentenceClassifierBenchmark {
+
+    private static final List<String> SAMPLE = Arrays.asList(
+            "$PGHP,1,2013,3,13,10,39,18,375,219,,2190047,1,4A*57",
+            "!AIVDM,1,1,,A,13u?etPv2;0n:dDPwUM1U1Cb069D,0*24",
+            "!AIVDM,2,1,3,B,55?MbV02;H;s<HtKR20EHE:0@T4@Dn2222222216L961O5Gf0NSQEp6ClRp8,0*1C",
+            "!AIVDM,2,2,3,B,88888888880,2*25",
+            "!BSVDM,1,1,,B,B3aB3>@0080DU<5Ms3cPCwj5oP06,0*4F",
+            "!AIVDO,1,1,,,B3aB3>@0080DU<5Ms3cPCwj5oP06,0*6A",
+            "$GPRMC,101134,A,5153.5205,N,00125.2184,E,003.1,194.1,010313,0,E*68",
+            "$GPGGA,101134,5153.5205,N,00125.2184,E,1,08,0.9,545.4,M,46.9,M,,*47",
+            "$AIABK,219015063,A,6,1,0*14",
+            "$PSTT,10A,1,2,3*00");
+
+    private String[] lines;
+
+    @Setup
+    public void setup() throws IOException {
+        String file = System.getProperty("nmea.file");
+        List<String> recording = new ArrayList<>(SAMPLE);
+        if (file != null) {
+            recording = Files.readAllLines(Paths.get(file), StandardCharsets.ISO_8859_1);
+        }
+        lines = recording.toArray(new String[recording.size()]);
+    }
+
+    @Benchmark
+    public void classifier(Blackhole bh) {
+        for (String line : lines) {
+            bh.consume(NmeaSentenceClassifier.classify(line));
+        }
+    }
+
+    @Benchmark
+    public void indexOf(Blackhole bh) {
+        for (String line : lines) {
+            bh.consume(legacyClassify(line));
+        }
+    }
+
+    /**
+     * The classification formerly used by {@linkplain NmeaSensor#handleSentence(String)}
+     */
+    private static SentenceType legacyClassify(String msg) {
+        if (RmcSentence.getParser(msg) != null) {
+            return SentenceType.RMC;
+        } else if (msg.indexOf("!AIVDM") >= 0 || msg.indexOf("!AIVDO") >= 0 || msg.indexOf("!BSVDM") >= 0
+                || msg.indexOf("!ABVDM") >= 0) {
+            return SentenceType.VDM;
+        } else if (Abk.isAbk(msg)) {
+            return SentenceType.ABK;
+        } else if (msg.indexOf("$P") >= 0) {
+            if (msg.indexOf("$PSTT,10A") >= 0) {
+                return SentenceType.PSTT;
+            } else if (msg.indexOf("$PRPNT") >= 0) {
+                return SentenceType.PRPNT;
+            } else if (msg.indexOf("$PDYPN") >= 0 || msg.indexOf("$PDYPP") >= 0) {
+                return SentenceType.PDYP;
+            }
+            return SentenceType.PROPRIETARY;
+        }
+        return SentenceType.OTHER;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(NmeaSentenceClassifierBenchmark.class.getSimpleName()).build()).run();
+    }
+}
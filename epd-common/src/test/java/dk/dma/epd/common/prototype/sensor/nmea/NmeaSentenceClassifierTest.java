@@ -0,0 +1,48 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.sensor.nmea;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import dk.dma.epd.common.prototype.sensor.nmea.NmeaSentenceClassifier.SentenceType;
+
+public class NmeaSentenceClassifierTest {
+
+    @Test
+    public void classifyTest() {
+        Assert.assertEquals(SentenceType.VDM, NmeaSentenceClassifier.classify("!AIVDM,1,1,,A,13u?etPv2;0n:dDPwUM1U1Cb069D,0*24"));
+        Assert.assertEquals(SentenceType.VDM, NmeaSentenceClassifier.classify("!BSVDM,1,1,,B,B3aB3>@0080DU<5Ms3cPCwj5oP06,0*4F"));
+        Assert.assertEquals(SentenceType.VDO, NmeaSentenceClassifier.classify("!AIVDO,1,1,,,B3aB3>@0080DU<5Ms3cPCwj5oP06,0*6A"));
+        Assert.assertEquals(SentenceType.RMC,
+                NmeaSentenceClassifier.classify("$GPRMC,101134,A,5153.5205,N,00125.2184,E,003.1,194.1,010313,0,E*68"));
+        Assert.assertEquals(SentenceType.RMC,
+                NmeaSentenceClassifier.classify("$ELRMC,095755,A,5154.9566,N,00125.8246,E,006.8,210.5,010313,0,E*72"));
+        Assert.assertEquals(SentenceType.ABK, NmeaSentenceClassifier.classify("$AIABK,219015063,A,6,1,0*14"));
+        Assert.assertEquals(SentenceType.PSTT, NmeaSentenceClassifier.classify("$PSTT,10A,1,2,3*00"));
+        Assert.assertEquals(SentenceType.PRPNT, NmeaSentenceClassifier.classify("$PRPNT,1,2*00"));
+        Assert.assertEquals(SentenceType.PDYP, NmeaSentenceClassifier.classify("$PDYPP,1,2*00"));
+        Assert.assertEquals(SentenceType.PROPRIETARY, NmeaSentenceClassifier.classify("$PGHP,1,2013,3,13*57"));
+        Assert.assertEquals(SentenceType.OTHER, NmeaSentenceClassifier.classify("$GPGGA,101134,5153.5205,N*47"));
+        Assert.assertEquals(SentenceType.OTHER, NmeaSentenceClassifier.classify(""));
+    }
+
+    @Test
+    public void commentBlockTest() {
+        Assert.assertEquals(SentenceType.VDM,
+                NmeaSentenceClassifier.classify("\\s:2573135,c:1339065296*0B\\!AIVDM,1,1,,A,13u?etPv2;0n:dDPwUM1U1Cb069D,0*24"));
+    }
+
+}
@@ -0,0 +1,254 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+
+import net.maritimecloud.util.Timestamp;
+
+import org.junit.Test;
+
+import dk.dma.enav.model.geometry.Position;
+import dk.dma.epd.common.prototype.model.route.Route;
+import dk.dma.epd.common.prototype.model.route.RouteWaypoint;
+import dk.dma.epd.common.prototype.notification.MsiNmNotification;
+import dma.msinm.MCLocation;
+import dma.msinm.MCLocationType;
+import dma.msinm.MCMessage;
+import dma.msinm.MCMessageDesc;
+import dma.msinm.MCPoint;
+
+/**
+ * Tests of the {@linkplain MsiNmFilter}, comparing the incrementally maintained filter with a full evaluation of all
+ * messages
+ */
+public class MsiNmFilterTest {
+
+    private static final double SHIP_RANGE = 5.0;
+    private static final double NEW_WAYPOINT_RANGE = 3.0;
+
+    private final MsiNmFilter filter = new MsiNmFilter();
+    private final List<MsiNmNotification> messages = new ArrayList<>();
+    private List<Route> routes = new ArrayList<>();
+    private Position shipPosition;
+    private Position mousePosition;
+    private double shipRange = SHIP_RANGE;
+    private double newWaypointRange = NEW_WAYPOINT_RANGE;
+    private int nextId;
+
+    @Test
+    public void testCircleCrossingCells() {
+        filter.setRanges(shipRange, newWaypointRange);
+        filter.setMessages(messages);
+
+        // The center is 12 nautical miles east of the ship, in another cell, but the circle reaches within 2 miles
+        Position center = Position.create(55.1, 11.1);
+        Position ship = Position.create(55.1, 11.1 - 12.0 / 60.0 / Math.cos(Math.toRadians(55.1)));
+        MsiNmNotification circle = createMessage(MCLocationType.CIRCLE, 10, center);
+        MsiNmNotification point = createMessage(MCLocationType.POINT, 0, center);
+        messages.add(circle);
+        messages.add(point);
+        filter.setMessages(messages);
+        update();
+        assertFalse(circle.isFiltered());
+        assertFalse(point.isFiltered());
+
+        // Approach from far away
+        shipPosition = Position.create(54.0, 9.0);
+        filter.setShipPosition(shipPosition);
+        update();
+        assertFalse(circle.isFiltered());
+
+        shipPosition = ship;
+        filter.setShipPosition(shipPosition);
+        update();
+        assertTrue(circle.isFiltered());
+        assertFalse(point.isFiltered());
+
+        // ... and leave again
+        shipPosition = Position.create(54.0, 9.0);
+        filter.setShipPosition(shipPosition);
+        update();
+        assertFalse(circle.isFiltered());
+    }
+
+    @Test
+    public void testMessagesWithoutLocation() {
+        filter.setRanges(shipRange, newWaypointRange);
+        MsiNmNotification msg = createMessage(null, 0);
+        messages.add(msg);
+        filter.setMessages(messages);
+        update();
+        assertTrue(msg.isFiltered());
+    }
+
+    @Test
+    public void testIncrementalUpdates() {
+        Random random = new Random(42L);
+        for (int i = 0; i < 100; i++) {
+            messages.add(createRandomMessage(random));
+        }
+        filter.setRanges(shipRange, newWaypointRange);
+        filter.setMessages(messages);
+        update();
+        assertFullFilter();
+
+        for (int i = 0; i < 500; i++) {
+            switch (random.nextInt(7)) {
+            case 0:
+                // Add a message
+                messages.add(createRandomMessage(random));
+                filter.setMessages(messages);
+                break;
+            case 1:
+                // Remove a message
+                if (!messages.isEmpty()) {
+                    messages.remove(random.nextInt(messages.size()));
+                    filter.invalidate();
+                }
+                break;
+            case 2:
+            case 3:
+                // Move the ship a short distance or somewhere else
+                shipPosition = (shipPosition == null || random.nextInt(4) == 0) ? randomPosition(random) : Position
+                        .create(shipPosition.getLatitude() + (random.nextDouble() - 0.5) * 0.1,
+                                shipPosition.getLongitude() + (random.nextDouble() - 0.5) * 0.2);
+                filter.setShipPosition(shipPosition);
+                break;
+            case 4:
+                // Change the visible routes
+                routes = new ArrayList<>();
+                for (int r = random.nextInt(3); r > 0; r--) {
+                    routes.add(createRandomRoute(random));
+                }
+                filter.setRoutes(routes);
+                break;
+            case 5:
+                // Move the mouse while drawing a route
+                mousePosition = random.nextInt(5) == 0 ? null : randomPosition(random);
+                filter.setNewRoute(mousePosition, null, null);
+                break;
+            default:
+                // Change the ranges now and then
+                if (random.nextInt(5) == 0) {
+                    shipRange = 1.0 + random.nextInt(10);
+                    newWaypointRange = 1.0 + random.nextInt(5);
+                    filter.setRanges(shipRange, newWaypointRange);
+                }
+            }
+            update();
+            assertFullFilter();
+        }
+    }
+
+    /**
+     * Updates the filter and the filtered flag of the changed messages, as done by the MSI-NM handler
+     */
+    private void update() {
+        for (MsiNmNotification msg : filter.update()) {
+            msg.setFiltered(filter.isIncluded(msg));
+        }
+    }
+
+    /**
+     * Checks the filtered flag of all messages against a full evaluation of the filter criteria
+     */
+    private void assertFullFilter() {
+        for (MsiNmNotification msg : messages) {
+            boolean included = msg.getLocation() == null;
+            if (!included && shipPosition != null) {
+                Double dist = msg.getDistanceToPosition(shipPosition);
+                included = dist != null && dist < shipRange;
+            }
+            if (!included) {
+                included = msg.nearRoute(routes);
+            }
+            if (!included && mousePosition != null) {
+                Double dist = msg.getDistanceToPosition(mousePosition);
+                included = dist != null && dist < newWaypointRange;
+            }
+            assertEquals("Message " + msg.getId(), included, msg.isFiltered());
+        }
+    }
+
+    private MsiNmNotification createRandomMessage(Random random) {
+        switch (random.nextInt(5)) {
+        case 0:
+            return createMessage(MCLocationType.POINT, 0, randomPosition(random));
+        case 1:
+            return createMessage(MCLocationType.CIRCLE, 1 + random.nextInt(15), randomPosition(random));
+        case 2:
+            Position pos = randomPosition(random);
+            return createMessage(MCLocationType.POLYGON, 0, pos,
+                    Position.create(pos.getLatitude() + 0.1, pos.getLongitude()),
+                    Position.create(pos.getLatitude(), pos.getLongitude() + 0.2));
+        case 3:
+            return createMessage(MCLocationType.POLYLINE, 0, randomPosition(random), randomPosition(random));
+        default:
+            return random.nextInt(3) == 0 ? createMessage(null, 0) : createMessage(MCLocationType.POINT, 0,
+                    randomPosition(random));
+        }
+    }
+
+    private MsiNmNotification createMessage(MCLocationType type, int radius, Position... points) {
+        MCMessage message = new MCMessage();
+        message.setId(++nextId);
+        message.setUpdated(Timestamp.create(System.currentTimeMillis()));
+        MCMessageDesc desc = new MCMessageDesc();
+        desc.setTitle("Message " + nextId);
+        message.addDescs(desc);
+        if (type != null) {
+            MCLocation loc = new MCLocation();
+            loc.setType(type);
+            if (radius > 0) {
+                loc.setRadius(radius);
+            }
+            for (Position pos : points) {
+                MCPoint pt = new MCPoint();
+                pt.setLat(pos.getLatitude());
+                pt.setLon(pos.getLongitude());
+                loc.addPoints(pt);
+            }
+            message.addLocations(loc);
+        }
+        MsiNmNotification msg = new MsiNmNotification(message);
+        msg.setFiltered(false);
+        return msg;
+    }
+
+    private static Route createRandomRoute(Random random) {
+        LinkedList<RouteWaypoint> waypoints = new LinkedList<>();
+        for (Position pos : Arrays.asList(randomPosition(random), randomPosition(random), randomPosition(random))) {
+            RouteWaypoint wp = new RouteWaypoint();
+            wp.setPos(pos);
+            waypoints.add(wp);
+        }
+        Route route = new Route();
+        route.setWaypoints(waypoints);
+        return route;
+    }
+
+    private static Position randomPosition(Random random) {
+        return Position.create(55.0 + random.nextDouble() * 2.0, 10.0 + random.nextDouble() * 3.0);
+    }
+}
@@ -0,0 +1,52 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.zoom;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests of the {@linkplain ScaleDependentValues}
+ */
+public class ScaleDependentValuesTest {
+
+    @Test
+    public void testPolygonSimplificationLevels() {
+        int count = ScaleDependentValues.getPolygonSimplificationLevelCount();
+        assertEquals(0, ScaleDependentValues.getPolygonSimplificationLevel(0f));
+        assertEquals(0.0, ScaleDependentValues.getPolygonSimplificationLevelTolerance(0), 0.0);
+        assertEquals(count - 1, ScaleDependentValues.getPolygonSimplificationLevel(Float.MAX_VALUE));
+
+        // Each level spans a finer range of scales than the zoom levels
+        assertTrue(count > ZoomLevel.values().length);
+        for (ZoomLevel zoomLevel : ZoomLevel.values()) {
+            float maxScale = Math.min(zoomLevel.getMaxScale(), 20000000f);
+            int minLevel = ScaleDependentValues.getPolygonSimplificationLevel(zoomLevel.getMinScale());
+            assertTrue(minLevel < ScaleDependentValues.getPolygonSimplificationLevel(maxScale));
+        }
+
+        // The tolerance of a level never exceeds a pixel at the map scales of the level, and is at most 2.5 times
+        // finer than needed between the least and most detailed levels
+        for (float scale = 1000f; scale < 50000000f; scale *= 1.1f) {
+            int level = ScaleDependentValues.getPolygonSimplificationLevel(scale);
+            double tolerance = ScaleDependentValues.getPolygonSimplificationLevelTolerance(level);
+            double pixelSize = ScaleDependentValues.getPolygonSimplificationTolerance(scale);
+            assertTrue(tolerance <= pixelSize);
+            assertTrue(level == 0 || level == count - 1 || tolerance * 2.5 >= pixelSize);
+        }
+    }
+}
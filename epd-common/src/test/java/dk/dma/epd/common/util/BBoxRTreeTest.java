@@ -0,0 +1,76 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests of the {@linkplain BBoxRTree}
+ */
+public class BBoxRTreeTest {
+
+    @Test
+    public void testQueryMatchesLinearScan() {
+        Random random = new Random(42);
+        int n = 5000;
+        double[] bboxes = new double[n * 4];
+        for (int i = 0; i < n; i++) {
+            double lat = 50.0 + random.nextDouble() * 10.0;
+            double lon = 5.0 + random.nextDouble() * 15.0;
+            bboxes[i * 4] = lat;
+            bboxes[i * 4 + 1] = lon;
+            bboxes[i * 4 + 2] = lat + random.nextDouble() * 0.5;
+            bboxes[i * 4 + 3] = lon + random.nextDouble() * 0.5;
+        }
+        BBoxRTree tree = new BBoxRTree(bboxes);
+        assertEquals(n, tree.size());
+
+        for (int q = 0; q < 100; q++) {
+            double minLat = 49.0 + random.nextDouble() * 11.0;
+            double minLon = 4.0 + random.nextDouble() * 16.0;
+            double maxLat = minLat + random.nextDouble() * 2.0;
+            double maxLon = minLon + random.nextDouble() * 2.0;
+
+            BitSet expected = new BitSet(n);
+            for (int i = 0; i < n; i++) {
+                if (bboxes[i * 4] <= maxLat && bboxes[i * 4 + 2] >= minLat && bboxes[i * 4 + 1] <= maxLon
+                        && bboxes[i * 4 + 3] >= minLon) {
+                    expected.set(i);
+                }
+            }
+            assertEquals(expected, tree.query(minLat, minLon, maxLat, maxLon));
+        }
+    }
+
+    @Test
+    public void testSmallTrees() {
+        assertTrue(new BBoxRTree(new double[0]).query(-90, -180, 90, 180).isEmpty());
+
+        BBoxRTree tree = new BBoxRTree(new double[] { 55.0, 11.0, 55.5, 11.5 });
+        assertEquals(1, tree.query(55.4, 11.4, 56.0, 12.0).cardinality());
+        assertTrue(tree.query(55.6, 11.0, 56.0, 12.0).isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidBoxes() {
+        new BBoxRTree(new double[] { 55.0, 11.0, 55.5 });
+    }
+}
@@ -0,0 +1,139 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import dk.dma.enav.model.geometry.CoordinateSystem;
+import dk.dma.enav.model.geometry.Position;
+import dk.dma.epd.common.util.CpaCalculator.Leg;
+
+/**
+ * Compares the closed form {@linkplain CpaCalculator} against stepping both routes a minute at a time, as formerly
+ * done by the intended route TCPA filter.
+ * <p>
+ * Each invocation computes the CPA's of a number of random route pairs within the Danish waters. Run with:
+ *
+ * <pre>
+ * java -cp ... dk.dma.epd.common.util.CpaCalculatorBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class CpaCalculatorBenchmark {
+
+    private static final long MINUTE = 60 * 1000L;
+    private static final double MAX_DISTANCE = 1852.0; // 1 NM
+
+    @Param({ "100" })
+    private int routePairs;
+
+    @Param({ "10" })
+    private int legsPerRoute;
+
+    private List<List<Leg>> routes1;
+    private List<List<Leg>> routes2;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42L);
+        routes1 = new ArrayList<>();
+        routes2 = new ArrayList<>();
+        for (int i = 0; i < routePairs; i++) {
+            routes1.add(randomRoute(random));
+            routes2.add(randomRoute(random));
+        }
+    }
+
+    @Benchmark
+    public void closedForm(Blackhole bh) {
+        for (int i = 0; i < routePairs; i++) {
+            bh.consume(CpaCalculator.findCpas(routes1.get(i), routes2.get(i), 0L, Long.MAX_VALUE, MAX_DISTANCE));
+        }
+    }
+
+    @Benchmark
+    public void minuteSteps(Blackhole bh) {
+        for (int i = 0; i < routePairs; i++) {
+            bh.consume(step(routes1.get(i), routes2.get(i)));
+        }
+    }
+
+    /**
+     * Steps both routes a minute at a time and records the positions within the maximum distance
+     */
+    private static List<Position> step(List<Leg> route1, List<Leg> route2) {
+        List<Position> result = new ArrayList<>();
+        long start = Math.max(route1.get(0).getStartTime(), route2.get(0).getStartTime());
+        long end = Math.min(route1.get(route1.size() - 1).getEndTime(), route2.get(route2.size() - 1).getEndTime());
+        int i = 0, j = 0;
+        for (long t = start; t <= end; t += MINUTE) {
+            while (route1.get(i).getEndTime() < t) {
+                i++;
+            }
+            while (route2.get(j).getEndTime() < t) {
+                j++;
+            }
+            Position pos1 = route1.get(i).getPosition(t);
+            Position pos2 = route2.get(j).getPosition(t);
+            if (pos1.distanceTo(pos2, CoordinateSystem.CARTESIAN) <= MAX_DISTANCE) {
+                result.add(pos1);
+            }
+        }
+        return result;
+    }
+
+    private List<Leg> randomRoute(Random random) {
+        List<Leg> legs = new ArrayList<>();
+        Position pos = Position.create(55.0 + random.nextDouble() * 2.0, 10.0 + random.nextDouble() * 2.0);
+        long time = random.nextInt(60) * MINUTE;
+        for (int i = 0; i < legsPerRoute; i++) {
+            Position next = Position.create(pos.getLatitude() + (random.nextDouble() - 0.5) * 0.3, pos.getLongitude()
+                    + (random.nextDouble() - 0.5) * 0.5);
+            long nextTime = time + (30 + random.nextInt(60)) * MINUTE;
+            legs.add(new Leg(i, pos, time, next, nextTime));
+            pos = next;
+            time = nextTime;
+        }
+        return legs;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(CpaCalculatorBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,400 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import dk.dma.enav.model.geometry.CoordinateSystem;
+import dk.dma.enav.model.geometry.Position;
+import dk.dma.epd.common.Heading;
+import dk.dma.epd.common.util.CpaCalculator.Cpa;
+import dk.dma.epd.common.util.CpaCalculator.Leg;
+
+/**
+ * Tests the {@linkplain CpaCalculator} against the minute-by-minute traversal formerly used by the intended route
+ * TCPA filter.
+ */
+public class CpaCalculatorTest {
+
+    private static final long MINUTE = 60 * 1000L;
+    private static final long HOUR = 60 * MINUTE;
+
+    @Test
+    public void testHeadOn() {
+        // Two vessels meeting head on at 56N 11E after 30 minutes
+        Leg leg1 = new Leg(0, Position.create(55.9, 11.0), 0L, Position.create(56.1, 11.0), HOUR);
+        Leg leg2 = new Leg(0, Position.create(56.1, 11.0), 0L, Position.create(55.9, 11.0), HOUR);
+
+        Cpa cpa = CpaCalculator.findCpa(leg1, leg2, 0L, HOUR);
+        assertEquals(30 * MINUTE, cpa.getTime());
+        assertEquals(0.0, cpa.getDistance(), 1.0);
+        assertEquals(56.0, cpa.getPosition1().getLatitude(), 1e-6);
+    }
+
+    @Test
+    public void testNoTimeOverlap() {
+        Leg leg1 = new Leg(0, Position.create(56.0, 11.0), 0L, Position.create(56.1, 11.0), HOUR);
+        Leg leg2 = new Leg(0, Position.create(56.0, 11.0), 2 * HOUR, Position.create(56.1, 11.0), 3 * HOUR);
+        assertNull(CpaCalculator.findCpa(leg1, leg2, 0L, 4 * HOUR));
+    }
+
+    @Test
+    public void testParallel() {
+        // Same course and speed, one nautical mile apart
+        Leg leg1 = new Leg(0, Position.create(56.0, 11.0), 0L, Position.create(56.2, 11.0), HOUR);
+        Leg leg2 = new Leg(0, Position.create(56.0, 11.0 + 1.0 / 60.0 / Math.cos(Math.toRadians(56.0))), 0L,
+                Position.create(56.2, 11.0 + 1.0 / 60.0 / Math.cos(Math.toRadians(56.0))), HOUR);
+
+        Cpa cpa = CpaCalculator.findCpa(leg1, leg2, 0L, HOUR);
+        assertEquals(1.0, Converter.metersToNm(cpa.getDistance()), 0.01);
+    }
+
+    @Test
+    public void testCpaClampedToInterval() {
+        // Vessels diverging, so the CPA is at the start of the interval
+        Leg leg1 = new Leg(0, Position.create(56.0, 11.0), 0L, Position.create(56.2, 11.0), HOUR);
+        Leg leg2 = new Leg(0, Position.create(55.9, 11.0), 0L, Position.create(55.7, 11.0), HOUR);
+
+        Cpa cpa = CpaCalculator.findCpa(leg1, leg2, 10 * MINUTE, HOUR);
+        assertEquals(10 * MINUTE, cpa.getTime());
+    }
+
+    @Test
+    public void testConstantVelocity() {
+        // Head on at 12 knots each, 2 nautical miles apart, so the CPA is after 5 minutes
+        double[] result = new double[2];
+        CpaCalculator.findCpa(56.0, 11.0, 12.0, 0.0, 56.0 + 2.0 / 60.0, 11.0, 12.0, 180.0, HOUR, result);
+        assertEquals(5 * MINUTE, result[0], 1000.0);
+        assertEquals(0.0, result[1], 10.0);
+
+        // Same vessels, but outside the horizon
+        CpaCalculator.findCpa(56.0, 11.0, 12.0, 0.0, 56.0 + 2.0 / 60.0, 11.0, 12.0, 180.0, MINUTE, result);
+        assertEquals(MINUTE, result[0], 0.0);
+        assertEquals(2 * 1852.0 - 2 * 12.0 * 1852.0 / 60.0, result[1], 10.0);
+
+        // Consistent with the leg based calculation
+        Random random = new Random(7L);
+        for (int n = 0; n < 100; n++) {
+            Position pos1 = Position.create(55.9 + 0.2 * random.nextDouble(), 10.9 + 0.2 * random.nextDouble());
+            Position pos2 = Position.create(55.9 + 0.2 * random.nextDouble(), 10.9 + 0.2 * random.nextDouble());
+            double sog1 = random.nextDouble() * 20.0, cog1 = random.nextDouble() * 360.0;
+            double sog2 = random.nextDouble() * 20.0, cog2 = random.nextDouble() * 360.0;
+            Leg leg1 = new Leg(0, pos1, 0L, CoordinateSystem.CARTESIAN.pointOnBearing(pos1, sog1 * 1852.0, cog1), HOUR);
+            Leg leg2 = new Leg(0, pos2, 0L, CoordinateSystem.CARTESIAN.pointOnBearing(pos2, sog2 * 1852.0, cog2), HOUR);
+            Cpa cpa = CpaCalculator.findCpa(leg1, leg2, 0L, HOUR);
+            CpaCalculator.findCpa(pos1.getLatitude(), pos1.getLongitude(), sog1, cog1, pos2.getLatitude(),
+                    pos2.getLongitude(), sog2, cog2, HOUR, result);
+            assertEquals(cpa.getDistance(), result[1], 0.01 * cpa.getDistance() + 20.0);
+        }
+    }
+
+    @Test
+    public void testMultipleLegs() {
+        // Vessel 1 turns onto the course of vessel 2
+        List<Leg> legs1 = Arrays.asList(
+                new Leg(0, Position.create(56.0, 11.0), 0L, Position.create(56.0, 11.2), HOUR),
+                new Leg(1, Position.create(56.0, 11.2), HOUR, Position.create(56.2, 11.2), 2 * HOUR));
+        List<Leg> legs2 = Arrays.asList(
+                new Leg(0, Position.create(56.4, 11.2), 0L, Position.create(56.2, 11.2), 90 * MINUTE),
+                new Leg(1, Position.create(56.2, 11.2), 90 * MINUTE, Position.create(56.0, 11.2), 3 * HOUR));
+
+        List<Cpa> cpas = CpaCalculator.findCpas(legs1, legs2, 0L, 3 * HOUR, 500.0);
+        assertEquals(1, cpas.size());
+        assertEquals(1, cpas.get(0).getLeg1().getIndex());
+        assertEquals(1, cpas.get(0).getLeg2().getIndex());
+        assertStepResult(legs1, legs2, cpas.get(0));
+    }
+
+    @Test
+    public void testAgainstStepTraversal() {
+        Random random = new Random(42L);
+        for (int n = 0; n < 200; n++) {
+            Leg leg1 = randomLeg(random);
+            Leg leg2 = randomLeg(random);
+            Cpa cpa = CpaCalculator.findCpa(leg1, leg2, 0L, 4 * HOUR);
+            if (cpa == null) {
+                assertTrue(leg1.getStartTime() > leg2.getEndTime() || leg2.getStartTime() > leg1.getEndTime());
+            } else {
+                assertStepResult(Arrays.asList(leg1), Arrays.asList(leg2), cpa);
+            }
+        }
+    }
+
+    @Test
+    public void testRouteCurrentLeg() {
+        // Route 2 crosses ahead of route 1 while route 1 is on its current leg, i.e. before it reaches its active way
+        // point. The stepping started both vessels at the latest active way point ETA and missed this CPA
+        long now = 10 * HOUR;
+        TestRoute route1 = new TestRoute(1, now + 30 * MINUTE, 12.0, Heading.RL, Position.create(55.9, 11.0),
+                Position.create(56.1, 11.0), Position.create(56.3, 11.1));
+        TestRoute route2 = new TestRoute(0, now + 5 * MINUTE, 10.0, Heading.RL, Position.create(56.05, 11.05),
+                Position.create(56.05, 10.8), Position.create(56.1, 10.6));
+
+        assertNull(stepTcpa(route1, route2, now, 1.0));
+        List<Cpa> cpas = CpaCalculator.findCpas(route1.getLegs(), route2.getLegs(), now, now + 3 * HOUR,
+                Converter.nmToMeters(1.0));
+        assertEquals(1, cpas.size());
+        assertEquals(now + 15 * MINUTE, cpas.get(0).getTime(), MINUTE);
+        assertEquals(0.0, Converter.metersToNm(cpas.get(0).getDistance()), 0.05);
+        assertEquals(0, cpas.get(0).getLeg1().getIndex());
+        assertEquals(0, cpas.get(0).getLeg2().getIndex());
+    }
+
+    @Test
+    public void testRouteRegressionGreatCircle() {
+        // Reciprocal routes along the same 60 nautical mile great circle leg
+        long now = 10 * HOUR;
+        Position start = Position.create(57.0, 5.5);
+        Position end = Position.create(56.4, 7.0);
+        TestRoute route1 = new TestRoute(1, now + 10 * MINUTE, 15.0, Heading.GC, Position.create(57.1, 5.0), start,
+                end, Position.create(56.0, 7.2));
+        TestRoute route2 = new TestRoute(1, now + 20 * MINUTE, 14.0, Heading.GC, Position.create(56.2, 7.5), end,
+                start, Position.create(57.2, 5.2));
+
+        Cpa cpa = assertRegression(route1, route2, now);
+        assertEquals(1, cpa.getLeg1().getIndex());
+        assertEquals(1, cpa.getLeg2().getIndex());
+        assertEquals(0.0, Converter.metersToNm(cpa.getDistance()), 0.05);
+    }
+
+    @Test
+    public void testRouteRegressionLegSwitch() {
+        // Route 2 turns onto a reciprocal course of route 1 after the stepping has started
+        long now = 10 * HOUR;
+        TestRoute route1 = new TestRoute(1, now + 15 * MINUTE, 12.0, Heading.RL, Position.create(56.0, 11.0),
+                Position.create(56.05, 11.0), Position.create(56.5, 11.0));
+        TestRoute route2 = new TestRoute(1, now + 20 * MINUTE, 12.0, Heading.RL, Position.create(56.4, 10.7),
+                Position.create(56.4, 10.8), Position.create(56.4, 11.0), Position.create(55.9, 11.0));
+
+        Cpa cpa = assertRegression(route1, route2, now);
+        assertEquals(1, cpa.getLeg1().getIndex());
+        assertEquals(2, cpa.getLeg2().getIndex());
+    }
+
+    /**
+     * Asserts that the closest CPA found by the closed form solver for the legs of the routes matches the closest
+     * distance found by the former route stepping TCPA search
+     */
+    private static Cpa assertRegression(TestRoute route1, TestRoute route2, long now) {
+        double[] step = stepTcpa(route1, route2, now, 1.0);
+        assertNotNull(step);
+
+        List<Cpa> cpas = CpaCalculator.findCpas(route1.getLegs(), route2.getLegs(), now, now + 3 * HOUR,
+                Converter.nmToMeters(1.0));
+        Cpa closest = null;
+        for (Cpa cpa : cpas) {
+            if (closest == null || cpa.getDistance() < closest.getDistance()) {
+                closest = cpa;
+            }
+        }
+        assertNotNull(closest);
+
+        // The stepping samples the movement a minute apart, i.e. up to 0.4 nautical miles at 12 knots each
+        double distance = Converter.metersToNm(closest.getDistance());
+        assertTrue(distance <= step[1] + 0.02);
+        assertTrue(distance >= step[1] - 0.4);
+        assertEquals(step[0], closest.getTime(), 2 * MINUTE);
+        return closest;
+    }
+
+    /**
+     * The former route stepping TCPA search of the intended route handler, ported to the test routes. Both vessels
+     * are moved a minute at a time from the active way point ETA of the route starting last, and the time and
+     * distance in nautical miles of the closest position within the maximum distance are returned, or null if none
+     * was found.
+     */
+    private static double[] stepTcpa(TestRoute route1, TestRoute route2, long now, double maxDistance) {
+        // The handlers retried with the routes swapped, so that route 1 starts first
+        if (route2.etas[route2.activeWp] < route1.etas[route1.activeWp]) {
+            return stepTcpa(route2, route1, now, maxDistance);
+        }
+        long route2Start = route2.etas[route2.activeWp];
+
+        // Find the segment of route 1 at the start of route 2
+        int i;
+        boolean foundSegment = false;
+        for (i = route1.activeWp; i < route1.positions.length; i++) {
+            if (i > 0 && route1.etas[i - 1] < route2Start && route1.etas[i] > route2Start) {
+                foundSegment = true;
+                break;
+            }
+        }
+        if (!foundSegment) {
+            return null;
+        }
+
+        long timeTravelledSeconds = (route2Start - route1.etas[i - 1]) / 1000;
+        double distanceTravelled = Calculator.distanceAfterTimeMph(route1.speed, timeTravelledSeconds);
+        Position route1CurrentPosition = Calculator.findPosition(route1.positions[i - 1],
+                route1.bearing(i - 1), Converter.nmToMeters(distanceTravelled));
+        Position route2CurrentPosition = route2.positions[route2.activeWp];
+        int route1CurrentWaypoint = Math.max(0, i - 1);
+        int route2CurrentWaypoint = Math.max(0, route2.activeWp - 1);
+
+        long traverseTime = route2Start;
+        long route1SegmentEnd = route1.etas[route1CurrentWaypoint + 1];
+        long route2SegmentEnd = route2.etas[route2CurrentWaypoint + 1];
+
+        double[] result = null;
+        while (true) {
+            double currentDistance = Converter.metersToNm(route1CurrentPosition.distanceTo(route2CurrentPosition,
+                    CoordinateSystem.CARTESIAN));
+            if (currentDistance <= maxDistance && traverseTime > now
+                    && (result == null || currentDistance < result[1])) {
+                result = new double[] { traverseTime, currentDistance };
+            }
+
+            traverseTime += MINUTE;
+            route1CurrentPosition = route1.traverse(route1CurrentWaypoint, route1CurrentPosition, 60);
+            route2CurrentPosition = route2.traverse(route2CurrentWaypoint, route2CurrentPosition, 60);
+
+            if (traverseTime > route1SegmentEnd) {
+                if (route1CurrentWaypoint >= route1.positions.length - 2) {
+                    break;
+                }
+                route1CurrentWaypoint++;
+                int missingSecs = (int) (traverseTime - route1SegmentEnd) / 1000;
+                route1CurrentPosition = route1.traverse(route1CurrentWaypoint,
+                        route1.positions[route1CurrentWaypoint], missingSecs);
+                route1SegmentEnd = route1.etas[route1CurrentWaypoint + 1];
+            }
+            if (traverseTime > route2SegmentEnd) {
+                if (route2CurrentWaypoint >= route2.positions.length - 2) {
+                    break;
+                }
+                route2CurrentWaypoint++;
+                int missingSecs = (int) (traverseTime - route2SegmentEnd) / 1000;
+                route2CurrentPosition = route2.traverse(route2CurrentWaypoint,
+                        route2.positions[route2CurrentWaypoint], missingSecs);
+                route2SegmentEnd = route2.etas[route2CurrentWaypoint + 1];
+            }
+
+            if (traverseTime > now + 3 * HOUR) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * A route with a constant speed and heading type, and ETA's computed from the active way point ETA
+     */
+    private static final class TestRoute {
+        final int activeWp;
+        final double speed;
+        final Heading heading;
+        final Position[] positions;
+        final long[] etas;
+
+        TestRoute(int activeWp, long activeEta, double speed, Heading heading, Position... positions) {
+            this.activeWp = activeWp;
+            this.speed = speed;
+            this.heading = heading;
+            this.positions = positions;
+            this.etas = new long[positions.length];
+            etas[0] = 0L;
+            for (int i = 1; i < positions.length; i++) {
+                etas[i] = etas[i - 1] + (long) (range(i - 1) / speed * HOUR);
+            }
+            long offset = activeEta - etas[activeWp];
+            for (int i = 0; i < positions.length; i++) {
+                etas[i] += offset;
+            }
+        }
+
+        double range(int index) {
+            return Calculator.range(positions[index], positions[index + 1], heading);
+        }
+
+        double bearing(int index) {
+            return Calculator.bearing(positions[index], positions[index + 1], heading);
+        }
+
+        Position traverse(int index, Position position, int seconds) {
+            double dist = Converter.nmToMeters(speed * seconds / 3600.0);
+            if (heading == Heading.RL) {
+                return Calculator.findPosition(position, bearing(index), dist);
+            }
+            return Calculator.findPosition(position, positions[index + 1], dist);
+        }
+
+        /**
+         * Returns the legs from the leg leading to the active way point, as built by the intended route handler
+         */
+        List<Leg> getLegs() {
+            List<Leg> legs = new ArrayList<>();
+            for (int index = Math.max(0, activeWp - 1); index < positions.length - 1; index++) {
+                double length = range(index);
+                if (heading != Heading.GC || length <= 10.0) {
+                    legs.add(new Leg(index, positions[index], etas[index], positions[index + 1], etas[index + 1]));
+                } else {
+                    CpaCalculator.addGreatCircleLegs(legs, index, positions[index], etas[index], positions[index + 1],
+                            etas[index + 1], length, 10.0);
+                }
+            }
+            return legs;
+        }
+    }
+
+    /**
+     * Asserts that the closed form CPA is at least as close as, and within a minute's travel of, the closest distance
+     * found by stepping the legs a minute at a time
+     */
+    private static void assertStepResult(List<Leg> legs1, List<Leg> legs2, Cpa cpa) {
+        double minDistance = Double.MAX_VALUE;
+        double maxSpeed = 0.0;
+        for (long t = cpa.getLeg1().getStartTime(); t <= cpa.getLeg1().getEndTime(); t += MINUTE) {
+            if (t < cpa.getLeg2().getStartTime() || t > cpa.getLeg2().getEndTime()) {
+                continue;
+            }
+            Position pos1 = cpa.getLeg1().getPosition(t);
+            Position pos2 = cpa.getLeg2().getPosition(t);
+            minDistance = Math.min(minDistance, pos1.distanceTo(pos2, CoordinateSystem.CARTESIAN));
+        }
+        for (Leg leg : legs1) {
+            maxSpeed = Math.max(maxSpeed, speed(leg));
+        }
+        for (Leg leg : legs2) {
+            maxSpeed = Math.max(maxSpeed, speed(leg));
+        }
+        double tolerance = 0.005 * minDistance + 10.0;
+        assertTrue(cpa.getDistance() <= minDistance + tolerance);
+        assertTrue(cpa.getDistance() >= minDistance - 2 * maxSpeed * MINUTE - tolerance);
+    }
+
+    private static double speed(Leg leg) {
+        double dist = leg.getPosition(leg.getStartTime()).distanceTo(leg.getPosition(leg.getEndTime()),
+                CoordinateSystem.CARTESIAN);
+        return dist / (leg.getEndTime() - leg.getStartTime());
+    }
+
+    private static Leg randomLeg(Random random) {
+        Position start = Position.create(55.5 + random.nextDouble(), 10.5 + random.nextDouble());
+        Position end = Position.create(55.5 + random.nextDouble(), 10.5 + random.nextDouble());
+        long startTime = random.nextInt(60) * MINUTE;
+        long endTime = startTime + (30 + random.nextInt(90)) * MINUTE;
+        return new Leg(0, start, startTime, end, endTime);
+    }
+}
@@ -0,0 +1,64 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Tests of the {@linkplain PolygonSimplifier}
+ */
+public class PolygonSimplifierTest {
+
+    @Test
+    public void testPolyline() {
+        // The middle points deviate about 11 m and 111 m from the straight line
+        double[] lats = { 55.0, 55.0001, 55.0, 55.001, 55.0 };
+        double[] lons = { 11.0, 11.01, 11.02, 11.03, 11.04 };
+
+        assertEquals(Arrays.toString(new boolean[] { true, false, true, true, true }),
+                Arrays.toString(PolygonSimplifier.simplify(lats, lons, 50.0, false)));
+        assertEquals(Arrays.toString(new boolean[] { true, false, false, false, true }),
+                Arrays.toString(PolygonSimplifier.simplify(lats, lons, 200.0, false)));
+        assertEquals(Arrays.toString(new boolean[] { true, true, true, true, true }),
+                Arrays.toString(PolygonSimplifier.simplify(lats, lons, 0.0, false)));
+    }
+
+    @Test
+    public void testRingKeepsThreePoints() {
+        // A square with a point on each side. The last point is always kept, as the ring is not closed
+        double[] lats = { 55.0, 55.0, 55.0, 55.5, 56.0, 56.0, 56.0, 55.5 };
+        double[] lons = { 11.0, 11.5, 12.0, 12.0, 12.0, 11.5, 11.0, 11.0 };
+
+        boolean[] keep = PolygonSimplifier.simplify(lats, lons, 100.0, true);
+        assertEquals(Arrays.toString(new boolean[] { true, false, true, false, true, false, true, true }),
+                Arrays.toString(keep));
+
+        keep = PolygonSimplifier.simplify(lats, lons, 1000000.0, true);
+        int count = 0;
+        for (boolean k : keep) {
+            count += k ? 1 : 0;
+        }
+        assertEquals(3, count);
+        assertTrue(keep[0]);
+        assertTrue(keep[4]);
+        assertFalse(keep[1]);
+    }
+}
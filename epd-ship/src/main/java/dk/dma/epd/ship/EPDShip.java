@@ -50,6 +50,8 @@ import dk.dma.epd.common.graphics.Resources;
 import dk.dma.epd.common.prototype.Bootstrap;
 import dk.dma.epd.common.prototype.EPD;
 import dk.dma.epd.common.prototype.PluginLoader;
+import dk.dma.epd.common.prototype.ais.AisCpaEngine;
+import dk.dma.epd.common.prototype.ais.AisCpaEngine.Mode;
 import dk.dma.epd.common.prototype.ais.VesselTarget;
 import dk.dma.epd.common.prototype.gui.SystemTrayCommon;
 import dk.dma.epd.common.prototype.model.identity.IdentityHandler;
@@ -115,6 +117,7 @@ public final class EPDShip extends EPD implements IOwnShipListener {
     private PntHandler pntHandler;
     private MultiSourcePntHandler msPntHandler;
     private OwnShipHandler ownShipHandler;
+    private AisCpaEngine cpaEngine;
     private DynamicPredictorHandler dynamicPredictorHandler;
     private RiskHandler riskHandler;
     private ShoreServicesCommon shoreServices;
@@ -220,6 +223,12 @@ public final class EPDShip extends EPD implements IOwnShipListener {
         EPD.startThread(aisHandler, "AisHandler");
         mapHandler.add(aisHandler);
 
+        // Monitor the CPA's of the own ship against all targets
+        if (settings.getNavSettings().isCpaMonitoring()) {
+            cpaEngine = new AisCpaEngine(aisHandler, Mode.OWN_SHIP);
+            cpaEngine.start(1000L);
+        }
+
         // Start own-ship handler
         ownShipHandler = new OwnShipHandler(settings.getAisSettings());
         ownShipHandler.loadView();
@@ -481,6 +490,9 @@ public final class EPDShip extends EPD implements IOwnShipListener {
             dynamicPredictorSensor = null;
         }
         if (aisSensor != null) {
+            aisSensor.setDecodeThreads(sensorSettings.getAisDecodeThreads(), sensorSettings.getAisDecodeQueueSize());
+            aisHandler.getAisStatus().setDecodeStatus(
+                    sensorSettings.getAisDecodeThreads() > 0 ? aisSensor.getDecodeStatus() : null);
             aisSensor.addAisListener(aisHandler);
             aisSensor.addAisListener(ownShipHandler);
             aisSensor.start();
@@ -870,6 +882,15 @@ public final class EPDShip extends EPD implements IOwnShipListener {
         return ownShipHandler;
     }
 
+    /**
+     * Returns a reference to the CPA engine monitoring the own ship, or null if CPA monitoring is disabled
+     * 
+     * @return a reference to the CPA engine
+     */
+    public AisCpaEngine getCpaEngine() {
+        return cpaEngine;
+    }
+
     @Override
     public RouteManager getRouteManager() {
         return (RouteManager) routeManager;
@@ -962,6 +983,9 @@ public final class EPDShip extends EPD implements IOwnShipListener {
      */
     @Override
     public void ownShipUpdated(OwnShipHandler ownShipHandler) {
+        if (cpaEngine != null) {
+            cpaEngine.updateOwnShip(ownShipHandler.getComputedAisTarget());
+        }
     }
 
     /**
@@ -31,6 +31,7 @@ import dk.dma.epd.common.prototype.layers.intendedroute.IntendedRouteLegGraphic;
 import dk.dma.epd.common.prototype.layers.intendedroute.IntendedRouteWpCircle;
 import dk.dma.epd.common.prototype.model.route.ActiveRoute;
 import dk.dma.epd.common.prototype.model.route.IntendedRoute;
+import dk.dma.epd.common.prototype.model.route.RouteGeometry;
 import dk.dma.epd.common.prototype.model.route.RouteLeg;
 import dk.dma.epd.common.prototype.model.route.RouteWaypoint;
 import dk.dma.epd.common.prototype.sensor.pnt.PntTime;
@@ -232,9 +233,10 @@ public class IntendedRouteLayer extends IntendedRouteLayerCommon {
             startWP = 0;
         }
 
-        for (int i = startWP; i < activeRoute.getWaypoints().size(); i++) {
+        RouteGeometry geometry = activeRoute.getGeometry();
+        for (int i = startWP; i < geometry.getWaypointCount(); i++) {
 
-            RouteWaypoint currentWaypoint = activeRoute.getWaypoints().get(i);
+            RouteWaypoint currentWaypoint = geometry.getWaypoint(i);
 
             // We are in the route
             if (new DateTime(activeRoute.getEtas().get(i).getTime())
@@ -271,11 +273,9 @@ public class IntendedRouteLayer extends IntendedRouteLayerCommon {
                         long milisecondsTravelTime = endEta.getTime()
                                 - startEta.getTime();
 
-                        Position startPos = activeRoute.getWaypoints().get(i)
-                                .getPos();
+                        Position startPos = geometry.getPosition(i);
                         //
-                        Position endPosition = activeRoute.getWaypoints()
-                                .get(i + 1).getPos();
+                        Position endPosition = geometry.getPosition(i + 1);
                         //
 
                         double lengthToTravel = Calculator.range(startPos,
@@ -287,8 +287,7 @@ public class IntendedRouteLayer extends IntendedRouteLayerCommon {
                                 .distanceAfterTimeMph(speed, secondsSailTime);
 
                         return Calculator.findPosition(
-                                currentWaypoint.getPos(), currentWaypoint
-                                        .getOutLeg().calcBrg(), Converter
+                                startPos, geometry.getLegBearing(i), Converter
                                         .nmToMeters(distanceTravelled));
 
                     }
@@ -45,10 +45,14 @@ import dk.dma.epd.common.graphics.Resources;
 import dk.dma.epd.common.prototype.Bootstrap;
 import dk.dma.epd.common.prototype.EPD;
 import dk.dma.epd.common.prototype.PluginLoader;
+import dk.dma.epd.common.prototype.ais.AisCpaEngine;
+import dk.dma.epd.common.prototype.ais.AisCpaEngine.Mode;
 import dk.dma.epd.common.prototype.gui.SystemTrayCommon;
 import dk.dma.epd.common.prototype.model.identity.IdentityHandler;
 import dk.dma.epd.common.prototype.model.voyage.VoyageEventDispatcher;
+import dk.dma.epd.common.prototype.predictor.FleetPredictor;
 import dk.dma.epd.common.prototype.sensor.nmea.NmeaFileSensor;
+import dk.dma.epd.common.prototype.sensor.nmea.NmeaMultiplexSensor;
 import dk.dma.epd.common.prototype.sensor.nmea.NmeaSensor;
 import dk.dma.epd.common.prototype.sensor.nmea.NmeaSerialSensorFactory;
 import dk.dma.epd.common.prototype.sensor.nmea.NmeaStdinSensor;
@@ -101,6 +105,8 @@ public final class EPDShore extends EPD {
     private StaticImages staticImages;
     private TransponderFrame transponderFrame;
     private MonaLisaRouteOptimization monaLisaRouteExchange;
+    private FleetPredictor fleetPredictor;
+    private AisCpaEngine cpaEngine;
 
     private SRUManager sruManager;
 
@@ -190,6 +196,23 @@ public final class EPDShore extends EPD {
         EPD.startThread(aisHandler, "AisHandler");
         beanHandler.add(aisHandler);
 
+        // Predict all vessels for the dynamic predictor layers
+        if (settings.getNavSettings().isDynamicPrediction()) {
+            fleetPredictor = new FleetPredictor(aisHandler);
+            fleetPredictor.start(FleetPredictor.DEFAULT_TICK);
+        }
+
+        // Monitor the CPA's of all vessel pairs within the configured area
+        if (settings.getNavSettings().isCpaMonitoring()) {
+            AisCpaEngine engine = new AisCpaEngine(aisHandler, Mode.ALL_PAIRS);
+            if (engine.setArea(settings.getNavSettings().getCpaArea())) {
+                cpaEngine = engine;
+                cpaEngine.start(1000L);
+            } else {
+                LOG.error("CPA monitoring requires a valid CPA area: " + settings.getNavSettings().getCpaArea());
+            }
+        }
+
         // Add StaticImages handler
         staticImages = new StaticImages();
         beanHandler.add(staticImages);
@@ -488,6 +511,24 @@ public final class EPDShore extends EPD {
         return intendedRouteHandler;
     }
 
+    /**
+     * Returns a reference to the fleet predictor, or null if dynamic prediction is disabled
+     * 
+     * @return a reference to the fleet predictor
+     */
+    public FleetPredictor getFleetPredictor() {
+        return fleetPredictor;
+    }
+
+    /**
+     * Returns a reference to the CPA engine monitoring all vessel pairs, or null if CPA monitoring is disabled
+     * 
+     * @return a reference to the CPA engine
+     */
+    public AisCpaEngine getCpaEngine() {
+        return cpaEngine;
+    }
+
     /**
      * BeanHandler for program structure
      * 
@@ -625,31 +666,41 @@ public final class EPDShore extends EPD {
     @Override
     protected void startSensors() {
         EPDSensorSettings sensorSettings = getSettings().getSensorSettings();
-        switch (sensorSettings.getAisConnectionType()) {
-        case NONE:
-            aisSensor = new NmeaStdinSensor();
-            break;
-        case TCP:
-            aisSensor = new NmeaTcpSensor(
-                    sensorSettings.getAisHostOrSerialPort(),
-                    sensorSettings.getAisTcpOrUdpPort());
-            break;
-        case SERIAL:
-            aisSensor = NmeaSerialSensorFactory.create(
-                    sensorSettings.getAisHostOrSerialPort(),
-                    sensorSettings.getAisSerialPortBaudRate());
-            break;
-        case FILE:
-            aisSensor = new NmeaFileSensor(sensorSettings.getAisFilename(),
-                    sensorSettings);
-            break;
-        default:
-            LOG.error("Unknown sensor connection type: "
-                    + sensorSettings.getAisConnectionType());
+        if (StringUtils.isNotBlank(sensorSettings.getAisFeeds())) {
+            // Read all the AIS feeds through one multiplexed sensor
+            NmeaMultiplexSensor multiplexSensor = new NmeaMultiplexSensor(sensorSettings.getAisFeeds());
+            multiplexSensor.setSelectorThreads(sensorSettings.getAisFeedThreads());
+            aisSensor = multiplexSensor;
+        } else {
+            switch (sensorSettings.getAisConnectionType()) {
+            case NONE:
+                aisSensor = new NmeaStdinSensor();
+                break;
+            case TCP:
+                aisSensor = new NmeaTcpSensor(
+                        sensorSettings.getAisHostOrSerialPort(),
+                        sensorSettings.getAisTcpOrUdpPort());
+                break;
+            case SERIAL:
+                aisSensor = NmeaSerialSensorFactory.create(
+                        sensorSettings.getAisHostOrSerialPort(),
+                        sensorSettings.getAisSerialPortBaudRate());
+                break;
+            case FILE:
+                aisSensor = new NmeaFileSensor(sensorSettings.getAisFilename(),
+                        sensorSettings);
+                break;
+            default:
+                LOG.error("Unknown sensor connection type: "
+                        + sensorSettings.getAisConnectionType());
+            }
         }
 
         if (aisSensor != null) {
             aisSensor.setVessel(false);
+            aisSensor.setDecodeThreads(sensorSettings.getAisDecodeThreads(), sensorSettings.getAisDecodeQueueSize());
+            aisHandler.getAisStatus().setDecodeStatus(
+                    sensorSettings.getAisDecodeThreads() > 0 ? aisSensor.getDecodeStatus() : null);
             aisSensor.addAisListener(aisHandler);
             aisSensor.addPntListener(PntTime.getInstance());
             aisSensor.start();
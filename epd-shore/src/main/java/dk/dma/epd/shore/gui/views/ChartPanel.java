@@ -19,16 +19,17 @@ import com.bbn.openmap.LayerHandler;
 import com.bbn.openmap.MapHandler;
 import com.bbn.openmap.MouseDelegator;
 import com.bbn.openmap.event.ProjectionSupport;
-import com.bbn.openmap.layer.shape.MultiShapeLayer;
 import dk.dma.epd.common.prototype.EPD;
 import dk.dma.epd.common.prototype.event.mouse.CommonDistanceCircleMouseMode;
 import dk.dma.epd.common.prototype.event.mouse.NoGoMouseModeCommon;
 import dk.dma.epd.common.prototype.gui.util.DraggableLayerMapBean;
 import dk.dma.epd.common.prototype.gui.views.ChartPanelCommon;
 import dk.dma.epd.common.prototype.layers.CommonRulerLayer;
+import dk.dma.epd.common.prototype.layers.background.CoastlineLayer;
 import dk.dma.epd.common.prototype.layers.intendedroute.IntendedRouteCPALayer;
 import dk.dma.epd.common.prototype.layers.intendedroute.IntendedRouteLayerCommon;
 import dk.dma.epd.common.prototype.layers.nogo.NogoLayer;
+import dk.dma.epd.common.prototype.layers.predictor.DynamicPredictorLayer;
 import dk.dma.epd.common.prototype.layers.routeedit.NewRouteContainerLayer;
 import dk.dma.epd.common.prototype.layers.wms.WMSLayer;
 import dk.dma.epd.common.prototype.model.route.RoutesUpdateEvent;
@@ -79,6 +80,7 @@ public class ChartPanel extends ChartPanelCommon {
     private VoyageHandlingLayer voyageHandlingLayer;
     private VoctLayerCommon voctLayer;
     private CommonRulerLayer rulerLayer;
+    private DynamicPredictorLayer dynamicPredictorLayer;
 
     private MainFrame mainFrame;
     private Color background = new Color(168, 228, 255);
@@ -311,6 +313,14 @@ public class ChartPanel extends ChartPanelCommon {
             NogoHandler nogoHandler = new NogoHandler();
             mapHandler.add(nogoHandler);
 
+            // Create dynamic prediction layer
+            if (EPDShore.getInstance().getFleetPredictor() != null) {
+                dynamicPredictorLayer = new DynamicPredictorLayer();
+                dynamicPredictorLayer.setVisible(true);
+                mapHandler.add(dynamicPredictorLayer);
+                mapHandler.add(EPDShore.getInstance().getFleetPredictor());
+            }
+
         }
 
         if (type == MapFrameType.suggestedRoute) {
@@ -413,7 +423,7 @@ public class ChartPanel extends ChartPanelCommon {
 
         // Create background layer
         String layerName = "background";
-        bgLayer = new MultiShapeLayer();
+        bgLayer = new CoastlineLayer();
         bgLayer.setProperties(layerName, props);
         bgLayer.setAddAsBackground(true);
         bgLayer.setVisible(true);
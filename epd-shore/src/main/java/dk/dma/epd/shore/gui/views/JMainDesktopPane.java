@@ -22,6 +22,7 @@ import java.beans.PropertyVetoException;
 import javax.swing.JDesktopPane;
 import javax.swing.JInternalFrame;
 
+import dk.dma.epd.shore.EPDShore;
 import dk.dma.epd.shore.gui.utils.JMainDesktopManager;
 
 public class JMainDesktopPane extends JDesktopPane {
@@ -179,6 +180,11 @@ public class JMainDesktopPane extends JDesktopPane {
             if (mapFrame.getChartPanel().getWmsLayer() != null) {
                 mapFrame.getChartPanel().getWmsLayer().stop();
             }
+
+            // Stop the shared fleet predictor from updating the layer of the window
+            if (EPDShore.getInstance().getFleetPredictor() != null) {
+                mapFrame.getChartPanel().getMapHandler().remove(EPDShore.getInstance().getFleetPredictor());
+            }
         }
 
         super.remove(c);
@@ -18,17 +18,19 @@ import java.awt.Point;
 import java.awt.event.ActionEvent;
 import java.awt.event.MouseEvent;
 import java.awt.geom.Point2D;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Map;
 
 import net.jcip.annotations.ThreadSafe;
 
 import com.bbn.openmap.omGraphics.OMGraphic;
+import com.bbn.openmap.omGraphics.OMGraphicList;
+import com.bbn.openmap.proj.Projection;
 
-import dk.dma.enav.model.geometry.Position;
 import dk.dma.epd.common.graphics.ISelectableGraphic;
 import dk.dma.epd.common.prototype.ais.IAisTargetListener;
-import dk.dma.epd.common.prototype.ais.MobileTarget;
 import dk.dma.epd.common.prototype.ais.SarTarget;
 import dk.dma.epd.common.prototype.ais.VesselPositionData;
 import dk.dma.epd.common.prototype.ais.VesselStaticData;
@@ -36,10 +38,13 @@ import dk.dma.epd.common.prototype.ais.VesselTarget;
 import dk.dma.epd.common.prototype.gui.util.InfoPanel;
 import dk.dma.epd.common.prototype.layers.ais.AisLayerCommon;
 import dk.dma.epd.common.prototype.layers.ais.AisTargetInfoPanelCommon;
+import dk.dma.epd.common.prototype.layers.ais.AisTargetRenderModel;
 import dk.dma.epd.common.prototype.layers.ais.PastTrackWpCircle;
 import dk.dma.epd.common.prototype.layers.ais.SartGraphic;
+import dk.dma.epd.common.prototype.layers.ais.TargetGraphic;
 import dk.dma.epd.common.prototype.layers.ais.VesselGraphic;
 import dk.dma.epd.common.prototype.layers.ais.VesselGraphicComponentSelector;
+import dk.dma.epd.common.prototype.zoom.ScaleDependentValues;
 import dk.dma.epd.common.text.Formatter;
 import dk.dma.epd.shore.ais.AisHandler;
 import dk.dma.epd.shore.gui.views.ChartPanel;
@@ -56,10 +61,20 @@ import dk.dma.epd.shore.gui.views.StatusArea;
 @ThreadSafe
 public class AisLayer extends AisLayerCommon<AisHandler> implements IAisTargetListener {
 
+    /** Margin in pixels around the viewport covering the symbols and labels of targets just outside it */
+    private static final int VIEW_MARGIN_PIXELS = 50;
+    /** Speed in knots of the longest speed vector covered by the margin around the viewport */
+    private static final double VIEW_MARGIN_SOG = 40.0;
+
     private final AisTargetInfoPanelCommon aisTargetInfoPanel = new AisTargetInfoPanelCommon();
     private StatusArea statusArea;
     private ChartPanel chartPanel;
 
+    private volatile AisTargetRenderModel renderModel;
+    private Map<Long, Long> viewVersions = new HashMap<>();
+    private long viewVersion = -1;
+    private Projection viewProjection;
+
     /**
 * Create a new AisLayer that is redrawn repeatedly at a given interval.
 * @param redrawIntervalMillis The interval at which the AisLayer will redraw itself.
@@ -71,29 +86,117 @@ public class AisLayer extends AisLayerCommon<AisHandler> implements IAisTargetLi
     }
 
     /**
-* Check if vessel is near map coordinates or it's
-* sending an intended route
-* @param mobileTarget
-* @return if the target should be included
+* {@inheritDoc} <br/>
+* The AIS layers of all map windows share the {@code AisTargetRenderModel} of the AIS handler instead of listening for target updates themselves.
+*/
+    @Override
+    protected void subscribe(AisHandler aisHandler) {
+        this.renderModel = AisTargetRenderModel.getInstance(aisHandler);
+    }
+
+    /**
+* {@inheritDoc} <br/>
+* In addition, this sub class implementation brings the graphics of the targets within the viewport up to date with the shared {@code AisTargetRenderModel}, if either the model or the projection changed since the last time.
 */
-    @SuppressWarnings("unused")
-    private boolean drawTarget(MobileTarget mobileTarget) {
-        Point2D lr = chartPanel.getMap().getProjection().getLowerRight();
-        Point2D ul = chartPanel.getMap().getProjection().getUpperLeft();
-        Position pos = mobileTarget.getPositionData().getPos();
-        
-        boolean t1 = pos.getLatitude() >= lr.getY();
-        boolean t2 = pos.getLatitude() <= ul.getY();
-        boolean t3 = pos.getLongitude() >= ul.getX();
-        boolean t4 = pos.getLongitude() <= lr.getX();
-        
-        if (!(t1 && t2 && t3 && t4)) {
-            VesselTarget vesselTarget = (mobileTarget instanceof VesselTarget) ? (VesselTarget)mobileTarget : null;
-            if (vesselTarget == null) {
-                return false;
+    @Override
+    public synchronized OMGraphicList prepare() {
+        Projection projection = getProjection();
+        AisTargetRenderModel model = this.renderModel;
+        if (model != null && projection != null) {
+            long version = model.getVersion();
+            if (version != viewVersion || projection != viewProjection) {
+                updateView(model, projection);
+                viewVersion = version;
+                viewProjection = projection;
             }
         }
-        return true;
+        return super.prepare();
+    }
+
+    /**
+* Creates or updates the graphics of the targets within the viewport, and removes the graphics of the targets that have left it.
+* Only the graphics of targets updated since they were last brought up to date are updated.
+* <p>
+* The viewport is grown by a margin, so that targets just outside it, whose symbol or speed vector reaches into it, are drawn as well.
+* @param model the shared render model
+* @param projection the current projection
+*/
+    private void updateView(AisTargetRenderModel model, Projection projection) {
+        Point2D ul = projection.getUpperLeft();
+        Point2D lr = projection.getLowerRight();
+        double minLat = Math.min(ul.getY(), lr.getY());
+        double maxLat = Math.max(ul.getY(), lr.getY());
+        double lonSpan = lr.getX() - ul.getX();
+        if (lonSpan < 0) {
+            // The viewport crosses the date line
+            lonSpan += 360.0;
+        }
+
+        // Convert the pixel margin to degrees and add the speed vector of a fast target at the current scale
+        double vectorNm = ScaleDependentValues.getCogVectorLength(projection.getScale()) * VIEW_MARGIN_SOG / 60.0;
+        double cosLat = Math.cos(Math.toRadians(Math.min(89.0, Math.max(Math.abs(minLat), Math.abs(maxLat)))));
+        double latMargin = VIEW_MARGIN_PIXELS * (maxLat - minLat) / Math.max(1, projection.getHeight()) + vectorNm / 60.0;
+        double lonMargin = VIEW_MARGIN_PIXELS * lonSpan / Math.max(1, projection.getWidth()) + vectorNm / 60.0 / cosLat;
+
+        minLat = Math.max(-90.0, minLat - latMargin);
+        maxLat = Math.min(90.0, maxLat + latMargin);
+        double minLon = -180.0;
+        double maxLon = 180.0;
+        if (lonSpan + 2 * lonMargin < 360.0) {
+            minLon = normalizeLon(ul.getX() - lonMargin);
+            maxLon = normalizeLon(lr.getX() + lonMargin);
+        }
+
+        long selectedMMSI = (getMainFrame() == null) ? -1 : getMainFrame().getSelectedMMSI();
+
+        Map<Long, Long> visibleVersions = new HashMap<>();
+        for (Long mmsi : aisHandler.getTargetGrid().query(minLat, minLon, maxLat, maxLon)) {
+            AisTargetRenderModel.RenderState state = model.getState(mmsi);
+            if (state == null) {
+                continue;
+            }
+            TargetGraphic targetGraphic = getTargetGraphic(mmsi);
+            boolean created = false;
+            if (targetGraphic == null) {
+                targetGraphic = createTargetGraphic(state.getTarget());
+                if (targetGraphic == null) {
+                    continue;
+                }
+                addTargetGraphic(mmsi, targetGraphic);
+                created = true;
+            }
+            Long appliedVersion = viewVersions.get(mmsi);
+            if (created || appliedVersion == null || appliedVersion.longValue() != state.getVersion()) {
+                updateTargetGraphic(targetGraphic, state.getTarget());
+            }
+            if (created && mmsi.longValue() == selectedMMSI) {
+                // The selected target came into view
+                setSelectedTarget(selectedMMSI, false);
+            }
+            visibleVersions.put(mmsi, state.getVersion());
+        }
+
+        // Drop the graphics of the targets that are gone or out of view
+        for (Long mmsi : new ArrayList<>(getTargets().keySet())) {
+            if (!visibleVersions.containsKey(mmsi)) {
+                removeTargetGraphic(mmsi);
+            }
+        }
+        viewVersions = visibleVersions;
+    }
+
+    /**
+* Normalizes the longitude to the range [-180, 180]
+* @param lon the longitude
+* @return the normalized longitude
+*/
+    private static double normalizeLon(double lon) {
+        if (lon < -180.0) {
+            return lon + 360.0;
+        } else if (lon > 180.0) {
+            return lon - 360.0;
+        }
+        return lon;
     }
 
     /**
@@ -14,24 +14,39 @@
  */
 package dk.dma.epd.shore.service;
 
-import java.util.Iterator;
-import java.util.Map.Entry;
+import java.util.ArrayList;
+import java.util.List;
 
+import dk.dma.enav.model.geometry.Position;
+import dk.dma.epd.common.Heading;
 import dk.dma.epd.common.prototype.model.intendedroute.FilteredIntendedRoute;
 import dk.dma.epd.common.prototype.model.intendedroute.FilteredIntendedRoutes;
 import dk.dma.epd.common.prototype.model.intendedroute.IntendedRouteFilterMessage;
 import dk.dma.epd.common.prototype.model.route.IntendedRoute;
+import dk.dma.epd.common.prototype.model.route.Route;
+import dk.dma.epd.common.prototype.model.route.RouteLeg;
+import dk.dma.epd.common.prototype.model.route.RouteWaypoint;
 import dk.dma.epd.common.prototype.service.IntendedRouteHandlerCommon;
 import dk.dma.epd.common.prototype.settings.EnavSettings;
 import dk.dma.epd.common.text.Formatter;
+import dk.dma.epd.common.util.Calculator;
 import dk.dma.epd.common.util.Converter;
 import dk.dma.epd.shore.EPDShore;
+import dk.dma.epd.shore.service.IntendedRouteSpatialIndex.Bounds;
 
 /**
  * Shore specific intended route service implementation.
+ * <p>
+ * All intended routes are compared with each other. A broad phase index of
+ * the route bounds in space and time limits the comparisons to the pairs of
+ * routes that may come within filter distance of each other, and a new
+ * intended route only triggers a recomputation of the pairs involving that
+ * vessel.
  */
 public class IntendedRouteHandler extends IntendedRouteHandlerCommon {
 
+    private final IntendedRouteSpatialIndex routeIndex = new IntendedRouteSpatialIndex();
+
     /**
      * Constructor
      */
@@ -78,40 +93,29 @@ public class IntendedRouteHandler extends IntendedRouteHandlerCommon {
      * Update all filters
      */
     @Override
-    protected void updateFilter() {
+    protected synchronized void updateFilter() {
 
         // Recalculate everything
-        // Compare all routes to current active route
+        // Rebuild the broad phase index from the current intended routes
+        routeIndex.clear();
+        for (IntendedRoute route : intendedRoutes.values()) {
+            routeIndex.put(route.getMmsi(), computeBounds(route));
+        }
 
         FilteredIntendedRoutes filteredIntendedRoutes = new FilteredIntendedRoutes();
 
-        // Compare all intended routes against all other intended routes
-
-        Iterator<Entry<Long, IntendedRoute>> outerIterator = intendedRoutes
-                .entrySet().iterator();
-        while (outerIterator.hasNext()) {
-            Entry<Long, IntendedRoute> intendedRoute = outerIterator.next();
-
-            IntendedRoute route1 = intendedRoute.getValue();
-
-            Iterator<Entry<Long, IntendedRoute>> innerIterator = intendedRoutes
-                    .entrySet().iterator();
-            while (innerIterator.hasNext()) {
-                Entry<Long, IntendedRoute> intendedRoute2 = innerIterator
-                        .next();
-
-                IntendedRoute route2 = intendedRoute2.getValue();
-
-                if (route1.getMmsi() != route2.getMmsi()) {
-                    FilteredIntendedRoute filter = findTCPA(route1, route2);
+        // Compare each pair of intended routes with overlapping bounds once
+        for (IntendedRoute route1 : intendedRoutes.values()) {
+            for (Long mmsi2 : routeIndex.findCandidates(route1.getMmsi())) {
+                if (route1.getMmsi() < mmsi2) {
+                    FilteredIntendedRoute filter = findTCPA(route1.getMmsi(), mmsi2);
 
                     // No warnings, ignore it
-                    if (filter.include()) {
+                    if (filter != null && filter.include()) {
                         // Add the filtered route to the list
                         filteredIntendedRoutes.add(filter);
                     }
                 }
-
             }
         }
 
@@ -124,13 +128,138 @@ public class IntendedRouteHandler extends IntendedRouteHandlerCommon {
     }
 
     /**
-     * Update filter with new intended route
+     * Update filter with new intended route.
+     * <p>
+     * Only the pairs involving the vessel of the route are recomputed.
      * 
      * @param route
      */
     @Override
-    protected void applyFilter(IntendedRoute route) {
-        updateFilter();
+    protected synchronized void applyFilter(IntendedRoute route) {
+        long mmsi = route.getMmsi();
+        routeIndex.put(mmsi, computeBounds(route));
+
+        // Remove the old filtered routes of the vessel, but keep them for
+        // the notification check
+        FilteredIntendedRoutes oldFilteredRoutes = new FilteredIntendedRoutes();
+        for (FilteredIntendedRoute filter : filteredIntendedRoutes.remove(mmsi)) {
+            oldFilteredRoutes.add(filter);
+        }
+
+        for (Long mmsi2 : routeIndex.findCandidates(mmsi)) {
+            FilteredIntendedRoute filter = findTCPA(mmsi, mmsi2);
+            if (filter != null && filter.include()) {
+                checkGenerateNotifications(oldFilteredRoutes, filter);
+                filteredIntendedRoutes.add(filter);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Also removes the bounds of the route from the broad phase index.
+     */
+    @Override
+    protected synchronized void intendedRouteRemoved(long mmsi) {
+        super.intendedRouteRemoved(mmsi);
+        routeIndex.remove(mmsi);
+    }
+
+    /**
+     * Returns the broad phase index of the intended route bounds
+     * 
+     * @return the broad phase index of the intended route bounds
+     */
+    IntendedRouteSpatialIndex getRouteIndex() {
+        return routeIndex;
+    }
+
+    /**
+     * Finds the TCPA of the intended routes of the given vessels. Returns
+     * null if either route is no longer present.
+     * 
+     * @param mmsi1
+     *            the MMSI of the first vessel
+     * @param mmsi2
+     *            the MMSI of the second vessel
+     * @return the filtered intended route or null
+     */
+    private FilteredIntendedRoute findTCPA(long mmsi1, long mmsi2) {
+        IntendedRoute route1 = intendedRoutes.get(mmsi1);
+        IntendedRoute route2 = intendedRoutes.get(mmsi2);
+        if (route1 == null || route2 == null) {
+            // Stale index entries are cleaned up lazily
+            if (route1 == null) {
+                routeIndex.remove(mmsi1);
+            }
+            if (route2 == null) {
+                routeIndex.remove(mmsi2);
+            }
+            return null;
+        }
+        return findTCPA(route1, route2);
+    }
+
+    /**
+     * Computes the bounds in space and time of the part of the route that is
+     * considered by {@linkplain #findTCPA(Route, Route)}, i.e. from the leg
+     * preceding the active way point. The box is expanded by the largest
+     * filter distance.
+     * 
+     * @param route
+     *            the intended route
+     * @return the bounds of the route
+     */
+    private Bounds computeBounds(IntendedRoute route) {
+        int activeWp = route.getActiveWpIndex();
+        double minLat = 90, maxLat = -90, minLon = 180, maxLon = -180;
+
+        int i = 0;
+        for (RouteWaypoint wp : route.getWaypoints()) {
+            if (i++ < activeWp - 1) {
+                continue;
+            }
+            List<Position> positions = new ArrayList<>(2);
+            positions.add(wp.getPos());
+            RouteLeg leg = wp.getOutLeg();
+            if (leg != null && leg.getHeading() == Heading.GC) {
+                // Include the middle of great circle legs
+                positions.add(Calculator.findPosition(wp.getPos(), leg
+                        .getEndWp().getPos(), Converter.nmToMeters(leg
+                        .calcRng() / 2)));
+            }
+            for (Position pos : positions) {
+                minLat = Math.min(minLat, pos.getLatitude());
+                maxLat = Math.max(maxLat, pos.getLatitude());
+                minLon = Math.min(minLon, pos.getLongitude());
+                maxLon = Math.max(maxLon, pos.getLongitude());
+            }
+        }
+
+        double margin = Math.max(ENC_DISTANCE_EPSILON,
+                Math.max(ALERT_DISTANCE_EPSILON, FILTER_DISTANCE_EPSILON));
+        double latMargin = margin / 60.0;
+        double cosLat = Math.cos(Math.toRadians(Math.min(89.0,
+                Math.max(Math.abs(minLat), Math.abs(maxLat)) + latMargin)));
+        double lonMargin = latMargin / cosLat;
+
+        minLat = Math.max(-90, minLat - latMargin);
+        maxLat = Math.min(90, maxLat + latMargin);
+        if (maxLon - minLon > 180 || maxLon - minLon + 2 * lonMargin >= 360) {
+            // Crosses the date line, use an unbounded longitude interval
+            minLon = 180;
+            maxLon = -180;
+        } else {
+            minLon -= lonMargin;
+            maxLon += lonMargin;
+        }
+
+        // Start the window with the preceding leg, which the vessel may still
+        // be sailing and which is included in the box above
+        long start = getEta(route, Math.max(0, activeWp - 1)).getMillis();
+        long end = getEta(route, route.getEtas().size() - 1).getMillis();
+        return new Bounds(minLat, maxLat, minLon, maxLon, start, end);
     }
 
     @Override
@@ -0,0 +1,231 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.shore.service;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import net.jcip.annotations.Immutable;
+import net.jcip.annotations.NotThreadSafe;
+
+/**
+ * Broad phase index used by the {@linkplain IntendedRouteHandler} for finding the intended routes that may come
+ * within filter distance of each other.
+ * <p>
+ * Each route is represented by its {@linkplain Bounds}, i.e. a bounding box in space and time, which is registered
+ * in all grid cells it covers. Bounds crossing the date line are kept in a separate set that is always included in
+ * the candidates.
+ */
+@NotThreadSafe
+class IntendedRouteSpatialIndex {
+
+    private static final double CELL_SIZE = 0.5; // Degrees
+
+    private final Map<Long, Bounds> bounds = new HashMap<>();
+    private final Map<Long, Set<Long>> cells = new HashMap<>();
+    private final Set<Long> unbounded = new HashSet<>();
+
+    /**
+     * Adds or replaces the bounds of the given MMSI
+     *
+     * @param mmsi
+     *            the MMSI
+     * @param b
+     *            the bounds of the intended route of the MMSI
+     */
+    void put(long mmsi, Bounds b) {
+        remove(mmsi);
+        bounds.put(mmsi, b);
+        if (b.crossesDateLine()) {
+            unbounded.add(mmsi);
+            return;
+        }
+        for (int row = row(b.minLat); row <= row(b.maxLat); row++) {
+            for (int col = col(b.minLon); col <= col(b.maxLon); col++) {
+                Set<Long> cell = cells.get(key(row, col));
+                if (cell == null) {
+                    cell = new HashSet<>();
+                    cells.put(key(row, col), cell);
+                }
+                cell.add(mmsi);
+            }
+        }
+    }
+
+    /**
+     * Removes the bounds of the given MMSI
+     *
+     * @param mmsi
+     *            the MMSI
+     */
+    void remove(long mmsi) {
+        Bounds b = bounds.remove(mmsi);
+        if (b == null) {
+            return;
+        }
+        if (b.crossesDateLine()) {
+            unbounded.remove(mmsi);
+            return;
+        }
+        for (int row = row(b.minLat); row <= row(b.maxLat); row++) {
+            for (int col = col(b.minLon); col <= col(b.maxLon); col++) {
+                Set<Long> cell = cells.get(key(row, col));
+                if (cell != null) {
+                    cell.remove(mmsi);
+                    if (cell.isEmpty()) {
+                        cells.remove(key(row, col));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes all bounds
+     */
+    void clear() {
+        bounds.clear();
+        cells.clear();
+        unbounded.clear();
+    }
+
+    /**
+     * Returns the bounds of the given MMSI, or null if not indexed
+     *
+     * @param mmsi
+     *            the MMSI
+     * @return the bounds of the given MMSI
+     */
+    Bounds get(long mmsi) {
+        return bounds.get(mmsi);
+    }
+
+    /**
+     * Returns the MMSI's, other than the given MMSI, whose bounds overlap the bounds of the given MMSI in both space and
+     * time
+     *
+     * @param mmsi
+     *            the MMSI
+     * @return the MMSI's of the candidate routes
+     */
+    Set<Long> findCandidates(long mmsi) {
+        Set<Long> result = new HashSet<>();
+        Bounds b = bounds.get(mmsi);
+        if (b == null) {
+            return result;
+        }
+
+        Set<Long> tested = new HashSet<>();
+        if (b.crossesDateLine()) {
+            tested.addAll(bounds.keySet());
+        } else {
+            tested.addAll(unbounded);
+            for (int row = row(b.minLat); row <= row(b.maxLat); row++) {
+                for (int col = col(b.minLon); col <= col(b.maxLon); col++) {
+                    Set<Long> cell = cells.get(key(row, col));
+                    if (cell != null) {
+                        tested.addAll(cell);
+                    }
+                }
+            }
+        }
+        tested.remove(mmsi);
+
+        for (Long other : tested) {
+            if (b.intersects(bounds.get(other))) {
+                result.add(other);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of indexed routes
+     *
+     * @return the number of indexed routes
+     */
+    int size() {
+        return bounds.size();
+    }
+
+    private static int row(double lat) {
+        return (int) Math.floor((lat + 90.0) / CELL_SIZE);
+    }
+
+    private static int col(double lon) {
+        return (int) Math.floor((lon + 180.0) / CELL_SIZE);
+    }
+
+    private static long key(int row, int col) {
+        return ((long) row << 32) | (col & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Bounding box of an intended route in space and time
+     */
+    @Immutable
+    static final class Bounds {
+        final double minLat;
+        final double maxLat;
+        final double minLon;
+        final double maxLon;
+        final long start;
+        final long end;
+
+        /**
+         * Constructor
+         *
+         * @param minLat
+         *            the minimum latitude
+         * @param maxLat
+         *            the maximum latitude
+         * @param minLon
+         *            the minimum longitude
+         * @param maxLon
+         *            the maximum longitude. Less than {@code minLon} if the box crosses the date line
+         * @param start
+         *            the start time in milliseconds
+         * @param end
+         *            the end time in milliseconds
+         */
+        Bounds(double minLat, double maxLat, double minLon, double maxLon, long start, long end) {
+            this.minLat = minLat;
+            this.maxLat = maxLat;
+            this.minLon = minLon;
+            this.maxLon = maxLon;
+            this.start = start;
+            this.end = end;
+        }
+
+        boolean crossesDateLine() {
+            return maxLon < minLon;
+        }
+
+        /**
+         * Returns if the bounds overlap in both space and time
+         */
+        boolean intersects(Bounds b) {
+            if (b.start > end || start > b.end || b.minLat > maxLat || minLat > b.maxLat) {
+                return false;
+            }
+            if (crossesDateLine() || b.crossesDateLine()) {
+                return true;
+            }
+            return b.minLon <= maxLon && minLon <= b.maxLon;
+        }
+    }
+}
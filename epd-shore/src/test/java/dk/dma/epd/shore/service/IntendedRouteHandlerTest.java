@@ -0,0 +1,173 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.shore.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+
+import net.maritimecloud.util.Timestamp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import dk.dma.epd.common.prototype.sensor.pnt.PntTime;
+import dma.route.HeadingType;
+import dma.route.IntendedRouteBroadcast;
+import dma.route.Leg;
+import dma.route.Route;
+import dma.route.Waypoint;
+
+/**
+ * Tests of the {@linkplain IntendedRouteHandler}
+ */
+public class IntendedRouteHandlerTest {
+
+    private static final long MMSI1 = 219000001L;
+    private static final long MMSI2 = 219000002L;
+
+    private double filterDistance;
+    private double alertDistance;
+    private double encDistance;
+    private TestHandler handler;
+
+    @BeforeClass
+    public static void initTime() {
+        PntTime.init(false);
+    }
+
+    @Before
+    public void createHandler() {
+        filterDistance = IntendedRouteHandler.FILTER_DISTANCE_EPSILON;
+        alertDistance = IntendedRouteHandler.ALERT_DISTANCE_EPSILON;
+        encDistance = IntendedRouteHandler.ENC_DISTANCE_EPSILON;
+
+        // Filter the routes without generating notifications
+        IntendedRouteHandler.FILTER_DISTANCE_EPSILON = 1.0;
+        IntendedRouteHandler.ALERT_DISTANCE_EPSILON = 0.1;
+        IntendedRouteHandler.ENC_DISTANCE_EPSILON = 0.1;
+
+        handler = new TestHandler();
+    }
+
+    @After
+    public void shutdownHandler() {
+        handler.shutdown();
+        IntendedRouteHandler.FILTER_DISTANCE_EPSILON = filterDistance;
+        IntendedRouteHandler.ALERT_DISTANCE_EPSILON = alertDistance;
+        IntendedRouteHandler.ENC_DISTANCE_EPSILON = encDistance;
+    }
+
+    @Test
+    public void testRouteRemoved() {
+        addParallelRoutes();
+
+        // An empty route signals that the vessel no longer transmits an intended route
+        IntendedRouteBroadcast removal = new IntendedRouteBroadcast();
+        removal.setRoute(new Route());
+        handler.updateIntendedRoute(MMSI2, removal);
+
+        assertNull(handler.getIntendedRoute(MMSI2));
+        assertFalse(handler.getFilteredIntendedRoutes().containsKey(MMSI1, MMSI2));
+        assertFalse(handler.getFilteredIntendedRoutes().containsKey(MMSI1));
+        assertNull(handler.getRouteIndex().get(MMSI2));
+        assertNotNull(handler.getRouteIndex().get(MMSI1));
+        assertEquals(1, handler.getRouteIndex().size());
+    }
+
+    @Test
+    public void testRouteExpired() {
+        addParallelRoutes();
+
+        // Let the first route expire
+        long expired = PntTime.getDate().getTime() - IntendedRouteHandler.ROUTE_TTL - 1000L;
+        handler.getIntendedRoute(MMSI1).setReceived(new Date(expired));
+        handler.checkForInactiveRoutes();
+
+        assertNull(handler.getIntendedRoute(MMSI1));
+        assertNotNull(handler.getIntendedRoute(MMSI2));
+        assertEquals(0, handler.getFilteredIntendedRoutes().size());
+        assertNull(handler.getRouteIndex().get(MMSI1));
+        assertEquals(1, handler.getRouteIndex().size());
+
+        // Let the second route expire as well
+        handler.getIntendedRoute(MMSI2).setReceived(new Date(expired));
+        handler.checkForInactiveRoutes();
+
+        assertTrue(handler.getIntendedRoutes().isEmpty());
+        assertEquals(0, handler.getRouteIndex().size());
+    }
+
+    /**
+     * Adds two parallel routes, 0.6 nautical miles apart, and checks that they are filtered
+     */
+    private void addParallelRoutes() {
+        long now = PntTime.getDate().getTime();
+        handler.updateIntendedRoute(MMSI1, createBroadcast(55.0, 11.0, 11.29, now));
+        handler.updateIntendedRoute(MMSI2, createBroadcast(55.01, 11.0, 11.29, now));
+
+        assertTrue(handler.getFilteredIntendedRoutes().containsKey(MMSI1, MMSI2));
+        assertNotNull(handler.getRouteIndex().get(MMSI1));
+        assertNotNull(handler.getRouteIndex().get(MMSI2));
+    }
+
+    /**
+     * Creates an intended route following the given latitude for an hour, starting 10 minutes ago
+     */
+    private static IntendedRouteBroadcast createBroadcast(double lat, double lon1, double lon2, long now) {
+        Route route = new Route();
+        route.addWaypoints(createWaypoint(lat, lon1, now - 10 * 60 * 1000L, true));
+        route.addWaypoints(createWaypoint(lat, lon2, now + 50 * 60 * 1000L, false));
+
+        IntendedRouteBroadcast broadcast = new IntendedRouteBroadcast();
+        broadcast.setRoute(route);
+        return broadcast;
+    }
+
+    private static Waypoint createWaypoint(double lat, double lon, long eta, boolean outLeg) {
+        Waypoint wp = new Waypoint();
+        wp.setWaypointPosition(net.maritimecloud.util.geometry.Position.create(lat, lon));
+        wp.setEta(Timestamp.create(eta));
+        if (outLeg) {
+            Leg leg = new Leg();
+            leg.setSpeed(10.0);
+            leg.setHeadingType(HeadingType.RHUMB_LINE);
+            wp.setOutLeg(leg);
+        }
+        return wp;
+    }
+
+    /**
+     * Exposes the protected methods of the handler to the test
+     */
+    private static class TestHandler extends IntendedRouteHandler {
+
+        @Override
+        protected void updateIntendedRoute(long mmsi, IntendedRouteBroadcast r) {
+            super.updateIntendedRoute(mmsi, r);
+        }
+
+        @Override
+        protected void checkForInactiveRoutes() {
+            super.checkForInactiveRoutes();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.shore.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+import dk.dma.epd.shore.service.IntendedRouteSpatialIndex.Bounds;
+
+/**
+ * Tests of the {@linkplain IntendedRouteSpatialIndex}
+ */
+public class IntendedRouteSpatialIndexTest {
+
+    private static final long HOUR = 60 * 60 * 1000L;
+
+    @Test
+    public void testCandidates() {
+        IntendedRouteSpatialIndex index = new IntendedRouteSpatialIndex();
+        index.put(1L, new Bounds(55.0, 56.0, 11.0, 12.0, 0L, 2 * HOUR));
+        // Overlaps in space and time
+        index.put(2L, new Bounds(55.5, 55.6, 11.9, 13.0, HOUR, 3 * HOUR));
+        // Overlaps in space, but not in time
+        index.put(3L, new Bounds(55.0, 56.0, 11.0, 12.0, 4 * HOUR, 5 * HOUR));
+        // Overlaps in time, but is far away
+        index.put(4L, new Bounds(60.0, 61.0, 20.0, 21.0, 0L, 2 * HOUR));
+
+        assertEquals(4, index.size());
+        assertEquals(Collections.singleton(2L), index.findCandidates(1L));
+        assertEquals(Collections.singleton(1L), index.findCandidates(2L));
+        assertTrue(index.findCandidates(3L).isEmpty());
+        assertTrue(index.findCandidates(4L).isEmpty());
+        assertTrue(index.findCandidates(5L).isEmpty());
+    }
+
+    @Test
+    public void testDateLine() {
+        IntendedRouteSpatialIndex index = new IntendedRouteSpatialIndex();
+        // Crosses the date line, i.e. maxLon < minLon, and is matched in latitude and time only
+        index.put(1L, new Bounds(10.0, 11.0, 179.0, -179.0, 0L, HOUR));
+        index.put(2L, new Bounds(10.5, 10.6, 179.5, 179.6, 0L, HOUR));
+        index.put(3L, new Bounds(10.5, 10.6, -179.6, -179.5, 0L, HOUR));
+        index.put(4L, new Bounds(30.0, 31.0, 179.5, 179.6, 0L, HOUR));
+        // Same latitudes, but later
+        index.put(5L, new Bounds(10.5, 10.6, 179.5, 179.6, 2 * HOUR, 3 * HOUR));
+
+        assertEquals(new HashSet<>(Arrays.asList(2L, 3L)), index.findCandidates(1L));
+        assertEquals(Collections.singleton(1L), index.findCandidates(2L));
+        assertEquals(Collections.singleton(1L), index.findCandidates(3L));
+        assertTrue(index.findCandidates(4L).isEmpty());
+        assertTrue(index.findCandidates(5L).isEmpty());
+    }
+
+    @Test
+    public void testReplaceAndRemove() {
+        IntendedRouteSpatialIndex index = new IntendedRouteSpatialIndex();
+        index.put(1L, new Bounds(55.0, 56.0, 11.0, 12.0, 0L, HOUR));
+        index.put(2L, new Bounds(55.5, 55.6, 11.5, 11.6, 0L, HOUR));
+        assertEquals(Collections.singleton(2L), index.findCandidates(1L));
+
+        // Moving the route away removes it from the old cells
+        index.put(2L, new Bounds(40.0, 40.1, 11.5, 11.6, 0L, HOUR));
+        assertEquals(2, index.size());
+        assertTrue(index.findCandidates(1L).isEmpty());
+
+        // ... as does moving it across the date line and back
+        index.put(2L, new Bounds(40.0, 40.1, 179.0, -179.0, 0L, HOUR));
+        assertTrue(index.findCandidates(1L).isEmpty());
+        index.put(2L, new Bounds(55.5, 55.6, 11.5, 11.6, 0L, HOUR));
+        assertEquals(Collections.singleton(2L), index.findCandidates(1L));
+
+        index.remove(2L);
+        assertNull(index.get(2L));
+        assertEquals(1, index.size());
+        assertTrue(index.findCandidates(1L).isEmpty());
+
+        index.clear();
+        assertEquals(0, index.size());
+        assertTrue(index.findCandidates(1L).isEmpty());
+    }
+}
@@ -14,10 +14,14 @@
  */
 package dk.dma.epd.util.route;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -25,11 +29,9 @@ import org.slf4j.LoggerFactory;
 import com.beust.jcommander.Parameter;
 import com.google.inject.Injector;
 
-import dk.dma.ais.message.AisMessage;
 import dk.dma.ais.reader.AisReader;
 import dk.dma.ais.reader.AisReaders;
 import dk.dma.commons.app.AbstractCommandLineTool;
-import dk.dma.enav.util.function.Consumer;
 
 public class AisToRoute extends AbstractCommandLineTool {
     
@@ -45,42 +47,72 @@ public class AisToRoute extends AbstractCommandLineTool {
     @Parameter(names = "-mmsi", required = false, description = "MMSI numbers to make route for, comma separated. Default all.")
     List<Integer> mmsis;
     
+    @Parameter(names = "-threads", required = false, description = "Number of threads used for route generation. Default the number of processors.")
+    int threads = Runtime.getRuntime().availableProcessors();
+    
+    @Parameter(names = "-maxpoints", required = false, description = "Maximum number of track points to hold in memory before spilling to disk")
+    int maxPoints = 5000000;
+    
     @Override
     protected void run(Injector injector) throws Exception {
-        inject(in, outDir, mmsis);        
+        inject(in, outDir, mmsis, threads, maxPoints);        
     }
     
     public static void main(String[] args) throws Exception {
         new AisToRoute().execute(args);
     }
     
-    private static void inject(String inFilename, String outDir, Collection<Integer> mmsis) throws Exception {
-        if (mmsis == null) {
-            final Set<Integer> mmsisFromFile = new HashSet<Integer>();
-            AisReader reader = AisReaders.createReaderFromFile(inFilename);
-            reader.registerHandler(new Consumer<AisMessage>() {         
-                @Override
-                public void accept(AisMessage aisMessage) {
-                    mmsisFromFile.add(aisMessage.getUserId());
-                }
-            });
-            reader.start();
-            reader.join();
-            mmsis = mmsisFromFile;
-        }        
+    /**
+     * Generates routes for the vessels of the AIS file. The tracks of all vessels are collected in a single pass over
+     * the file, after which the routes are generated in parallel.
+     */
+    private static void inject(String inFilename, String outDir, Collection<Integer> mmsis, int threads, int maxPoints)
+            throws Exception {
+        LOG.info("Collect tracks");
+        TrackDemultiplexer demultiplexer = new TrackDemultiplexer(mmsis, maxPoints);
+        AisReader reader = AisReaders.createReaderFromFile(inFilename);
+        reader.registerHandler(demultiplexer);
+        reader.start();
+        reader.join();
         
-        for (Integer mmsi : mmsis) {
-            LOG.info("Generate for MMSI: " + mmsi);
-            RouteGenerator routeInjector = new RouteGenerator(inFilename, outDir, mmsi);
-            LOG.info("First pass - collect track");
-            routeInjector.collectTrack();
-            LOG.info("Generate route");
-            routeInjector.generateRoute();
-            LOG.info("Save route");
-            routeInjector.saveRoute();
-
+        Map<Integer, TrackCollector> collectors = demultiplexer.getCollectors();
+        LOG.info("Generate routes for " + collectors.size() + " vessels");
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+        try {
+            List<Future<?>> tasks = new ArrayList<>();
+            for (final TrackCollector collector : collectors.values()) {
+                tasks.add(pool.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        generateRoute(collector, outDir);
+                    }
+                }));
+            }
+            for (Future<?> task : tasks) {
+                try {
+                    task.get();
+                } catch (ExecutionException e) {
+                    LOG.error("Failed generating route", e.getCause());
+                }
+            }
+        } finally {
+            pool.shutdown();
+            demultiplexer.dispose();
         }
-}
-
+    }
+    
+    private static void generateRoute(TrackCollector collector, String outDir) {
+        long mmsi = collector.getMmsi();
+        try {
+            LOG.info("Generate route for MMSI: " + mmsi);
+            RouteGenerator routeGenerator = new RouteGenerator(collector, outDir);
+            routeGenerator.generateRoute();
+            routeGenerator.saveRoute();
+        } catch (Exception e) {
+            LOG.error("Failed generating route for MMSI: " + mmsi, e);
+        } finally {
+            collector.dispose();
+        }
+    }
 
 }
@@ -16,6 +16,7 @@ package dk.dma.epd.util.route;
 
 import java.io.FileInputStream;
 import java.io.FileWriter;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.List;
@@ -48,6 +49,19 @@ public class RouteGenerator {
         trackCollector = new TrackCollector(mmsi);
     }
 
+    /**
+     * Constructor used for a track that has already been collected, e.g. by a {@linkplain TrackDemultiplexer}
+     * 
+     * @param trackCollector
+     *            the collected track
+     * @param outDir
+     *            the output directory
+     */
+    public RouteGenerator(TrackCollector trackCollector, String outDir) {
+        this.outFilename = outDir + "/route-" + trackCollector.getMmsi() + ".txt";
+        this.trackCollector = trackCollector;
+    }
+
     public void collectTrack() throws Exception {
         // Make reader for input file
         AisReader aisReader = AisReaders.createReaderFromInputStream(new FileInputStream(inFilename));
@@ -59,14 +73,18 @@ public class RouteGenerator {
         aisReader.join();
     }
 
-    public void generateRoute() {
+    public void generateRoute() throws IOException {
         // Create route generator
         IRouteGenerator generator;
         //generator = new SimpleRouteGenerator();
-        generator = new ApproxRouteGenerator();
+        //generator = new ApproxRouteGenerator();
+        generator = new RouteSimplifier();
 
         // Generate route
         route = generator.generateRoute(trackCollector.getSortedTrack());
+
+        // Release the track
+        trackCollector.dispose();
     }
 
     public void saveRoute() throws Exception {
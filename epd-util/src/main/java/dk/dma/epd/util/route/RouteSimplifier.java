@@ -0,0 +1,301 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.util.route;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.bbn.openmap.geo.Geo;
+import com.bbn.openmap.proj.Length;
+
+/**
+ * Douglas-Peucker route simplifier producing the same routes as the {@linkplain ApproxRouteGenerator}.
+ * <p>
+ * The points are converted once to primitive arrays of unit vectors, and the ranges still to be split are kept on an
+ * explicit work stack rather than the call stack, so long tracks do not overflow the stack. Ranges larger than
+ * {@linkplain #PARALLEL_THRESHOLD} points are split in parallel on the common fork-join pool. The kept points are
+ * flagged in an array and emitted in track order, which is the order the recursive algorithm adds them in.
+ * <p>
+ * The time-aware variant measures the distance from each point to the position interpolated along the segment at the
+ * time of the point, rather than the distance to the segment. It thereby also keeps the points needed to reproduce the
+ * times the vessel passes along the route, i.e. the ETAs of the generated route.
+ */
+public class RouteSimplifier implements IRouteGenerator {
+
+    /** Ranges with more points than this are split in parallel */
+    static final int PARALLEL_THRESHOLD = 50000;
+
+    private final double toleranceMeters;
+    private final boolean timeAware;
+
+    /**
+     * Constructor
+     *
+     * @param toleranceMeters
+     *            the maximum distance of a dropped point from the route
+     * @param timeAware
+     *            whether to use the time-synchronized distance
+     */
+    public RouteSimplifier(double toleranceMeters, boolean timeAware) {
+        this.toleranceMeters = toleranceMeters;
+        this.timeAware = timeAware;
+    }
+
+    /**
+     * Constructor using the tolerance of the {@linkplain ApproxRouteGenerator}
+     */
+    public RouteSimplifier() {
+        this(185.2 / 2.0, false); // 1/20 nm
+    }
+
+    @Override
+    public List<TimePoint> generateRoute(List<TimePoint> track) {
+        if (track.size() == 0) {
+            return null;
+        }
+        int n = track.size();
+        double[] lats = new double[n];
+        double[] lons = new double[n];
+        long[] times = new long[n];
+        for (int i = 0; i < n; i++) {
+            TimePoint point = track.get(i);
+            lats[i] = point.getLatitude();
+            lons[i] = point.getLongitude();
+            times[i] = point.getTime().getTime();
+        }
+
+        boolean[] keep = simplify(lats, lons, times);
+        List<TimePoint> route = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            if (keep[i]) {
+                route.add(track.get(i));
+            }
+        }
+        // Like the ApproxRouteGenerator, a single point track gives a route of the point twice
+        if (n == 1) {
+            route.add(track.get(0));
+        }
+        return route;
+    }
+
+    /**
+     * Simplifies the track given by the coordinate arrays
+     *
+     * @param lats
+     *            the latitudes of the track points
+     * @param lons
+     *            the longitudes of the track points
+     * @param times
+     *            the times of the track points, only used by the time-aware variant
+     * @return the flags of the points to keep
+     */
+    public boolean[] simplify(double[] lats, double[] lons, long[] times) {
+        int n = lats.length;
+        boolean[] keep = new boolean[n];
+        if (n == 0) {
+            return keep;
+        }
+        Track track = new Track(lats, lons, times);
+        keep[0] = true;
+        keep[n - 1] = true;
+        if (n - 1 > PARALLEL_THRESHOLD) {
+            ForkJoinPool.commonPool().invoke(new SplitTask(track, keep, 0, n - 1));
+        } else {
+            new SplitTask(track, keep, 0, n - 1).compute();
+        }
+        return keep;
+    }
+
+    /**
+     * Returns the index of the point with the largest distance in the range, or -1 if no point is farther away than
+     * the tolerance
+     */
+    private int findSplit(Track track, int start, int end) {
+        double[] x = track.x;
+        double[] y = track.y;
+        double[] z = track.z;
+        double x1 = x[start], y1 = y[start], z1 = z[start];
+        double x2 = x[end], y2 = y[end], z2 = z[end];
+
+        double maxDistance = -1;
+        int maxPoint = -1;
+        if (timeAware) {
+            long t1 = track.times[start];
+            double duration = track.times[end] - t1;
+            for (int i = start + 1; i < end; i++) {
+                // Interpolate along the chord at the time of the point
+                double f = (duration > 0) ? (track.times[i] - t1) / duration : 0.0;
+                f = Math.min(1.0, Math.max(0.0, f));
+                double dx = x[i] - (x1 + f * (x2 - x1));
+                double dy = y[i] - (y1 + f * (y2 - y1));
+                double dz = z[i] - (z1 + f * (z2 - z1));
+                double distMeters = Length.KM.fromRadians(Math.sqrt(dx * dx + dy * dy + dz * dz)) * 1000.0;
+                if (distMeters > maxDistance) {
+                    maxDistance = distMeters;
+                    maxPoint = i;
+                }
+            }
+        } else {
+            // Great circle distance between the end points, as Geo.distance()
+            double cx = y2 * z1 - z2 * y1;
+            double cy = z2 * x1 - x2 * z1;
+            double cz = x2 * y1 - y2 * x1;
+            double x1x2Length = Math.atan2(Math.sqrt(cx * cx + cy * cy + cz * cz), x2 * x1 + y2 * y1 + z2 * z1);
+
+            for (int i = start + 1; i < end; i++) {
+                // Cross product of the vectors from the end points to the point, as Geo.crossLength()
+                double ax = x[i] - x1, ay = y[i] - y1, az = z[i] - z1;
+                double bx = x[i] - x2, by = y[i] - y2, bz = z[i] - z2;
+                double px = ay * bz - az * by;
+                double py = az * bx - ax * bz;
+                double pz = ax * by - ay * bx;
+                double distMeters = Length.KM.fromRadians(Math.sqrt(px * px + py * py + pz * pz) / x1x2Length) * 1000.0;
+                if (distMeters > maxDistance) {
+                    maxDistance = distMeters;
+                    maxPoint = i;
+                }
+            }
+        }
+        return (maxDistance > toleranceMeters) ? maxPoint : -1;
+    }
+
+    /**
+     * The track points as unit vectors
+     */
+    private static final class Track {
+        final double[] x;
+        final double[] y;
+        final double[] z;
+        final long[] times;
+
+        Track(double[] lats, double[] lons, long[] times) {
+            int n = lats.length;
+            x = new double[n];
+            y = new double[n];
+            z = new double[n];
+            this.times = times;
+            if (n > PARALLEL_THRESHOLD) {
+                ForkJoinPool.commonPool().invoke(new ConvertTask(this, lats, lons, 0, n));
+            } else {
+                convert(lats, lons, 0, n);
+            }
+        }
+
+        void convert(double[] lats, double[] lons, int from, int to) {
+            for (int i = from; i < to; i++) {
+                // Use the same vectors as the Geo based generator
+                Geo geo = new Geo(lats[i], lons[i]);
+                x[i] = geo.x();
+                y[i] = geo.y();
+                z[i] = geo.z();
+            }
+        }
+    }
+
+    /**
+     * Converts a range of the track points to unit vectors in parallel
+     */
+    private static final class ConvertTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Track track;
+        private final double[] lats;
+        private final double[] lons;
+        private final int from;
+        private final int to;
+
+        ConvertTask(Track track, double[] lats, double[] lons, int from, int to) {
+            this.track = track;
+            this.lats = lats;
+            this.lons = lons;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > PARALLEL_THRESHOLD) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new ConvertTask(track, lats, lons, from, mid), new ConvertTask(track, lats, lons, mid, to));
+            } else {
+                track.convert(lats, lons, from, to);
+            }
+        }
+    }
+
+    /**
+     * Splits a range of the track using an explicit work stack. Ranges larger than the parallel threshold are forked
+     * as separate tasks.
+     */
+    private final class SplitTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Track track;
+        private final boolean[] keep;
+        private final int start;
+        private final int end;
+
+        SplitTask(Track track, boolean[] keep, int start, int end) {
+            this.track = track;
+            this.keep = keep;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            List<SplitTask> forked = new ArrayList<>();
+            int[] stack = new int[64];
+            int top = 0;
+            stack[top++] = start;
+            stack[top++] = end;
+            while (top > 0) {
+                int e = stack[--top];
+                int s = stack[--top];
+                if (e - s < 2) {
+                    continue;
+                }
+                int split = findSplit(track, s, e);
+                if (split < 0) {
+                    continue;
+                }
+                keep[split] = true;
+
+                // Fork large ranges, and push the others on the work stack
+                for (int r = 0; r < 2; r++) {
+                    int rs = (r == 0) ? s : split;
+                    int re = (r == 0) ? split : e;
+                    if (re - rs > PARALLEL_THRESHOLD) {
+                        SplitTask task = new SplitTask(track, keep, rs, re);
+                        task.fork();
+                        forked.add(task);
+                    } else {
+                        if (top + 2 > stack.length) {
+                            stack = Arrays.copyOf(stack, stack.length * 2);
+                        }
+                        stack[top++] = rs;
+                        stack[top++] = re;
+                    }
+                }
+            }
+            for (SplitTask task : forked) {
+                task.join();
+            }
+        }
+    }
+}
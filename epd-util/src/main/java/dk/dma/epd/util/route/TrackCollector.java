@@ -14,6 +14,15 @@
  */
 package dk.dma.epd.util.route;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
@@ -26,6 +35,9 @@ import dk.dma.enav.util.function.Consumer;
 
 /**
  * Utility for collecting tracks from AIS feed.
+ * <p>
+ * The collected points can be spilled to a file with {@linkplain #spill(File)} to bound the memory used for very large
+ * AIS archives. The spilled points are read back by {@linkplain #getSortedTrack()}.
  */
 public class TrackCollector implements Consumer<AisMessage>{
     
@@ -35,6 +47,8 @@ public class TrackCollector implements Consumer<AisMessage>{
     private final List<TimePoint> track = new ArrayList<>();
     private Position lastPos;
     private Date time;
+    private File spillFile;
+    private int spilledPoints;
     
     public TrackCollector(long mmsi) {
         this.mmsi = mmsi;
@@ -77,9 +91,98 @@ public class TrackCollector implements Consumer<AisMessage>{
         track.add(point);
     }
     
-    public List<TimePoint> getSortedTrack() {
+    public long getMmsi() {
+        return mmsi;
+    }
+
+    /**
+     * Returns the number of points held in memory
+     * 
+     * @return the number of points held in memory
+     */
+    public int getBufferedPoints() {
+        return track.size();
+    }
+
+    /**
+     * Returns the total number of collected points, including the spilled points
+     * 
+     * @return the total number of collected points
+     */
+    public int getPoints() {
+        return spilledPoints + track.size();
+    }
+
+    /**
+     * Appends the points held in memory to the spill file of the track, which is created in the given directory, and
+     * releases them from memory
+     * 
+     * @param dir
+     *            the directory of the spill file
+     */
+    public void spill(File dir) throws IOException {
+        if (track.isEmpty()) {
+            return;
+        }
+        if (spillFile == null) {
+            spillFile = File.createTempFile("track-" + mmsi + "-", ".bin", dir);
+            spillFile.deleteOnExit();
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(spillFile, true)))) {
+            for (TimePoint point : track) {
+                out.writeLong(point.getTime().getTime());
+                out.writeDouble(point.getLatitude());
+                out.writeDouble(point.getLongitude());
+            }
+        }
+        spilledPoints += track.size();
+        track.clear();
+    }
+
+    /**
+     * Returns the sorted track, including any spilled points
+     * 
+     * @return the sorted track
+     */
+    public List<TimePoint> getSortedTrack() throws IOException {
+        if (spillFile != null) {
+            List<TimePoint> points = new ArrayList<>(spilledPoints + track.size());
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(spillFile)))) {
+                for (int i = 0; i < spilledPoints; i++) {
+                    long t = in.readLong();
+                    double lat = in.readDouble();
+                    double lon = in.readDouble();
+                    points.add(new TimePoint(Position.create(lat, lon), new Date(t)));
+                }
+            } catch (EOFException e) {
+                throw new IOException("Truncated spill file " + spillFile, e);
+            }
+            points.addAll(track);
+            track.clear();
+            track.addAll(points);
+            spilledPoints = 0;
+            deleteSpillFile();
+        }
         Collections.sort(track);
         return track;
     }
 
+    /**
+     * Releases the collected points and deletes any spill file
+     */
+    public void dispose() {
+        track.clear();
+        spilledPoints = 0;
+        deleteSpillFile();
+    }
+
+    private void deleteSpillFile() {
+        if (spillFile != null) {
+            if (!spillFile.delete()) {
+                spillFile.deleteOnExit();
+            }
+            spillFile = null;
+        }
+    }
+
 }
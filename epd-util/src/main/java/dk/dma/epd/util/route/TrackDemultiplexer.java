@@ -0,0 +1,130 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.util.route;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.dma.ais.message.AisMessage;
+import dk.dma.ais.message.AisPositionMessage;
+import dk.dma.enav.util.function.Consumer;
+
+/**
+ * Collects the tracks of all vessels of an AIS feed in a single pass, by demultiplexing the position messages into a
+ * {@linkplain TrackCollector} per MMSI.
+ * <p>
+ * When the number of points held in memory exceeds the given limit, the buffered points of all tracks are spilled to
+ * temporary files, so that very large AIS archives can be processed with bounded memory.
+ */
+public class TrackDemultiplexer implements Consumer<AisMessage> {
+
+    static final Logger LOG = LoggerFactory.getLogger(TrackDemultiplexer.class);
+
+    private final Set<Integer> mmsis;
+    private final int maxBufferedPoints;
+    private final Map<Integer, TrackCollector> collectors = new LinkedHashMap<>();
+    private int bufferedPoints;
+    private File spillDir;
+
+    /**
+     * Constructor
+     *
+     * @param mmsis
+     *            the MMSI numbers to collect tracks for, or null for all
+     * @param maxBufferedPoints
+     *            the maximum number of points to hold in memory before spilling
+     */
+    public TrackDemultiplexer(Collection<Integer> mmsis, int maxBufferedPoints) {
+        this.mmsis = (mmsis == null) ? null : new HashSet<>(mmsis);
+        this.maxBufferedPoints = maxBufferedPoints;
+    }
+
+    @Override
+    public void accept(AisMessage aisMessage) {
+        if (!(aisMessage instanceof AisPositionMessage)) {
+            return;
+        }
+        Integer mmsi = aisMessage.getUserId();
+        if (mmsis != null && !mmsis.contains(mmsi)) {
+            return;
+        }
+        TrackCollector collector = collectors.get(mmsi);
+        if (collector == null) {
+            collector = new TrackCollector(mmsi);
+            collectors.put(mmsi, collector);
+        }
+        collector.accept(aisMessage);
+
+        if (++bufferedPoints > maxBufferedPoints) {
+            spill();
+        }
+    }
+
+    /**
+     * Spills the buffered points of all tracks to temporary files
+     */
+    private void spill() {
+        try {
+            if (spillDir == null) {
+                spillDir = Files.createTempDirectory("aistoroute").toFile();
+                spillDir.deleteOnExit();
+            }
+            LOG.info("Spilling " + bufferedPoints + " track points of " + collectors.size() + " vessels to " + spillDir);
+            for (TrackCollector collector : collectors.values()) {
+                collector.spill(spillDir);
+            }
+            bufferedPoints = 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed spilling tracks", e);
+        }
+    }
+
+    /**
+     * Returns the track collectors by MMSI, in the order the vessels were first seen
+     *
+     * @return the track collectors by MMSI
+     */
+    public Map<Integer, TrackCollector> getCollectors() {
+        return collectors;
+    }
+
+    /**
+     * Returns the spill directory, or null if no points have been spilled
+     *
+     * @return the spill directory
+     */
+    File getSpillDir() {
+        return spillDir;
+    }
+
+    /**
+     * Deletes the spill directory, which must be empty, i.e. all collectors must have been disposed
+     */
+    public void dispose() {
+        if (spillDir != null && !spillDir.delete()) {
+            LOG.warn("Could not delete spill directory " + spillDir);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.util.route;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the {@linkplain ApproxRouteGenerator} with the {@linkplain RouteSimplifier} on a track of one million
+ * points. Run with:
+ *
+ * <pre>
+ * java -cp ... dk.dma.epd.util.route.RouteSimplifierBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgs = { "-Xmx4g", "-Xss16m" })
+public class RouteSimplifierBenchmark {
+
+    private List<TimePoint> track;
+
+    @Setup
+    public void setup() {
+        track = RouteSimplifierTest.createTrack(1000000, 42L);
+    }
+
+    @Benchmark
+    public List<TimePoint> approxRouteGenerator() {
+        return new ApproxRouteGenerator().generateRoute(track);
+    }
+
+    @Benchmark
+    public List<TimePoint> routeSimplifier() {
+        return new RouteSimplifier().generateRoute(track);
+    }
+
+    @Benchmark
+    public List<TimePoint> timeAwareRouteSimplifier() {
+        return new RouteSimplifier(185.2 / 2.0, true).generateRoute(track);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(RouteSimplifierBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,139 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.util.route;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import dk.dma.enav.model.geometry.Position;
+
+/**
+ * Tests of the {@linkplain RouteSimplifier}
+ */
+public class RouteSimplifierTest {
+
+    /**
+     * Creates a track of a vessel sailing at 8-16 knots, changing course now and then, with a point every 10 seconds
+     */
+    static List<TimePoint> createTrack(int size, long seed) {
+        Random random = new Random(seed);
+        List<TimePoint> track = new ArrayList<>(size);
+        double lat = 55.0;
+        double lon = 11.0;
+        double course = random.nextDouble() * 360.0;
+        double speed = 12.0;
+        long time = 1400000000000L;
+        for (int i = 0; i < size; i++) {
+            track.add(new TimePoint(Position.create(lat, lon), new Date(time)));
+            if (random.nextInt(50) == 0) {
+                course += random.nextGaussian() * 30.0;
+                speed = 8.0 + random.nextDouble() * 8.0;
+            }
+            course += random.nextGaussian() * 0.5;
+            double nm = speed * 10.0 / 3600.0;
+            lat += Math.cos(Math.toRadians(course)) * nm / 60.0;
+            lon += Math.sin(Math.toRadians(course)) * nm / (60.0 * Math.cos(Math.toRadians(lat)));
+            time += 10000L;
+        }
+        return track;
+    }
+
+    private static void assertSameRoute(List<TimePoint> expected, List<TimePoint> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertSame(expected.get(i), actual.get(i));
+        }
+    }
+
+    @Test
+    public void testSmallTracks() {
+        assertNull(new RouteSimplifier().generateRoute(Collections.<TimePoint> emptyList()));
+        for (int size = 1; size < 5; size++) {
+            List<TimePoint> track = createTrack(size, size);
+            assertSameRoute(new ApproxRouteGenerator().generateRoute(track), new RouteSimplifier().generateRoute(track));
+        }
+    }
+
+    @Test
+    public void testMatchesApproxRouteGenerator() {
+        for (long seed = 0; seed < 5; seed++) {
+            List<TimePoint> track = createTrack(20000, seed);
+            List<TimePoint> expected = new ApproxRouteGenerator().generateRoute(track);
+            List<TimePoint> actual = new RouteSimplifier().generateRoute(track);
+            assertTrue(actual.size() < track.size() / 10);
+            assertSameRoute(expected, actual);
+        }
+    }
+
+    @Test
+    public void testParallelSplitting() {
+        List<TimePoint> track = createTrack(4 * RouteSimplifier.PARALLEL_THRESHOLD, 42L);
+        assertSameRoute(new ApproxRouteGenerator().generateRoute(track), new RouteSimplifier().generateRoute(track));
+    }
+
+    @Test
+    public void testTimeAware() {
+        // A straight track where the speed drops to a half after an hour
+        List<TimePoint> track = new ArrayList<>();
+        double lat = 55.0;
+        long time = 0L;
+        for (int i = 0; i < 720; i++) {
+            track.add(new TimePoint(Position.create(lat, 11.0), new Date(time)));
+            lat += ((i < 360) ? 12.0 : 6.0) * 10.0 / 3600.0 / 60.0;
+            time += 10000L;
+        }
+
+        // The spatial simplification only keeps the end points
+        assertEquals(2, new RouteSimplifier().generateRoute(track).size());
+
+        // The time-aware simplification also keeps the point where the speed changes
+        List<TimePoint> route = new RouteSimplifier(185.2 / 2.0, true).generateRoute(track);
+        assertEquals(3, route.size());
+        assertSame(track.get(360), route.get(1));
+    }
+
+    @Test
+    public void testTimeAwareKeepsEtas() {
+        double tolerance = 185.2 / 2.0;
+        List<TimePoint> track = createTrack(20000, 7L);
+        List<TimePoint> route = new RouteSimplifier(tolerance, true).generateRoute(track);
+        assertTrue(route.size() >= new RouteSimplifier().generateRoute(track).size());
+
+        // The position interpolated along the route at the time of each track point is within the tolerance
+        int leg = 0;
+        for (TimePoint point : track) {
+            long t = point.getTime().getTime();
+            while (route.get(leg + 1).getTime().getTime() < t) {
+                leg++;
+            }
+            TimePoint p1 = route.get(leg);
+            TimePoint p2 = route.get(leg + 1);
+            double f = (double) (t - p1.getTime().getTime()) / (p2.getTime().getTime() - p1.getTime().getTime());
+            Position interpolated = Position.create(p1.getLatitude() + f * (p2.getLatitude() - p1.getLatitude()),
+                    p1.getLongitude() + f * (p2.getLongitude() - p1.getLongitude()));
+            assertTrue(point.getPos().rhumbLineDistanceTo(interpolated) < tolerance * 1.05);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.util.route;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import dk.dma.ais.message.AisMessage;
+import dk.dma.ais.message.AisMessage1;
+import dk.dma.ais.message.AisMessage5;
+import dk.dma.ais.message.AisPosition;
+import dk.dma.enav.model.geometry.Position;
+
+/**
+ * Tests of the {@linkplain TrackDemultiplexer} and the spilling of the {@linkplain TrackCollector}
+ */
+public class TrackDemultiplexerTest {
+
+    private static final int[] MMSIS = { 219000001, 219000002, 219000003 };
+    private static final int POINTS = 100;
+
+    /**
+     * Creates the position messages of the vessels, interleaved, each vessel sailing east on its own latitude
+     */
+    static List<AisMessage> createMessages() {
+        List<AisMessage> messages = new ArrayList<>();
+        for (int i = 0; i < POINTS; i++) {
+            for (int v = 0; v < MMSIS.length; v++) {
+                AisMessage1 message = new AisMessage1();
+                message.setUserId(MMSIS[v]);
+                message.setPos(new AisPosition(Position.create(55.0 + v, 11.0 + i * 0.001 * (v + 1))));
+                messages.add(message);
+            }
+            // Non-position messages are ignored
+            AisMessage5 staticMessage = new AisMessage5();
+            staticMessage.setUserId(MMSIS[0]);
+            messages.add(staticMessage);
+        }
+        return messages;
+    }
+
+    private static TrackDemultiplexer demultiplex(List<Integer> mmsis, int maxBufferedPoints) {
+        TrackDemultiplexer demux = new TrackDemultiplexer(mmsis, maxBufferedPoints);
+        for (AisMessage message : createMessages()) {
+            demux.accept(message);
+        }
+        return demux;
+    }
+
+    @Test
+    public void testInterleavedMmsis() throws IOException {
+        TrackDemultiplexer demux = demultiplex(null, Integer.MAX_VALUE);
+        Map<Integer, TrackCollector> collectors = demux.getCollectors();
+        assertEquals(Arrays.asList(MMSIS[0], MMSIS[1], MMSIS[2]), new ArrayList<>(collectors.keySet()));
+        assertNull(demux.getSpillDir());
+
+        for (int v = 0; v < MMSIS.length; v++) {
+            TrackCollector collector = collectors.get(MMSIS[v]);
+            assertEquals(MMSIS[v], collector.getMmsi());
+            assertEquals(POINTS, collector.getPoints());
+            assertEquals(POINTS, collector.getBufferedPoints());
+
+            // Each track only holds the points of its own vessel, in the order sent
+            List<TimePoint> track = collector.getSortedTrack();
+            for (int i = 0; i < POINTS; i++) {
+                assertEquals(55.0 + v, track.get(i).getLatitude(), 1e-5);
+                assertEquals(11.0 + i * 0.001 * (v + 1), track.get(i).getLongitude(), 1e-5);
+            }
+        }
+    }
+
+    @Test
+    public void testMmsiFilter() {
+        TrackDemultiplexer demux = demultiplex(Arrays.asList(MMSIS[1]), Integer.MAX_VALUE);
+        assertEquals(1, demux.getCollectors().size());
+        assertEquals(POINTS, demux.getCollectors().get(MMSIS[1]).getPoints());
+    }
+
+    @Test
+    public void testSpillRoundTrip() throws IOException {
+        TrackDemultiplexer expected = demultiplex(null, Integer.MAX_VALUE);
+        TrackDemultiplexer demux = demultiplex(null, 7);
+
+        // The points of all vessels have been spilled, one file per vessel
+        File spillDir = demux.getSpillDir();
+        assertNotNull(spillDir);
+        assertEquals(MMSIS.length, spillDir.list().length);
+        int buffered = 0;
+        for (TrackCollector collector : demux.getCollectors().values()) {
+            assertEquals(POINTS, collector.getPoints());
+            assertTrue(collector.getBufferedPoints() < POINTS);
+            buffered += collector.getBufferedPoints();
+        }
+        assertTrue(buffered <= 7);
+
+        // The reloaded tracks match the tracks collected in memory. The times are derived from the distance sailed,
+        // relative to the creation time of the collector, so they are compared relative to the first point.
+        for (int mmsi : MMSIS) {
+            List<TimePoint> expectedTrack = expected.getCollectors().get(mmsi).getSortedTrack();
+            List<TimePoint> track = demux.getCollectors().get(mmsi).getSortedTrack();
+            assertEquals(POINTS, track.size());
+            long expectedStart = expectedTrack.get(0).getTime().getTime();
+            long start = track.get(0).getTime().getTime();
+            for (int i = 0; i < POINTS; i++) {
+                assertEquals(expectedTrack.get(i).getLatitude(), track.get(i).getLatitude(), 0.0);
+                assertEquals(expectedTrack.get(i).getLongitude(), track.get(i).getLongitude(), 0.0);
+                assertEquals(expectedTrack.get(i).getTime().getTime() - expectedStart, track.get(i).getTime().getTime()
+                        - start);
+            }
+        }
+
+        // Reloading deletes the spill files
+        assertEquals(0, spillDir.list().length);
+        for (TrackCollector collector : demux.getCollectors().values()) {
+            collector.dispose();
+        }
+        demux.dispose();
+        assertFalse(spillDir.exists());
+    }
+
+    @Test
+    public void testDisposeSpilled() {
+        TrackDemultiplexer demux = demultiplex(null, 7);
+        File spillDir = demux.getSpillDir();
+        assertEquals(MMSIS.length, spillDir.list().length);
+
+        // Disposing the collectors without reloading deletes the spill files, and then the spill directory
+        for (TrackCollector collector : demux.getCollectors().values()) {
+            collector.dispose();
+            assertEquals(0, collector.getPoints());
+        }
+        assertEquals(0, spillDir.list().length);
+        demux.dispose();
+        assertFalse(spillDir.exists());
+    }
+}